@@ -1,21 +1,60 @@
 package com.project.csvanalyser;
 
+import com.project.csvanalyser.cache.ResultCache;
 import com.project.csvanalyser.cli.AnalyticsResult;
 import com.project.csvanalyser.cli.CliConfig;
 import com.project.csvanalyser.cli.CliParser;
 import com.project.csvanalyser.cli.CsvAnalyticsRunner;
 import com.project.csvanalyser.cli.ReportWriter;
+import com.project.csvanalyser.cli.ServerConfig;
+import com.project.csvanalyser.server.QueryServer;
 
 public class CsvanalyserApplication {
 
 	public static void main(String[] args) {
-		CliConfig config = CliParser.parse(args);
+		ServerConfig serverConfig = CliParser.parseServer(args);
+		if (serverConfig != null) {
+			try {
+				QueryServer server = QueryServer.start(serverConfig);
+				Runtime.getRuntime().addShutdownHook(new Thread(server::close));
+				System.err.println("Listening on http://127.0.0.1:" + server.getPort() + "/query");
+			} catch (Exception e) {
+				System.err.println("Error: " + e.getMessage());
+				System.exit(1);
+			}
+			return;
+		}
+		CliConfig config;
+		try {
+			config = CliParser.parse(args);
+		} catch (IllegalArgumentException e) {
+			System.err.println("Error: " + e.getMessage());
+			System.exit(1);
+			return;
+		}
 		if (config == null) {
 			CliParser.printHelp();
 			return;
 		}
 		try {
-			AnalyticsResult result = CsvAnalyticsRunner.run(config);
+			if (config.getExportPath() != null) {
+				ReportWriter.writeExport(CsvAnalyticsRunner.export(config), config);
+				return;
+			}
+			if (config.isInputSorted()) {
+				try (ReportWriter.SortedOutput out = ReportWriter.openSorted(config)) {
+					out.finish(CsvAnalyticsRunner.runSorted(config, out));
+				}
+				return;
+			}
+			AnalyticsResult result;
+			if (config.getCacheSettings() != null) {
+				ResultCache cache = ResultCache.open(config.getCacheSettings());
+				result = cache.getOrRun(config, CsvAnalyticsRunner::run);
+				cache.save();
+			} else {
+				result = CsvAnalyticsRunner.run(config);
+			}
 			ReportWriter.write(result, config);
 		} catch (Exception e) {
 			System.err.println("Error: " + e.getMessage());
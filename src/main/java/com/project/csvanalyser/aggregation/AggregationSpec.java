@@ -3,16 +3,31 @@ package com.project.csvanalyser.aggregation;
 import java.util.List;
 
 /**
- * Specifies group-by columns and which aggregations to compute (count, sum(column), avg(column), min(column), max(column)).
+ * Specifies group-by columns and which aggregations to compute (count, sum(column), avg(column), min(column), max(column)),
+ * and optionally the grouping sets to derive from the groups (see {@link GroupingSets}).
  */
 public final class AggregationSpec {
 
     private final List<String> groupByColumns;
     private final List<AggregationOpWithColumn> aggregations;
+    private final GroupingSets groupingSets;
 
     public AggregationSpec(List<String> groupByColumns, List<AggregationOpWithColumn> aggregations) {
+        this(groupByColumns, aggregations, null);
+    }
+
+    /**
+     * @param groupingSets sets drawn from {@code groupByColumns}, or null to report the group-by groups only
+     */
+    public AggregationSpec(List<String> groupByColumns, List<AggregationOpWithColumn> aggregations,
+                           GroupingSets groupingSets) {
         this.groupByColumns = groupByColumns == null ? List.of() : List.copyOf(groupByColumns);
         this.aggregations = aggregations == null ? List.of() : List.copyOf(aggregations);
+        if (groupingSets != null && !groupingSets.getColumns().equals(this.groupByColumns)) {
+            throw new IllegalArgumentException("Grouping sets are drawn from " + groupingSets.getColumns()
+                    + ", not the group-by columns " + this.groupByColumns);
+        }
+        this.groupingSets = groupingSets;
     }
 
     public List<String> getGroupByColumns() {
@@ -23,6 +38,11 @@ public final class AggregationSpec {
         return aggregations;
     }
 
+    /** @return the grouping sets to report, or null for the group-by groups only */
+    public GroupingSets getGroupingSets() {
+        return groupingSets;
+    }
+
     public enum AggregationOp {
         COUNT,
         SUM,
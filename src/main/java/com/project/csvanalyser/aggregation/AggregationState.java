@@ -1,12 +1,15 @@
 package com.project.csvanalyser.aggregation;
 
+import java.io.Serializable;
 import java.util.HashMap;
 import java.util.Map;
 
 /**
  * Running state for one group: count and numeric aggregates (sum, min, max). Avg = sum/count at end.
  */
-public final class AggregationState {
+public final class AggregationState implements Serializable {
+
+    private static final long serialVersionUID = 1L;
 
     private long count;
     private final Map<String, Double> sumByColumn = new HashMap<>();
@@ -25,15 +28,55 @@ public final class AggregationState {
             } catch (NumberFormatException e) {
                 continue;
             }
-            switch (a.getOp()) {
-                case SUM, AVG -> sumByColumn.merge(a.getColumn(), value, Double::sum);
-                case MIN -> minByColumn.merge(a.getColumn(), value, (x, y) -> Math.min(x, y));
-                case MAX -> maxByColumn.merge(a.getColumn(), value, (x, y) -> Math.max(x, y));
-                default -> { }
-            }
+            addValue(a.getOp(), a.getColumn(), value);
+        }
+    }
+
+    /**
+     * Counts one row without touching numeric aggregates; callers that already hold parsed values follow up with
+     * {@link #addValue} per aggregation.
+     */
+    public void addCount() {
+        count++;
+    }
+
+    /** Counts {@code rows} rows at once, for rows counted without being read. */
+    public void addCount(long rows) {
+        count += rows;
+    }
+
+    public void addValue(AggregationSpec.AggregationOp op, String column, double value) {
+        switch (op) {
+            case SUM, AVG -> sumByColumn.merge(column, value, Double::sum);
+            case MIN -> minByColumn.merge(column, value, (x, y) -> Math.min(x, y));
+            case MAX -> maxByColumn.merge(column, value, (x, y) -> Math.max(x, y));
+            default -> { }
         }
     }
 
+    /**
+     * Folds another partial state for the same group into this one (used to combine per-worker tables).
+     */
+    public void merge(AggregationState other) {
+        count += other.count;
+        other.sumByColumn.forEach((col, v) -> sumByColumn.merge(col, v, Double::sum));
+        other.minByColumn.forEach((col, v) -> minByColumn.merge(col, v, (x, y) -> Math.min(x, y)));
+        other.maxByColumn.forEach((col, v) -> maxByColumn.merge(col, v, (x, y) -> Math.max(x, y)));
+    }
+
+    /**
+     * @return a copy with count and sums multiplied by {@code factor} (count rounded), as estimates of the full data from
+     *         a sample; min and max are the sample's, as they cannot be scaled
+     */
+    public AggregationState scaled(double factor) {
+        AggregationState out = new AggregationState();
+        out.count = Math.round(count * factor);
+        sumByColumn.forEach((col, v) -> out.sumByColumn.put(col, v * factor));
+        out.minByColumn.putAll(minByColumn);
+        out.maxByColumn.putAll(maxByColumn);
+        return out;
+    }
+
     public long getCount() {
         return count;
     }
@@ -53,4 +96,12 @@ public final class AggregationState {
     public Double getMax(String column) {
         return maxByColumn.get(column);
     }
+
+    /**
+     * Rough retained size of this state in bytes (object headers, maps and boxed values), for memory accounting.
+     */
+    public long estimatedBytes() {
+        int entries = sumByColumn.size() + minByColumn.size() + maxByColumn.size();
+        return 16 + 8 + 3 * 64 + entries * (32 + 16 + 16);
+    }
 }
@@ -1,5 +1,6 @@
 package com.project.csvanalyser.aggregation;
 
+import java.io.Serializable;
 import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
@@ -7,7 +8,9 @@ import java.util.Objects;
 /**
  * Immutable, comparable key for grouping. Order of values matches the group-by column order for deterministic comparison.
  */
-public final class GroupKey implements Comparable<GroupKey> {
+public final class GroupKey implements Comparable<GroupKey>, Serializable {
+
+    private static final long serialVersionUID = 1L;
 
     private final List<String> values;
 
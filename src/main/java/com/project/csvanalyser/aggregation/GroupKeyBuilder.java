@@ -0,0 +1,142 @@
+package com.project.csvanalyser.aggregation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds group keys from rows for a list of group-by expressions: plain column names, or {@link TimeBucket} expressions
+ * such as {@code bucket(timestamp, 1h)}. At most one expression may use sliding windows, in which case a row yields one
+ * key per window it falls in. Holds per-expression label caches, so each aggregator uses its own instance.
+ */
+public final class GroupKeyBuilder {
+
+    private static final GroupKey GLOBAL = new GroupKey(List.of());
+
+    private final String[] columns;
+    private final TimeBucket[] buckets;
+    private final int slidingIndex;
+    private final String[] windowLabels;
+
+    public GroupKeyBuilder(List<String> groupBy) {
+        this.columns = new String[groupBy.size()];
+        this.buckets = new TimeBucket[groupBy.size()];
+        int sliding = -1;
+        for (int i = 0; i < columns.length; i++) {
+            TimeBucket bucket = TimeBucket.parse(groupBy.get(i));
+            buckets[i] = bucket;
+            columns[i] = bucket == null ? groupBy.get(i) : bucket.getColumn();
+            if (bucket != null && bucket.isSliding()) {
+                if (sliding >= 0) {
+                    throw new IllegalArgumentException("Only one group-by expression may use sliding windows: " + groupBy);
+                }
+                sliding = i;
+            }
+        }
+        this.slidingIndex = sliding;
+        this.windowLabels = new String[sliding < 0 ? 1 : buckets[sliding].maxWindows()];
+    }
+
+    /**
+     * Splits a comma-separated list of group-by expressions on commas outside parentheses, so
+     * {@code region,bucket(ts, 1h, 15m)} gives two expressions. Entries are trimmed.
+     */
+    public static List<String> splitExpressions(String s) {
+        List<String> out = new ArrayList<>();
+        int depth = 0;
+        int start = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '(') depth++;
+            else if (c == ')') depth = Math.max(0, depth - 1);
+            else if (c == ',' && depth == 0) {
+                out.add(s.substring(start, i).trim());
+                start = i + 1;
+            }
+        }
+        out.add(s.substring(start).trim());
+        return out;
+    }
+
+    /**
+     * @return the CSV columns the expressions read, in order (a bucket expression contributes its timestamp column)
+     */
+    public static List<String> sourceColumns(List<String> groupBy) {
+        List<String> out = new ArrayList<>(groupBy.size());
+        for (String expression : groupBy) {
+            TimeBucket bucket = TimeBucket.parse(expression);
+            out.add(bucket == null ? expression : bucket.getColumn());
+        }
+        return out;
+    }
+
+    /** @return whether any expression uses sliding windows, so a row may yield several keys */
+    public boolean isSliding() {
+        return slidingIndex >= 0;
+    }
+
+    /** @return most keys {@link #keys} can produce for one row */
+    public int maxKeysPerRow() {
+        return windowLabels.length;
+    }
+
+    /** @return number of key components */
+    public int size() {
+        return columns.length;
+    }
+
+    /** @return whether key component {@code i} is a time bucket, which labels cells that are not timestamps blank */
+    public boolean isBucket(int i) {
+        return buckets[i] != null;
+    }
+
+    /**
+     * Key component {@code i} for a raw cell value of its source column: the value itself, or its bucket label.
+     * For a sliding expression this is the latest window containing the value.
+     */
+    public String value(int i, String raw) {
+        return buckets[i] == null ? raw : buckets[i].label(raw);
+    }
+
+    /**
+     * Fills {@code out} with the key components of a row; without sliding windows this allocates nothing for labels
+     * already seen. Missing columns read as {@code ""}.
+     */
+    public void values(Map<String, String> row, String[] out) {
+        for (int i = 0; i < columns.length; i++) {
+            out[i] = value(i, row.getOrDefault(columns[i], ""));
+        }
+    }
+
+    /** @return the key of a row; only valid without sliding windows */
+    public GroupKey key(Map<String, String> row) {
+        if (columns.length == 0) {
+            return GLOBAL;
+        }
+        String[] values = new String[columns.length];
+        values(row, values);
+        return new GroupKey(Arrays.asList(values));
+    }
+
+    /**
+     * Writes every key the row contributes to: one, or with a sliding window one per window containing the row.
+     *
+     * @param out at least {@link #maxKeysPerRow()} long
+     * @return number of keys written
+     */
+    public int keys(Map<String, String> row, GroupKey[] out) {
+        if (slidingIndex < 0) {
+            out[0] = key(row);
+            return 1;
+        }
+        String[] values = new String[columns.length];
+        values(row, values);
+        int n = buckets[slidingIndex].labels(row.getOrDefault(columns[slidingIndex], ""), windowLabels);
+        for (int w = 0; w < n; w++) {
+            values[slidingIndex] = windowLabels[w];
+            out[w] = new GroupKey(Arrays.asList(values));
+        }
+        return n;
+    }
+}
@@ -0,0 +1,226 @@
+package com.project.csvanalyser.aggregation;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Grouping sets requested with {@code --grouping-sets} or {@code --rollup}: several groupings of the same rows, each a
+ * subset of the group-by expressions, e.g. {@code (product, region)}, {@code (product)}, {@code (region)} and
+ * {@code ()} for the grand total. The scan aggregates only the finest grouping, all group-by expressions; every other
+ * set is derived afterwards by merging the finest groups' states, so no set costs another pass over the input.
+ * <p>
+ * Each set has a grouping id as SQL's {@code GROUPING_ID} computes it: one bit per group-by expression, the first one
+ * most significant, set when the expression is rolled up. The finest set has id 0, the grand total {@code 2^n - 1}.
+ * Immutable.
+ */
+public final class GroupingSets implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final List<String> columns;
+    /** Per set, in the order requested: bit {@code i} set when group-by expression {@code i} is kept. */
+    private final int[] kept;
+
+    private GroupingSets(List<String> columns, int[] kept) {
+        this.columns = List.copyOf(columns);
+        this.kept = kept;
+    }
+
+    /**
+     * @param specs   one entry per set: comma-separated group-by expressions, or {@code ()} for the grand total
+     * @param groupBy the group-by expressions, which every set must draw from
+     * @throws IllegalArgumentException if a set names an expression not grouped by, or the same set appears twice
+     */
+    public static GroupingSets parse(List<String> specs, List<String> groupBy) {
+        if (groupBy.size() > 30) {
+            throw new IllegalArgumentException("Grouping sets support at most 30 group-by expressions");
+        }
+        int[] kept = new int[specs.size()];
+        Set<Integer> seen = new LinkedHashSet<>();
+        for (int s = 0; s < specs.size(); s++) {
+            for (String expr : expressions(specs.get(s))) {
+                int i = groupBy.indexOf(expr);
+                if (i < 0) {
+                    throw new IllegalArgumentException("Grouping set (" + specs.get(s).trim() + ") uses '" + expr
+                            + "', which is not a group-by column. Group-by: " + groupBy);
+                }
+                kept[s] |= 1 << i;
+            }
+            if (!seen.add(kept[s])) {
+                throw new IllegalArgumentException("Grouping set (" + specs.get(s).trim() + ") is listed twice");
+            }
+        }
+        return new GroupingSets(groupBy, kept);
+    }
+
+    /**
+     * @return the sets of a {@code ROLLUP}: every prefix of the group-by expressions, longest first, down to the grand
+     *         total
+     */
+    public static GroupingSets rollup(List<String> groupBy) {
+        if (groupBy.size() > 30) {
+            throw new IllegalArgumentException("Grouping sets support at most 30 group-by expressions");
+        }
+        int[] kept = new int[groupBy.size() + 1];
+        for (int s = 0; s < kept.length; s++) {
+            kept[s] = (1 << (groupBy.size() - s)) - 1;
+        }
+        return new GroupingSets(groupBy, kept);
+    }
+
+    /**
+     * @return the group-by expressions the sets use, in first-use order; lets {@code --grouping-sets} stand without
+     *         {@code --group-by}
+     */
+    public static List<String> columns(List<String> specs) {
+        Set<String> columns = new LinkedHashSet<>();
+        for (String spec : specs) {
+            columns.addAll(expressions(spec));
+        }
+        return List.copyOf(columns);
+    }
+
+    /** @return the expressions of one set, written bare or in parentheses: {@code product,region} or {@code (product, region)} */
+    private static List<String> expressions(String spec) {
+        String s = spec.trim();
+        if (s.startsWith("(") && closingParen(s) == s.length() - 1) {
+            s = s.substring(1, s.length() - 1).trim();
+        }
+        return s.isEmpty() ? List.of() : GroupKeyBuilder.splitExpressions(s);
+    }
+
+    private static int closingParen(String s) {
+        int depth = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '(') depth++;
+            if (c == ')' && --depth == 0) return i;
+        }
+        return -1;
+    }
+
+    /** @return the group-by expressions the sets are drawn from */
+    public List<String> getColumns() {
+        return columns;
+    }
+
+    /** @return the number of sets */
+    public int size() {
+        return kept.length;
+    }
+
+    /**
+     * @return the level of the finest set, without groups, if it was requested; null if only coarser sets were
+     */
+    public Level finestLevel() {
+        for (Level level : accumulator().levels(Map.of())) {
+            if (level.isFinest()) {
+                return level;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Accumulates the states of the finest groups into every set, one group at a time, so groups can be fed as a
+     * sorted scan finishes them. Not thread-safe.
+     */
+    public Accumulator accumulator() {
+        return new Accumulator();
+    }
+
+    /**
+     * @param finest the groups of the finest set, keyed by every group-by expression
+     * @return every set's groups, in the order the sets were requested; the finest set, if requested, is {@code finest}
+     *         itself
+     */
+    public List<Level> levels(Map<GroupKey, AggregationState> finest) {
+        Accumulator accumulator = accumulator();
+        for (Map.Entry<GroupKey, AggregationState> e : finest.entrySet()) {
+            accumulator.add(e.getKey(), e.getValue());
+        }
+        return accumulator.levels(finest);
+    }
+
+    public final class Accumulator {
+        private final List<Map<GroupKey, AggregationState>> groups = new ArrayList<>();
+        private final int all = (1 << columns.size()) - 1;
+
+        private Accumulator() {
+            for (int s = 0; s < kept.length; s++) {
+                groups.add(kept[s] == all ? null : new TreeMap<>());
+            }
+        }
+
+        /** Merges one finest group into the group of every coarser set it falls in. */
+        public void add(GroupKey key, AggregationState state) {
+            List<String> values = key.getValues();
+            for (int s = 0; s < kept.length; s++) {
+                Map<GroupKey, AggregationState> level = groups.get(s);
+                if (level == null) continue;
+                List<String> coarse = new ArrayList<>(Integer.bitCount(kept[s]));
+                for (int i = 0; i < columns.size(); i++) {
+                    if ((kept[s] & (1 << i)) != 0) coarse.add(values.get(i));
+                }
+                level.computeIfAbsent(new GroupKey(coarse), k -> new AggregationState()).merge(state);
+            }
+        }
+
+        /**
+         * @param finest groups of the finest set, used as its level if requested; may be empty when they went elsewhere
+         */
+        public List<Level> levels(Map<GroupKey, AggregationState> finest) {
+            List<Level> levels = new ArrayList<>(kept.length);
+            for (int s = 0; s < kept.length; s++) {
+                List<String> setColumns = new ArrayList<>();
+                for (int i = 0; i < columns.size(); i++) {
+                    if ((kept[s] & (1 << i)) != 0) setColumns.add(columns.get(i));
+                }
+                int groupingId = 0;
+                for (int i = 0; i < columns.size(); i++) {
+                    groupingId = (groupingId << 1) | ((kept[s] & (1 << i)) == 0 ? 1 : 0);
+                }
+                Map<GroupKey, AggregationState> level = groups.get(s);
+                levels.add(new Level(setColumns, groupingId, level == null,
+                        level == null ? finest : Collections.unmodifiableMap(level)));
+            }
+            return levels;
+        }
+    }
+
+    /**
+     * The groups of one grouping set. Keys hold the values of the set's own expressions only, in group-by order.
+     */
+    public static final class Level implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final List<String> columns;
+        private final int groupingId;
+        private final boolean finest;
+        private final Map<GroupKey, AggregationState> groups;
+
+        public Level(List<String> columns, int groupingId, boolean finest, Map<GroupKey, AggregationState> groups) {
+            this.columns = List.copyOf(columns);
+            this.groupingId = groupingId;
+            this.finest = finest;
+            this.groups = groups;
+        }
+
+        /** @return the group-by expressions this set keeps; empty for the grand total */
+        public List<String> getColumns() { return columns; }
+
+        /** @return SQL {@code GROUPING_ID}: a bit per group-by expression, set when it is rolled up */
+        public int getGroupingId() { return groupingId; }
+
+        /** @return whether this is the set of every group-by expression, whose groups the scan aggregated */
+        public boolean isFinest() { return finest; }
+
+        public Map<GroupKey, AggregationState> getGroups() { return groups; }
+    }
+}
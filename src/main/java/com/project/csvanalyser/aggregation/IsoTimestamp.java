@@ -0,0 +1,185 @@
+package com.project.csvanalyser.aggregation;
+
+/**
+ * Allocation-free ISO-8601 timestamp parsing straight from the field text, for per-row use. Accepts
+ * {@code YYYY-MM-DD}, optionally followed by {@code T} (or a space) and {@code hh:mm}, {@code hh:mm:ss} or
+ * {@code hh:mm:ss.fraction} (fraction truncated to milliseconds), optionally followed by {@code Z} or an offset
+ * {@code ±hh}, {@code ±hhmm} or {@code ±hh:mm}. A timestamp without a zone is taken as UTC. No {@code java.time} objects
+ * are created; the calendar arithmetic is the proleptic Gregorian days-from-civil algorithm.
+ */
+public final class IsoTimestamp {
+
+    /** Returned by {@link #parseEpochMillis} for text that is not a supported timestamp. */
+    public static final long INVALID = Long.MIN_VALUE;
+
+    private static final long MILLIS_PER_MINUTE = 60_000L;
+    private static final long MILLIS_PER_DAY = 86_400_000L;
+
+    private IsoTimestamp() {
+    }
+
+    /**
+     * @return milliseconds since the epoch, or {@link #INVALID}
+     */
+    public static long parseEpochMillis(String s) {
+        int start = 0;
+        int end = s.length();
+        while (start < end && s.charAt(start) == ' ') start++;
+        while (end > start && s.charAt(end - 1) == ' ') end--;
+        if (end - start < 10 || s.charAt(start + 4) != '-' || s.charAt(start + 7) != '-') {
+            return INVALID;
+        }
+        int year = digits(s, start, 4);
+        int month = digits(s, start + 5, 2);
+        int day = digits(s, start + 8, 2);
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > daysInMonth(year, month)) {
+            return INVALID;
+        }
+        long millis = daysFromCivil(year, month, day) * MILLIS_PER_DAY;
+        int pos = start + 10;
+        if (pos == end) {
+            return millis;
+        }
+        char sep = s.charAt(pos);
+        if ((sep != 'T' && sep != 't' && sep != ' ') || end - pos < 6 || s.charAt(pos + 3) != ':') {
+            return INVALID;
+        }
+        int hour = digits(s, pos + 1, 2);
+        int minute = digits(s, pos + 4, 2);
+        if (hour < 0 || hour > 23 || minute < 0 || minute > 59) {
+            return INVALID;
+        }
+        millis += hour * 3_600_000L + minute * MILLIS_PER_MINUTE;
+        pos += 6;
+        if (pos < end && s.charAt(pos) == ':') {
+            int second = pos + 3 <= end ? digits(s, pos + 1, 2) : -1;
+            if (second < 0 || second > 60) {
+                return INVALID;
+            }
+            millis += second * 1000L;
+            pos += 3;
+            if (pos < end && (s.charAt(pos) == '.' || s.charAt(pos) == ',')) {
+                pos++;
+                int fractionStart = pos;
+                int fraction = 0;
+                while (pos < end && isDigit(s.charAt(pos))) {
+                    if (pos - fractionStart < 3) {
+                        fraction = fraction * 10 + (s.charAt(pos) - '0');
+                    }
+                    pos++;
+                }
+                int n = pos - fractionStart;
+                if (n == 0) {
+                    return INVALID;
+                }
+                for (int i = n; i < 3; i++) {
+                    fraction *= 10;
+                }
+                millis += fraction;
+            }
+        }
+        if (pos == end) {
+            return millis;
+        }
+        char zone = s.charAt(pos);
+        if ((zone == 'Z' || zone == 'z') && pos + 1 == end) {
+            return millis;
+        }
+        if (zone != '+' && zone != '-') {
+            return INVALID;
+        }
+        int offsetHours = pos + 3 <= end ? digits(s, pos + 1, 2) : -1;
+        int offsetMinutes = 0;
+        int rest = pos + 3;
+        if (rest < end) {
+            if (s.charAt(rest) == ':') rest++;
+            offsetMinutes = rest + 2 == end ? digits(s, rest, 2) : -1;
+        }
+        if (offsetHours < 0 || offsetHours > 18 || offsetMinutes < 0 || offsetMinutes > 59) {
+            return INVALID;
+        }
+        long offset = (offsetHours * 60L + offsetMinutes) * MILLIS_PER_MINUTE;
+        return zone == '+' ? millis - offset : millis + offset;
+    }
+
+    /**
+     * Formats epoch milliseconds as {@code YYYY-MM-DDThh:mm:ssZ} (UTC, whole seconds), which sorts lexicographically in
+     * time order for years 0000-9999.
+     */
+    public static String format(long epochMillis) {
+        return format(epochMillis, false);
+    }
+
+    /**
+     * Like {@link #format(long)}; with {@code withMillis}, as {@code YYYY-MM-DDThh:mm:ss.SSSZ}, which keeps
+     * sub-second instants apart and sorts the same way.
+     */
+    public static String format(long epochMillis, boolean withMillis) {
+        long days = Math.floorDiv(epochMillis, MILLIS_PER_DAY);
+        long ms = Math.floorMod(epochMillis, MILLIS_PER_DAY);
+        // civil-from-days, inverse of daysFromCivil
+        long z = days + 719_468;
+        long era = Math.floorDiv(z, 146_097);
+        long doe = z - era * 146_097;
+        long yoe = (doe - doe / 1460 + doe / 36_524 - doe / 146_096) / 365;
+        long doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+        long mp = (5 * doy + 2) / 153;
+        int day = (int) (doy - (153 * mp + 2) / 5 + 1);
+        int month = (int) (mp < 10 ? mp + 3 : mp - 9);
+        long year = yoe + era * 400 + (month <= 2 ? 1 : 0);
+        int seconds = (int) (ms / 1000);
+        StringBuilder b = new StringBuilder(24);
+        pad(b, year, 4).append('-');
+        pad(b, month, 2).append('-');
+        pad(b, day, 2).append('T');
+        pad(b, seconds / 3600, 2).append(':');
+        pad(b, seconds / 60 % 60, 2).append(':');
+        pad(b, seconds % 60, 2);
+        if (withMillis) {
+            pad(b.append('.'), ms % 1000, 3);
+        }
+        b.append('Z');
+        return b.toString();
+    }
+
+    private static StringBuilder pad(StringBuilder b, long value, int width) {
+        String digits = Long.toString(value);
+        for (int i = digits.length(); i < width; i++) {
+            b.append('0');
+        }
+        return b.append(digits);
+    }
+
+    /** Days since 1970-01-01 of a proleptic Gregorian date. */
+    static long daysFromCivil(int year, int month, int day) {
+        int y = month <= 2 ? year - 1 : year;
+        int era = Math.floorDiv(y, 400);
+        int yoe = y - era * 400;
+        int doy = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        int doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+        return era * 146_097L + doe - 719_468;
+    }
+
+    private static int daysInMonth(int year, int month) {
+        return switch (month) {
+            case 2 -> (year % 4 == 0 && (year % 100 != 0 || year % 400 == 0)) ? 29 : 28;
+            case 4, 6, 9, 11 -> 30;
+            default -> 31;
+        };
+    }
+
+    /** @return the unsigned decimal value of {@code n} digits at {@code pos}, or -1 if any is not a digit */
+    private static int digits(String s, int pos, int n) {
+        int value = 0;
+        for (int i = pos; i < pos + n; i++) {
+            char c = s.charAt(i);
+            if (!isDigit(c)) return -1;
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+}
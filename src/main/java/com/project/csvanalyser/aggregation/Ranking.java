@@ -0,0 +1,91 @@
+package com.project.csvanalyser.aggregation;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Maintains one {@link RankingSpec} over finished groups: a bounded top-K heap per parent key, so memory is
+ * O(parents x K) however many groups are offered. Groups can be offered in any order, either as they finish (sorted
+ * input) or in one pass over the aggregated table.
+ */
+public final class Ranking {
+
+    private final RankingSpec spec;
+    private final int[] parentIndexes;
+    private final Map<GroupKey, TopN.Bounded> byParent = new HashMap<>();
+    private final GroupKey global = new GroupKey(List.of());
+
+    public Ranking(RankingSpec spec, List<String> groupBy) {
+        this.spec = spec;
+        List<String> per = spec.getPerColumns();
+        this.parentIndexes = new int[per.size()];
+        for (int i = 0; i < parentIndexes.length; i++) {
+            parentIndexes[i] = groupBy.indexOf(per.get(i));
+            if (parentIndexes[i] < 0) {
+                throw new IllegalArgumentException("Ranking column not in group-by: '" + per.get(i) + "'");
+            }
+        }
+    }
+
+    public void offer(GroupKey key, AggregationState state) {
+        GroupKey parent = global;
+        if (parentIndexes.length > 0) {
+            List<String> values = key.getValues();
+            List<String> parentValues = new ArrayList<>(parentIndexes.length);
+            for (int i : parentIndexes) {
+                parentValues.add(i < values.size() ? values.get(i) : "");
+            }
+            parent = new GroupKey(parentValues);
+        }
+        byParent.computeIfAbsent(parent, p -> new TopN.Bounded(spec.getMetric(), spec.getK())).offer(key, state);
+    }
+
+    /**
+     * @return the ranking with partitions in parent-key order
+     */
+    public Result result() {
+        List<Partition> partitions = new ArrayList<>(byParent.size());
+        for (Map.Entry<GroupKey, TopN.Bounded> e : new TreeMap<>(byParent).entrySet()) {
+            partitions.add(new Partition(e.getKey(), e.getValue().result()));
+        }
+        return new Result(spec, partitions);
+    }
+
+    /** A finished ranking: one top-K list per parent key (a single partition with an empty key if not partitioned). */
+    public static final class Result implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final RankingSpec spec;
+        private final List<Partition> partitions;
+
+        public Result(RankingSpec spec, List<Partition> partitions) {
+            this.spec = spec;
+            this.partitions = List.copyOf(partitions);
+        }
+
+        public RankingSpec getSpec() { return spec; }
+
+        public List<Partition> getPartitions() { return partitions; }
+    }
+
+    public static final class Partition implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final GroupKey parent;
+        private final List<TopN.TopNEntry> top;
+
+        public Partition(GroupKey parent, List<TopN.TopNEntry> top) {
+            this.parent = parent;
+            this.top = top;
+        }
+
+        /** @return values of the ranking's per columns, in their order */
+        public GroupKey getParent() { return parent; }
+
+        public List<TopN.TopNEntry> getTop() { return top; }
+    }
+}
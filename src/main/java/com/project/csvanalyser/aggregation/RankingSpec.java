@@ -0,0 +1,66 @@
+package com.project.csvanalyser.aggregation;
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * One ranking requested with {@code --rank}: {@code <metric>[:<k>][ per <cols>]}, for example {@code count:10} (top 10
+ * groups by count) or {@code sum_amount:5 per region} (top 5 groups by sum_amount within each region). The
+ * {@code per} columns must be a subset of the group-by expressions; the ranked groups are the full group-by groups.
+ */
+public final class RankingSpec implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+    private static final Pattern SPEC = Pattern.compile(
+            "([a-zA-Z0-9_]+)\\s*(?::\\s*(\\d+))?(?:\\s+per\\s+(.+))?", Pattern.CASE_INSENSITIVE);
+
+    private final String metric;
+    private final int k;
+    private final List<String> perColumns;
+
+    public RankingSpec(String metric, int k, List<String> perColumns) {
+        this.metric = metric;
+        this.k = k;
+        this.perColumns = List.copyOf(perColumns);
+    }
+
+    /**
+     * @param defaultK k when the spec gives none (the run's --top-n)
+     * @throws IllegalArgumentException if the spec is malformed or a per column is not a group-by expression
+     */
+    public static RankingSpec parse(String spec, List<String> groupBy, int defaultK) {
+        Matcher m = SPEC.matcher(spec.trim());
+        if (!m.matches()) {
+            throw new IllegalArgumentException("Invalid ranking: '" + spec
+                    + "'. Expected <metric>[:<k>][ per <cols>], e.g. sum_amount:5 per region");
+        }
+        int k = m.group(2) == null ? defaultK : Integer.parseInt(m.group(2));
+        List<String> per = m.group(3) == null ? List.of() : GroupKeyBuilder.splitExpressions(m.group(3));
+        for (String col : per) {
+            if (!groupBy.contains(col)) {
+                throw new IllegalArgumentException("Ranking '" + spec + "' is per '" + col
+                        + "', which is not a group-by column. Group-by: " + groupBy);
+            }
+        }
+        if (per.size() == groupBy.size() && !per.isEmpty()) {
+            throw new IllegalArgumentException("Ranking '" + spec + "' is per every group-by column, so each partition"
+                    + " holds one group; rank per a subset of " + groupBy);
+        }
+        return new RankingSpec(m.group(1), k, per);
+    }
+
+    public String getMetric() { return metric; }
+
+    public int getK() { return k; }
+
+    /** @return parent columns; empty ranks all groups together */
+    public List<String> getPerColumns() { return perColumns; }
+
+    /** @return canonical form, e.g. {@code sum_amount:5 per region} */
+    @Override
+    public String toString() {
+        return metric + ":" + k + (perColumns.isEmpty() ? "" : " per " + String.join(",", perColumns));
+    }
+}
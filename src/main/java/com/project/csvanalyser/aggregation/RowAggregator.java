@@ -0,0 +1,18 @@
+package com.project.csvanalyser.aggregation;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Per-row aggregation step of a streaming scan, with the live counters progress reporting samples.
+ */
+public interface RowAggregator {
+
+    void accept(Map<String, String> row) throws IOException;
+
+    /** @return groups seen so far */
+    long groupCount();
+
+    /** @return rough bytes of group state currently held */
+    long estimatedStateBytes();
+}
@@ -0,0 +1,96 @@
+package com.project.csvanalyser.aggregation;
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * How a sampled run was drawn, and 95% confidence intervals for each group's estimated count, sums and averages (see
+ * {@link SampledAggregator}). An interval is unavailable (null) when fewer than two blocks were sampled, or for an
+ * average of a group never seen in the sample. When every block was read the intervals have zero width.
+ */
+public final class SampleEstimate implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /** Confidence level of the intervals. */
+    public static final double CONFIDENCE = 0.95;
+    /** Two-sided standard normal quantile for {@link #CONFIDENCE}. */
+    static final double Z = 1.959964;
+
+    private final double fraction;
+    private final long seed;
+    private final long blocksSampled;
+    private final long blocksTotal;
+    private final double scale;
+    private final long rowsSampled;
+    private final List<String> sumColumns;
+    /** Per group: count low/high, then sum low/high and avg low/high per sum column; NaN where unavailable. */
+    private final Map<GroupKey, double[]> bounds;
+
+    SampleEstimate(double fraction, long seed, long blocksSampled, long blocksTotal, double scale, long rowsSampled,
+                   List<String> sumColumns, Map<GroupKey, double[]> bounds) {
+        this.fraction = fraction;
+        this.seed = seed;
+        this.blocksSampled = blocksSampled;
+        this.blocksTotal = blocksTotal;
+        this.scale = scale;
+        this.rowsSampled = rowsSampled;
+        this.sumColumns = List.copyOf(sumColumns);
+        this.bounds = bounds;
+    }
+
+    public double getFraction() { return fraction; }
+
+    public long getSeed() { return seed; }
+
+    public long getBlocksSampled() { return blocksSampled; }
+
+    public long getBlocksTotal() { return blocksTotal; }
+
+    /** @return rows actually read (before the filter) */
+    public long getRowsSampled() { return rowsSampled; }
+
+    /** @return columns whose sums (and averages) carry intervals */
+    public List<String> getSumColumns() { return sumColumns; }
+
+    /** @return factor applied to sampled counts and sums: data bytes of the file over bytes sampled */
+    public double getScale() { return scale; }
+
+    public Interval count(GroupKey key) {
+        return interval(key, 0);
+    }
+
+    public Interval sum(GroupKey key, String column) {
+        int i = sumColumns.indexOf(column);
+        return i < 0 ? null : interval(key, 2 + 4 * i);
+    }
+
+    public Interval avg(GroupKey key, String column) {
+        int i = sumColumns.indexOf(column);
+        return i < 0 ? null : interval(key, 4 + 4 * i);
+    }
+
+    private Interval interval(GroupKey key, int offset) {
+        double[] b = bounds.get(key);
+        if (b == null || Double.isNaN(b[offset])) {
+            return null;
+        }
+        return new Interval(b[offset], b[offset + 1]);
+    }
+
+    /** Bounds of a confidence interval. */
+    public static final class Interval {
+        private final double low;
+        private final double high;
+
+        Interval(double low, double high) {
+            this.low = low;
+            this.high = high;
+        }
+
+        public double getLow() { return low; }
+
+        public double getHigh() { return high; }
+    }
+}
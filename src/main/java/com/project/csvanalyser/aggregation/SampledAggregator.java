@@ -0,0 +1,197 @@
+package com.project.csvanalyser.aggregation;
+
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Aggregates a random sample of input blocks and scales it up to the whole file. Rows are grouped per block; when a
+ * block ends ({@link #endBlock}) each group's block totals are folded into its running state and into running sums
+ * of the per-block totals, their squares and cross products, so memory stays per group, not per block.
+ * <p>
+ * The blocks are a simple random sample of n out of N byte ranges, so each block is a cluster. Because the last range
+ * is usually shorter, totals use the ratio estimator against block size: a count or sum is estimated as (data bytes of
+ * the file) x (sampled total / sampled bytes), rather than N/n x the sampled total. Its variance is the linearised
+ * ratio variance {@code (1 - n/N) s^2 / (n b^2)} scaled by the file's bytes squared, where {@code s^2} is the variance
+ * of the residuals {@code y - R b} over sampled blocks (a block where the group does not occur has y = 0) and b the
+ * mean block size. Averages are the ratio sum/count with the same variance formula. Intervals are normal
+ * approximations at {@link SampleEstimate#CONFIDENCE}; they are reliable when many blocks are sampled and rows are not
+ * ordered in a way that concentrates a group in a few blocks.
+ */
+public final class SampledAggregator implements RowAggregator {
+
+    private final List<String> groupByColumns;
+    private final List<AggregationSpec.AggregationOpWithColumn> accumulated;
+    private final List<String> sumColumns;
+    private final GroupKeyBuilder keys;
+    private final GroupKey[] rowKeys;
+    private final Map<GroupKey, AggregationState> block = new HashMap<>();
+    private final Map<GroupKey, Totals> totals = new HashMap<>();
+    private long blocks;
+    private double bytes;
+    private double bytesSquared;
+
+    public SampledAggregator(AggregationSpec spec) {
+        this.groupByColumns = spec.getGroupByColumns();
+        this.keys = new GroupKeyBuilder(groupByColumns);
+        this.rowKeys = new GroupKey[keys.maxKeysPerRow()];
+        this.accumulated = StreamAggregator.accumulatedAggregations(spec.getAggregations());
+        Set<String> sums = new LinkedHashSet<>();
+        for (AggregationSpec.AggregationOpWithColumn a : accumulated) {
+            if (a.getOp() == AggregationSpec.AggregationOp.SUM) {
+                sums.add(a.getColumn());
+            }
+        }
+        this.sumColumns = List.copyOf(sums);
+    }
+
+    @Override
+    public void accept(Map<String, String> row) {
+        int n = keys.keys(row, rowKeys);
+        for (int i = 0; i < n; i++) {
+            block.computeIfAbsent(rowKeys[i], k -> new AggregationState()).addRow(row, accumulated);
+        }
+    }
+
+    /**
+     * Closes the current block; call once per sampled block, including blocks that yielded no rows.
+     *
+     * @param blockBytes size of the block's byte range; the ranges of all blocks add up to the file's data bytes
+     */
+    public void endBlock(long blockBytes) {
+        blocks++;
+        double b = blockBytes;
+        bytes += b;
+        bytesSquared += b * b;
+        for (Map.Entry<GroupKey, AggregationState> e : block.entrySet()) {
+            AggregationState state = e.getValue();
+            Totals t = totals.get(e.getKey());
+            if (t == null) {
+                t = new Totals(state, sumColumns.size());
+                totals.put(e.getKey(), t);
+            } else {
+                t.state.merge(state);
+            }
+            double x = state.getCount();
+            t.moments[0] += x;
+            t.moments[1] += x * x;
+            t.moments[2] += x * b;
+            for (int j = 0; j < sumColumns.size(); j++) {
+                double y = state.getSum(sumColumns.get(j));
+                int m = 3 + 4 * j;
+                t.moments[m] += y;
+                t.moments[m + 1] += y * y;
+                t.moments[m + 2] += y * b;
+                t.moments[m + 3] += y * x;
+            }
+        }
+        block.clear();
+    }
+
+    /** @return blocks closed so far */
+    public long getBlocks() {
+        return blocks;
+    }
+
+    /** @return factor from sampled totals to whole-file estimates: data bytes over sampled bytes */
+    public double scale(long dataBytes) {
+        return bytes == 0 ? 0 : dataBytes / bytes;
+    }
+
+    /**
+     * @param dataBytes bytes of the file after the header (the sum of all block ranges)
+     * @return estimated state of each group for the whole file, in lexicographic key order
+     */
+    public Map<GroupKey, AggregationState> scaledStateByGroup(long dataBytes) {
+        double scale = scale(dataBytes);
+        Map<GroupKey, AggregationState> out = new TreeMap<>();
+        for (Map.Entry<GroupKey, Totals> e : totals.entrySet()) {
+            out.put(e.getKey(), e.getValue().state.scaled(scale));
+        }
+        return out;
+    }
+
+    /**
+     * @param dataBytes   bytes of the file after the header (the sum of all block ranges)
+     * @param blocksTotal blocks in the whole file (N)
+     * @param rowsSampled rows read, for reporting
+     */
+    public SampleEstimate estimate(long dataBytes, long blocksTotal, double fraction, long seed, long rowsSampled) {
+        Map<GroupKey, double[]> bounds = new HashMap<>(totals.size() * 2);
+        for (Map.Entry<GroupKey, Totals> e : totals.entrySet()) {
+            double[] m = e.getValue().moments;
+            double[] out = new double[2 + 4 * sumColumns.size()];
+            ratio(m[0], m[1], m[2], bytes, bytesSquared, blocksTotal, dataBytes, out, 0);
+            out[0] = Math.max(0, out[0]);
+            for (int j = 0; j < sumColumns.size(); j++) {
+                int k = 3 + 4 * j;
+                ratio(m[k], m[k + 1], m[k + 2], bytes, bytesSquared, blocksTotal, dataBytes, out, 2 + 4 * j);
+                ratio(m[k], m[k + 1], m[k + 3], m[0], m[1], blocksTotal, 1, out, 4 + 4 * j);
+            }
+            bounds.put(e.getKey(), out);
+        }
+        return new SampleEstimate(fraction, seed, blocks, blocksTotal, scale(dataBytes), rowsSampled, sumColumns,
+                bounds);
+    }
+
+    /**
+     * Interval for {@code multiplier x sum(y) / sum(x)} over the sampled blocks, with the linearised ratio variance;
+     * writes {low, high} at {@code offset}, or NaN when no block had any x.
+     */
+    private void ratio(double sumY, double sumYY, double sumXY, double sumX, double sumXX, long blocksTotal,
+                       double multiplier, double[] out, int offset) {
+        if (sumX == 0) {
+            out[offset] = Double.NaN;
+            out[offset + 1] = Double.NaN;
+            return;
+        }
+        double n = blocks;
+        double r = sumY / sumX;
+        double residualVariance = (sumYY - 2 * r * sumXY + r * r * sumXX) / (n - 1);
+        double half = halfWidth(residualVariance, blocksTotal) / (sumX / n);
+        out[offset] = multiplier * (r - half);
+        out[offset + 1] = multiplier * (r + half);
+    }
+
+    /**
+     * @return z * sqrt((1 - n/N) * variance / n); zero when every block was read, NaN with fewer than two blocks
+     */
+    private double halfWidth(double variance, long blocksTotal) {
+        if (blocks >= blocksTotal) {
+            return 0;
+        }
+        if (blocks < 2) {
+            return Double.NaN;
+        }
+        double n = blocks;
+        return SampleEstimate.Z * Math.sqrt((1 - n / blocksTotal) * Math.max(0, variance) / n);
+    }
+
+    @Override
+    public long groupCount() {
+        return totals.size();
+    }
+
+    @Override
+    public long estimatedStateBytes() {
+        return totals.size() * (StreamAggregator.estimatedGroupBytes(groupByColumns.size(), accumulated.size())
+                + 16 + 16 + (3 + 4L * sumColumns.size()) * 8);
+    }
+
+    private static final class Totals {
+        private final AggregationState state;
+        /**
+         * sum x, sum x^2, sum xb, then per sum column: sum y, sum y^2, sum yb, sum yx
+         * (x = block count, y = block sum, b = block bytes)
+         */
+        private final double[] moments;
+
+        Totals(AggregationState state, int sumColumns) {
+            this.state = state;
+            this.moments = new double[3 + 4 * sumColumns];
+        }
+    }
+}
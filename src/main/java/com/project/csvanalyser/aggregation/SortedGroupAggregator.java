@@ -0,0 +1,119 @@
+package com.project.csvanalyser.aggregation;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Aggregates input that is already sorted by the group-by columns: only the current group is held, and each group is
+ * handed to a {@link GroupSink} as soon as its key changes, so memory does not grow with the number of groups and
+ * groups come out in order without a final sort. Top-N is kept incrementally in a bounded heap.
+ * <p>
+ * Order is verified as rows arrive, using {@link GroupKey} order (plain string comparison, column by column). A key
+ * that sorts before the current one means the input is not sorted; {@link #accept} then fails with an
+ * {@link IllegalArgumentException}, since groups already emitted can no longer be merged.
+ */
+public final class SortedGroupAggregator implements RowAggregator {
+
+    /** Receives finished groups in key order. */
+    @FunctionalInterface
+    public interface GroupSink {
+        void group(GroupKey key, AggregationState state) throws IOException;
+    }
+
+    private final List<String> groupByColumns;
+    private final GroupKeyBuilder keys;
+    private final String[] rowValues;
+    private final List<AggregationSpec.AggregationOpWithColumn> accumulated;
+    private final GroupSink sink;
+    private final TopN.Bounded topN;
+    private GroupKey currentKey;
+    private String[] currentValues;
+    private AggregationState currentState;
+    private long rows;
+    private long emittedGroups;
+
+    public SortedGroupAggregator(AggregationSpec spec, String topNMetric, int topN, GroupSink sink) {
+        this.groupByColumns = spec.getGroupByColumns();
+        this.keys = new GroupKeyBuilder(groupByColumns);
+        if (keys.isSliding()) {
+            throw new IllegalArgumentException("Sliding windows cannot be used with --input-sorted: a row belongs to "
+                    + "several windows, so groups do not finish in key order");
+        }
+        this.rowValues = new String[keys.size()];
+        this.accumulated = StreamAggregator.accumulatedAggregations(spec.getAggregations());
+        this.sink = sink;
+        this.topN = new TopN.Bounded(topNMetric, topN);
+    }
+
+    /**
+     * Adds a row to the current group, or finishes the current group and starts the next when the key changes.
+     * The row's key is compared component by component in place; a GroupKey is built only once per group.
+     *
+     * @throws IllegalArgumentException if the row's key sorts before the current group's key
+     */
+    @Override
+    public void accept(Map<String, String> row) throws IOException {
+        rows++;
+        keys.values(row, rowValues);
+        if (currentState == null || !Arrays.equals(currentValues, rowValues)) {
+            startGroup();
+        }
+        currentState.addRow(row, accumulated);
+    }
+
+    private void startGroup() throws IOException {
+        GroupKey key = new GroupKey(Arrays.asList(rowValues));
+        if (currentKey != null) {
+            if (key.compareTo(currentKey) < 0) {
+                throw new IllegalArgumentException("Input is not sorted by " + groupByColumns + ": " + key.getValues()
+                        + " at matching row " + rows + " comes after " + currentKey.getValues()
+                        + ". Sort the file by the group-by columns or run without --input-sorted.");
+            }
+            emit();
+        }
+        currentKey = key;
+        currentValues = rowValues.clone();
+        currentState = new AggregationState();
+    }
+
+    private void emit() throws IOException {
+        topN.offer(currentKey, currentState);
+        sink.group(currentKey, currentState);
+        emittedGroups++;
+    }
+
+    /**
+     * Emits the last group; if no rows were accepted nothing is emitted, as with {@link StreamAggregator}.
+     */
+    public void finish() throws IOException {
+        if (currentState != null) {
+            emit();
+            currentKey = null;
+            currentValues = null;
+            currentState = null;
+        }
+    }
+
+    /** @return groups finished so far, plus the open one */
+    @Override
+    public long groupCount() {
+        return emittedGroups + (currentState == null ? 0 : 1);
+    }
+
+    /** @return estimated bytes held: one open group, independent of how many groups the input has */
+    @Override
+    public long estimatedStateBytes() {
+        return currentState == null ? 0 : StreamAggregator.estimatedGroupBytes(keys.size(), accumulated.size());
+    }
+
+    /** @return top-N over the groups emitted so far */
+    public List<TopN.TopNEntry> getTopN() {
+        return topN.result();
+    }
+
+    public List<String> getGroupByColumns() {
+        return groupByColumns;
+    }
+}
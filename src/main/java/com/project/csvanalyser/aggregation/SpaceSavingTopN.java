@@ -0,0 +1,188 @@
+package com.project.csvanalyser.aggregation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Approximate top-N by {@code count} or {@code sum_<col>} in fixed memory, using the (weighted) Space-Saving
+ * heavy-hitters algorithm: at most {@code capacity} groups are monitored, and a group not monitored replaces the one
+ * with the smallest total, inheriting that total as its error. A monitored total never underestimates the true total
+ * and overestimates it by at most the entry's error, which is at most (total weight) / capacity; any group whose true
+ * total exceeds that is guaranteed to be monitored.
+ * <p>
+ * Counters sit in a min-heap indexed from a hash map, so each row costs one lookup and O(log capacity) sift steps.
+ * The bounds need non-negative weights: negative or non-numeric values of the summed column add nothing and are
+ * counted in {@link #getSkippedValues()}.
+ */
+public final class SpaceSavingTopN implements RowAggregator {
+
+    private static final Comparator<Counter> BY_TOTAL_THEN_KEY =
+            Comparator.comparingDouble((Counter c) -> c.total).reversed().thenComparing(c -> c.key);
+
+    private final GroupKeyBuilder keys;
+    private final GroupKey[] rowKeys;
+    private final String metricName;
+    private final String sumColumn;
+    private final int capacity;
+    private final Map<GroupKey, Counter> counters;
+    private final Counter[] heap;
+    private int size;
+    private long skippedValues;
+
+    /**
+     * @param metricName {@code count} or {@code sum_<col>}
+     * @param capacity   groups monitored; memory is proportional to it
+     */
+    public SpaceSavingTopN(List<String> groupBy, String metricName, int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Approximate top-N needs at least one counter");
+        }
+        if ("count".equalsIgnoreCase(metricName)) {
+            this.sumColumn = null;
+        } else if (metricName.startsWith("sum_")) {
+            this.sumColumn = metricName.substring("sum_".length());
+        } else {
+            throw new IllegalArgumentException("Approximate top-N supports the count and sum_<col> metrics, not '"
+                    + metricName + "'");
+        }
+        this.keys = new GroupKeyBuilder(groupBy);
+        this.rowKeys = new GroupKey[keys.maxKeysPerRow()];
+        this.metricName = metricName;
+        this.capacity = capacity;
+        this.counters = new HashMap<>(Math.min(capacity, 1 << 20) * 2);
+        this.heap = new Counter[capacity];
+    }
+
+    @Override
+    public void accept(Map<String, String> row) {
+        double weight = 1;
+        if (sumColumn != null) {
+            String raw = row.getOrDefault(sumColumn, "").trim();
+            if (raw.isEmpty()) {
+                weight = 0;
+            } else {
+                try {
+                    weight = Double.parseDouble(raw);
+                } catch (NumberFormatException e) {
+                    weight = -1;
+                }
+                if (!(weight >= 0)) {
+                    skippedValues++;
+                    weight = 0;
+                }
+            }
+        }
+        int n = keys.keys(row, rowKeys);
+        for (int i = 0; i < n; i++) {
+            offer(rowKeys[i], weight);
+        }
+    }
+
+    /**
+     * Adds {@code weight} (non-negative) to the group's total.
+     */
+    public void offer(GroupKey key, double weight) {
+        Counter c = counters.get(key);
+        if (c != null) {
+            c.total += weight;
+            siftDown(c.index);
+            return;
+        }
+        if (size < capacity) {
+            c = new Counter(key, weight, size);
+            heap[size++] = c;
+            counters.put(key, c);
+            siftUp(c.index);
+            return;
+        }
+        Counter min = heap[0];
+        counters.remove(min.key);
+        min.key = key;
+        min.error = min.total;
+        min.total += weight;
+        counters.put(key, min);
+        siftDown(0);
+    }
+
+    /**
+     * Top {@code n} monitored groups by estimated total, ties broken by key. Each entry carries its error bound, and is
+     * marked guaranteed when its lower bound (total - error) is at least the estimate of the next monitored group, so
+     * it is certainly in the true top-N.
+     */
+    public List<TopN.TopNEntry> top(int n) {
+        Counter[] sorted = Arrays.copyOf(heap, size);
+        Arrays.sort(sorted, BY_TOTAL_THEN_KEY);
+        int k = Math.min(Math.max(0, n), sorted.length);
+        double next = k < sorted.length ? sorted[k].total : 0;
+        List<TopN.TopNEntry> out = new ArrayList<>(k);
+        for (int i = 0; i < k; i++) {
+            Counter c = sorted[i];
+            out.add(new TopN.TopNEntry(c.key, c.total, c.error, c.total - c.error >= next));
+        }
+        return out;
+    }
+
+    private void siftUp(int i) {
+        Counter c = heap[i];
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (heap[parent].total <= c.total) break;
+            place(heap[parent], i);
+            i = parent;
+        }
+        place(c, i);
+    }
+
+    private void siftDown(int i) {
+        Counter c = heap[i];
+        int half = size >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            if (child + 1 < size && heap[child + 1].total < heap[child].total) child++;
+            if (c.total <= heap[child].total) break;
+            place(heap[child], i);
+            i = child;
+        }
+        place(c, i);
+    }
+
+    private void place(Counter c, int i) {
+        heap[i] = c;
+        c.index = i;
+    }
+
+    public String getMetricName() { return metricName; }
+
+    public int getCapacity() { return capacity; }
+
+    /** @return negative or non-numeric values of the summed column that were counted as zero */
+    public long getSkippedValues() { return skippedValues; }
+
+    /** @return groups currently monitored */
+    @Override
+    public long groupCount() {
+        return size;
+    }
+
+    @Override
+    public long estimatedStateBytes() {
+        return size * (48L + 32 + 48 + keys.size() * (48L + 16));
+    }
+
+    private static final class Counter {
+        private GroupKey key;
+        private double total;
+        private double error;
+        private int index;
+
+        Counter(GroupKey key, double total, int index) {
+            this.key = key;
+            this.total = total;
+            this.index = index;
+        }
+    }
+}
@@ -1,40 +1,187 @@
 package com.project.csvanalyser.aggregation;
 
+import com.project.csvanalyser.columnar.ColumnBatch;
+import com.project.csvanalyser.columnar.ColumnTable;
+import com.project.csvanalyser.columnar.DictionaryColumn;
+import com.project.csvanalyser.columnar.NumericColumn;
+
 import java.util.*;
+import java.util.function.IntPredicate;
 import java.util.stream.Stream;
 
 /**
  * Consumes a stream of rows and maintains per-group aggregation state. One pass; only group state in memory.
  */
-public final class StreamAggregator {
+public final class StreamAggregator implements RowAggregator {
 
     private final List<String> groupByColumns;
     private final List<AggregationSpec.AggregationOpWithColumn> aggregations;
+    private final List<AggregationSpec.AggregationOpWithColumn> accumulated;
+    private final GroupingSets groupingSets;
+    private final GroupKeyBuilder keys;
+    private final GroupKey[] rowKeys;
     private final Map<GroupKey, AggregationState> stateByGroup = new HashMap<>();
 
     public StreamAggregator(AggregationSpec spec) {
         this.groupByColumns = spec.getGroupByColumns();
+        this.keys = new GroupKeyBuilder(groupByColumns);
+        this.rowKeys = new GroupKey[keys.maxKeysPerRow()];
         this.aggregations = spec.getAggregations();
+        this.accumulated = accumulatedAggregations(aggregations);
+        this.groupingSets = spec.getGroupingSets();
+    }
+
+    /**
+     * Aggregations that actually update state: sum and avg share one running sum per column, and duplicates collapse,
+     * so requesting both sum(x) and avg(x) does not add every value twice.
+     */
+    static List<AggregationSpec.AggregationOpWithColumn> accumulatedAggregations(List<AggregationSpec.AggregationOpWithColumn> aggs) {
+        Map<String, AggregationSpec.AggregationOpWithColumn> byTarget = new LinkedHashMap<>();
+        for (AggregationSpec.AggregationOpWithColumn a : aggs) {
+            if (a.getColumn() == null) continue;
+            AggregationSpec.AggregationOp op = a.getOp() == AggregationSpec.AggregationOp.AVG ? AggregationSpec.AggregationOp.SUM : a.getOp();
+            byTarget.putIfAbsent(op + ":" + a.getColumn(), new AggregationSpec.AggregationOpWithColumn(op, a.getColumn()));
+        }
+        return List.copyOf(byTarget.values());
     }
 
+    @Override
     public void accept(Map<String, String> row) {
-        GroupKey key = keyFromRow(row);
-        stateByGroup.computeIfAbsent(key, k -> new AggregationState()).addRow(row, aggregations);
+        if (!keys.isSliding()) {
+            stateByGroup.computeIfAbsent(keys.key(row), k -> new AggregationState()).addRow(row, accumulated);
+            return;
+        }
+        int n = keys.keys(row, rowKeys);
+        for (int i = 0; i < n; i++) {
+            stateByGroup.computeIfAbsent(rowKeys[i], k -> new AggregationState()).addRow(row, accumulated);
+        }
     }
 
-    public void consume(Stream<Map<String, String>> stream) {
-        stream.forEach(this::accept);
+    /**
+     * Aggregates materialized columns directly: rows matching the filter are grouped by dictionary codes and numeric
+     * aggregates read primitive values, so no cell is re-parsed. Group-by columns must be present as string columns and
+     * aggregated columns as numeric columns. Time buckets are supported, sliding windows are not.
+     */
+    public void consume(ColumnTable table, IntPredicate filter) {
+        if (keys.isSliding()) {
+            throw new IllegalArgumentException("Sliding windows are not supported over cached columns: " + groupByColumns);
+        }
+        List<String> sourceColumns = GroupKeyBuilder.sourceColumns(groupByColumns);
+        DictionaryColumn[] keyColumns = new DictionaryColumn[sourceColumns.size()];
+        for (int i = 0; i < keyColumns.length; i++) {
+            keyColumns[i] = table.stringColumn(sourceColumns.get(i));
+        }
+        NumericColumn[] valueColumns = new NumericColumn[accumulated.size()];
+        for (int i = 0; i < valueColumns.length; i++) {
+            valueColumns[i] = table.numericColumn(accumulated.get(i).getColumn());
+        }
+        ColumnarKeys columnarKeys = new ColumnarKeys(keyColumns, keys);
+        int rows = table.rowCount();
+        for (int row = 0; row < rows; row++) {
+            if (!filter.test(row)) continue;
+            AggregationState state = stateByGroup.computeIfAbsent(columnarKeys.keyFor(row), k -> new AggregationState());
+            state.addCount();
+            for (int i = 0; i < valueColumns.length; i++) {
+                if (valueColumns[i].hasValue(row)) {
+                    AggregationSpec.AggregationOpWithColumn a = accumulated.get(i);
+                    state.addValue(a.getOp(), a.getColumn(), valueColumns[i].value(row));
+                }
+            }
+        }
     }
 
-    private GroupKey keyFromRow(Map<String, String> row) {
-        if (groupByColumns.isEmpty()) {
-            return new GroupKey(List.of());
+    /**
+     * Aggregates the selected rows of a batch. Aggregated columns are parsed only at the selected positions, and cells
+     * that are blank or not numbers are skipped, as in {@link #accept}. The batch must keep the group-by source columns
+     * and the aggregated columns. Time buckets are supported, sliding windows are not; the cells a bucket cannot read
+     * as timestamps are reported to the batch as type violations.
+     *
+     * @param selection ascending batch positions; only the first {@code count} are read
+     */
+    public void consume(ColumnBatch batch, int[] selection, int count) {
+        if (keys.isSliding()) {
+            throw new IllegalArgumentException("Sliding windows are not supported in batch mode: " + groupByColumns);
+        }
+        if (count == 0) return;
+        List<String> sourceColumns = GroupKeyBuilder.sourceColumns(groupByColumns);
+        String[][] keyColumns = new String[sourceColumns.size()][];
+        long[] misfits = new long[keyColumns.length];
+        boolean[] checked = new boolean[keyColumns.length];
+        for (int i = 0; i < keyColumns.length; i++) {
+            keyColumns[i] = batch.strings(sourceColumns.get(i));
+            // a column bucketed twice is checked once
+            checked[i] = keys.isBucket(i) && firstBucketOf(sourceColumns, i);
         }
-        List<String> values = new ArrayList<>();
-        for (String col : groupByColumns) {
-            values.add(row.getOrDefault(col, ""));
+        double[][] values = new double[accumulated.size()][];
+        byte[][] states = new byte[accumulated.size()][];
+        for (int i = 0; i < values.length; i++) {
+            String column = accumulated.get(i).getColumn();
+            values[i] = batch.numbers(column, selection, count);
+            states[i] = batch.states(column);
+        }
+        GroupKey global = keyColumns.length == 0 ? new GroupKey(List.of()) : null;
+        for (int k = 0; k < count; k++) {
+            int row = selection[k];
+            GroupKey key = global;
+            if (key == null) {
+                String[] parts = new String[keyColumns.length];
+                for (int i = 0; i < parts.length; i++) {
+                    String raw = keyColumns[i][row];
+                    parts[i] = keys.value(i, raw);
+                    if (checked[i] && parts[i].isEmpty() && !raw.isBlank()) misfits[i]++;
+                }
+                key = new GroupKey(Arrays.asList(parts));
+            }
+            AggregationState state = stateByGroup.computeIfAbsent(key, g -> new AggregationState());
+            state.addCount();
+            for (int i = 0; i < values.length; i++) {
+                if (states[i][row] == ColumnBatch.VALUE) {
+                    AggregationSpec.AggregationOpWithColumn a = accumulated.get(i);
+                    state.addValue(a.getOp(), a.getColumn(), values[i][row]);
+                }
+            }
+        }
+        for (int i = 0; i < misfits.length; i++) {
+            if (misfits[i] > 0) batch.addTimestampMisfits(sourceColumns.get(i), misfits[i]);
         }
-        return new GroupKey(values);
+    }
+
+    /** @return whether no bucket before expression {@code i} reads its column */
+    private boolean firstBucketOf(List<String> sourceColumns, int i) {
+        for (int j = 0; j < i; j++) {
+            if (keys.isBucket(j) && sourceColumns.get(j).equals(sourceColumns.get(i))) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Folds another aggregator's groups into this one; both must have been built from the same spec.
+     * The other aggregator must not be used afterwards, as its states may be adopted rather than copied.
+     */
+    public void merge(StreamAggregator other) {
+        for (Map.Entry<GroupKey, AggregationState> e : other.stateByGroup.entrySet()) {
+            AggregationState mine = stateByGroup.putIfAbsent(e.getKey(), e.getValue());
+            if (mine != null) {
+                mine.merge(e.getValue());
+            }
+        }
+    }
+
+    /**
+     * Adds rows counted without being read to the single group of a query without group-by columns; only their count
+     * is known, so this suits count-only aggregations.
+     */
+    public void addCount(long rows) {
+        if (!groupByColumns.isEmpty()) {
+            throw new IllegalStateException("Rows can only be counted in bulk without group-by columns: " + groupByColumns);
+        }
+        if (rows > 0) {
+            stateByGroup.computeIfAbsent(new GroupKey(List.of()), k -> new AggregationState()).addCount(rows);
+        }
+    }
+
+    public void consume(Stream<Map<String, String>> stream) {
+        stream.forEach(this::accept);
     }
 
     /**
@@ -45,6 +192,24 @@ public final class StreamAggregator {
         return sorted;
     }
 
+    @Override
+    public long groupCount() {
+        return stateByGroup.size();
+    }
+
+    /**
+     * Rough retained size of the group state, assuming group-key values of about 16 characters; O(1), so it can be
+     * sampled during a scan.
+     */
+    @Override
+    public long estimatedStateBytes() {
+        return stateByGroup.size() * estimatedGroupBytes(groupByColumns.size(), accumulated.size());
+    }
+
+    static long estimatedGroupBytes(int keyColumns, int accumulatedAggregations) {
+        return 48 + 32 + keyColumns * (48L + 16) + 16 + 8 + 3 * 64 + accumulatedAggregations * 64L;
+    }
+
     public List<String> getGroupByColumns() {
         return groupByColumns;
     }
@@ -52,4 +217,61 @@ public final class StreamAggregator {
     public List<AggregationSpec.AggregationOpWithColumn> getAggregations() {
         return aggregations;
     }
+
+    /** @return the spec's grouping sets, derived from the groups once they are final; null if none */
+    public GroupingSets getGroupingSets() {
+        return groupingSets;
+    }
+
+    /**
+     * Maps dictionary codes of the group-by columns to shared GroupKey instances, so keys are built once per distinct
+     * combination rather than once per row. Codes are packed into a long when the dictionaries are small enough.
+     * Time-bucket components are labelled from the dictionary value, so each distinct timestamp is parsed once per key.
+     */
+    private static final class ColumnarKeys {
+        private final DictionaryColumn[] columns;
+        private final GroupKeyBuilder keys;
+        private final long[] radix;
+        private final Map<Long, GroupKey> packed = new HashMap<>();
+        private final GroupKey global = new GroupKey(List.of());
+
+        ColumnarKeys(DictionaryColumn[] columns, GroupKeyBuilder keys) {
+            this.columns = columns;
+            this.keys = keys;
+            this.radix = new long[columns.length];
+            long r = 1;
+            for (int i = columns.length - 1; i >= 0; i--) {
+                radix[i] = r;
+                int size = Math.max(1, columns[i].dictionarySize());
+                r = r > Long.MAX_VALUE / size ? -1 : r * size;
+                if (r < 0) break;
+            }
+            if (r < 0) {
+                Arrays.fill(radix, -1);
+            }
+        }
+
+        GroupKey keyFor(int row) {
+            if (columns.length == 0) return global;
+            if (radix.length > 0 && radix[0] < 0) return build(row);
+            long code = 0;
+            for (int i = 0; i < columns.length; i++) {
+                code += columns[i].code(row) * radix[i];
+            }
+            GroupKey key = packed.get(code);
+            if (key == null) {
+                key = build(row);
+                packed.put(code, key);
+            }
+            return key;
+        }
+
+        private GroupKey build(int row) {
+            List<String> values = new ArrayList<>(columns.length);
+            for (int i = 0; i < columns.length; i++) {
+                values.add(keys.value(i, columns[i].value(row)));
+            }
+            return new GroupKey(values);
+        }
+    }
 }
@@ -0,0 +1,135 @@
+package com.project.csvanalyser.aggregation;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A time-bucket group-by expression, {@code bucket(column, size)} or {@code bucket(column, size, slide)}, over an
+ * ISO-8601 timestamp column. Sizes are a number with a unit of {@code ms}, {@code s}, {@code m}, {@code h} or
+ * {@code d}; buckets are aligned to the epoch in UTC. Without a slide the windows are tumbling (each row falls in exactly
+ * one bucket); with a slide smaller than the size they overlap, and a row falls in every window that covers it.
+ * <p>
+ * Per row, the timestamp is parsed by {@link IsoTimestamp} and the bucket is computed as a primitive window start in
+ * epoch milliseconds. The key component is that start formatted as a UTC timestamp, with milliseconds when the size or
+ * slide is not a whole number of seconds, so sub-second windows keep distinct labels; labels come from a small
+ * direct-mapped cache, so rows of an already seen bucket allocate nothing. Rows whose timestamp does not parse go to
+ * the bucket labelled {@code ""}, as a missing column would. Instances hold that cache and are not thread-safe.
+ */
+public final class TimeBucket {
+
+    private static final Pattern BUCKET = Pattern.compile(
+            "bucket\\s*\\(\\s*([a-zA-Z0-9_]+)\\s*,\\s*(\\d+)\\s*(ms|s|m|h|d)\\s*(?:,\\s*(\\d+)\\s*(ms|s|m|h|d)\\s*)?\\)",
+            Pattern.CASE_INSENSITIVE);
+    private static final int CACHE_SIZE = 64;
+
+    private final String column;
+    private final long sizeMillis;
+    private final long slideMillis;
+    private final boolean millisLabels;
+    private final long[] cachedStarts = new long[CACHE_SIZE];
+    private final String[] cachedLabels = new String[CACHE_SIZE];
+
+    private TimeBucket(String column, long sizeMillis, long slideMillis) {
+        this.column = column;
+        this.sizeMillis = sizeMillis;
+        this.slideMillis = slideMillis;
+        this.millisLabels = sizeMillis % 1000 != 0 || slideMillis % 1000 != 0;
+    }
+
+    /**
+     * @return the parsed expression, or null if {@code expression} is a plain column name
+     * @throws IllegalArgumentException if it looks like a bucket expression but is malformed
+     */
+    public static TimeBucket parse(String expression) {
+        String e = expression.trim();
+        if (!e.regionMatches(true, 0, "bucket", 0, 6) || e.indexOf('(') < 0) {
+            return null;
+        }
+        Matcher m = BUCKET.matcher(e);
+        if (!m.matches()) {
+            throw new IllegalArgumentException("Invalid bucket expression: '" + expression
+                    + "'. Expected bucket(column, size[, slide]) with sizes like 30s, 15m, 1h, 1d");
+        }
+        long size = millis(m.group(2), m.group(3), expression);
+        long slide = m.group(4) == null ? size : millis(m.group(4), m.group(5), expression);
+        if (slide > size) {
+            throw new IllegalArgumentException("Bucket slide must not exceed its size: '" + expression + "'");
+        }
+        return new TimeBucket(m.group(1), size, slide);
+    }
+
+    private static long millis(String amount, String unit, String expression) {
+        long n;
+        try {
+            n = Long.parseLong(amount);
+        } catch (NumberFormatException e) {
+            n = 0;
+        }
+        long unitMillis = switch (unit.toLowerCase()) {
+            case "ms" -> 1;
+            case "s" -> 1000;
+            case "m" -> 60_000;
+            case "h" -> 3_600_000;
+            default -> 86_400_000;
+        };
+        if (n <= 0 || n > Long.MAX_VALUE / unitMillis) {
+            throw new IllegalArgumentException("Bucket size must be positive: '" + expression + "'");
+        }
+        return n * unitMillis;
+    }
+
+    /** @return the timestamp column the expression reads */
+    public String getColumn() { return column; }
+
+    public long getSizeMillis() { return sizeMillis; }
+
+    public long getSlideMillis() { return slideMillis; }
+
+    /** @return whether windows overlap, so a row can fall in more than one */
+    public boolean isSliding() { return slideMillis < sizeMillis; }
+
+    /** @return most windows a single row can fall in */
+    public int maxWindows() {
+        return (int) Math.min(Integer.MAX_VALUE, (sizeMillis + slideMillis - 1) / slideMillis);
+    }
+
+    /**
+     * Label of the (first) window containing the timestamp: for tumbling buckets the only one, for sliding windows the
+     * one that starts last.
+     */
+    public String label(String raw) {
+        long t = IsoTimestamp.parseEpochMillis(raw);
+        return t == IsoTimestamp.INVALID ? "" : labelOf(Math.floorDiv(t, slideMillis) * slideMillis);
+    }
+
+    /**
+     * Labels of every window containing the timestamp, latest start first.
+     *
+     * @param out at least {@link #maxWindows()} long
+     * @return number of labels written
+     */
+    public int labels(String raw, String[] out) {
+        long t = IsoTimestamp.parseEpochMillis(raw);
+        if (t == IsoTimestamp.INVALID) {
+            out[0] = "";
+            return 1;
+        }
+        int n = 0;
+        for (long start = Math.floorDiv(t, slideMillis) * slideMillis; start > t - sizeMillis && n < out.length;
+             start -= slideMillis) {
+            out[n++] = labelOf(start);
+        }
+        return n;
+    }
+
+    private String labelOf(long start) {
+        int slot = (int) Math.floorMod(start / slideMillis, (long) CACHE_SIZE);
+        String label = cachedLabels[slot];
+        if (label == null || cachedStarts[slot] != start) {
+            label = IsoTimestamp.format(start, millisLabels);
+            cachedLabels[slot] = label;
+            cachedStarts[slot] = start;
+        }
+        return label;
+    }
+}
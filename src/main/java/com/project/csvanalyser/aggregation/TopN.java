@@ -1,8 +1,11 @@
 package com.project.csvanalyser.aggregation;
 
+import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
 
 /**
  * Computes top-N groups by a metric (e.g. sum(amount)), with deterministic tie-break by group key.
@@ -51,13 +54,69 @@ public final class TopN {
                 .toList();
     }
 
-    public static final class TopNEntry {
+    /**
+     * Incremental top-N over groups offered one at a time (e.g. as a sorted scan finishes them); holds at most N
+     * entries and returns the same order as {@link #compute}.
+     */
+    public static final class Bounded {
+        private static final Comparator<TopNEntry> BEST_FIRST =
+                Comparator.comparingDouble(TopNEntry::getMetricValue).reversed().thenComparing(TopNEntry::getGroupKey);
+
+        private final String metricName;
+        private final int n;
+        private final PriorityQueue<TopNEntry> worstFirst = new PriorityQueue<>(BEST_FIRST.reversed());
+
+        public Bounded(String metricName, int n) {
+            this.metricName = metricName;
+            this.n = n;
+        }
+
+        public void offer(GroupKey key, AggregationState state) {
+            if (n <= 0) return;
+            TopNEntry entry = new TopNEntry(key, getMetricValue(state, metricName));
+            if (worstFirst.size() < n) {
+                worstFirst.add(entry);
+            } else if (BEST_FIRST.compare(entry, worstFirst.peek()) < 0) {
+                worstFirst.poll();
+                worstFirst.add(entry);
+            }
+        }
+
+        public List<TopNEntry> result() {
+            List<TopNEntry> top = new ArrayList<>(worstFirst);
+            top.sort(BEST_FIRST);
+            return List.copyOf(top);
+        }
+    }
+
+    public static final class TopNEntry implements Serializable {
+        private static final long serialVersionUID = 1L;
+
         private final GroupKey groupKey;
         private final double metricValue;
+        private final boolean approximate;
+        private final double errorBound;
+        private final boolean guaranteed;
 
         public TopNEntry(GroupKey groupKey, double metricValue) {
             this.groupKey = groupKey;
             this.metricValue = metricValue;
+            this.approximate = false;
+            this.errorBound = 0;
+            this.guaranteed = true;
+        }
+
+        /**
+         * An approximate entry: the true value lies in [metricValue - errorBound, metricValue].
+         *
+         * @param guaranteed whether the group is certainly in the true top-N
+         */
+        public TopNEntry(GroupKey groupKey, double metricValue, double errorBound, boolean guaranteed) {
+            this.groupKey = groupKey;
+            this.metricValue = metricValue;
+            this.approximate = true;
+            this.errorBound = errorBound;
+            this.guaranteed = guaranteed;
         }
 
         public GroupKey getGroupKey() {
@@ -67,5 +126,20 @@ public final class TopN {
         public double getMetricValue() {
             return metricValue;
         }
+
+        /** @return whether the value is an estimate (see {@link SpaceSavingTopN}) */
+        public boolean isApproximate() {
+            return approximate;
+        }
+
+        /** @return most the value may overestimate the true value; 0 for exact entries */
+        public double getErrorBound() {
+            return errorBound;
+        }
+
+        /** @return whether the entry is certainly in the true top-N; always true for exact entries */
+        public boolean isGuaranteed() {
+            return guaranteed;
+        }
     }
 }
@@ -0,0 +1,81 @@
+package com.project.csvanalyser.cache;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Objects;
+import java.util.zip.CRC32C;
+
+/**
+ * Identity of an input file at a point in time: real path, size and modification time, plus an optional content checksum
+ * for filesystems where mtime is unreliable. A changed file gets a different fingerprint, so stale cache entries never hit.
+ */
+public final class FileFingerprint implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+    private static final int CHECKSUM_BUFFER = 1 << 20;
+
+    private final String path;
+    private final long size;
+    private final long lastModifiedMillis;
+    private final long checksum;
+
+    FileFingerprint(String path, long size, long lastModifiedMillis, long checksum) {
+        this.path = path;
+        this.size = size;
+        this.lastModifiedMillis = lastModifiedMillis;
+        this.checksum = checksum;
+    }
+
+    /**
+     * @param verifyContent if true, reads the whole file to compute a CRC32C checksum; otherwise the checksum is -1
+     */
+    public static FileFingerprint of(Path file, boolean verifyContent) throws IOException {
+        Path real = file.toRealPath();
+        BasicFileAttributes attrs = Files.readAttributes(real, BasicFileAttributes.class);
+        long checksum = verifyContent ? checksum(real) : -1;
+        return new FileFingerprint(real.toString(), attrs.size(), attrs.lastModifiedTime().toMillis(), checksum);
+    }
+
+    private static long checksum(Path file) throws IOException {
+        CRC32C crc = new CRC32C();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(CHECKSUM_BUFFER);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (channel.read(buffer) != -1) {
+                buffer.flip();
+                crc.update(buffer);
+                buffer.clear();
+            }
+        }
+        return crc.getValue();
+    }
+
+    public String getPath() { return path; }
+    public long getSize() { return size; }
+    public long getLastModifiedMillis() { return lastModifiedMillis; }
+    public long getChecksum() { return checksum; }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        FileFingerprint that = (FileFingerprint) o;
+        return size == that.size && lastModifiedMillis == that.lastModifiedMillis
+                && checksum == that.checksum && path.equals(that.path);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(path, size, lastModifiedMillis, checksum);
+    }
+
+    @Override
+    public String toString() {
+        return path + "@" + size + ":" + lastModifiedMillis + (checksum >= 0 ? ":" + Long.toHexString(checksum) : "");
+    }
+}
@@ -0,0 +1,97 @@
+package com.project.csvanalyser.cache;
+
+import com.project.csvanalyser.cli.AggregationSpecParser;
+import com.project.csvanalyser.cli.CliConfig;
+import com.project.csvanalyser.filter.FilterParser;
+import com.project.csvanalyser.join.JoinSpec;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.util.TreeSet;
+
+/**
+ * Cache key: input file fingerprint plus a canonical rendering of everything that shapes an {@link
+ * com.project.csvanalyser.cli.AnalyticsResult} (filter, group-by, aggregations, top-N, CSV dialect, joins, and the
+ * schema file and sample size that type the columns reported with the result).
+ * Output-only settings such as --output and --report are not part of the key.
+ */
+public final class QueryKey implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final FileFingerprint file;
+    private final String query;
+
+    QueryKey(FileFingerprint file, String query) {
+        this.file = file;
+        this.query = query;
+    }
+
+    /**
+     * Joined tables and the schema file are part of the query, fingerprinted like the input so an edited table or
+     * schema misses the cache.
+     */
+    public static QueryKey of(CliConfig config, boolean verifyContent) throws IOException {
+        StringBuilder query = new StringBuilder(canonicalQuery(config));
+        for (String s : config.getJoinSpecs()) {
+            JoinSpec spec = JoinSpec.parse(s);
+            query.append("|join=").append(spec).append('@').append(Files.isRegularFile(spec.getFile())
+                    ? FileFingerprint.of(spec.getFile(), verifyContent) : "missing"); // the run reports it
+        }
+        if (config.getSchemaPath() != null) {
+            query.append("|schema=").append(config.getSchemaPath()).append('@')
+                    .append(Files.isRegularFile(config.getSchemaPath())
+                            ? FileFingerprint.of(config.getSchemaPath(), verifyContent) : "missing");
+        }
+        return new QueryKey(FileFingerprint.of(config.getInputPath(), verifyContent), query.toString());
+    }
+
+    /**
+     * Group-by order is kept (it defines the key layout); aggregations are a set, and count is dropped because every
+     * group state counts rows regardless of the requested aggregations.
+     */
+    static String canonicalQuery(CliConfig config) {
+        TreeSet<String> aggs = new TreeSet<>();
+        for (String spec : config.getAggregationSpecs()) {
+            String metric = AggregationSpecParser.toMetricName(spec);
+            if (!metric.isEmpty() && !metric.equals("count")) {
+                aggs.add(metric);
+            }
+        }
+        return "filter=" + FilterParser.canonicalize(config.getFilterExpression())
+                + "|groupBy=" + String.join(",", config.getGroupByColumns())
+                + "|agg=" + String.join(",", aggs)
+                + "|topN=" + config.getTopN() + ":" + config.getTopNMetric()
+                + "|delimiter=" + config.getDelimiter()
+                + "|header=" + config.isHasHeader()
+                + "|schemaSample=" + config.getSchemaSampleRows()
+                + (config.getTopNApproxCapacity() > 0 ? "|approx=" + config.getTopNApproxCapacity() : "")
+                + (config.getRankSpecs().isEmpty() ? "" : "|rank=" + String.join(";", config.getRankSpecs()))
+                + (config.getGroupingSets().isEmpty() ? "" : "|groupingSets=" + String.join(";", config.getGroupingSets()))
+                + (config.isRollup() ? "|rollup" : "")
+                + (config.getSampleFraction() > 0
+                        ? "|sample=" + config.getSampleFraction() + "@" + config.getSampleSeed() : "");
+    }
+
+    public FileFingerprint getFile() { return file; }
+    public String getQuery() { return query; }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        QueryKey that = (QueryKey) o;
+        return file.equals(that.file) && query.equals(that.query);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * file.hashCode() + query.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return file + " " + query;
+    }
+}
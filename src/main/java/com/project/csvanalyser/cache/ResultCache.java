@@ -0,0 +1,222 @@
+package com.project.csvanalyser.cache;
+
+import com.project.csvanalyser.aggregation.AggregationState;
+import com.project.csvanalyser.aggregation.GroupKey;
+import com.project.csvanalyser.aggregation.Ranking;
+import com.project.csvanalyser.aggregation.TopN;
+import com.project.csvanalyser.cli.AnalyticsResult;
+import com.project.csvanalyser.cli.CacheSettings;
+import com.project.csvanalyser.cli.CliConfig;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Memory-bounded LRU cache of {@link AnalyticsResult}s in front of the runner, keyed by {@link QueryKey}.
+ * Entries expire after the configured TTL, and the least recently used entries are evicted once the estimated size
+ * exceeds the bound. With a directory configured, the cache is loaded on open and written back by {@link #save()}.
+ * <p>
+ * Lookups are synchronized; computation happens outside the lock, so two concurrent misses for the same key may both
+ * run the query (the second result simply replaces the first).
+ */
+public final class ResultCache {
+
+    static final String FILE_NAME = "results.cache";
+
+    /** Computes a result on a cache miss (typically a CsvAnalyticsRunner method reference). */
+    @FunctionalInterface
+    public interface Loader {
+        AnalyticsResult load(CliConfig config) throws IOException;
+    }
+
+    private final CacheSettings settings;
+    private final LinkedHashMap<QueryKey, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long currentBytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long expirations;
+
+    public ResultCache(CacheSettings settings) {
+        this.settings = settings;
+    }
+
+    /**
+     * Creates a cache and, if a directory is configured and holds a previous cache file, loads its entries.
+     * An unreadable cache file is ignored with a warning.
+     */
+    public static ResultCache open(CacheSettings settings) {
+        ResultCache cache = new ResultCache(settings);
+        Path dir = settings.getDirectory();
+        if (dir != null && Files.isRegularFile(dir.resolve(FILE_NAME))) {
+            try {
+                cache.load(dir.resolve(FILE_NAME));
+            } catch (IOException | ClassNotFoundException | ClassCastException e) {
+                LoggerFactory.getLogger(ResultCache.class).warn("Ignoring unreadable result cache {}: {}", dir, e.getMessage());
+            }
+        }
+        return cache;
+    }
+
+    /**
+     * Returns the cached result for the query, or runs the loader and caches its result.
+     */
+    public AnalyticsResult getOrRun(CliConfig config, Loader loader) throws IOException {
+        if (config.getInputPath() == null || !Files.isRegularFile(config.getInputPath())) {
+            return loader.load(config);
+        }
+        QueryKey key = QueryKey.of(config, settings.isVerifyContent());
+        String inputFile = config.getInputPath().toString();
+        synchronized (this) {
+            Entry e = entries.get(key);
+            if (e != null && !isExpired(e, System.currentTimeMillis())) {
+                hits++;
+                return e.result.withInputFile(inputFile);
+            }
+            if (e != null) {
+                remove(key);
+                expirations++;
+            }
+            misses++;
+        }
+        AnalyticsResult result = loader.load(config);
+        if (result.getPartial() == null) {
+            // A scan cut short by its time budget is not the answer to the query
+            put(key, result);
+        }
+        return result;
+    }
+
+    synchronized void put(QueryKey key, AnalyticsResult result) {
+        long bytes = estimateBytes(result);
+        if (bytes > settings.getMaxBytes()) {
+            return;
+        }
+        remove(key);
+        // Stats describe the run that computed the result, not later hits
+        entries.put(key, new Entry(result.withStats(null), bytes, System.currentTimeMillis()));
+        currentBytes += bytes;
+        evictToBound();
+    }
+
+    private void remove(QueryKey key) {
+        Entry old = entries.remove(key);
+        if (old != null) currentBytes -= old.bytes;
+    }
+
+    private void evictToBound() {
+        long now = System.currentTimeMillis();
+        Iterator<Map.Entry<QueryKey, Entry>> it = entries.entrySet().iterator();
+        while (it.hasNext()) {
+            Entry e = it.next().getValue();
+            boolean expired = isExpired(e, now);
+            if (!expired && currentBytes <= settings.getMaxBytes()) {
+                break;
+            }
+            it.remove();
+            currentBytes -= e.bytes;
+            if (expired) expirations++;
+            else evictions++;
+        }
+    }
+
+    private boolean isExpired(Entry e, long now) {
+        return settings.getTtlMillis() > 0 && now - e.createdMillis > settings.getTtlMillis();
+    }
+
+    /**
+     * Writes live entries to the configured directory (atomically via a temp file). No-op without a directory.
+     */
+    public synchronized void save() throws IOException {
+        Path dir = settings.getDirectory();
+        if (dir == null) return;
+        Files.createDirectories(dir);
+        long now = System.currentTimeMillis();
+        Map<QueryKey, Entry> live = new LinkedHashMap<>();
+        for (Map.Entry<QueryKey, Entry> e : entries.entrySet()) {
+            if (!isExpired(e.getValue(), now)) live.put(e.getKey(), e.getValue());
+        }
+        Path tmp = Files.createTempFile(dir, FILE_NAME, ".tmp");
+        try (ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeObject(live);
+        }
+        Files.move(tmp, dir.resolve(FILE_NAME), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private synchronized void load(Path file) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            @SuppressWarnings("unchecked")
+            Map<QueryKey, Entry> loaded = (Map<QueryKey, Entry>) in.readObject();
+            for (Map.Entry<QueryKey, Entry> e : loaded.entrySet()) {
+                entries.put(e.getKey(), e.getValue());
+                currentBytes += e.getValue().bytes;
+            }
+        }
+        evictToBound();
+    }
+
+    /**
+     * Rough retained size of a result: group keys, per-group state and sample intervals, rankings and map overhead.
+     */
+    static long estimateBytes(AnalyticsResult result) {
+        long bytes = 256;
+        for (Map.Entry<GroupKey, AggregationState> e : result.getStateByGroup().entrySet()) {
+            bytes += 48 + keyBytes(e.getKey()) + e.getValue().estimatedBytes();
+        }
+        if (result.getSample() != null) {
+            bytes += result.getStateByGroup().size() * (48L + 16 + 8 * (2 + 4L * result.getSample().getSumColumns().size()));
+        }
+        for (TopN.TopNEntry t : result.getTopN()) {
+            bytes += 32 + keyBytes(t.getGroupKey());
+        }
+        for (Ranking.Result r : result.getRankings()) {
+            for (Ranking.Partition p : r.getPartitions()) {
+                bytes += 48 + keyBytes(p.getParent());
+                for (TopN.TopNEntry t : p.getTop()) {
+                    bytes += 32 + keyBytes(t.getGroupKey());
+                }
+            }
+        }
+        return bytes;
+    }
+
+    private static long keyBytes(GroupKey key) {
+        long bytes = 32;
+        for (String v : key.getValues()) {
+            bytes += 48 + v.length();
+        }
+        return bytes;
+    }
+
+    public synchronized long getHits() { return hits; }
+    public synchronized long getMisses() { return misses; }
+    public synchronized long getEvictions() { return evictions; }
+    public synchronized long getExpirations() { return expirations; }
+    public synchronized int getEntryCount() { return entries.size(); }
+    public synchronized long getEstimatedBytes() { return currentBytes; }
+
+    private static final class Entry implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final AnalyticsResult result;
+        private final long bytes;
+        private final long createdMillis;
+
+        Entry(AnalyticsResult result, long bytes, long createdMillis) {
+            this.result = result;
+            this.bytes = bytes;
+            this.createdMillis = createdMillis;
+        }
+    }
+}
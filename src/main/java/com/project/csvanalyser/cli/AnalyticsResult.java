@@ -2,15 +2,22 @@ package com.project.csvanalyser.cli;
 
 import com.project.csvanalyser.aggregation.AggregationState;
 import com.project.csvanalyser.aggregation.GroupKey;
+import com.project.csvanalyser.aggregation.GroupingSets;
+import com.project.csvanalyser.aggregation.Ranking;
+import com.project.csvanalyser.aggregation.SampleEstimate;
 import com.project.csvanalyser.aggregation.TopN;
+import com.project.csvanalyser.stats.RunStats;
 
+import java.io.Serializable;
 import java.util.List;
 import java.util.Map;
 
 /**
  * Result of a CSV analytics run: counts, group aggregates, and top-N list.
  */
-public final class AnalyticsResult {
+public final class AnalyticsResult implements Serializable {
+
+    private static final long serialVersionUID = 1L;
 
     private final String inputFile;
     private final long totalRows;
@@ -18,16 +25,49 @@ public final class AnalyticsResult {
     private final Map<GroupKey, AggregationState> stateByGroup;
     private final List<TopN.TopNEntry> topN;
     private final List<String> groupByColumns;
+    /** Extra rankings requested with --rank; null in results cached before rankings existed. */
+    private final List<Ranking.Result> rankings;
+    /** Sampling details and confidence intervals of a --sample run; null for exact results. */
+    private final SampleEstimate sample;
+    /** Coverage of a scan stopped by --time-budget; null when the whole input was read. */
+    private final PartialScan partial;
+    /** Column types and type violations of a batched scan; null for results that did not type their columns. */
+    private final SchemaReport schema;
+    /** Groups of each --grouping-sets / --rollup set; null or empty without grouping sets. */
+    private final List<GroupingSets.Level> groupingLevels;
+    /** Profile of the run that produced this result; not persisted, and null for results that did not scan. */
+    private final transient RunStats stats;
 
     public AnalyticsResult(String inputFile, long totalRows, int malformedRows,
                            Map<GroupKey, AggregationState> stateByGroup,
                            List<TopN.TopNEntry> topN, List<String> groupByColumns) {
+        this(inputFile, totalRows, malformedRows, stateByGroup, topN, groupByColumns, null);
+    }
+
+    public AnalyticsResult(String inputFile, long totalRows, int malformedRows,
+                           Map<GroupKey, AggregationState> stateByGroup,
+                           List<TopN.TopNEntry> topN, List<String> groupByColumns, RunStats stats) {
+        this(inputFile, totalRows, malformedRows, stateByGroup, topN, groupByColumns, List.of(), null, null, null,
+                List.of(), stats);
+    }
+
+    private AnalyticsResult(String inputFile, long totalRows, int malformedRows,
+                            Map<GroupKey, AggregationState> stateByGroup, List<TopN.TopNEntry> topN,
+                            List<String> groupByColumns, List<Ranking.Result> rankings, SampleEstimate sample,
+                            PartialScan partial, SchemaReport schema, List<GroupingSets.Level> groupingLevels,
+                            RunStats stats) {
         this.inputFile = inputFile;
         this.totalRows = totalRows;
         this.malformedRows = malformedRows;
         this.stateByGroup = stateByGroup;
         this.topN = topN;
         this.groupByColumns = groupByColumns;
+        this.rankings = rankings;
+        this.sample = sample;
+        this.partial = partial;
+        this.schema = schema;
+        this.groupingLevels = groupingLevels;
+        this.stats = stats;
     }
 
     public String getInputFile() { return inputFile; }
@@ -36,4 +76,56 @@ public final class AnalyticsResult {
     public Map<GroupKey, AggregationState> getStateByGroup() { return stateByGroup; }
     public List<TopN.TopNEntry> getTopN() { return topN; }
     public List<String> getGroupByColumns() { return groupByColumns; }
+    public RunStats getStats() { return stats; }
+    public List<Ranking.Result> getRankings() { return rankings == null ? List.of() : rankings; }
+    /** @return sampling details when counts and sums are estimates from --sample, otherwise null */
+    public SampleEstimate getSample() { return sample; }
+    /** @return how much of the input was read when the scan stopped at its time budget, or null if it completed */
+    public PartialScan getPartial() { return partial; }
+    /** @return the column types the scan used and the cells that did not fit them, or null if it did not type columns */
+    public SchemaReport getSchema() { return schema; }
+    /**
+     * @return the groups of every grouping set in the order requested, or empty without grouping sets; the groups of
+     *         {@link #getStateByGroup()} are the finest set's, listed only if it was requested
+     */
+    public List<GroupingSets.Level> getGroupingLevels() { return groupingLevels == null ? List.of() : groupingLevels; }
+
+    /**
+     * @return this result reported against a different input path (e.g. a cache hit for the same file under another name)
+     */
+    public AnalyticsResult withInputFile(String inputFile) {
+        if (inputFile.equals(this.inputFile)) return this;
+        return new AnalyticsResult(inputFile, totalRows, malformedRows, stateByGroup, topN, groupByColumns, rankings,
+                sample, partial, schema, groupingLevels, stats);
+    }
+
+    public AnalyticsResult withStats(RunStats stats) {
+        return new AnalyticsResult(inputFile, totalRows, malformedRows, stateByGroup, topN, groupByColumns, rankings,
+                sample, partial, schema, groupingLevels, stats);
+    }
+
+    public AnalyticsResult withRankings(List<Ranking.Result> rankings) {
+        return new AnalyticsResult(inputFile, totalRows, malformedRows, stateByGroup, topN, groupByColumns,
+                List.copyOf(rankings), sample, partial, schema, groupingLevels, stats);
+    }
+
+    public AnalyticsResult withSample(SampleEstimate sample) {
+        return new AnalyticsResult(inputFile, totalRows, malformedRows, stateByGroup, topN, groupByColumns, rankings,
+                sample, partial, schema, groupingLevels, stats);
+    }
+
+    public AnalyticsResult withPartial(PartialScan partial) {
+        return new AnalyticsResult(inputFile, totalRows, malformedRows, stateByGroup, topN, groupByColumns, rankings,
+                sample, partial, schema, groupingLevels, stats);
+    }
+
+    public AnalyticsResult withGroupingLevels(List<GroupingSets.Level> groupingLevels) {
+        return new AnalyticsResult(inputFile, totalRows, malformedRows, stateByGroup, topN, groupByColumns, rankings,
+                sample, partial, schema, List.copyOf(groupingLevels), stats);
+    }
+
+    public AnalyticsResult withSchema(SchemaReport schema) {
+        return new AnalyticsResult(inputFile, totalRows, malformedRows, stateByGroup, topN, groupByColumns, rankings,
+                sample, partial, schema, groupingLevels, stats);
+    }
 }
@@ -0,0 +1,146 @@
+package com.project.csvanalyser.cli;
+
+import com.project.csvanalyser.aggregation.AggregationSpec;
+import com.project.csvanalyser.aggregation.GroupKeyBuilder;
+import com.project.csvanalyser.aggregation.StreamAggregator;
+import com.project.csvanalyser.columnar.ColumnBatch;
+import com.project.csvanalyser.filter.BatchPredicate;
+import com.project.csvanalyser.filter.FilterParser;
+import com.project.csvanalyser.schema.Schema;
+import com.project.csvanalyser.stats.RunStats;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Batch-at-a-time filter and aggregation for one scan thread. Rows are gathered into a {@link ColumnBatch} holding
+ * only the columns the query reads; when it is full the filter narrows a selection vector and the aggregator reads
+ * the selected positions. Filter and aggregate are timed per batch, so their stage times are exact.
+ * <p>
+ * Column types come from a {@link Schema.Sampler} that has seen the first rows of the input: the pipelined reader
+ * samples its first block, the sequential scan reads its sample ahead through {@link #sampleAhead}. The types are
+ * fixed when the first batch is flushed. Not thread-safe.
+ */
+final class BatchExecutor {
+
+    private final ColumnBatch batch;
+    private final BatchPredicate filter;
+    private final StreamAggregator aggregator;
+    private final Schema.Sampler sampler;
+    private final int[] selection;
+    private Schema schema;
+    private long matched;
+    private long filterNanos;
+    private long filterCpuNanos;
+    private long aggregateNanos;
+    private long aggregateCpuNanos;
+
+    /**
+     * @param aggregator receives the selected rows; its spec must not group by sliding windows
+     * @param sampler    column types, or null to count only cells that are not numbers
+     */
+    BatchExecutor(List<String> header, String filterExpression, StreamAggregator aggregator, int batchSize,
+                  Schema.Sampler sampler) {
+        this.batch = new ColumnBatch(header, columns(filterExpression, aggregator), batchSize);
+        this.filter = FilterParser.parseBatch(filterExpression, header);
+        this.aggregator = aggregator;
+        this.sampler = sampler;
+        this.selection = new int[batchSize];
+    }
+
+    /** @return the columns a query reads: filter columns, group-by source columns and aggregated columns */
+    private static Set<String> columns(String filterExpression, StreamAggregator aggregator) {
+        Set<String> columns = new LinkedHashSet<>(FilterParser.columnUsage(filterExpression).keySet());
+        columns.addAll(GroupKeyBuilder.sourceColumns(aggregator.getGroupByColumns()));
+        for (AggregationSpec.AggregationOpWithColumn a : aggregator.getAggregations()) {
+            if (a.getColumn() != null) columns.add(a.getColumn());
+        }
+        return columns;
+    }
+
+    /**
+     * Feeds the sampler the rows it still wants, read ahead from {@code rows}, and ends sampling.
+     *
+     * @return the same rows, the ones read ahead first
+     */
+    Iterator<Map<String, String>> sampleAhead(Iterator<Map<String, String>> rows) {
+        if (sampler == null || sampler.isDone()) {
+            return rows;
+        }
+        List<Map<String, String>> head = new ArrayList<>();
+        while (!sampler.isDone() && rows.hasNext()) {
+            Map<String, String> row = rows.next();
+            sampler.add(row);
+            head.add(row);
+        }
+        sampler.finish();
+        Iterator<Map<String, String>> first = head.iterator();
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return first.hasNext() || rows.hasNext();
+            }
+
+            @Override
+            public Map<String, String> next() {
+                return first.hasNext() ? first.next() : rows.next();
+            }
+        };
+    }
+
+    /** Adds a row given as cell values in header order; flushes the batch when it fills. */
+    void add(String[] values) {
+        if (batch.add(values)) flush();
+    }
+
+    /** Adds a row given as a column-to-value map; flushes the batch when it fills. */
+    void add(Map<String, String> row) {
+        if (batch.add(row)) flush();
+    }
+
+    /** Filters the batch into the selection vector, aggregates the selected rows and empties the batch. */
+    void flush() {
+        int count = batch.size();
+        if (count == 0) return;
+        if (schema == null && sampler != null) {
+            schema = sampler.schema();
+            batch.setSchema(schema);
+        }
+        for (int k = 0; k < count; k++) {
+            selection[k] = k;
+        }
+        long t0 = System.nanoTime();
+        long c0 = RunStats.threadCpuNanos();
+        count = filter.select(batch, selection, count);
+        long t1 = System.nanoTime();
+        long c1 = RunStats.threadCpuNanos();
+        aggregator.consume(batch, selection, count);
+        matched += count;
+        batch.clear();
+        filterNanos += t1 - t0;
+        filterCpuNanos += c1 - c0;
+        aggregateNanos += System.nanoTime() - t1;
+        aggregateCpuNanos += RunStats.threadCpuNanos() - c1;
+    }
+
+    long getMatched() { return matched; }
+    long getFilterNanos() { return filterNanos; }
+    long getFilterCpuNanos() { return filterCpuNanos; }
+    long getAggregateNanos() { return aggregateNanos; }
+    long getAggregateCpuNanos() { return aggregateCpuNanos; }
+
+    /** @return cells that did not fit their column's type, by column; see {@link ColumnBatch#typeViolations()} */
+    Map<String, Long> getTypeViolations() { return batch.typeViolations(); }
+
+    /** @return the types the batches were read with and the cells that did not fit them, or null without a sampler */
+    SchemaReport report() {
+        if (sampler == null) {
+            return null;
+        }
+        return new SchemaReport(schema != null ? schema : sampler.schema(), getTypeViolations());
+    }
+}
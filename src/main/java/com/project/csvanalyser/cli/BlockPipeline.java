@@ -0,0 +1,237 @@
+package com.project.csvanalyser.cli;
+
+import com.project.csvanalyser.csv.CsvBlock;
+import com.project.csvanalyser.csv.CsvBlockReader;
+import com.project.csvanalyser.csv.CsvBlockTokenizer;
+import com.project.csvanalyser.csv.StructuralScanner;
+import com.project.csvanalyser.join.BroadcastJoin;
+import com.project.csvanalyser.schema.Schema;
+import com.project.csvanalyser.stats.RunStats;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The reader side and plumbing shared by the block scans ({@link PipelinedScan}, {@link ExportScan}): a reader thread
+ * fills preallocated blocks cut at record boundaries and hands them to the workers through two bounded queues (free
+ * and full), so a slow stage back-pressures the one before it. The reader types columns from the first block when
+ * given a sampler, and ends the input with one marker per worker. Workers take blocks with {@link #next} and give them
+ * back with {@link #done}; once the {@link QueryControl} says stop, the reader reads nothing more and workers skip the
+ * blocks still queued.
+ */
+final class BlockPipeline {
+
+    /** End-of-input marker, one per worker. */
+    private static final CsvBlock END = new CsvBlock(0);
+
+    private final CsvBlockReader reader;
+    private final int workers;
+    private final List<String> header;
+    private final BroadcastJoin join;
+    private final int fileColumns;
+    private final char delimiter;
+    private final Schema.Sampler sampler;
+    private final String sourceName;
+    private final QueryControl control;
+    private final BlockingQueue<CsvBlock> free;
+    private final BlockingQueue<CsvBlock> full;
+    private final AtomicLong rowsDone = new AtomicLong();
+    private final AtomicInteger malformed = new AtomicInteger();
+    private final AtomicLong processedBytes = new AtomicLong();
+    private long readerBusyNanos;
+    private long readerCpuNanos;
+    private long readerAllocatedBytes;
+
+    /**
+     * @param header  columns of the rows, joined ones included
+     * @param join    bound to {@code header}, or null without {@code --join}
+     * @param sampler fed the rows of the first block, joined, before any worker sees it; null for none
+     */
+    BlockPipeline(CsvBlockReader reader, int workers, List<String> header, BroadcastJoin join, char delimiter,
+                  Schema.Sampler sampler, String sourceName, QueryControl control) {
+        this.reader = reader;
+        this.workers = workers;
+        this.header = header;
+        this.join = join;
+        this.fileColumns = join == null ? header.size() : join.factColumns();
+        this.delimiter = delimiter;
+        this.sampler = sampler;
+        this.sourceName = sourceName;
+        this.control = control;
+        int blocks = 2 * workers + 2;
+        this.free = new ArrayBlockingQueue<>(blocks);
+        this.full = new ArrayBlockingQueue<>(blocks + workers);
+        for (int i = 0; i < blocks; i++) {
+            free.add(new CsvBlock(CsvBlockReader.DEFAULT_BLOCK_SIZE));
+        }
+    }
+
+    /**
+     * Runs the reader and the workers, one thread each, until all are done. The first failure on any thread cancels
+     * the rest and is rethrown here.
+     *
+     * @param workerTasks as many as the pipeline was built for
+     * @param afterBlock  called on the reader thread after each block is queued, to report progress
+     */
+    void run(List<? extends Callable<Void>> workerTasks, String workerThreadPrefix, Runnable afterBlock)
+            throws IOException {
+        AtomicInteger threadIds = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(workers + 1, r -> {
+            int id = threadIds.getAndIncrement();
+            Thread t = new Thread(r, id == 0 ? "csv-reader" : workerThreadPrefix + id);
+            t.setDaemon(true);
+            return t;
+        });
+        CompletionService<Void> done = new ExecutorCompletionService<>(pool);
+        try {
+            done.submit(() -> {
+                read(afterBlock);
+                return null;
+            });
+            for (Callable<Void> w : workerTasks) {
+                done.submit(w);
+            }
+            for (int i = 0; i <= workerTasks.size(); i++) {
+                done.take().get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Scan interrupted");
+        } catch (ExecutionException e) {
+            throw failure(e);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Rethrows the cause of a failed task: I/O errors as {@link IOException} (unwrapping {@link UncheckedIOException}),
+     * runtime exceptions as themselves.
+     *
+     * @return anything else, wrapped, for the caller to throw
+     */
+    static IOException failure(ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof IOException io) return io;
+        if (cause instanceof UncheckedIOException io) return io.getCause();
+        if (cause instanceof RuntimeException re) throw re;
+        return new IOException(cause);
+    }
+
+    private void read(Runnable afterBlock) throws IOException, InterruptedException {
+        long allocStart = RunStats.threadAllocatedBytes();
+        long cpuStart = RunStats.threadCpuNanos();
+        while (true) {
+            CsvBlock block = free.take();
+            if (control.shouldStop()) {
+                break;
+            }
+            long start = System.nanoTime();
+            boolean more = reader.next(block);
+            readerBusyNanos += System.nanoTime() - start;
+            if (!more) {
+                break;
+            }
+            if (sampler != null && !sampler.isDone()) {
+                sample(block);
+            }
+            full.put(block);
+            afterBlock.run();
+        }
+        for (int i = 0; i < workers; i++) {
+            full.put(END);
+        }
+        readerCpuNanos = RunStats.threadCpuNanos() - cpuStart;
+        readerAllocatedBytes = RunStats.threadAllocatedBytes() - allocStart;
+    }
+
+    /**
+     * Feeds the rows of the first block to the sampler, then ends sampling so workers can share it. Runs once, so it
+     * uses the scalar scanner rather than warming up the vector one on this thread.
+     */
+    private void sample(CsvBlock block) {
+        CsvBlockTokenizer records = new CsvBlockTokenizer(delimiter, fileColumns, StructuralScanner.scalar(delimiter));
+        BroadcastJoin.Lookup lookup = join == null ? null : join.sampleLookup();
+        String[] values = new String[header.size()];
+        records.reset(block.getData(), block.getLength());
+        while (!sampler.isDone() && records.nextRecord()) {
+            if (!records.tokenize(values)) continue;
+            if (lookup != null) lookup.join(values);
+            sampler.add(values);
+        }
+        sampler.finish();
+    }
+
+    /**
+     * @return the next block for a worker, or null at the end of the input; blocks queued after a stop are recycled
+     *         unread
+     */
+    CsvBlock next() throws InterruptedException {
+        while (true) {
+            CsvBlock block = full.take();
+            if (block == END) {
+                return null;
+            }
+            if (!control.shouldStop()) {
+                return block;
+            }
+            free.put(block);
+        }
+    }
+
+    /** Returns a processed block to the reader and counts its bytes and the {@code rows} parsed from it. */
+    void done(CsvBlock block, long rows) throws InterruptedException {
+        processedBytes.addAndGet(block.getLength());
+        free.put(block);
+        rowsDone.addAndGet(rows);
+    }
+
+    /** Counts and logs a malformed record of a block. */
+    void malformed(byte[] data, int start, int end) {
+        int n = malformed.incrementAndGet();
+        String line = new String(data, start, Math.min(end - start, 400), StandardCharsets.UTF_8);
+        LoggerFactory.getLogger(BlockPipeline.class).warn(sourceName + ": Skipping malformed row #" + n + ": "
+                + (line.length() > 100 ? line.substring(0, 100) + "..." : line));
+    }
+
+    /** Records the reader's stages: waiting on input ("io"), cutting blocks ("split") and its allocation. */
+    void addReaderStages(RunStats stats) {
+        long io = Math.min(reader.getReadNanos(), readerBusyNanos);
+        stats.addStage("io", io, 0);
+        stats.addStage("split", readerBusyNanos - io, readerCpuNanos);
+        stats.addOtherThreadAllocation(readerAllocatedBytes);
+    }
+
+    /** @return fields tokenized per record; with a join, the joined columns follow them in the header */
+    int fileColumns() {
+        return fileColumns;
+    }
+
+    /** @return rows parsed by the workers so far */
+    long getRowsDone() {
+        return rowsDone.get();
+    }
+
+    int getMalformedRows() {
+        return malformed.get();
+    }
+
+    /** @return bytes of the blocks the workers processed; less than was read if the scan was stopped */
+    long getProcessedBytes() {
+        return processedBytes.get();
+    }
+}
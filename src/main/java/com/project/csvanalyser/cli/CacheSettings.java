@@ -0,0 +1,32 @@
+package com.project.csvanalyser.cli;
+
+import java.nio.file.Path;
+
+/**
+ * Result cache settings shared by the CLI (--cache-dir) and server mode.
+ */
+public final class CacheSettings {
+
+    private final long maxBytes;
+    private final long ttlMillis;
+    private final Path directory;
+    private final boolean verifyContent;
+
+    /**
+     * @param maxBytes      approximate memory bound for cached results
+     * @param ttlMillis     entries older than this are dropped; 0 means no expiry
+     * @param directory     where the cache is persisted across restarts; null keeps it in memory only
+     * @param verifyContent include a content checksum in the file fingerprint, not just size and modification time
+     */
+    public CacheSettings(long maxBytes, long ttlMillis, Path directory, boolean verifyContent) {
+        this.maxBytes = maxBytes;
+        this.ttlMillis = ttlMillis;
+        this.directory = directory;
+        this.verifyContent = verifyContent;
+    }
+
+    public long getMaxBytes() { return maxBytes; }
+    public long getTtlMillis() { return ttlMillis; }
+    public Path getDirectory() { return directory; }
+    public boolean isVerifyContent() { return verifyContent; }
+}
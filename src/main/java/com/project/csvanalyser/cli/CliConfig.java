@@ -1,16 +1,29 @@
 package com.project.csvanalyser.cli;
 
+import com.project.csvanalyser.schema.Schema;
+import com.project.csvanalyser.sort.ExternalSorter;
+
 import java.nio.file.Path;
 import java.util.List;
 
 /**
  * Parsed CLI configuration for the CSV analytics run.
+ * <p>
+ * The constructor covers the core query; optional engine settings are set through {@link #builder()}.
  */
 public final class CliConfig {
 
+    public static final int DEFAULT_REPORT_MAX_GROUPS = 10_000;
+    public static final int DEFAULT_READ_AHEAD_BUFFERS = 2;
+    public static final int DEFAULT_READ_BUFFER_BYTES = 1 << 20;
+    public static final int DEFAULT_BATCH_SIZE = 4096;
+    public static final long DEFAULT_SORT_MEMORY_BYTES = 256L << 20;
+
     private final Path inputPath;
     private final String filterExpression;
     private final List<String> groupByColumns;
+    private final List<String> groupingSets;
+    private final boolean rollup;
     private final List<String> aggregationSpecs;
     private final String topNMetric;
     private final int topN;
@@ -18,25 +31,131 @@ public final class CliConfig {
     private final Path reportPath;
     private final char delimiter;
     private final boolean hasHeader;
+    private final CacheSettings cacheSettings;
+    private final boolean progress;
+    private final int reportMaxGroups;
+    private final int threads;
+    private final int readAheadBuffers;
+    private final int batchSize;
+    private final Path schemaPath;
+    private final int schemaSampleRows;
+    private final int readBufferBytes;
+    private final boolean inputSorted;
+    private final int topNApproxCapacity;
+    private final List<String> rankSpecs;
+    private final List<String> joinSpecs;
+    private final Path exportPath;
+    private final List<String> orderBy;
+    private final long sortMemoryBytes;
+    private final int mergeFanIn;
+    private final double sampleFraction;
+    private final long sampleSeed;
+    private final long timeBudgetMillis;
+    private final boolean extrapolate;
 
     public CliConfig(Path inputPath, String filterExpression, List<String> groupByColumns,
                     List<String> aggregationSpecs, String topNMetric, int topN, Path outputPath,
                     Path reportPath, char delimiter, boolean hasHeader) {
-        this.inputPath = inputPath;
-        this.filterExpression = filterExpression;
-        this.groupByColumns = groupByColumns == null ? List.of() : List.copyOf(groupByColumns);
-        this.aggregationSpecs = aggregationSpecs == null ? List.of() : List.copyOf(aggregationSpecs);
-        this.topNMetric = topNMetric;
-        this.topN = topN;
-        this.outputPath = outputPath;
-        this.reportPath = reportPath;
-        this.delimiter = delimiter;
-        this.hasHeader = hasHeader;
+        this(builder()
+                .inputPath(inputPath)
+                .filterExpression(filterExpression)
+                .groupByColumns(groupByColumns)
+                .aggregationSpecs(aggregationSpecs)
+                .topNMetric(topNMetric)
+                .topN(topN)
+                .outputPath(outputPath)
+                .reportPath(reportPath)
+                .delimiter(delimiter)
+                .hasHeader(hasHeader));
+    }
+
+    private CliConfig(Builder b) {
+        this.inputPath = b.inputPath;
+        this.filterExpression = b.filterExpression;
+        this.groupByColumns = b.groupByColumns == null ? List.of() : List.copyOf(b.groupByColumns);
+        this.groupingSets = b.groupingSets == null ? List.of() : List.copyOf(b.groupingSets);
+        this.rollup = b.rollup;
+        this.aggregationSpecs = b.aggregationSpecs == null ? List.of() : List.copyOf(b.aggregationSpecs);
+        this.topNMetric = b.topNMetric;
+        this.topN = b.topN;
+        this.outputPath = b.outputPath;
+        this.reportPath = b.reportPath;
+        this.delimiter = b.delimiter;
+        this.hasHeader = b.hasHeader;
+        this.cacheSettings = b.cacheSettings;
+        this.progress = b.progress;
+        this.reportMaxGroups = b.reportMaxGroups;
+        this.threads = b.threads;
+        this.readAheadBuffers = b.readAheadBuffers;
+        this.batchSize = b.batchSize;
+        this.schemaPath = b.schemaPath;
+        this.schemaSampleRows = b.schemaSampleRows;
+        this.readBufferBytes = b.readBufferBytes;
+        this.inputSorted = b.inputSorted;
+        this.topNApproxCapacity = b.topNApproxCapacity;
+        this.rankSpecs = b.rankSpecs == null ? List.of() : List.copyOf(b.rankSpecs);
+        this.joinSpecs = b.joinSpecs == null ? List.of() : List.copyOf(b.joinSpecs);
+        this.exportPath = b.exportPath;
+        this.orderBy = b.orderBy == null ? List.of() : List.copyOf(b.orderBy);
+        this.sortMemoryBytes = b.sortMemoryBytes;
+        this.mergeFanIn = b.mergeFanIn;
+        this.sampleFraction = b.sampleFraction;
+        this.sampleSeed = b.sampleSeed;
+        this.timeBudgetMillis = b.timeBudgetMillis;
+        this.extrapolate = b.extrapolate;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return a builder initialised with this configuration, for deriving a modified copy
+     */
+    public Builder toBuilder() {
+        return builder()
+                .inputPath(inputPath)
+                .filterExpression(filterExpression)
+                .groupByColumns(groupByColumns)
+                .groupingSets(groupingSets)
+                .rollup(rollup)
+                .aggregationSpecs(aggregationSpecs)
+                .topNMetric(topNMetric)
+                .topN(topN)
+                .outputPath(outputPath)
+                .reportPath(reportPath)
+                .delimiter(delimiter)
+                .hasHeader(hasHeader)
+                .cacheSettings(cacheSettings)
+                .progress(progress)
+                .reportMaxGroups(reportMaxGroups)
+                .threads(threads)
+                .readAheadBuffers(readAheadBuffers)
+                .batchSize(batchSize)
+                .schemaPath(schemaPath)
+                .schemaSampleRows(schemaSampleRows)
+                .readBufferBytes(readBufferBytes)
+                .inputSorted(inputSorted)
+                .topNApproxCapacity(topNApproxCapacity)
+                .rankSpecs(rankSpecs)
+                .joinSpecs(joinSpecs)
+                .exportPath(exportPath)
+                .orderBy(orderBy)
+                .sortMemoryBytes(sortMemoryBytes)
+                .mergeFanIn(mergeFanIn)
+                .sampleFraction(sampleFraction)
+                .sampleSeed(sampleSeed)
+                .timeBudgetMillis(timeBudgetMillis)
+                .extrapolate(extrapolate);
     }
 
     public Path getInputPath() { return inputPath; }
     public String getFilterExpression() { return filterExpression; }
     public List<String> getGroupByColumns() { return groupByColumns; }
+    /** @return subsets of the group-by columns to total by as well, e.g. {@code product} or {@code ()} (see GroupingSets) */
+    public List<String> getGroupingSets() { return groupingSets; }
+    /** @return whether to total by every prefix of the group-by columns as well, down to the grand total */
+    public boolean isRollup() { return rollup; }
     public List<String> getAggregationSpecs() { return aggregationSpecs; }
     public String getTopNMetric() { return topNMetric; }
     public int getTopN() { return topN; }
@@ -44,4 +163,123 @@ public final class CliConfig {
     public Path getReportPath() { return reportPath; }
     public char getDelimiter() { return delimiter; }
     public boolean isHasHeader() { return hasHeader; }
+    /** @return result cache settings, or null when the CLI run is not cached */
+    public CacheSettings getCacheSettings() { return cacheSettings; }
+    /** @return whether to print periodic scan progress to stderr */
+    public boolean isProgress() { return progress; }
+    /** @return most groups listed in the console/file report (0 = all); the JSON summary is never capped */
+    public int getReportMaxGroups() { return reportMaxGroups; }
+    /** @return scan worker threads; above 1 the file is scanned by the pipelined reader/worker mode */
+    public int getThreads() { return threads; }
+    /** @return buffers in the input read-ahead ring; 0 reads the file directly on the scan thread */
+    public int getReadAheadBuffers() { return readAheadBuffers; }
+    /** @return rows per filter/aggregate batch; 0 filters and aggregates row by row, with untyped columns */
+    public int getBatchSize() { return batchSize; }
+    /** @return JSON file of column types for batched scans, or null to infer them all */
+    public Path getSchemaPath() { return schemaPath; }
+    /** @return leading rows sampled to infer the types of columns the schema file does not declare; 0 infers none */
+    public int getSchemaSampleRows() { return schemaSampleRows; }
+    /** @return bytes per read-ahead buffer */
+    public int getReadBufferBytes() { return readBufferBytes; }
+    /** @return whether the input is sorted by the group-by columns, so groups can be emitted as they finish */
+    public boolean isInputSorted() { return inputSorted; }
+    /** @return groups monitored by the approximate (Space-Saving) top-N; 0 computes exact groups and top-N */
+    public int getTopNApproxCapacity() { return topNApproxCapacity; }
+    /** @return additional rankings, e.g. {@code sum_amount:5 per region} (see RankingSpec) */
+    public List<String> getRankSpecs() { return rankSpecs; }
+    /** @return dimension tables joined to every row, e.g. {@code products.csv:product=sku} (see JoinSpec) */
+    public List<String> getJoinSpecs() { return joinSpecs; }
+    /** @return CSV file the matching rows are copied to instead of aggregated, or null to aggregate */
+    public Path getExportPath() { return exportPath; }
+    /** @return keys the exported rows are sorted by, e.g. {@code amount desc}; empty keeps input order */
+    public List<String> getOrderBy() { return orderBy; }
+    /** @return memory for sorting exported rows in memory before spilling runs to disk */
+    public long getSortMemoryBytes() { return sortMemoryBytes; }
+    /** @return sorted runs merged at once; more runs take intermediate merge passes */
+    public int getMergeFanIn() { return mergeFanIn; }
+    /** @return fraction of input blocks read by a sampled run; 0 reads the whole file */
+    public double getSampleFraction() { return sampleFraction; }
+    /** @return seed choosing the sampled blocks, so a sampled run is reproducible */
+    public long getSampleSeed() { return sampleSeed; }
+    /** @return milliseconds after which the scan stops and returns a partial result; 0 for no limit */
+    public long getTimeBudgetMillis() { return timeBudgetMillis; }
+    /** @return whether a scan stopped by the time budget scales counts and sums up to the whole file */
+    public boolean isExtrapolate() { return extrapolate; }
+
+    public static final class Builder {
+        private Path inputPath;
+        private String filterExpression;
+        private List<String> groupByColumns;
+        private List<String> groupingSets;
+        private boolean rollup;
+        private List<String> aggregationSpecs;
+        private String topNMetric = "sum_amount";
+        private int topN = 10;
+        private Path outputPath;
+        private Path reportPath;
+        private char delimiter = ',';
+        private boolean hasHeader = true;
+        private CacheSettings cacheSettings;
+        private boolean progress;
+        private int reportMaxGroups = DEFAULT_REPORT_MAX_GROUPS;
+        private int threads = 1;
+        private int readAheadBuffers = DEFAULT_READ_AHEAD_BUFFERS;
+        private int batchSize = DEFAULT_BATCH_SIZE;
+        private Path schemaPath;
+        private int schemaSampleRows = Schema.DEFAULT_SAMPLE_ROWS;
+        private int readBufferBytes = DEFAULT_READ_BUFFER_BYTES;
+        private boolean inputSorted;
+        private int topNApproxCapacity;
+        private List<String> rankSpecs;
+        private List<String> joinSpecs;
+        private Path exportPath;
+        private List<String> orderBy;
+        private long sortMemoryBytes = DEFAULT_SORT_MEMORY_BYTES;
+        private int mergeFanIn = ExternalSorter.DEFAULT_FAN_IN;
+        private double sampleFraction;
+        private long sampleSeed;
+        private long timeBudgetMillis;
+        private boolean extrapolate;
+
+        private Builder() {
+        }
+
+        public Builder inputPath(Path inputPath) { this.inputPath = inputPath; return this; }
+        public Builder filterExpression(String filterExpression) { this.filterExpression = filterExpression; return this; }
+        public Builder groupByColumns(List<String> groupByColumns) { this.groupByColumns = groupByColumns; return this; }
+        public Builder groupingSets(List<String> groupingSets) { this.groupingSets = groupingSets; return this; }
+        public Builder rollup(boolean rollup) { this.rollup = rollup; return this; }
+        public Builder aggregationSpecs(List<String> aggregationSpecs) { this.aggregationSpecs = aggregationSpecs; return this; }
+        public Builder topNMetric(String topNMetric) { this.topNMetric = topNMetric; return this; }
+        public Builder topN(int topN) { this.topN = topN; return this; }
+        public Builder outputPath(Path outputPath) { this.outputPath = outputPath; return this; }
+        public Builder reportPath(Path reportPath) { this.reportPath = reportPath; return this; }
+        public Builder delimiter(char delimiter) { this.delimiter = delimiter; return this; }
+        public Builder hasHeader(boolean hasHeader) { this.hasHeader = hasHeader; return this; }
+        public Builder cacheSettings(CacheSettings cacheSettings) { this.cacheSettings = cacheSettings; return this; }
+        public Builder progress(boolean progress) { this.progress = progress; return this; }
+        public Builder reportMaxGroups(int reportMaxGroups) { this.reportMaxGroups = reportMaxGroups; return this; }
+        public Builder threads(int threads) { this.threads = threads; return this; }
+        public Builder readAheadBuffers(int readAheadBuffers) { this.readAheadBuffers = readAheadBuffers; return this; }
+        public Builder batchSize(int batchSize) { this.batchSize = batchSize; return this; }
+        public Builder schemaPath(Path schemaPath) { this.schemaPath = schemaPath; return this; }
+        public Builder schemaSampleRows(int schemaSampleRows) { this.schemaSampleRows = schemaSampleRows; return this; }
+        public Builder readBufferBytes(int readBufferBytes) { this.readBufferBytes = readBufferBytes; return this; }
+        public Builder inputSorted(boolean inputSorted) { this.inputSorted = inputSorted; return this; }
+        public Builder topNApproxCapacity(int topNApproxCapacity) { this.topNApproxCapacity = topNApproxCapacity; return this; }
+        public Builder rankSpecs(List<String> rankSpecs) { this.rankSpecs = rankSpecs; return this; }
+        public Builder joinSpecs(List<String> joinSpecs) { this.joinSpecs = joinSpecs; return this; }
+        public Builder exportPath(Path exportPath) { this.exportPath = exportPath; return this; }
+        public Builder orderBy(List<String> orderBy) { this.orderBy = orderBy; return this; }
+        public Builder sortMemoryBytes(long sortMemoryBytes) { this.sortMemoryBytes = sortMemoryBytes; return this; }
+        public Builder mergeFanIn(int mergeFanIn) { this.mergeFanIn = mergeFanIn; return this; }
+        public Builder sampleFraction(double sampleFraction) { this.sampleFraction = sampleFraction; return this; }
+        public Builder sampleSeed(long sampleSeed) { this.sampleSeed = sampleSeed; return this; }
+        public Builder timeBudgetMillis(long timeBudgetMillis) { this.timeBudgetMillis = timeBudgetMillis; return this; }
+        public Builder extrapolate(boolean extrapolate) { this.extrapolate = extrapolate; return this; }
+
+        public CliConfig build() {
+            return new CliConfig(this);
+        }
+    }
 }
@@ -1,5 +1,10 @@
 package com.project.csvanalyser.cli;
 
+import com.project.csvanalyser.aggregation.GroupKeyBuilder;
+import com.project.csvanalyser.aggregation.GroupingSets;
+import com.project.csvanalyser.schema.Schema;
+import com.project.csvanalyser.sort.ExternalSorter;
+
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
@@ -19,10 +24,46 @@ public final class CliParser {
     public static final String REPORT = "--report";
     public static final String DELIMITER = "--delimiter";
     public static final String HEADER = "--header";
+    public static final String SERVE = "--serve";
+    public static final String PORT = "--port";
+    public static final String SERVER_THREADS = "--server-threads";
+    public static final String SERVER_QUEUE = "--server-queue";
+    public static final String CACHE_DIR = "--cache-dir";
+    public static final String CACHE_MB = "--cache-mb";
+    public static final String CACHE_TTL = "--cache-ttl";
+    public static final String CACHE_VERIFY_CONTENT = "--cache-verify-content";
+    public static final String COLUMN_CACHE_MB = "--column-cache-mb";
+    public static final String PROGRESS = "--progress";
+    public static final String REPORT_MAX_GROUPS = "--report-max-groups";
+    public static final String THREADS = "--threads";
+    public static final String READ_AHEAD = "--read-ahead";
+    public static final String BATCH_SIZE = "--batch-size";
+    public static final String SCHEMA = "--schema";
+    public static final String SCHEMA_SAMPLE = "--schema-sample";
+    public static final String READ_BUFFER_KB = "--read-buffer-kb";
+    public static final String INPUT_SORTED = "--input-sorted";
+    public static final String TOP_N_APPROX = "--top-n-approx";
+    public static final String RANK = "--rank";
+    public static final String JOIN = "--join";
+    public static final String GROUPING_SETS = "--grouping-sets";
+    public static final String ROLLUP = "--rollup";
+    public static final String EXPORT = "--export";
+    public static final String ORDER_BY = "--order-by";
+    public static final String SORT_MEMORY_MB = "--sort-memory-mb";
+    public static final String MERGE_FAN_IN = "--merge-fan-in";
+    public static final String SAMPLE = "--sample";
+    public static final String SEED = "--seed";
+    public static final String TIME_BUDGET = "--time-budget";
+    public static final String EXTRAPOLATE = "--extrapolate";
 
     private static final char DEFAULT_DELIMITER = ',';
     private static final boolean DEFAULT_HEADER = true;
     private static final int DEFAULT_TOP_N = 10;
+    private static final int DEFAULT_PORT = 8080;
+    private static final int DEFAULT_SERVER_QUEUE = 32;
+    private static final int DEFAULT_CACHE_MB = 256;
+    private static final int DEFAULT_CACHE_TTL_SECONDS = 3600;
+    private static final int DEFAULT_COLUMN_CACHE_MB = 512;
 
     /**
      * @return CliConfig or null if --help was passed (caller should print help and exit).
@@ -35,7 +76,10 @@ public final class CliParser {
         }
         Path input = getPath(args, INPUT, null);
         String filter = getString(args, FILTER, null);
-        List<String> groupBy = getList(args, GROUP_BY, ',');
+        String groupBySpec = getString(args, GROUP_BY, null);
+        List<String> groupingSets = getList(args, GROUPING_SETS, ';');
+        List<String> groupBy = groupBySpec == null || groupBySpec.isBlank()
+                ? GroupingSets.columns(groupingSets) : GroupKeyBuilder.splitExpressions(groupBySpec);
         List<String> agg = getList(args, AGG, ',');
         String topNMetric = getString(args, "--top-n-metric", "sum_amount");
         int topN = getInt(args, TOP_N, DEFAULT_TOP_N);
@@ -44,7 +88,69 @@ public final class CliParser {
         char delimiter = getDelimiter(args);
         boolean hasHeader = getBoolean(args, HEADER, DEFAULT_HEADER);
 
-        return new CliConfig(input, filter, groupBy, agg, topNMetric, topN, output, report, delimiter, hasHeader);
+        Path cacheDir = getPath(args, CACHE_DIR, null);
+        CacheSettings cache = cacheDir == null ? null : getCacheSettings(args, cacheDir);
+
+        return CliConfig.builder()
+                .inputPath(input)
+                .filterExpression(filter)
+                .groupByColumns(groupBy)
+                .groupingSets(groupingSets)
+                .rollup(hasFlag(args, ROLLUP))
+                .aggregationSpecs(agg)
+                .topNMetric(topNMetric)
+                .topN(topN)
+                .outputPath(output)
+                .reportPath(report)
+                .delimiter(delimiter)
+                .hasHeader(hasHeader)
+                .cacheSettings(cache)
+                .progress(hasFlag(args, PROGRESS))
+                .threads(Math.max(1, getInt(args, THREADS, 1)))
+                .readAheadBuffers(Math.max(0, getInt(args, READ_AHEAD, CliConfig.DEFAULT_READ_AHEAD_BUFFERS)))
+                .batchSize(Math.max(0, getInt(args, BATCH_SIZE, CliConfig.DEFAULT_BATCH_SIZE)))
+                .schemaPath(getPath(args, SCHEMA, null))
+                .schemaSampleRows(Math.max(0, getInt(args, SCHEMA_SAMPLE, Schema.DEFAULT_SAMPLE_ROWS)))
+                .readBufferBytes(Math.max(4, getInt(args, READ_BUFFER_KB, CliConfig.DEFAULT_READ_BUFFER_BYTES / 1024)) * 1024)
+                .reportMaxGroups(Math.max(0, getInt(args, REPORT_MAX_GROUPS, CliConfig.DEFAULT_REPORT_MAX_GROUPS)))
+                .inputSorted(hasFlag(args, INPUT_SORTED))
+                .topNApproxCapacity(Math.max(0, getInt(args, TOP_N_APPROX, 0)))
+                .rankSpecs(getList(args, RANK, ';'))
+                .joinSpecs(getList(args, JOIN, ';'))
+                .exportPath(getPath(args, EXPORT, null))
+                .orderBy(getList(args, ORDER_BY, ','))
+                .sortMemoryBytes(Math.max(1, getInt(args, SORT_MEMORY_MB,
+                        (int) (CliConfig.DEFAULT_SORT_MEMORY_BYTES >> 20))) * 1024L * 1024L)
+                .mergeFanIn(Math.max(2, getInt(args, MERGE_FAN_IN, ExternalSorter.DEFAULT_FAN_IN)))
+                .sampleFraction(getSampleFraction(args))
+                .sampleSeed(getLong(args, SEED, 0))
+                .timeBudgetMillis(Math.max(0, getLong(args, TIME_BUDGET, 0)))
+                .extrapolate(hasFlag(args, EXTRAPOLATE))
+                .build();
+    }
+
+    /**
+     * @return ServerConfig if --serve was passed, otherwise null (run as a one-shot CLI).
+     */
+    public static ServerConfig parseServer(String[] args) {
+        if (!hasFlag(args, SERVE)) {
+            return null;
+        }
+        int port = getInt(args, PORT, DEFAULT_PORT);
+        int threads = Math.max(1, getInt(args, SERVER_THREADS, Runtime.getRuntime().availableProcessors()));
+        int queue = Math.max(0, getInt(args, SERVER_QUEUE, DEFAULT_SERVER_QUEUE));
+        CacheSettings cache = getInt(args, CACHE_MB, DEFAULT_CACHE_MB) > 0
+                ? getCacheSettings(args, getPath(args, CACHE_DIR, null))
+                : null;
+        long columnCacheBytes = Math.max(0, getInt(args, COLUMN_CACHE_MB, DEFAULT_COLUMN_CACHE_MB)) * 1024L * 1024L;
+        return new ServerConfig(port, threads, queue, cache, columnCacheBytes);
+    }
+
+    private static CacheSettings getCacheSettings(String[] args, Path dir) {
+        long maxBytes = Math.max(1, getInt(args, CACHE_MB, DEFAULT_CACHE_MB)) * 1024L * 1024L;
+        long ttlMillis = Math.max(0, getInt(args, CACHE_TTL, DEFAULT_CACHE_TTL_SECONDS)) * 1000L;
+        boolean verify = getBoolean(args, CACHE_VERIFY_CONTENT, false);
+        return new CacheSettings(maxBytes, ttlMillis, dir, verify);
     }
 
     public static void printHelp() {
@@ -56,16 +162,60 @@ public final class CliParser {
         System.out.println("  --input <path>       Input CSV file (required)");
         System.out.println("  --filter <expr>      Filter expression (e.g. region==\"APAC\" && amount>1000)");
         System.out.println("  --group-by <cols>     Comma-separated group columns (e.g. product,region)");
+        System.out.println("                       or time buckets: bucket(col, 1h) tumbling, bucket(col, 1h, 15m) sliding");
+        System.out.println("  --grouping-sets <sets> Also total by these subsets of the group-by columns, ';'-separated; () = grand total");
+        System.out.println("                       (e.g. product,region;product;region;()); derived from one scan");
+        System.out.println("  --rollup             Also total by every prefix of the group-by columns, down to the grand total");
+        System.out.println("  --join <specs>       Dimension tables joined by key, ';'-separated: <file>:<col>[=<key col>] (e.g. products.csv:product)");
         System.out.println("  --agg <spec>         Comma-separated aggregations: count, sum(col), avg(col), min(col), max(col)");
         System.out.println("  --top-n <n>          Number of top groups to report (default: 10)");
         System.out.println("  --top-n-metric <name> Metric for top-N: count, sum_<col>, avg_<col>, etc. (default: sum_amount)");
-        System.out.println("  --output <path>       Output JSON summary path (required)");
+        System.out.println("  --rank <specs>       Extra rankings, ';'-separated: <metric>[:<k>][ per <cols>] (e.g. sum_amount:5 per region)");
+        System.out.println("  --top-n-approx <n>   Approximate top-N (count or sum_<col>) monitoring n groups; no per-group output");
+        System.out.println("  --output <path>       Output JSON summary path (required unless --export)");
+        System.out.println("  --export <path>      Copy the rows matching --filter, as raw bytes, to this CSV instead of aggregating;");
+        System.out.println("                       with --threads n > 1, to n shards <name>-0.csv ... <name>-(n-1).csv");
+        System.out.println("  --order-by <keys>    Sort the --export rows, comma-separated: <col> [asc|desc] (e.g. amount desc, product);");
+        System.out.println("                       one file, sorted on disk beyond --sort-memory-mb");
+        System.out.println("  --sort-memory-mb <n> Memory for sorting rows before spilling sorted runs, at most 1/3 of the heap (default: 256)");
+        System.out.println("  --merge-fan-in <n>   Sorted runs merged at once; more take extra merge passes (default: 64)");
         System.out.println("  --report <path>       Save human-readable report to file (.txt or .pdf)");
+        System.out.println("  --report-max-groups <n> Groups listed in the console/report output, 0 = all (default: 10000)");
         System.out.println("  --delimiter <char>   CSV delimiter (default: ,)");
         System.out.println("  --header <true|false> First row is header (default: true)");
+        System.out.println("  --cache-dir <dir>    Cache results on disk, keyed by file fingerprint and normalized query");
+        System.out.println("  --cache-mb <n>       Result cache memory bound; 0 disables the server cache (default: 256)");
+        System.out.println("  --cache-ttl <sec>    Result cache entry lifetime, 0 = no expiry (default: 3600)");
+        System.out.println("  --cache-verify-content <true|false> Also checksum file contents for cache keys (default: false)");
+        System.out.println("  --threads <n>        Scan with a reader thread and n tokenize/filter/aggregate workers (default: 1)");
+        System.out.println("  --batch-size <n>     Filter and aggregate n rows at a time, 0 = row by row and untyped (default: 4096)");
+        System.out.println("  --schema <file>      JSON object of column types (long, decimal, double, timestamp, string)");
+        System.out.println("  --schema-sample <n>  Leading rows sampled to infer undeclared column types, 0 = none (default: 1000)");
+        System.out.println("  --read-ahead <n>     Input buffers read ahead by a background I/O thread, 0 = off (default: 2)");
+        System.out.println("  --read-buffer-kb <n> Size of each read-ahead buffer in KB (default: 1024)");
+        System.out.println("  --sample <fraction>  Read only this fraction (0-1] of the file in random blocks; scaled estimates with 95% intervals");
+        System.out.println("  --seed <n>           Seed choosing the --sample blocks (default: 0)");
+        System.out.println("  --time-budget <ms>   Stop the scan after this long and report the partial result (default: no limit)");
+        System.out.println("  --extrapolate        With --time-budget, scale counts and sums of a partial scan to the whole file");
+        System.out.println("  --input-sorted       Input is sorted by the group-by columns: emit each group as it ends (verified)");
+        System.out.println("  --progress           Print scan progress (rate, ETA, groups) to stderr about once a second");
+        System.out.println("  --serve              Run as a local HTTP query server instead of a one-shot run");
+        System.out.println("  --port <n>           Server port on 127.0.0.1 (default: 8080)");
+        System.out.println("  --server-threads <n> Concurrent queries in server mode (default: CPU count)");
+        System.out.println("  --server-queue <n>   Queries allowed to wait before new ones get 503 (default: 32)");
+        System.out.println("  --column-cache-mb <n> Server memory for hot columns of recent files; 0 disables (default: 512)");
         System.out.println("  --help               Print this message");
     }
 
+    private static boolean hasFlag(String[] args, String flag) {
+        for (String a : args) {
+            if (flag.equals(a)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     private static String getString(String[] args, String key, String defaultValue) {
         for (int i = 0; i < args.length - 1; i++) {
             if (key.equals(args[i])) {
@@ -100,6 +250,40 @@ public final class CliParser {
         }
     }
 
+    private static long getLong(String[] args, String key, long defaultValue) {
+        String s = getString(args, key, null);
+        if (s == null) return defaultValue;
+        try {
+            return Long.parseLong(s.trim());
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    private static double getDouble(String[] args, String key, double defaultValue) {
+        String s = getString(args, key, null);
+        if (s == null) return defaultValue;
+        try {
+            return Double.parseDouble(s.trim());
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    /**
+     * @return the {@code --sample} fraction, or 0 without the option
+     * @throws IllegalArgumentException if the fraction is not a number in (0, 1]
+     */
+    private static double getSampleFraction(String[] args) {
+        String s = getString(args, SAMPLE, null);
+        if (s == null) return 0;
+        double fraction = getDouble(args, SAMPLE, Double.NaN);
+        if (!(fraction > 0 && fraction <= 1)) {
+            throw new IllegalArgumentException("--sample must be a fraction in (0, 1], got '" + s + "'");
+        }
+        return fraction;
+    }
+
     private static char getDelimiter(String[] args) {
         String s = getString(args, DELIMITER, null);
         if (s == null || s.isEmpty()) return DEFAULT_DELIMITER;
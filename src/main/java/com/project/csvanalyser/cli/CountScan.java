@@ -0,0 +1,238 @@
+package com.project.csvanalyser.cli;
+
+import com.project.csvanalyser.csv.CsvRecordCounter;
+import com.project.csvanalyser.stats.RunStats;
+import com.project.csvanalyser.stats.ScanProgress;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Scan for count-only queries (no filter, no group-by, only {@code count}): records are counted in raw bytes by
+ * {@link CsvRecordCounter} instead of being tokenized. The data after the header is cut into fixed-size chunks that
+ * {@code --threads} workers read with positional reads and count independently, each guessing that its chunk starts
+ * outside quotes. The calling thread then walks the chunks in file order: it chains the quote state from chunk to
+ * chunk, recounts the rare chunk whose guess was wrong (one that starts inside a quoted field), and joins the partial
+ * records at chunk edges. Progress, the time budget and cancellation are handled in that walk, so a stopped scan covers
+ * a prefix of the file.
+ */
+final class CountScan {
+
+    static final int DEFAULT_CHUNK_SIZE = 4 << 20;
+
+    private static final Logger LOG = LoggerFactory.getLogger(CountScan.class);
+
+    private final Path input;
+    private final long dataStart;
+    private final char delimiter;
+    private final int threads;
+    private final int chunkSize;
+    private final String sourceName;
+    private final QueryControl control;
+    private final CsvRecordCounter.Counts total = new CsvRecordCounter.Counts();
+    private final AtomicLong bytesRead = new AtomicLong();
+    private final AtomicLong workerCpuNanos = new AtomicLong();
+    private final AtomicLong workerAllocatedBytes = new AtomicLong();
+    private long processedBytes;
+    private int recounted;
+    private boolean stopped;
+
+    /**
+     * @param dataStart offset of the first record, just past the header line
+     */
+    CountScan(Path input, long dataStart, char delimiter, int threads, int chunkSize, String sourceName,
+              QueryControl control) {
+        this.input = input;
+        this.dataStart = dataStart;
+        this.delimiter = delimiter;
+        this.threads = Math.max(1, threads);
+        this.chunkSize = chunkSize;
+        this.sourceName = sourceName;
+        this.control = control;
+    }
+
+    /**
+     * Counts the records and records a "count" stage. The first failure on any worker is rethrown here; a cancelled
+     * scan throws {@link java.util.concurrent.CancellationException} once its file is closed.
+     *
+     * @param expectedFields fields in the header, for the ragged-record count
+     */
+    void run(int expectedFields, RunStats stats, ScanProgress progress) throws IOException {
+        long start = System.nanoTime();
+        long cpuStart = RunStats.threadCpuNanos();
+        try (FileChannel channel = FileChannel.open(input, StandardOpenOption.READ)) {
+            long dataBytes = Math.max(0, channel.size() - dataStart);
+            int chunks = (int) ((dataBytes + chunkSize - 1) / chunkSize);
+            List<CompletableFuture<CsvRecordCounter.Chunk>> results = new ArrayList<>(chunks);
+            for (int i = 0; i < chunks; i++) {
+                results.add(new CompletableFuture<>());
+            }
+            AtomicInteger next = new AtomicInteger();
+            AtomicInteger threadIds = new AtomicInteger();
+            ExecutorService pool = Executors.newFixedThreadPool(threads, r -> {
+                Thread t = new Thread(r, "csv-count-" + threadIds.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+            try {
+                for (int i = 0; i < threads; i++) {
+                    pool.execute(() -> work(channel, dataBytes, next, results, expectedFields));
+                }
+                combine(channel, dataBytes, results, expectedFields, progress);
+                pool.shutdown();
+                if (!stopped && !pool.awaitTermination(1, TimeUnit.MINUTES)) {
+                    throw new IOException("Count workers did not finish");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Scan interrupted");
+            } finally {
+                pool.shutdownNow();
+            }
+        }
+        control.throwIfCancelled();
+        stats.addStage("count", System.nanoTime() - start,
+                RunStats.threadCpuNanos() - cpuStart + workerCpuNanos.get());
+        stats.addOtherThreadAllocation(workerAllocatedBytes.get());
+    }
+
+    /** Claims chunks in order and counts each one assuming it starts outside quotes. */
+    private void work(FileChannel channel, long dataBytes, AtomicInteger next,
+                      List<CompletableFuture<CsvRecordCounter.Chunk>> results, int expectedFields) {
+        long allocStart = RunStats.threadAllocatedBytes();
+        long cpuStart = RunStats.threadCpuNanos();
+        CsvRecordCounter counter = new CsvRecordCounter(delimiter, expectedFields);
+        byte[] buf = null;
+        int i;
+        while ((i = next.getAndIncrement()) < results.size()) {
+            CompletableFuture<CsvRecordCounter.Chunk> result = results.get(i);
+            if (control.shouldStop()) {
+                result.complete(null);
+                continue;
+            }
+            try {
+                if (buf == null) buf = new byte[chunkSize];
+                result.complete(counter.count(buf, read(channel, dataBytes, i, buf), false));
+            } catch (IOException | RuntimeException e) {
+                result.completeExceptionally(e);
+            }
+        }
+        workerCpuNanos.addAndGet(RunStats.threadCpuNanos() - cpuStart);
+        workerAllocatedBytes.addAndGet(Math.max(0, RunStats.threadAllocatedBytes() - allocStart));
+    }
+
+    /**
+     * Walks the counted chunks in file order, fixing wrong quote guesses and counting the records that span chunks.
+     */
+    private void combine(FileChannel channel, long dataBytes, List<CompletableFuture<CsvRecordCounter.Chunk>> results,
+                         int expectedFields, ScanProgress progress) throws IOException {
+        CsvRecordCounter counter = new CsvRecordCounter(delimiter, expectedFields);
+        ByteArrayOutputStream carry = new ByteArrayOutputStream();
+        byte[] buf = null;
+        boolean inQuotes = false;
+        for (int i = 0; i < results.size(); i++) {
+            CsvRecordCounter.Chunk chunk = await(results.get(i));
+            if (chunk == null || control.shouldStop()) {
+                stopped = true;
+                return;
+            }
+            if (inQuotes) {
+                // The worker guessed the chunk starts outside quotes, but a quoted field runs into it
+                if (buf == null) buf = new byte[chunkSize];
+                chunk = counter.count(buf, read(channel, dataBytes, i, buf), true);
+                recounted++;
+            }
+            carry.write(chunk.getHead(), 0, chunk.getHead().length);
+            if (chunk.hasRecordEnd()) {
+                CsvRecordCounter.Counts spanning = new CsvRecordCounter.Counts();
+                counter.record(carry.toByteArray(), 0, carry.size(), spanning);
+                add(spanning);
+                add(chunk.getCounts());
+                carry.reset();
+                carry.write(chunk.getTail(), 0, chunk.getTail().length);
+            }
+            inQuotes ^= chunk.flipsQuotes();
+            processedBytes = Math.min(dataBytes, (long) (i + 1) * chunkSize);
+            progress.update(total.getRecords(), total.getRecords() > 0 ? 1 : 0, 0);
+        }
+        if (carry.size() > 0) {
+            CsvRecordCounter.Counts last = new CsvRecordCounter.Counts();
+            counter.record(carry.toByteArray(), 0, carry.size(), last);
+            add(last);
+        }
+    }
+
+    private static CsvRecordCounter.Chunk await(CompletableFuture<CsvRecordCounter.Chunk> result) throws IOException {
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Scan interrupted");
+        } catch (ExecutionException e) {
+            throw BlockPipeline.failure(e);
+        }
+    }
+
+    private void add(CsvRecordCounter.Counts counts) {
+        long before = total.getMalformed();
+        total.add(counts);
+        List<String> samples = counts.getMalformedSamples();
+        for (int j = 0; j < samples.size(); j++) {
+            LOG.warn(sourceName + ": Skipping malformed row #" + (before + j + 1) + ": " + samples.get(j));
+        }
+        if (counts.getMalformed() > samples.size()) {
+            LOG.warn("{}: {} more malformed rows skipped near row #{}", sourceName,
+                    counts.getMalformed() - samples.size(), total.getRecords());
+        }
+    }
+
+    /** Reads chunk {@code index} of the data into {@code buf}. */
+    private int read(FileChannel channel, long dataBytes, int index, byte[] buf) throws IOException {
+        long offset = (long) index * chunkSize;
+        int length = (int) Math.min(chunkSize, dataBytes - offset);
+        ByteBuffer target = ByteBuffer.wrap(buf, 0, length);
+        while (target.hasRemaining()) {
+            int n = channel.read(target, dataStart + offset + target.position());
+            if (n < 0) {
+                throw new EOFException("File shrank while counting at byte " + (dataStart + offset + target.position()));
+            }
+            bytesRead.addAndGet(n);
+        }
+        return length;
+    }
+
+    /** @return well-formed records, including ragged ones */
+    long getRecords() { return total.getRecords(); }
+
+    int getMalformedRows() { return (int) Math.min(Integer.MAX_VALUE, total.getMalformed()); }
+
+    /** @return records whose field count differs from the header's */
+    long getRaggedRows() { return total.getRagged(); }
+
+    /** @return data bytes of the chunks counted, in file order; less than the data if the scan was stopped */
+    long getProcessedBytes() { return processedBytes; }
+
+    long getBytesRead() { return bytesRead.get(); }
+
+    /** @return chunks counted a second time because they start inside a quoted field */
+    int getRecountedChunks() { return recounted; }
+
+    boolean isStopped() { return stopped; }
+}
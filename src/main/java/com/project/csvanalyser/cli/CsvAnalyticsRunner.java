@@ -1,69 +1,848 @@
 package com.project.csvanalyser.cli;
 
 import com.project.csvanalyser.aggregation.*;
+import com.project.csvanalyser.columnar.ColumnCache;
+import com.project.csvanalyser.columnar.ColumnKind;
+import com.project.csvanalyser.columnar.ColumnRecorder;
+import com.project.csvanalyser.csv.CsvBlock;
+import com.project.csvanalyser.csv.CsvBlockReader;
+import com.project.csvanalyser.csv.CsvBlockSampler;
+import com.project.csvanalyser.csv.CsvBlockTokenizer;
+import com.project.csvanalyser.csv.CsvRowView;
 import com.project.csvanalyser.csv.CsvStreamReader;
+import com.project.csvanalyser.csv.ReadAheadInputStream;
+import com.project.csvanalyser.csv.StructuralScanner;
 import com.project.csvanalyser.filter.FilterParser;
 import com.project.csvanalyser.filter.RowPredicate;
+import com.project.csvanalyser.join.BroadcastJoin;
+import com.project.csvanalyser.join.JoinSpec;
+import com.project.csvanalyser.schema.Schema;
+import com.project.csvanalyser.sort.ExternalSorter;
+import com.project.csvanalyser.sort.SortKey;
+import com.project.csvanalyser.stats.RunStats;
+import com.project.csvanalyser.stats.ScanProgress;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntPredicate;
 import java.util.stream.Stream;
 
 /**
  * Runs the CSV analytics pipeline: stream parse -> filter -> group+aggregate -> topN.
+ * Every result carries a {@link RunStats} profile of the run; streaming scans also publish live {@link ScanProgress}.
  */
 public final class CsvAnalyticsRunner {
 
+    /**
+     * Largest batch of the sequential scan. Its reader allocates heavily per row, so young collections come every few
+     * milliseconds and each copies the cells a batch holds; small batches keep that negligible.
+     */
+    static final int STREAM_BATCH_SIZE = 256;
+
     /**
      * Validates config and runs the pipeline. Fails fast if input missing, file not found, or column not in header.
      */
     public static AnalyticsResult run(CliConfig config) throws IOException {
-        if (config.getInputPath() == null || !Files.isRegularFile(config.getInputPath())) {
-            throw new IllegalArgumentException("Input file is required and must exist: " + config.getInputPath());
-        }
+        requireInput(config);
         if (config.getOutputPath() == null) {
             throw new IllegalArgumentException("Output path is required");
         }
+        if (!config.getOrderBy().isEmpty()) {
+            throw new IllegalArgumentException("--order-by sorts the rows of --export and needs it");
+        }
+        return analyse(config);
+    }
+
+    /**
+     * Runs the pipeline without requiring an output path. Used by server mode, where the summary is streamed to the client.
+     */
+    public static AnalyticsResult analyse(CliConfig config) throws IOException {
+        return analyse(config, null);
+    }
+
+    /**
+     * Like {@link #analyse(CliConfig)}, but backed by a hot column cache: when every column the query touches is
+     * resident for the current version of the file, filter and aggregation run over the cached columns without parsing
+     * the CSV; otherwise the file is streamed as usual and the touched columns are cached for the next query.
+     *
+     * @param columnCache cache to read from and populate; null streams the file without caching
+     */
+    public static AnalyticsResult analyse(CliConfig config, ColumnCache columnCache) throws IOException {
+        return analyse(config, columnCache, QueryControl.start(config.getTimeBudgetMillis()));
+    }
+
+    /**
+     * Like {@link #analyse(CliConfig, ColumnCache)}, stopped by {@code control}: at its deadline the scan ends early
+     * and the result covers the rows read so far, with a {@link PartialScan} attached (scaled to the whole file with
+     * {@code --extrapolate}); when cancelled, the reader is closed and {@link java.util.concurrent.CancellationException}
+     * is thrown. Scans over cached columns run in memory and only check for cancellation before they start.
+     */
+    public static AnalyticsResult analyse(CliConfig config, ColumnCache columnCache, QueryControl control)
+            throws IOException {
+        requireInput(config);
+        RunStats stats = RunStats.start();
+        ColumnCache.FileKey fileKey = null;
+        Map<String, Set<ColumnKind>> required = null;
+        if (config.getTopNApproxCapacity() > 0) {
+            validateApprox(config);
+        }
+        BroadcastJoin join = startJoin(config);
+        if (config.getTopNApproxCapacity() > 0) {
+            return analyseApprox(config, join, control, stats);
+        }
+        if (config.getSampleFraction() > 0) {
+            return analyseSampled(config, join, control, stats);
+        }
+        if (columnCache != null && new GroupKeyBuilder(config.getGroupByColumns()).isSliding()) {
+            columnCache = null; // a row can fall in several windows; the columnar path groups each row once
+        }
+        if (join != null) {
+            columnCache = null; // cached columns are the file's own; joined ones would go stale with their tables
+        }
+        if (columnCache != null) {
+            fileKey = columnCache.keyFor(config.getInputPath(), config.getDelimiter(), config.isHasHeader());
+            required = requiredColumns(config);
+            ColumnCache.CachedTable cached = columnCache.lookup(fileKey, required);
+            if (cached != null) {
+                control.throwIfCancelled();
+                return analyseCached(config, cached, stats);
+            }
+        }
+
+        if (isCountOnly(config)) {
+            return analyseCount(config, control, stats);
+        }
+        if (config.getThreads() > 1 && columnCache == null) {
+            return analysePipelined(config, join, control, stats);
+        }
+
+        CsvStreamReader reader = new CsvStreamReader(config.getDelimiter(), config.isHasHeader());
+        InputStream input = openInput(config);
+        try (CsvStreamReader.ParseResult parseResult = reader.stream(input, config.getInputPath().toString())) {
+            List<String> header = joinedHeader(join, parseResult.getHeader());
+            Set<String> headerSet = validateHeader(config, header);
+
+            RowPredicate filter = FilterParser.parse(config.getFilterExpression(), header);
+            StreamAggregator aggregator = new StreamAggregator(aggregationSpec(config, headerSet));
+            int batchSize = Math.min(batchSize(config), STREAM_BATCH_SIZE);
+            BatchExecutor batches = batchSize == 0 ? null : new BatchExecutor(header, config.getFilterExpression(),
+                    aggregator, batchSize, schemaSampler(config, header));
+            ColumnRecorder recorder = columnCache == null ? null : columnCache.recorder(required, header);
+            ScanCounts counts = scan(config, parseResult, join == null ? null : join.lookup(), filter, recorder,
+                    aggregator, batches, control, stats);
+            addReadAheadStage(stats, input);
+            finishJoin(config, join, stats);
+
+            int malformed = parseResult.getMalformedCounter().getCount();
+            long totalRows = counts.parsed + malformed;
+            if (recorder != null && !counts.stopped) {
+                columnCache.store(fileKey, header, totalRows, malformed, recorder);
+            }
+            stats.setBytesRead(parseResult.getBytesRead());
+            stats.setRows(totalRows, counts.matched);
+            PartialScan partial = partial(config, counts.stopped, parseResult.getBytesRead(), totalRows,
+                    config.isExtrapolate());
+            return result(config, totalRows, malformed, aggregator, partial, stats)
+                    .withSchema(schemaReport(config, batches == null ? null : batches.report()));
+        }
+    }
+
+    /**
+     * Runs a query over input already sorted by the group-by columns ({@code --input-sorted}): each group is passed to
+     * {@code sink} as soon as its key changes and then released, so memory stays constant in the number of groups.
+     * The scan is sequential whatever {@code --threads} says, since groups must be seen in file order.
+     * <p>
+     * The returned result carries totals, top-N and stats but no groups; they have all gone to the sink.
+     *
+     * @throws IllegalArgumentException if the input turns out not to be sorted (see {@link SortedGroupAggregator})
+     */
+    public static AnalyticsResult runSorted(CliConfig config, SortedGroupAggregator.GroupSink sink) throws IOException {
+        requireInput(config);
+        if (config.getSampleFraction() > 0) {
+            throw new IllegalArgumentException("--sample reads blocks out of order and cannot be combined with --input-sorted");
+        }
+        RunStats stats = RunStats.start();
+        BroadcastJoin join = startJoin(config);
+        CsvStreamReader reader = new CsvStreamReader(config.getDelimiter(), config.isHasHeader());
+        InputStream input = openInput(config);
+        try (CsvStreamReader.ParseResult parseResult = reader.stream(input, config.getInputPath().toString())) {
+            List<String> header = joinedHeader(join, parseResult.getHeader());
+            Set<String> headerSet = validateHeader(config, header);
+
+            RowPredicate filter = FilterParser.parse(config.getFilterExpression(), header);
+            List<Ranking> rankings = rankings(config);
+            AggregationSpec spec = aggregationSpec(config, headerSet);
+            GroupingSets.Accumulator rollups = spec.getGroupingSets() == null ? null
+                    : spec.getGroupingSets().accumulator();
+            SortedGroupAggregator.GroupSink rankedSink = rankings.isEmpty() && rollups == null ? sink : (key, state) -> {
+                for (Ranking ranking : rankings) {
+                    ranking.offer(key, state);
+                }
+                if (rollups != null) {
+                    rollups.add(key, state);
+                }
+                sink.group(key, state);
+            };
+            SortedGroupAggregator aggregator = new SortedGroupAggregator(spec, config.getTopNMetric(), config.getTopN(),
+                    rankedSink);
+            ScanCounts counts = scan(config, parseResult, join == null ? null : join.lookup(), filter, null, aggregator,
+                    null, QueryControl.start(config.getTimeBudgetMillis()), stats);
+            aggregator.finish();
+            addReadAheadStage(stats, input);
+            finishJoin(config, join, stats);
+
+            int malformed = parseResult.getMalformedCounter().getCount();
+            long totalRows = counts.parsed + malformed;
+            stats.setBytesRead(parseResult.getBytesRead());
+            stats.setRows(totalRows, counts.matched);
+            stats.setGroupCount(aggregator.groupCount());
+            List<GroupingSets.Level> levels = List.of();
+            if (rollups != null) {
+                try (RunStats.Timer ignored = stats.time("groupingSets")) {
+                    levels = rollups.levels(Map.of());
+                }
+            }
+            stats.finish();
+            return new AnalyticsResult(config.getInputPath().toString(), totalRows, malformed, Map.of(),
+                    aggregator.getTopN(), config.getGroupByColumns(), stats).withRankings(rankingResults(rankings))
+                    .withPartial(partial(config, counts.stopped, parseResult.getBytesRead(), totalRows, false))
+                    .withGroupingLevels(levels);
+        }
+    }
+
+    /**
+     * {@code --export}: copies the rows matching the filter, byte for byte, to new CSV files instead of aggregating
+     * them (see {@link ExportScan}). With {@code --threads} above 1 each worker writes its own shard, named after the
+     * export file with the worker's number before the extension ({@code apac.csv} gives {@code apac-0.csv},
+     * {@code apac-1.csv}, ...). Group-by and aggregations are ignored.
+     * <p>
+     * With {@code --order-by} the rows are sorted into the one export file by an {@link ExternalSorter}, whatever the
+     * thread count: the workers generate sorted runs in parallel, spilling them next to the export file once
+     * {@code --sort-memory-mb} (capped at a third of the heap) fills up, and the runs are merged {@code --merge-fan-in}
+     * at a time. Key columns are typed by {@code --schema} and the first {@code --schema-sample} rows.
+     *
+     * @throws IllegalArgumentException if the export file or one of its shards is the input, with {@code --sample}, or
+     *                                  if an order-by column is not in the header
+     */
+    public static ExportResult export(CliConfig config) throws IOException {
+        requireInput(config);
+        if (config.getSampleFraction() > 0) {
+            throw new IllegalArgumentException("--export copies every matching row and cannot be combined with --sample");
+        }
+        Path exportPath = config.getExportPath();
+        List<SortKey> orderBy = SortKey.parse(config.getOrderBy());
+        List<Path> shards = exportShards(exportPath, orderBy.isEmpty() ? config.getThreads() : 1);
+        for (Path shard : shards) {
+            if (Files.exists(shard) && Files.isSameFile(shard, config.getInputPath())) {
+                throw new IllegalArgumentException("Export file is the input file: " + shard);
+            }
+        }
+        RunStats stats = RunStats.start();
+        QueryControl control = QueryControl.start(config.getTimeBudgetMillis());
+        BroadcastJoin join = startJoin(config);
+        InputStream input = openInput(config);
+        try (CsvBlockReader in = new CsvBlockReader(input, config.getDelimiter());
+             FileChannel channel = FileChannel.open(config.getInputPath(), StandardOpenOption.READ);
+             ExternalSorter sorter = orderBy.isEmpty() ? null : new ExternalSorter(
+                     exportPath.toAbsolutePath().getParent(),
+                     Math.min(config.getSortMemoryBytes(), Runtime.getRuntime().maxMemory() / 3),
+                     config.getMergeFanIn())) {
+            List<String> header = joinedHeader(join, in.readHeader());
+            validateHeader(config, header);
+            ExportScan scan = new ExportScan(in, channel, header, join, config.getFilterExpression(),
+                    config.getDelimiter(), shards, sorter, orderBy,
+                    sorter == null ? null : schemaSampler(config, header), config.getThreads(),
+                    config.getInputPath().toString(), control);
+            try (RunStats.Timer ignored = RunStats.trace("scan");
+                 ScanProgress progress = ScanProgress.start(config.getInputPath().getFileName().toString(),
+                         Files.size(config.getInputPath()), in::getBytesRead, config.isProgress() ? System.err : null)) {
+                scan.run(stats, progress);
+                progress.finish(scan.getParsedRows(), 0, 0);
+            }
+            addReadAheadStage(stats, input);
+            finishJoin(config, join, stats);
+            long totalRows = scan.getParsedRows() + scan.getMalformedRows();
+            stats.setBytesRead(in.getBytesRead());
+            stats.setRows(totalRows, scan.getExportedRows());
+            stats.finish();
+            return new ExportResult(config.getInputPath().toString(), totalRows, scan.getMalformedRows(),
+                    scan.getExportedRows(), scan.getExportedBytes(), scan.getTransfers(), shards,
+                    partial(config, control.isTimedOut(), scan.getProcessedBytes(), totalRows, false), stats)
+                    .withSort(sorter);
+        }
+    }
 
+    /** @return the export file itself for one thread, else one shard per thread: {@code out.csv} → {@code out-0.csv}, ... */
+    static List<Path> exportShards(Path exportPath, int threads) {
+        if (threads <= 1) {
+            return List.of(exportPath);
+        }
+        String name = exportPath.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        String stem = dot > 0 ? name.substring(0, dot) : name;
+        String extension = dot > 0 ? name.substring(dot) : "";
+        List<Path> shards = new ArrayList<>(threads);
+        for (int i = 0; i < threads; i++) {
+            shards.add(exportPath.resolveSibling(stem + "-" + i + extension));
+        }
+        return shards;
+    }
+
+    /**
+     * Streams the parsed rows through the filter into the aggregator, publishing progress and recording scan stages.
+     * Per-row stages are timed on sampled rows only: read (tokenize + column recording), filter, aggregate.
+     * With {@code batches}, rows are filtered and aggregated a batch at a time instead, and those two stages are timed
+     * per batch. Stops early when {@code control} says so; the stream is closed either way, then a cancellation is thrown.
+     *
+     * @param lookup  joins each row as it is read, or null without {@code --join}
+     * @param batches batch executor feeding {@code aggregator}, or null to filter and aggregate row by row
+     */
+    private static ScanCounts scan(CliConfig config, CsvStreamReader.ParseResult parseResult,
+                                   BroadcastJoin.Lookup lookup, RowPredicate filter, ColumnRecorder recorder,
+                                   RowAggregator aggregator, BatchExecutor batches, QueryControl control,
+                                   RunStats stats) throws IOException {
+        long[] sampled = new long[3];
+        long parsedRows = 0;
+        long matchedRows = 0;
+        boolean stopped = false;
+        long scanStart = System.nanoTime();
+        long scanCpuStart = RunStats.threadCpuNanos();
+        try (Stream<Map<String, String>> stream = parseResult.getRecordStream();
+             RunStats.Timer ignored = RunStats.trace("scan");
+             ScanProgress progress = ScanProgress.start(config.getInputPath().getFileName().toString(),
+                     Files.size(config.getInputPath()), parseResult::getBytesRead,
+                     config.isProgress() ? System.err : null)) {
+            Iterator<Map<String, String>> it = stream.iterator();
+            if (lookup != null) {
+                it = lookup.joining(it);
+            }
+            if (batches != null) {
+                it = batches.sampleAhead(it);
+            }
+            while (true) {
+                if ((parsedRows & QueryControl.CHECK_MASK) == 0 && control.shouldStop()) {
+                    stopped = true;
+                    break;
+                }
+                if ((parsedRows & ScanProgress.CHUNK_MASK) == 0 && parsedRows > 0) {
+                    progress.update(parsedRows, aggregator.groupCount(), aggregator.estimatedStateBytes());
+                }
+                boolean sample = batches == null && (parsedRows & RunStats.SAMPLE_MASK) == 0;
+                long t0 = sample ? System.nanoTime() : 0;
+                if (!it.hasNext()) break;
+                Map<String, String> row = it.next();
+                parsedRows++;
+                if (recorder != null) {
+                    recorder.accept(row);
+                }
+                if (batches != null) {
+                    batches.add(row);
+                    continue;
+                }
+                if (!sample) {
+                    if (filter.test(row)) {
+                        aggregator.accept(row);
+                        matchedRows++;
+                    }
+                    continue;
+                }
+                long t1 = System.nanoTime();
+                boolean matches = filter.test(row);
+                long t2 = System.nanoTime();
+                sampled[0] += t1 - t0;
+                sampled[1] += t2 - t1;
+                if (matches) {
+                    aggregator.accept(row);
+                    matchedRows++;
+                    sampled[2] += System.nanoTime() - t2;
+                }
+            }
+            if (batches != null) {
+                batches.flush();
+                matchedRows = batches.getMatched();
+            }
+            progress.finish(parsedRows, aggregator.groupCount(), aggregator.estimatedStateBytes());
+        }
+        control.throwIfCancelled();
+        long scanWall = System.nanoTime() - scanStart;
+        long scanCpu = RunStats.threadCpuNanos() - scanCpuStart;
+        if (batches == null) {
+            addScanStages(stats, sampled, scanWall, scanCpu, parseResult.getIoNanos());
+        } else {
+            long read = scanWall - batches.getFilterNanos() - batches.getAggregateNanos();
+            long io = Math.min(parseResult.getIoNanos(), read);
+            stats.addStage("io", io, 0);
+            stats.addStage("tokenize", read - io,
+                    Math.max(0, scanCpu - batches.getFilterCpuNanos() - batches.getAggregateCpuNanos()));
+            stats.addStage("filter", batches.getFilterNanos(), batches.getFilterCpuNanos());
+            stats.addStage("aggregate", batches.getAggregateNanos(), batches.getAggregateCpuNanos());
+        }
+        return new ScanCounts(parsedRows, matchedRows, stopped);
+    }
+
+    /**
+     * {@code --top-n-approx}: ranks groups with a fixed number of Space-Saving counters instead of keeping every group.
+     * The result has no groups, only the approximate top-N with per-entry error bounds. The scan is sequential.
+     */
+    private static AnalyticsResult analyseApprox(CliConfig config, BroadcastJoin join, QueryControl control,
+                                                 RunStats stats) throws IOException {
         CsvStreamReader reader = new CsvStreamReader(config.getDelimiter(), config.isHasHeader());
-        CsvStreamReader.ParseResult parseResult = reader.stream(config.getInputPath());
-        List<String> header = parseResult.getHeader();
+        InputStream input = openInput(config);
+        try (CsvStreamReader.ParseResult parseResult = reader.stream(input, config.getInputPath().toString())) {
+            List<String> header = joinedHeader(join, parseResult.getHeader());
+            validateHeader(config, header);
+            String metric = config.getTopNMetric();
+            if (metric.startsWith("sum_") && !header.contains(metric.substring("sum_".length()))) {
+                throw new IllegalArgumentException("Unknown column in top-N metric: '" + metric + "'. Available: "
+                        + header);
+            }
+
+            RowPredicate filter = FilterParser.parse(config.getFilterExpression(), header);
+            SpaceSavingTopN heavyHitters = new SpaceSavingTopN(config.getGroupByColumns(), metric,
+                    config.getTopNApproxCapacity());
+            ScanCounts counts = scan(config, parseResult, join == null ? null : join.lookup(), filter, null,
+                    heavyHitters, null, control, stats);
+            addReadAheadStage(stats, input);
+            finishJoin(config, join, stats);
+            if (heavyHitters.getSkippedValues() > 0) {
+                LoggerFactory.getLogger(CsvAnalyticsRunner.class).warn("{}: {} negative or non-numeric values of {} counted as 0"
+                        + " in the approximate top-N", config.getInputPath(), heavyHitters.getSkippedValues(), metric);
+            }
+
+            int malformed = parseResult.getMalformedCounter().getCount();
+            long totalRows = counts.parsed + malformed;
+            List<TopN.TopNEntry> topN;
+            try (RunStats.Timer ignored = stats.time("topN")) {
+                topN = heavyHitters.top(config.getTopN());
+            }
+            stats.setBytesRead(parseResult.getBytesRead());
+            stats.setRows(totalRows, counts.matched);
+            stats.setGroupCount(heavyHitters.groupCount());
+            stats.finish();
+            return new AnalyticsResult(config.getInputPath().toString(), totalRows, malformed, Map.of(), topN,
+                    config.getGroupByColumns(), stats)
+                    .withPartial(partial(config, counts.stopped, parseResult.getBytesRead(), totalRows, false));
+        }
+    }
+
+    /**
+     * Rejects options {@code --top-n-approx} cannot honour; checked before any join table starts loading.
+     */
+    private static void validateApprox(CliConfig config) {
+        if (!config.getRankSpecs().isEmpty()) {
+            throw new IllegalArgumentException("--rank needs exact group totals and cannot be combined with --top-n-approx");
+        }
+        if (config.isRollup() || !config.getGroupingSets().isEmpty()) {
+            throw new IllegalArgumentException("Grouping sets need exact group totals and cannot be combined with --top-n-approx");
+        }
+        if (config.getSampleFraction() > 0) {
+            throw new IllegalArgumentException("--sample cannot be combined with --top-n-approx");
+        }
+    }
+
+    /**
+     * {@code --sample}: reads a seeded random subset of byte-range blocks (see {@link CsvBlockSampler}) and scales the
+     * sampled groups up to the whole file (see {@link SampledAggregator}). Counts, sums and totals in the result are
+     * estimates; the attached {@link SampleEstimate} carries their confidence intervals. The scan is sequential and does
+     * not use or fill the column cache.
+     */
+    private static AnalyticsResult analyseSampled(CliConfig config, BroadcastJoin join, QueryControl control,
+                                                  RunStats stats) throws IOException {
+        try (CsvBlockSampler sampler = new CsvBlockSampler(config.getInputPath(), config.getDelimiter(),
+                CsvBlockSampler.DEFAULT_BLOCK_SIZE, config.getSampleFraction(), config.getSampleSeed())) {
+            List<String> fileHeader = sampler.readHeader();
+            List<String> header = joinedHeader(join, fileHeader);
+            Set<String> headerSet = validateHeader(config, header);
+            RowPredicate filter = FilterParser.parse(config.getFilterExpression(), header);
+            AggregationSpec spec = aggregationSpec(config, headerSet);
+            SampledAggregator aggregator = new SampledAggregator(spec);
+            CsvRowView row = new CsvRowView(header);
+            String[] values = row.valueArray();
+            BroadcastJoin.Lookup lookup = join == null ? null : join.lookup();
+            CsvBlockTokenizer records = new CsvBlockTokenizer(config.getDelimiter(), fileHeader.size(),
+                    StructuralScanner.forDelimiter(config.getDelimiter()));
+            CsvBlock block = new CsvBlock(CsvBlockSampler.DEFAULT_BLOCK_SIZE * 2);
+            Logger log = LoggerFactory.getLogger(CsvAnalyticsRunner.class);
+            long parsed = 0;
+            long matched = 0;
+            int malformed = 0;
+            long rangeBytesRead = 0;
+            boolean stopped = false;
+            try (RunStats.Timer ignored = stats.time("sampleScan");
+                 ScanProgress progress = ScanProgress.start(config.getInputPath().getFileName().toString(),
+                         sampler.getSampledBytes(), sampler::getBytesRead, config.isProgress() ? System.err : null)) {
+                while (!(stopped = control.shouldStop()) && sampler.next(block)) {
+                    byte[] data = block.getData();
+                    records.reset(data, block.getLength());
+                    while (records.nextRecord()) {
+                        if (!records.tokenize(values)) {
+                            malformed++;
+                            int start = records.getRecordStart();
+                            String line = new String(data, start, Math.min(records.getRecordEnd() - start, 100),
+                                    StandardCharsets.UTF_8);
+                            log.warn("{}: Skipping malformed sampled row #{}: {}", config.getInputPath(), malformed, line);
+                        } else {
+                            parsed++;
+                            if (lookup != null) {
+                                lookup.join(values);
+                            }
+                            if (filter.test(row)) {
+                                aggregator.accept(row);
+                                matched++;
+                            }
+                        }
+                    }
+                    aggregator.endBlock(sampler.getRangeBytes());
+                    rangeBytesRead += sampler.getRangeBytes();
+                    progress.update(parsed, aggregator.groupCount(), aggregator.estimatedStateBytes());
+                }
+                progress.finish(parsed, aggregator.groupCount(), aggregator.estimatedStateBytes());
+            }
+            control.throwIfCancelled();
+            finishJoin(config, join, stats);
+
+            SampleEstimate estimate = aggregator.estimate(sampler.getDataBytes(), sampler.getBlocksTotal(),
+                    config.getSampleFraction(), config.getSampleSeed(), parsed + malformed);
+            double scale = estimate.getScale();
+            stats.setBytesRead(sampler.getBytesRead());
+            stats.setRows(parsed + malformed, matched);
+            Map<GroupKey, AggregationState> stateByGroup;
+            List<TopN.TopNEntry> topN;
+            List<Ranking> rankings = rankings(config);
+            try (RunStats.Timer ignored = stats.time("topN")) {
+                stateByGroup = aggregator.scaledStateByGroup(sampler.getDataBytes());
+                topN = TopN.compute(stateByGroup, config.getTopNMetric(), config.getTopN());
+                for (Map.Entry<GroupKey, AggregationState> e : stateByGroup.entrySet()) {
+                    for (Ranking ranking : rankings) {
+                        ranking.offer(e.getKey(), e.getValue());
+                    }
+                }
+            }
+            List<GroupingSets.Level> levels = groupingLevels(spec.getGroupingSets(), stateByGroup, stats);
+            stats.setGroupCount(stateByGroup.size());
+            stats.finish();
+            return new AnalyticsResult(config.getInputPath().toString(), Math.round((parsed + malformed) * scale),
+                    (int) Math.min(Integer.MAX_VALUE, Math.round(malformed * scale)), stateByGroup, topN,
+                    config.getGroupByColumns(), stats).withRankings(rankingResults(rankings)).withSample(estimate)
+                    .withGroupingLevels(levels)
+                    .withPartial(stopped ? new PartialScan(rangeBytesRead, sampler.getSampledBytes(), parsed + malformed,
+                            false) : null);
+        }
+    }
+
+    /**
+     * Reader thread plus {@code --threads} workers over raw blocks; see {@link PipelinedScan}.
+     */
+    private static AnalyticsResult analysePipelined(CliConfig config, BroadcastJoin join, QueryControl control,
+                                                    RunStats stats) throws IOException {
+        InputStream input = openInput(config);
+        try (CsvBlockReader in = new CsvBlockReader(input, config.getDelimiter())) {
+            List<String> header = joinedHeader(join, in.readHeader());
+            Set<String> headerSet = validateHeader(config, header);
+            int batchSize = batchSize(config);
+            PipelinedScan scan = new PipelinedScan(in, header, join, config.getFilterExpression(),
+                    aggregationSpec(config, headerSet), config.getDelimiter(), config.getThreads(), batchSize,
+                    batchSize == 0 ? null : schemaSampler(config, header), config.getInputPath().toString(), control);
+            StreamAggregator aggregator;
+            try (RunStats.Timer ignored = RunStats.trace("scan");
+                 ScanProgress progress = ScanProgress.start(config.getInputPath().getFileName().toString(),
+                         Files.size(config.getInputPath()), in::getBytesRead, config.isProgress() ? System.err : null)) {
+                scan.run(stats, progress);
+                try (RunStats.Timer merge = stats.time("merge")) {
+                    aggregator = scan.mergedAggregator();
+                }
+                progress.finish(scan.getParsedRows(), aggregator.groupCount(), aggregator.estimatedStateBytes());
+            }
+            addReadAheadStage(stats, input);
+            finishJoin(config, join, stats);
+            long totalRows = scan.getParsedRows() + scan.getMalformedRows();
+            stats.setBytesRead(in.getBytesRead());
+            stats.setRows(totalRows, scan.getMatchedRows());
+            return result(config, totalRows, scan.getMalformedRows(), aggregator,
+                    partial(config, control.isTimedOut(), scan.getProcessedBytes(), totalRows, config.isExtrapolate()),
+                    stats).withSchema(schemaReport(config, scan.schemaReport()));
+        }
+    }
+
+    /**
+     * @return whether the query only counts rows: no filter, no group-by, no rankings, no joins and only count
+     *         aggregations
+     */
+    private static boolean isCountOnly(CliConfig config) {
+        if (config.getFilterExpression() != null && !config.getFilterExpression().isBlank()) {
+            return false;
+        }
+        if (!config.getJoinSpecs().isEmpty()) {
+            return false;
+        }
+        if (!config.getGroupByColumns().isEmpty() || !config.getRankSpecs().isEmpty()) {
+            return false;
+        }
+        for (AggregationSpec.AggregationOpWithColumn a
+                : AggregationSpecParser.parse(String.join(",", config.getAggregationSpecs()), null)) {
+            if (a.getOp() != AggregationSpec.AggregationOp.COUNT) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Count-only queries: records are counted in raw bytes over {@code --threads} workers without tokenizing (see
+     * {@link CountScan}). Malformed rows are detected by their quoting as in the other scans; rows with a different field
+     * count than the header are counted as rows, as elsewhere, and reported in a warning.
+     */
+    private static AnalyticsResult analyseCount(CliConfig config, QueryControl control, RunStats stats)
+            throws IOException {
+        List<String> header;
+        long dataStart;
+        try (CsvBlockReader in = new CsvBlockReader(Files.newInputStream(config.getInputPath()), config.getDelimiter())) {
+            header = in.readHeader();
+            dataStart = in.getDataStart();
+        }
+        Set<String> headerSet = validateHeader(config, header);
+        StreamAggregator aggregator = new StreamAggregator(aggregationSpec(config, headerSet));
+        CountScan scan = new CountScan(config.getInputPath(), dataStart, config.getDelimiter(), config.getThreads(),
+                CountScan.DEFAULT_CHUNK_SIZE, config.getInputPath().toString(), control);
+        try (RunStats.Timer ignored = RunStats.trace("scan");
+             ScanProgress progress = ScanProgress.start(config.getInputPath().getFileName().toString(),
+                     Files.size(config.getInputPath()), scan::getBytesRead, config.isProgress() ? System.err : null)) {
+            scan.run(header.size(), stats, progress);
+            progress.finish(scan.getRecords(), scan.getRecords() > 0 ? 1 : 0, 0);
+        }
+        if (scan.getRaggedRows() > 0) {
+            LoggerFactory.getLogger(CsvAnalyticsRunner.class).warn("{}: {} rows do not have the header's {} fields;"
+                    + " missing fields read as empty", config.getInputPath(), scan.getRaggedRows(), header.size());
+        }
+        aggregator.addCount(scan.getRecords());
+        long totalRows = scan.getRecords() + scan.getMalformedRows();
+        stats.setBytesRead(dataStart + scan.getBytesRead());
+        stats.setRows(totalRows, scan.getRecords());
+        return result(config, totalRows, scan.getMalformedRows(), aggregator,
+                partial(config, scan.isStopped(), dataStart + scan.getProcessedBytes(), totalRows,
+                        config.isExtrapolate()), stats);
+    }
+
+    /**
+     * Opens the input, behind a read-ahead I/O thread unless disabled or the file fits in a single buffer.
+     */
+    private static InputStream openInput(CliConfig config) throws IOException {
+        if (config.getReadAheadBuffers() <= 0 || Files.size(config.getInputPath()) <= config.getReadBufferBytes()) {
+            return Files.newInputStream(config.getInputPath());
+        }
+        return ReadAheadInputStream.open(config.getInputPath(), config.getReadBufferBytes(), config.getReadAheadBuffers());
+    }
+
+    /**
+     * With read-ahead the "io" stage is the time the scan waited for data; "readAhead" is the I/O thread's own time.
+     */
+    private static void addReadAheadStage(RunStats stats, InputStream input) {
+        if (input instanceof ReadAheadInputStream readAhead) {
+            stats.addStage("readAhead", readAhead.getReadNanos(), readAhead.getIoThreadCpuNanos());
+        }
+    }
+
+    private static AnalyticsResult analyseCached(CliConfig config, ColumnCache.CachedTable table, RunStats stats) {
+        List<String> header = table.getHeader();
+        Set<String> headerSet = validateHeader(config, header);
+        IntPredicate filter = FilterParser.parseColumnar(config.getFilterExpression(), header, table);
+        StreamAggregator aggregator = new StreamAggregator(aggregationSpec(config, headerSet));
+        try (RunStats.Timer ignored = stats.time("columnScan")) {
+            aggregator.consume(table, filter);
+        }
+        long matched = 0;
+        for (AggregationState state : aggregator.getStateByGroup().values()) {
+            matched += state.getCount();
+        }
+        stats.setRows(table.getTotalRows(), matched);
+        return result(config, table.getTotalRows(), table.getMalformedRows(), aggregator, null, stats);
+    }
+
+    /**
+     * Scales the sampled per-row timings to the measured scan. I/O wait is known exactly and is carved out of the read
+     * share; CPU spent inside read calls stays under tokenize.
+     */
+    private static void addScanStages(RunStats stats, long[] sampled, long scanWall, long scanCpu, long ioNanos) {
+        long[] wall = RunStats.split(sampled, scanWall);
+        long[] cpu = RunStats.split(sampled, scanCpu);
+        long io = Math.min(ioNanos, wall[0]);
+        stats.addStage("io", io, 0);
+        stats.addStage("tokenize", wall[0] - io, cpu[0]);
+        stats.addStage("filter", wall[1], cpu[1]);
+        stats.addStage("aggregate", wall[2], cpu[2]);
+    }
+
+    /** @return rows per filter/aggregate batch; 0 (row by row) for sliding windows, which batches do not support */
+    private static int batchSize(CliConfig config) {
+        return new GroupKeyBuilder(config.getGroupByColumns()).isSliding() ? 0 : config.getBatchSize();
+    }
+
+    /**
+     * @return a sampler with the {@code --schema} types that infers the others from the first {@code --schema-sample} rows
+     * @throws IllegalArgumentException if the schema file is malformed or names a column not in the header
+     */
+    private static Schema.Sampler schemaSampler(CliConfig config, List<String> header) throws IOException {
+        Schema declared = config.getSchemaPath() == null ? null : Schema.load(config.getSchemaPath());
+        return new Schema.Sampler(header, declared, config.getSchemaSampleRows());
+    }
+
+    /** Logs the columns with type violations; a null report passes through. */
+    private static SchemaReport schemaReport(CliConfig config, SchemaReport report) {
+        if (report != null) {
+            for (Map.Entry<String, Long> e : report.getViolations().entrySet()) {
+                LoggerFactory.getLogger(CsvAnalyticsRunner.class).warn("{}: {} values of {} do not fit its type {}",
+                        config.getInputPath().getFileName(), e.getValue(), e.getKey(),
+                        report.getTypes().getOrDefault(e.getKey(), "number"));
+            }
+        }
+        return report;
+    }
+
+    /**
+     * Starts loading the {@code --join} tables in the background, so they load while the scan opens its input.
+     *
+     * @return the join, or null without {@code --join}
+     */
+    private static BroadcastJoin startJoin(CliConfig config) throws IOException {
+        if (config.getJoinSpecs().isEmpty()) {
+            return null;
+        }
+        List<JoinSpec> specs = new ArrayList<>();
+        for (String spec : config.getJoinSpecs()) {
+            specs.add(JoinSpec.parse(spec));
+        }
+        return BroadcastJoin.start(specs, config.getDelimiter());
+    }
+
+    /** @return the columns of the rows a query sees: the file's, then the joined ones */
+    private static List<String> joinedHeader(BroadcastJoin join, List<String> fileHeader) {
+        return join == null || fileHeader.isEmpty() ? fileHeader : join.bind(fileHeader);
+    }
 
+    /** Records the join stages and logs keys that found no row; call once the scan is done. */
+    private static void finishJoin(CliConfig config, BroadcastJoin join, RunStats stats) {
+        if (join == null) {
+            return;
+        }
+        join.addStages(stats);
+        for (Map.Entry<String, Long> e : join.unmatchedRows().entrySet()) {
+            LoggerFactory.getLogger(CsvAnalyticsRunner.class).warn("{}: {} rows found no match in --join {};"
+                    + " its columns are blank for them", config.getInputPath().getFileName(), e.getValue(), e.getKey());
+        }
+    }
+
+    private static Set<String> validateHeader(CliConfig config, List<String> header) {
         if (header.isEmpty()) {
             throw new IllegalArgumentException("CSV has no header. Use --header false if the file has no header row.");
         }
         Set<String> headerSet = Set.copyOf(header);
 
-        for (String col : config.getGroupByColumns()) {
+        for (String col : GroupKeyBuilder.sourceColumns(config.getGroupByColumns())) {
             if (!headerSet.contains(col)) {
                 throw new IllegalArgumentException("Group-by column not in CSV: '" + col + "'. Available: " + header);
             }
         }
+        return headerSet;
+    }
 
-        RowPredicate filter = FilterParser.parse(config.getFilterExpression(), header);
-
+    private static AggregationSpec aggregationSpec(CliConfig config, Set<String> headerSet) {
         String aggSpecStr = String.join(",", config.getAggregationSpecs());
         List<AggregationSpec.AggregationOpWithColumn> aggList = AggregationSpecParser.parse(aggSpecStr, headerSet);
-        AggregationSpec spec = new AggregationSpec(config.getGroupByColumns(), aggList);
-        StreamAggregator aggregator = new StreamAggregator(spec);
+        return new AggregationSpec(config.getGroupByColumns(), aggList, groupingSets(config));
+    }
 
-        AtomicLong totalParsedRows = new AtomicLong(0);
-        try (Stream<Map<String, String>> stream = parseResult.getRecordStream()) {
-            stream.peek(row -> totalParsedRows.incrementAndGet())
-                    .filter(filter::test)
-                    .forEach(aggregator::accept);
+    /**
+     * Parses {@code --grouping-sets} or {@code --rollup}.
+     *
+     * @return the sets, or null with neither option
+     * @throws IllegalArgumentException if both are given, or the group-by has sliding windows
+     */
+    static GroupingSets groupingSets(CliConfig config) {
+        boolean sets = !config.getGroupingSets().isEmpty();
+        if (!sets && !config.isRollup()) {
+            return null;
         }
+        if (sets && config.isRollup()) {
+            throw new IllegalArgumentException("Use either --grouping-sets or --rollup, not both");
+        }
+        if (new GroupKeyBuilder(config.getGroupByColumns()).isSliding()) {
+            throw new IllegalArgumentException("Grouping sets cannot be combined with sliding windows: a row in several"
+                    + " windows would be counted several times in the coarser sets");
+        }
+        return sets ? GroupingSets.parse(config.getGroupingSets(), config.getGroupByColumns())
+                : GroupingSets.rollup(config.getGroupByColumns());
+    }
 
-        int malformed = parseResult.getMalformedCounter().getCount();
-        long totalRows = totalParsedRows.get() + malformed;
+    /**
+     * Derives every grouping set from the finest groups, which must be final (extrapolated or scaled already).
+     *
+     * @return the sets' groups, or empty without grouping sets
+     */
+    private static List<GroupingSets.Level> groupingLevels(GroupingSets sets, Map<GroupKey, AggregationState> finest,
+                                                           RunStats stats) {
+        if (sets == null) {
+            return List.of();
+        }
+        try (RunStats.Timer ignored = stats.time("groupingSets")) {
+            return sets.levels(finest);
+        }
+    }
+
+    /**
+     * Columns a query reads: group-by columns as strings, aggregated columns as numbers, filter columns as compared.
+     */
+    private static Map<String, Set<ColumnKind>> requiredColumns(CliConfig config) {
+        Map<String, Set<ColumnKind>> required = new LinkedHashMap<>(FilterParser.columnUsage(config.getFilterExpression()));
+        for (String col : GroupKeyBuilder.sourceColumns(config.getGroupByColumns())) {
+            required.computeIfAbsent(col, c -> EnumSet.noneOf(ColumnKind.class)).add(ColumnKind.STRING);
+        }
+        for (AggregationSpec.AggregationOpWithColumn a : AggregationSpecParser.parse(String.join(",", config.getAggregationSpecs()), null)) {
+            if (a.getColumn() != null) {
+                required.computeIfAbsent(a.getColumn(), c -> EnumSet.noneOf(ColumnKind.class)).add(ColumnKind.NUMERIC);
+            }
+        }
+        return required;
+    }
 
-        Map<GroupKey, AggregationState> stateByGroup = aggregator.getStateByGroup();
-        String topNMetric = config.getTopNMetric();
-        List<TopN.TopNEntry> topNList = TopN.compute(stateByGroup, topNMetric, config.getTopN());
+    private static AnalyticsResult result(CliConfig config, long totalRows, int malformed, StreamAggregator aggregator,
+                                          PartialScan partial, RunStats stats) {
+        Map<GroupKey, AggregationState> stateByGroup;
+        List<TopN.TopNEntry> topNList;
+        List<Ranking> rankings = rankings(config);
+        try (RunStats.Timer ignored = stats.time("topN")) {
+            stateByGroup = aggregator.getStateByGroup();
+            if (partial != null && partial.isExtrapolated()) {
+                double scale = partial.getScale();
+                stateByGroup.replaceAll((key, state) -> state.scaled(scale));
+                totalRows = Math.round(totalRows * scale);
+                malformed = (int) Math.min(Integer.MAX_VALUE, Math.round(malformed * scale));
+            }
+            topNList = TopN.compute(stateByGroup, config.getTopNMetric(), config.getTopN());
+            if (!rankings.isEmpty()) {
+                for (Map.Entry<GroupKey, AggregationState> e : stateByGroup.entrySet()) {
+                    for (Ranking ranking : rankings) {
+                        ranking.offer(e.getKey(), e.getValue());
+                    }
+                }
+            }
+        }
+        List<GroupingSets.Level> levels = groupingLevels(aggregator.getGroupingSets(), stateByGroup, stats);
+        stats.setGroupCount(stateByGroup.size());
+        stats.finish();
 
         return new AnalyticsResult(
                 config.getInputPath().toString(),
@@ -71,7 +850,59 @@ public final class CsvAnalyticsRunner {
                 malformed,
                 stateByGroup,
                 topNList,
-                config.getGroupByColumns()
-        );
+                config.getGroupByColumns(),
+                stats
+        ).withRankings(rankingResults(rankings)).withPartial(partial).withGroupingLevels(levels);
+    }
+
+    /**
+     * @return what a scan stopped by its time budget covered, or null if it ran to completion
+     */
+    private static PartialScan partial(CliConfig config, boolean stopped, long bytesProcessed, long rows,
+                                       boolean extrapolate) throws IOException {
+        if (!stopped) {
+            return null;
+        }
+        long bytesTotal = Files.size(config.getInputPath());
+        return new PartialScan(Math.min(bytesProcessed, bytesTotal), bytesTotal, rows, extrapolate);
+    }
+
+    /**
+     * Parses {@code --rank}; each ranking keeps a bounded heap per parent key, fed once per finished group.
+     */
+    private static List<Ranking> rankings(CliConfig config) {
+        List<Ranking> rankings = new ArrayList<>();
+        for (String spec : config.getRankSpecs()) {
+            RankingSpec parsed = RankingSpec.parse(spec, config.getGroupByColumns(), config.getTopN());
+            rankings.add(new Ranking(parsed, config.getGroupByColumns()));
+        }
+        return rankings;
+    }
+
+    private static List<Ranking.Result> rankingResults(List<Ranking> rankings) {
+        List<Ranking.Result> results = new ArrayList<>(rankings.size());
+        for (Ranking ranking : rankings) {
+            results.add(ranking.result());
+        }
+        return results;
+    }
+
+    private static final class ScanCounts {
+        private final long parsed;
+        private final long matched;
+        /** Whether the scan ended at its time budget rather than at the end of the input. */
+        private final boolean stopped;
+
+        ScanCounts(long parsed, long matched, boolean stopped) {
+            this.parsed = parsed;
+            this.matched = matched;
+            this.stopped = stopped;
+        }
+    }
+
+    private static void requireInput(CliConfig config) {
+        if (config.getInputPath() == null || !Files.isRegularFile(config.getInputPath())) {
+            throw new IllegalArgumentException("Input file is required and must exist: " + config.getInputPath());
+        }
     }
-}
\ No newline at end of file
+}
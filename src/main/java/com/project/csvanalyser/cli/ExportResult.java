@@ -0,0 +1,83 @@
+package com.project.csvanalyser.cli;
+
+import com.project.csvanalyser.sort.ExternalSorter;
+import com.project.csvanalyser.stats.RunStats;
+
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Result of an {@code --export} run: the files written and how many rows went into them.
+ */
+public final class ExportResult {
+
+    private final String inputFile;
+    private final long totalRows;
+    private final int malformedRows;
+    private final long exportedRows;
+    private final long exportedBytes;
+    private final long transfers;
+    private final List<Path> files;
+    private final PartialScan partial;
+    private final RunStats stats;
+    private final boolean sorted;
+    private final int sortRuns;
+    private final long spilledBytes;
+    private final int mergePasses;
+
+    public ExportResult(String inputFile, long totalRows, int malformedRows, long exportedRows, long exportedBytes,
+                        long transfers, List<Path> files, PartialScan partial, RunStats stats) {
+        this(inputFile, totalRows, malformedRows, exportedRows, exportedBytes, transfers, files, partial, stats,
+                false, 0, 0, 0);
+    }
+
+    private ExportResult(String inputFile, long totalRows, int malformedRows, long exportedRows, long exportedBytes,
+                         long transfers, List<Path> files, PartialScan partial, RunStats stats,
+                         boolean sorted, int sortRuns, long spilledBytes, int mergePasses) {
+        this.inputFile = inputFile;
+        this.totalRows = totalRows;
+        this.malformedRows = malformedRows;
+        this.exportedRows = exportedRows;
+        this.exportedBytes = exportedBytes;
+        this.transfers = transfers;
+        this.files = List.copyOf(files);
+        this.partial = partial;
+        this.stats = stats;
+        this.sorted = sorted;
+        this.sortRuns = sortRuns;
+        this.spilledBytes = spilledBytes;
+        this.mergePasses = mergePasses;
+    }
+
+    /** @return a copy recording how the rows were sorted, or this result if {@code sorter} is null */
+    public ExportResult withSort(ExternalSorter sorter) {
+        if (sorter == null) {
+            return this;
+        }
+        return new ExportResult(inputFile, totalRows, malformedRows, exportedRows, exportedBytes, transfers, files,
+                partial, stats, true, sorter.getRuns(), sorter.getSpilledBytes(), sorter.getMergePasses());
+    }
+
+    public String getInputFile() { return inputFile; }
+    public long getTotalRows() { return totalRows; }
+    public int getMalformedRows() { return malformedRows; }
+    /** @return rows that matched the filter and were copied out */
+    public long getExportedRows() { return exportedRows; }
+    /** @return bytes of the exported rows, not counting the header line of each file */
+    public long getExportedBytes() { return exportedBytes; }
+    /** @return runs of consecutive matching rows long enough to be copied from file to file in one transfer */
+    public long getTransfers() { return transfers; }
+    /** @return the export file, or its shards when several threads wrote them */
+    public List<Path> getFiles() { return files; }
+    /** @return how much of the input was scanned if the time budget ran out, else null */
+    public PartialScan getPartial() { return partial; }
+    public RunStats getStats() { return stats; }
+    /** @return whether the rows were sorted by {@code --order-by} */
+    public boolean isSorted() { return sorted; }
+    /** @return sorted runs generated, including those that never left memory */
+    public int getSortRuns() { return sortRuns; }
+    /** @return bytes written to temp run files, intermediate merge passes included */
+    public long getSpilledBytes() { return spilledBytes; }
+    /** @return merge passes over spilled runs before the final merge */
+    public int getMergePasses() { return mergePasses; }
+}
@@ -0,0 +1,400 @@
+package com.project.csvanalyser.cli;
+
+import com.project.csvanalyser.csv.CsvBlock;
+import com.project.csvanalyser.csv.CsvBlockReader;
+import com.project.csvanalyser.csv.CsvBlockTokenizer;
+import com.project.csvanalyser.csv.CsvRowView;
+import com.project.csvanalyser.csv.StructuralScanner;
+import com.project.csvanalyser.filter.FilterParser;
+import com.project.csvanalyser.filter.RowPredicate;
+import com.project.csvanalyser.join.BroadcastJoin;
+import com.project.csvanalyser.schema.Schema;
+import com.project.csvanalyser.sort.ExternalSorter;
+import com.project.csvanalyser.sort.KeyEncoder;
+import com.project.csvanalyser.sort.RunGenerator;
+import com.project.csvanalyser.sort.SortKey;
+import com.project.csvanalyser.stats.RunStats;
+import com.project.csvanalyser.stats.ScanProgress;
+
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * Scan for {@code --export}: copies the rows that match the filter, as the original bytes, into new CSV files. The
+ * structure is that of {@link PipelinedScan}: a reader thread cuts the input into blocks at record boundaries, and
+ * workers tokenize and filter whole blocks. A worker never re-encodes a row. It tracks runs of consecutive matching
+ * records in the block and copies each run as one byte range. A run of at least {@link #TRANSFER_MIN_BYTES} goes to
+ * {@link FileChannel#transferTo}, which copies that range of the input file into the worker's output file in one call
+ * (in the kernel, where the platform supports it); a block where every row matches is one transfer. Shorter runs are
+ * copied from the block, already in memory, into an output buffer written when full: a system call per run of one or
+ * two rows would cost more than the rows themselves.
+ * <p>
+ * Each worker writes its own shard, starting with the input's header line, so workers never contend on an output.
+ * With one worker the shard is the export file itself, in input order. With several, a shard holds whole blocks, in
+ * input order within the shard; together the shards hold every matching row once.
+ * <p>
+ * Malformed rows are skipped and logged, as in the aggregating scans. A last record without a line terminator gets one,
+ * so shards always end on a record boundary. When the {@link QueryControl} says stop, the scan ends within about one
+ * block per worker, and every shard holds complete rows only.
+ * <p>
+ * With {@code --order-by} the workers copy nothing themselves: each feeds the matching rows, with their keys, to its own
+ * {@link RunGenerator}, so runs are sorted and spilled in parallel, and once the input is done the
+ * {@link ExternalSorter} merges them into the one export file, after the header line. The reader types the key columns
+ * from the first block, as {@link PipelinedScan} does for batched scans, before any worker encodes a key.
+ */
+final class ExportScan {
+
+    /** Runs this long or longer are transferred from the input file; shorter ones are buffered. */
+    static final int TRANSFER_MIN_BYTES = 64 << 10;
+    private static final int OUTPUT_BUFFER_BYTES = 1 << 20;
+
+    private final CsvBlockReader reader;
+    private final BlockPipeline pipeline;
+    private final FileChannel input;
+    private final List<String> header;
+    private final BroadcastJoin join;
+    private final String filterExpression;
+    private final char delimiter;
+    private final StructuralScanner scanner;
+    private final List<Worker> workers = new ArrayList<>();
+    private final QueryControl control;
+    private final Path output;
+    private final List<SortKey> orderBy;
+    private final Schema.Sampler sampler;
+    private final ExternalSorter sorter;
+    private long mergeNanos;
+    private long mergeCpuNanos;
+
+    /**
+     * @param reader  positioned after the header line, whose bytes are {@code [0, reader.getDataStart())} of the input
+     * @param input   the same file, read positionally to transfer matching rows
+     * @param header  columns of the rows, joined ones included; joined columns can be filtered on but are not exported
+     * @param join    bound to {@code header}, or null without {@code --join}
+     * @param shards  one output file per worker; with a sorter, the single export file
+     * @param sorter  sorts the rows by {@code orderBy}, or null to copy them in input order
+     * @param sampler types the {@code orderBy} columns; used only with a sorter
+     * @param threads workers generating sorted runs; without a sorter there is one worker per shard
+     */
+    ExportScan(CsvBlockReader reader, FileChannel input, List<String> header, BroadcastJoin join,
+               String filterExpression, char delimiter, List<Path> shards, ExternalSorter sorter,
+               List<SortKey> orderBy, Schema.Sampler sampler, int threads, String sourceName, QueryControl control) {
+        this.reader = reader;
+        this.input = input;
+        this.header = header;
+        this.join = join;
+        this.filterExpression = filterExpression;
+        FilterParser.parse(filterExpression, header);
+        this.delimiter = delimiter;
+        this.scanner = StructuralScanner.forDelimiter(delimiter);
+        this.control = control;
+        this.sorter = sorter;
+        this.orderBy = orderBy;
+        this.sampler = sorter == null ? null : sampler;
+        this.output = sorter == null ? null : shards.get(0);
+        if (sorter != null) {
+            new KeyEncoder(orderBy, header, null);
+        }
+        int workerCount = sorter == null ? shards.size() : Math.max(1, threads);
+        this.pipeline = new BlockPipeline(reader, workerCount, header, join, delimiter, this.sampler, sourceName,
+                control);
+        for (int i = 0; i < workerCount; i++) {
+            workers.add(sorter == null ? new Worker(shards.get(i)) : new Worker(sorter.generator(workerCount)));
+        }
+    }
+
+    /**
+     * Runs the scan to completion and records per-stage timings. Every shard is closed, complete or not; the first
+     * failure on any thread cancels the rest and is rethrown here, leaving the shards as far as they were written.
+     */
+    void run(RunStats stats, ScanProgress progress) throws IOException {
+        try {
+            for (Worker w : workers) {
+                w.open();
+            }
+            pipeline.run(workers, "csv-export-", () -> progress.update(pipeline.getRowsDone(), 0, 0));
+            for (Worker w : workers) {
+                w.flush();
+            }
+            if (sorter != null) {
+                merge();
+            }
+        } finally {
+            for (Worker w : workers) {
+                w.close();
+            }
+        }
+        control.throwIfCancelled();
+        addStages(stats);
+    }
+
+    /** Writes the header line and then every run, merged, to the export file; the workers finished their runs. */
+    private void merge() throws IOException {
+        long start = System.nanoTime();
+        long cpuStart = RunStats.threadCpuNanos();
+        try (FileChannel out = FileChannel.open(output, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+             BufferedOutputStream rows = new BufferedOutputStream(Channels.newOutputStream(out),
+                     OUTPUT_BUFFER_BYTES)) {
+            transferAll(0, reader.getDataStart(), out);
+            sorter.merge(rows);
+        }
+        mergeNanos = System.nanoTime() - start;
+        mergeCpuNanos = RunStats.threadCpuNanos() - cpuStart;
+    }
+
+    /** Copies {@code [position, position + count)} of the input to the end of {@code out}. */
+    private void transferAll(long position, long count, FileChannel out) throws IOException {
+        long done = 0;
+        while (done < count) {
+            long n = input.transferTo(position + done, count - done, out);
+            if (n <= 0 && position + done >= input.size()) {
+                throw new EOFException("File shrank while exporting at byte " + (position + done));
+            }
+            done += n;
+        }
+    }
+
+    private void addStages(RunStats stats) {
+        pipeline.addReaderStages(stats);
+        for (Worker w : workers) {
+            stats.addStage("index", w.indexNanos, w.indexCpuNanos);
+            stats.addStage("filter", w.busyNanos - w.indexNanos - w.transferNanos - w.sortNanos,
+                    Math.max(0, w.cpuNanos - w.indexCpuNanos - w.transferCpuNanos - w.sortCpuNanos));
+            stats.addStage("transfer", w.transferNanos, w.transferCpuNanos);
+            stats.addOtherThreadAllocation(w.allocatedBytes);
+        }
+        if (sorter != null) {
+            long[] runs = sorter.getRunNanos();
+            stats.addStage("sortRuns", runs[0], runs[1]);
+            stats.addStage("merge", mergeNanos, mergeCpuNanos);
+        }
+    }
+
+    long getParsedRows() {
+        long n = 0;
+        for (Worker w : workers) n += w.parsed;
+        return n;
+    }
+
+    /** @return rows copied to the shards */
+    long getExportedRows() {
+        long n = 0;
+        for (Worker w : workers) n += w.exported;
+        return n;
+    }
+
+    /** @return bytes of matching rows copied to the shards, not counting their header lines */
+    long getExportedBytes() {
+        long n = 0;
+        for (Worker w : workers) n += w.exportedBytes;
+        return n;
+    }
+
+    /** @return runs of at least {@link #TRANSFER_MIN_BYTES} copied with {@link FileChannel#transferTo} */
+    long getTransfers() {
+        long n = 0;
+        for (Worker w : workers) n += w.transfers;
+        return n;
+    }
+
+    int getMalformedRows() {
+        return pipeline.getMalformedRows();
+    }
+
+    /** @return bytes of the blocks the workers scanned; less than was read if the scan was stopped */
+    long getProcessedBytes() {
+        return pipeline.getProcessedBytes();
+    }
+
+    /**
+     * Indexes, tokenizes and filters whole blocks, and transfers each run of matching rows to its shard, or with a
+     * sorter adds each matching row to its run generator.
+     */
+    private final class Worker implements Callable<Void> {
+        private final Path shard;
+        private final RunGenerator generator;
+        private KeyEncoder keys;
+        private final CsvBlockTokenizer records = new CsvBlockTokenizer(delimiter, pipeline.fileColumns(), scanner);
+        private final CsvRowView row = new CsvRowView(header);
+        private final BroadcastJoin.Lookup lookup = join == null ? null : join.lookup();
+        private final RowPredicate filter = FilterParser.parse(filterExpression, header);
+        private FileChannel out;
+        private final ByteBuffer buffer;
+        private long parsed;
+        private long exported;
+        private long exportedBytes;
+        private long transfers;
+        private long busyNanos;
+        private long cpuNanos;
+        private long indexNanos;
+        private long indexCpuNanos;
+        private long transferNanos;
+        private long transferCpuNanos;
+        private long allocatedBytes;
+        private long sortNanos;
+        private long sortCpuNanos;
+
+        Worker(Path shard) {
+            this.shard = shard;
+            this.generator = null;
+            this.buffer = ByteBuffer.allocateDirect(OUTPUT_BUFFER_BYTES);
+        }
+
+        Worker(RunGenerator generator) {
+            this.shard = null;
+            this.generator = generator;
+            this.buffer = ByteBuffer.allocate(0);
+        }
+
+        /** Creates the shard and copies the input's header line into it. */
+        void open() throws IOException {
+            if (shard == null) {
+                return;
+            }
+            out = FileChannel.open(shard, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            transfer(0, reader.getDataStart());
+        }
+
+        void close() throws IOException {
+            if (out != null) {
+                out.close();
+            }
+        }
+
+        @Override
+        public Void call() throws IOException, InterruptedException {
+            long allocStart = RunStats.threadAllocatedBytes();
+            for (CsvBlock block; (block = pipeline.next()) != null; ) {
+                long start = System.nanoTime();
+                long cpuStart = RunStats.threadCpuNanos();
+                long before = parsed;
+                process(block);
+                busyNanos += System.nanoTime() - start;
+                cpuNanos += RunStats.threadCpuNanos() - cpuStart;
+                pipeline.done(block, parsed - before);
+            }
+            if (generator != null) {
+                generator.finish();
+            }
+            allocatedBytes = RunStats.threadAllocatedBytes() - allocStart;
+            return null;
+        }
+
+        /**
+         * A run starts at the first byte of a matching record and ends at the first byte of the next record that does
+         * not match (or the block's end), so it carries the line terminators and any blank lines between its rows.
+         */
+        private void process(CsvBlock block) throws IOException {
+            byte[] data = block.getData();
+            String[] values = row.valueArray();
+            long indexStart = System.nanoTime();
+            long indexCpuStart = RunStats.threadCpuNanos();
+            records.reset(data, block.getLength());
+            indexNanos += System.nanoTime() - indexStart;
+            indexCpuNanos += RunStats.threadCpuNanos() - indexCpuStart;
+            int runStart = -1;
+            while (records.nextRecord()) {
+                boolean matches;
+                if (!records.tokenize(values)) {
+                    pipeline.malformed(data, records.getRecordStart(), records.getRecordEnd());
+                    matches = false;
+                } else {
+                    parsed++;
+                    if (lookup != null) {
+                        lookup.join(values);
+                    }
+                    matches = filter.test(row);
+                }
+                if (matches && generator != null) {
+                    exported++;
+                    add(data, values, block.getOffset());
+                } else if (matches) {
+                    exported++;
+                    if (runStart < 0) runStart = records.getRecordStart();
+                } else if (runStart >= 0) {
+                    transferRun(block, runStart, records.getRecordStart());
+                    runStart = -1;
+                }
+            }
+            if (runStart >= 0) {
+                transferRun(block, runStart, block.getLength());
+            }
+        }
+
+        /** Adds the current record, which matched, to the run generator; its line terminator is not kept. */
+        private void add(byte[] data, String[] values, long blockOffset) throws IOException {
+            if (keys == null) {
+                keys = new KeyEncoder(orderBy, header, sampler.schema());
+            }
+            int start = records.getRecordStart();
+            int end = records.getRecordEnd();
+            keys.encode(values, blockOffset + start);
+            long before = generator.getNanos();
+            long cpuBefore = generator.getCpuNanos();
+            generator.add(keys.bytes(), keys.length(), data, start, end);
+            sortNanos += generator.getNanos() - before;
+            sortCpuNanos += generator.getCpuNanos() - cpuBefore;
+            exportedBytes += end - start + 1;
+        }
+
+        private void transferRun(CsvBlock block, int start, int end) throws IOException {
+            int length = end - start;
+            exportedBytes += length;
+            if (length >= TRANSFER_MIN_BYTES) {
+                flush();
+                transfers++;
+                transfer(block.getOffset() + start, length);
+            } else {
+                if (buffer.remaining() < length) flush();
+                buffer.put(block.getData(), start, length);
+            }
+            if (block.getData()[end - 1] != '\n') {
+                // the input's last record has no line terminator
+                if (!buffer.hasRemaining()) flush();
+                buffer.put((byte) '\n');
+                exportedBytes++;
+            }
+        }
+
+        private void flush() throws IOException {
+            if (out == null) {
+                return;
+            }
+            long start = System.nanoTime();
+            long cpuStart = RunStats.threadCpuNanos();
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+            buffer.clear();
+            transferNanos += System.nanoTime() - start;
+            transferCpuNanos += RunStats.threadCpuNanos() - cpuStart;
+        }
+
+        /** Copies {@code [position, position + count)} of the input to the end of the shard. */
+        private void transfer(long position, long count) throws IOException {
+            long start = System.nanoTime();
+            long cpuStart = RunStats.threadCpuNanos();
+            long done = 0;
+            while (done < count) {
+                long n = input.transferTo(position + done, count - done, out);
+                if (n <= 0 && position + done >= input.size()) {
+                    throw new EOFException("File shrank while exporting at byte " + (position + done));
+                }
+                done += n;
+            }
+            transferNanos += System.nanoTime() - start;
+            transferCpuNanos += RunStats.threadCpuNanos() - cpuStart;
+        }
+    }
+}
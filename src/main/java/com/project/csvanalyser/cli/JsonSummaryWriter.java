@@ -0,0 +1,370 @@
+package com.project.csvanalyser.cli;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.project.csvanalyser.aggregation.AggregationState;
+import com.project.csvanalyser.aggregation.GroupKey;
+import com.project.csvanalyser.aggregation.GroupingSets;
+import com.project.csvanalyser.aggregation.Ranking;
+import com.project.csvanalyser.aggregation.RankingSpec;
+import com.project.csvanalyser.aggregation.SampleEstimate;
+import com.project.csvanalyser.aggregation.TopN;
+import com.project.csvanalyser.stats.RunStats;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Writes the JSON summary incrementally through a Jackson {@link JsonGenerator}: header fields, then one group at a
+ * time, then top-N and stats. Nothing is buffered beyond the generator's own buffer, so memory for output stays
+ * constant however many groups there are. Aggregation labels are resolved once per writer, not per group.
+ * <p>
+ * Call {@link #writeHeader}, {@link #writeGroup} for each group, then {@link #finish}. The target stream is flushed
+ * but not closed. When totals are only known after the groups (a sorted-input scan emits groups while it reads), use
+ * {@link #writeHeader(String)} and {@link #finish(long, int, List, RunStats)}, which write the totals after the groups.
+ */
+public final class JsonSummaryWriter {
+
+    private static final Pattern FUNC_PATTERN = Pattern.compile("(sum|avg|min|max)\\s*\\(\\s*([a-zA-Z0-9_]+)\\s*\\)");
+    private static final JsonFactory FACTORY = new JsonFactory()
+            .configure(JsonGenerator.Feature.AUTO_CLOSE_TARGET, false);
+
+    private final JsonGenerator gen;
+    private final String[] groupColumns;
+    private final String topNMetric;
+    private final String[] ops;
+    private final String[] columns;
+    private final String[] fields;
+    private SampleEstimate sample;
+    private PartialScan partial;
+    private SchemaReport schema;
+
+    public JsonSummaryWriter(OutputStream out, List<String> groupColumns, List<String> aggregationSpecs,
+                             String topNMetric) throws IOException {
+        this.gen = FACTORY.createGenerator(out, JsonEncoding.UTF8).useDefaultPrettyPrinter();
+        this.groupColumns = groupColumns.toArray(new String[0]);
+        this.topNMetric = topNMetric;
+        // field name -> {op, column}; a repeated aggregation is written once
+        Map<String, String[]> byField = new LinkedHashMap<>();
+        for (String spec : aggregationSpecs) {
+            Matcher m = FUNC_PATTERN.matcher(spec.trim());
+            if (m.matches()) {
+                String op = m.group(1).toLowerCase();
+                byField.putIfAbsent(op + "_" + m.group(2), new String[] {op, m.group(2)});
+            }
+        }
+        List<String> fieldList = new ArrayList<>(byField.keySet());
+        this.fields = fieldList.toArray(new String[0]);
+        this.ops = new String[fields.length];
+        this.columns = new String[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            String[] opAndColumn = byField.get(fields[i]);
+            ops[i] = opAndColumn[0];
+            columns[i] = opAndColumn[1];
+        }
+    }
+
+    /**
+     * Marks the summary as estimated from a sample: {@link #writeHeader(String, long, int)} adds a {@code sample}
+     * object, and each group's {@code count}, {@code sum_*} and {@code avg_*} is followed by a {@code <field>_ci95}
+     * array holding the interval bounds, when the interval is available. Call before writing the header.
+     */
+    public void setSample(SampleEstimate sample) {
+        this.sample = sample;
+    }
+
+    /**
+     * Marks the summary as covering only part of the input: {@link #finish} writes a {@code partial} object with the
+     * bytes and rows processed before the time budget ran out. Call any time before finishing.
+     */
+    public void setPartial(PartialScan partial) {
+        this.partial = partial;
+    }
+
+    /**
+     * Adds the column types the scan used to the summary: {@link #finish} writes a {@code schema} object of type name by
+     * column and, if any cell did not fit its type, a {@code typeViolations} object of counts by column. Call any time
+     * before finishing; null writes neither.
+     */
+    public void setSchema(SchemaReport schema) {
+        this.schema = schema;
+    }
+
+    /**
+     * Opens the root object, writes the run totals and opens the groups array.
+     */
+    public void writeHeader(String inputFile, long totalRows, int malformedRows) throws IOException {
+        gen.writeStartObject();
+        gen.writeStringField("inputFile", inputFile);
+        gen.writeNumberField("totalRows", totalRows);
+        gen.writeNumberField("malformedRows", malformedRows);
+        if (sample != null) {
+            gen.writeObjectFieldStart("sample");
+            gen.writeNumberField("fraction", sample.getFraction());
+            gen.writeNumberField("seed", sample.getSeed());
+            gen.writeNumberField("blocksSampled", sample.getBlocksSampled());
+            gen.writeNumberField("blocksTotal", sample.getBlocksTotal());
+            gen.writeNumberField("rowsSampled", sample.getRowsSampled());
+            gen.writeNumberField("confidence", SampleEstimate.CONFIDENCE);
+            gen.writeEndObject();
+        }
+        gen.writeArrayFieldStart("groups");
+    }
+
+    /**
+     * Opens the root object and the groups array; the totals follow the groups in
+     * {@link #finish(long, int, List, RunStats)}.
+     */
+    public void writeHeader(String inputFile) throws IOException {
+        gen.writeStartObject();
+        gen.writeStringField("inputFile", inputFile);
+        gen.writeArrayFieldStart("groups");
+    }
+
+    public void writeGroup(GroupKey key, AggregationState state) throws IOException {
+        writeGroup(null, key, state);
+    }
+
+    /**
+     * Writes a group of one grouping set. Its {@code groupKey} has every group column, null where the set rolls the
+     * column up, and is followed by {@code groupingSet} (the set's columns) and {@code groupingId} (see
+     * {@link GroupingSets}). Sample intervals are written for the finest set only, whose groups were sampled.
+     *
+     * @param level the set {@code key} belongs to, or null for a plain group
+     */
+    public void writeGroup(GroupingSets.Level level, GroupKey key, AggregationState state) throws IOException {
+        gen.writeStartObject();
+        gen.writeObjectFieldStart("groupKey");
+        if (level == null || level.isFinest()) {
+            writeKeyFields(key);
+        } else {
+            writeRolledUpKeyFields(level.getColumns(), key);
+        }
+        gen.writeEndObject();
+        if (level != null) {
+            gen.writeArrayFieldStart("groupingSet");
+            for (String col : level.getColumns()) {
+                gen.writeString(col);
+            }
+            gen.writeEndArray();
+            gen.writeNumberField("groupingId", level.getGroupingId());
+        }
+        SampleEstimate sample = level == null || level.isFinest() ? this.sample : null;
+        gen.writeNumberField("count", state.getCount());
+        if (sample != null) {
+            writeInterval("count", sample.count(key));
+        }
+        for (int i = 0; i < fields.length; i++) {
+            String col = columns[i];
+            switch (ops[i]) {
+                case "sum" -> {
+                    gen.writeNumberField(fields[i], state.getSum(col));
+                    if (sample != null) writeInterval(fields[i], sample.sum(key, col));
+                }
+                case "avg" -> {
+                    gen.writeNumberField(fields[i], state.getAvg(col));
+                    if (sample != null) writeInterval(fields[i], sample.avg(key, col));
+                }
+                case "min" -> writeNullable(fields[i], state.getMin(col));
+                case "max" -> writeNullable(fields[i], state.getMax(col));
+                default -> { }
+            }
+        }
+        gen.writeEndObject();
+    }
+
+    /**
+     * Closes the groups array, writes top-N and (if present) the run profile, and closes the root object. An approximate
+     * top-N is flagged with {@code topNApproximate}, and its entries carry {@code errorBound} and {@code guaranteed}.
+     * Extra rankings, if any, follow top-N as a {@code rankings} array.
+     *
+     * @param stats run profile, or null to omit the stats block
+     */
+    public void finish(List<TopN.TopNEntry> topN, List<Ranking.Result> rankings, RunStats stats) throws IOException {
+        gen.writeEndArray();
+        writeTail(topN, rankings, stats);
+    }
+
+    /**
+     * Like {@link #finish(List, List, RunStats)}, for a summary opened with {@link #writeHeader(String)}: the run totals
+     * are written after the groups array.
+     */
+    public void finish(long totalRows, int malformedRows, List<TopN.TopNEntry> topN, List<Ranking.Result> rankings,
+                       RunStats stats) throws IOException {
+        gen.writeEndArray();
+        gen.writeNumberField("totalRows", totalRows);
+        gen.writeNumberField("malformedRows", malformedRows);
+        writeTail(topN, rankings, stats);
+    }
+
+    private void writeTail(List<TopN.TopNEntry> topN, List<Ranking.Result> rankings, RunStats stats) throws IOException {
+        if (partial != null) {
+            gen.writeObjectFieldStart("partial");
+            gen.writeStringField("reason", "timeBudget");
+            gen.writeNumberField("bytesProcessed", partial.getBytesProcessed());
+            gen.writeNumberField("bytesTotal", partial.getBytesTotal());
+            gen.writeNumberField("byteFraction", round(partial.getByteFraction()));
+            gen.writeNumberField("rowsProcessed", partial.getRowsProcessed());
+            gen.writeNumberField("estimatedTotalRows", partial.getEstimatedTotalRows());
+            gen.writeBooleanField("extrapolated", partial.isExtrapolated());
+            gen.writeEndObject();
+        }
+        if (schema != null) {
+            gen.writeObjectFieldStart("schema");
+            for (Map.Entry<String, String> e : schema.getTypes().entrySet()) {
+                gen.writeStringField(e.getKey(), e.getValue());
+            }
+            gen.writeEndObject();
+            if (!schema.getViolations().isEmpty()) {
+                gen.writeObjectFieldStart("typeViolations");
+                for (Map.Entry<String, Long> e : schema.getViolations().entrySet()) {
+                    gen.writeNumberField(e.getKey(), e.getValue());
+                }
+                gen.writeEndObject();
+            }
+        }
+        boolean approximate = !topN.isEmpty() && topN.get(0).isApproximate();
+        if (approximate) {
+            gen.writeBooleanField("topNApproximate", true);
+        }
+        gen.writeArrayFieldStart("topN");
+        for (TopN.TopNEntry entry : topN) {
+            gen.writeStartObject();
+            writeKeyFields(entry.getGroupKey());
+            gen.writeNumberField(topNMetric, entry.getMetricValue());
+            if (approximate) {
+                gen.writeNumberField("errorBound", entry.getErrorBound());
+                gen.writeBooleanField("guaranteed", entry.isGuaranteed());
+            }
+            gen.writeEndObject();
+        }
+        gen.writeEndArray();
+        if (!rankings.isEmpty()) {
+            writeRankings(rankings);
+        }
+        if (stats != null) {
+            gen.writeFieldName("stats");
+            writeStats(stats);
+        }
+        gen.writeEndObject();
+        gen.flush();
+    }
+
+    /**
+     * One object per ranking: metric, k, per columns, and a partition per parent key with its top-K groups.
+     */
+    private void writeRankings(List<Ranking.Result> rankings) throws IOException {
+        gen.writeArrayFieldStart("rankings");
+        for (Ranking.Result ranking : rankings) {
+            RankingSpec spec = ranking.getSpec();
+            gen.writeStartObject();
+            gen.writeStringField("metric", spec.getMetric());
+            gen.writeNumberField("k", spec.getK());
+            gen.writeArrayFieldStart("per");
+            for (String col : spec.getPerColumns()) {
+                gen.writeString(col);
+            }
+            gen.writeEndArray();
+            gen.writeArrayFieldStart("partitions");
+            for (Ranking.Partition partition : ranking.getPartitions()) {
+                gen.writeStartObject();
+                gen.writeObjectFieldStart("parent");
+                List<String> parentValues = partition.getParent().getValues();
+                for (int i = 0; i < spec.getPerColumns().size(); i++) {
+                    gen.writeStringField(spec.getPerColumns().get(i), parentValues.get(i));
+                }
+                gen.writeEndObject();
+                gen.writeArrayFieldStart("top");
+                for (TopN.TopNEntry entry : partition.getTop()) {
+                    gen.writeStartObject();
+                    writeKeyFields(entry.getGroupKey());
+                    gen.writeNumberField(spec.getMetric(), entry.getMetricValue());
+                    gen.writeEndObject();
+                }
+                gen.writeEndArray();
+                gen.writeEndObject();
+            }
+            gen.writeEndArray();
+            gen.writeEndObject();
+        }
+        gen.writeEndArray();
+    }
+
+    private void writeKeyFields(GroupKey key) throws IOException {
+        List<String> values = key.getValues();
+        for (int i = 0; i < groupColumns.length; i++) {
+            gen.writeStringField(groupColumns[i], i < values.size() ? values.get(i) : "");
+        }
+    }
+
+    /** Key fields of a coarser set's group: its own columns' values, null for the columns rolled up. */
+    private void writeRolledUpKeyFields(List<String> kept, GroupKey key) throws IOException {
+        List<String> values = key.getValues();
+        int k = 0;
+        for (String col : groupColumns) {
+            if (k < kept.size() && kept.get(k).equals(col)) {
+                gen.writeStringField(col, values.get(k++));
+            } else {
+                gen.writeNullField(col);
+            }
+        }
+    }
+
+    private void writeInterval(String field, SampleEstimate.Interval interval) throws IOException {
+        if (interval != null) {
+            gen.writeArrayFieldStart(field + "_ci95");
+            gen.writeNumber(interval.getLow());
+            gen.writeNumber(interval.getHigh());
+            gen.writeEndArray();
+        }
+    }
+
+    private void writeNullable(String field, Double value) throws IOException {
+        if (value == null) {
+            gen.writeNullField(field);
+        } else {
+            gen.writeNumberField(field, value);
+        }
+    }
+
+    /**
+     * Run profile; wallMillis covers the analysis, while the report stage (when present) is timed separately after it.
+     */
+    private void writeStats(RunStats stats) throws IOException {
+        gen.writeStartObject();
+        gen.writeNumberField("wallMillis", millis(stats.getWallNanos()));
+        gen.writeNumberField("bytesRead", stats.getBytesRead());
+        gen.writeNumberField("rowsPerSecond", Math.round(stats.getRowsPerSecond()));
+        gen.writeNumberField("megabytesPerSecond", round(stats.getMegabytesPerSecond()));
+        gen.writeNumberField("filterSelectivity", round(stats.getFilterSelectivity()));
+        gen.writeNumberField("groupCount", stats.getGroupCount());
+        gen.writeNumberField("peakHeapBytes", stats.getPeakHeapBytes());
+        gen.writeNumberField("gcPauseMillis", stats.getGcPauseMillis());
+        gen.writeNumberField("gcCount", stats.getGcCount());
+        gen.writeNumberField("allocatedBytesPerRow", round(stats.getAllocatedBytesPerRow()));
+        gen.writeObjectFieldStart("stages");
+        for (Map.Entry<String, RunStats.Stage> e : stats.getStages().entrySet()) {
+            gen.writeObjectFieldStart(e.getKey());
+            gen.writeNumberField("wallMillis", millis(e.getValue().getWallNanos()));
+            gen.writeNumberField("cpuMillis", millis(e.getValue().getCpuNanos()));
+            gen.writeEndObject();
+        }
+        gen.writeEndObject();
+        gen.writeEndObject();
+    }
+
+    private static double millis(long nanos) {
+        return round(nanos / 1e6);
+    }
+
+    private static double round(double d) {
+        return Math.round(d * 1000) / 1000.0;
+    }
+}
@@ -0,0 +1,49 @@
+package com.project.csvanalyser.cli;
+
+import java.io.Serializable;
+
+/**
+ * How much of the input a query read before its {@code --time-budget} ran out. Attached to results of scans that stopped
+ * early; complete results carry none. Bytes are counted as consumed by the parser, so with buffering they can run a
+ * little ahead of the rows actually processed.
+ */
+public final class PartialScan implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long bytesProcessed;
+    private final long bytesTotal;
+    private final long rowsProcessed;
+    private final boolean extrapolated;
+
+    public PartialScan(long bytesProcessed, long bytesTotal, long rowsProcessed, boolean extrapolated) {
+        this.bytesProcessed = bytesProcessed;
+        this.bytesTotal = bytesTotal;
+        this.rowsProcessed = rowsProcessed;
+        this.extrapolated = extrapolated;
+    }
+
+    public long getBytesProcessed() { return bytesProcessed; }
+
+    /** @return bytes the scan would have read in full: the file size, or the sampled bytes of a --sample run */
+    public long getBytesTotal() { return bytesTotal; }
+
+    public long getRowsProcessed() { return rowsProcessed; }
+
+    /** @return whether counts and sums were scaled up by {@link #getScale()} to estimate the full input */
+    public boolean isExtrapolated() { return extrapolated; }
+
+    public double getByteFraction() {
+        return bytesTotal == 0 ? 1 : Math.min(1, (double) bytesProcessed / bytesTotal);
+    }
+
+    /** @return rows the whole input is expected to hold, assuming the rows read are of typical size */
+    public long getEstimatedTotalRows() {
+        return bytesProcessed == 0 ? 0 : Math.round(rowsProcessed * getScale());
+    }
+
+    /** @return factor from the rows read to the whole input: bytes total over bytes processed */
+    public double getScale() {
+        return bytesProcessed == 0 ? 1 : Math.max(1, (double) bytesTotal / bytesProcessed);
+    }
+}
@@ -5,28 +5,44 @@ import com.lowagie.text.Font;
 import com.lowagie.text.Paragraph;
 import com.lowagie.text.pdf.PdfWriter;
 
+import java.io.BufferedOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 
 /**
- * Writes the human-readable report text to a PDF file.
+ * Writes the human-readable report to a PDF file as it is generated. OpenPDF emits each page to the file once it is
+ * full, so only the current page is held in memory.
  */
-final class PdfReportWriter {
+final class PdfReportWriter implements ReportSink {
 
     private static final float FONT_SIZE = 11f;
 
-    static void write(String reportText, Path outputPath) throws IOException {
-        Document doc = new Document();
-        try (var fos = Files.newOutputStream(outputPath)) {
-            PdfWriter.getInstance(doc, fos);
-            doc.open();
-            Font font = new Font(Font.HELVETICA, FONT_SIZE, Font.NORMAL);
-            Font boldFont = new Font(Font.HELVETICA, FONT_SIZE, Font.BOLD);
-            String[] lines = reportText.split("\n");
-            for (String line : lines) {
-                boolean bold = line.startsWith("GROUP:") || line.startsWith("TOP ") || line.equals("---");
-                doc.add(new Paragraph(line, bold ? boldFont : font));
+    private final OutputStream out;
+    private final Document doc = new Document();
+    private final Font font = new Font(Font.HELVETICA, FONT_SIZE, Font.NORMAL);
+    private final Font boldFont = new Font(Font.HELVETICA, FONT_SIZE, Font.BOLD);
+    private boolean empty = true;
+
+    PdfReportWriter(Path outputPath) throws IOException {
+        this.out = new BufferedOutputStream(Files.newOutputStream(outputPath));
+        PdfWriter.getInstance(doc, out);
+        doc.open();
+    }
+
+    @Override
+    public void line(String line) {
+        boolean bold = line.startsWith("GROUP:") || line.startsWith("TOP ") || line.equals("---");
+        doc.add(new Paragraph(line, bold ? boldFont : font));
+        empty = false;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try (out) {
+            if (empty) {
+                doc.add(new Paragraph("", font));
             }
             doc.close();
         }
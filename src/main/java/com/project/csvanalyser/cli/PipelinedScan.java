@@ -0,0 +1,262 @@
+package com.project.csvanalyser.cli;
+
+import com.project.csvanalyser.aggregation.AggregationSpec;
+import com.project.csvanalyser.aggregation.StreamAggregator;
+import com.project.csvanalyser.columnar.ColumnBatch;
+import com.project.csvanalyser.csv.CsvBlock;
+import com.project.csvanalyser.csv.CsvBlockReader;
+import com.project.csvanalyser.csv.CsvBlockTokenizer;
+import com.project.csvanalyser.csv.CsvRowView;
+import com.project.csvanalyser.csv.StructuralScanner;
+import com.project.csvanalyser.filter.FilterParser;
+import com.project.csvanalyser.filter.RowPredicate;
+import com.project.csvanalyser.join.BroadcastJoin;
+import com.project.csvanalyser.schema.Schema;
+import com.project.csvanalyser.stats.RunStats;
+import com.project.csvanalyser.stats.ScanProgress;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+/**
+ * Pipelined scan used when {@code --threads} is above 1. One reader thread fills raw byte blocks cut at record
+ * boundaries; N workers each take whole blocks, tokenize, filter and aggregate them into a private partial table;
+ * the tables are merged at the end. Workers index each block's structural bytes in one pass (with SIMD on request,
+ * see {@link StructuralScanner}) and tokenize records from the index. Blocks are preallocated and cycle through two
+ * bounded queues (free and full, see {@link BlockPipeline}), so a slow stage applies backpressure to the one before it
+ * and steady-state scanning allocates no buffers.
+ * <p>
+ * With a batch size above 0, workers gather the columns the query reads into a {@link ColumnBatch} and filter and
+ * aggregate a batch at a time: the filter narrows a selection vector over primitive columns and the aggregator reads
+ * only the selected positions (see {@link BatchExecutor}). Batches never span blocks. With a batch size of 0 each row
+ * is filtered and aggregated as it is tokenized.
+ * <p>
+ * Batched scans also type their columns: the reader feeds the rows of the first block to a {@link Schema.Sampler}
+ * before handing the block on, so every worker reads its batches with the same types and the file is still read once.
+ * <p>
+ * With {@code --join}, each worker joins its rows right after tokenizing them, through its own
+ * {@link BroadcastJoin.Lookup}; the reader keeps reading blocks while the tables load. A typed scan samples joined rows,
+ * so there the reader waits for the tables before handing on the first block.
+ * <p>
+ * Rows are aggregated out of order, so floating-point sums may differ from a sequential run in the last bits.
+ * <p>
+ * When the {@link QueryControl} says stop, the reader reads no further blocks and workers drop the blocks still
+ * queued, so the scan ends within about one block per worker.
+ */
+final class PipelinedScan {
+
+    private final BlockPipeline pipeline;
+    private final List<String> header;
+    private final BroadcastJoin join;
+    private final String filterExpression;
+    private final AggregationSpec spec;
+    private final int batchSize;
+    private final Schema.Sampler sampler;
+    private final char delimiter;
+    private final StructuralScanner scanner;
+    private final List<Worker> workers = new ArrayList<>();
+    private final QueryControl control;
+
+    /**
+     * @param header           columns of the rows, joined ones included
+     * @param join             bound to {@code header}, or null without {@code --join}
+     * @param filterExpression validated against the header here; each worker compiles its own predicate, as compiled
+     *                         filters adapt to the rows they see
+     * @param batchSize        rows per batch, or 0 to filter and aggregate row by row; must be 0 for sliding windows
+     * @param sampler          infers column types from the first block in batch mode; null leaves columns untyped
+     */
+    PipelinedScan(CsvBlockReader reader, List<String> header, BroadcastJoin join, String filterExpression,
+                  AggregationSpec spec, char delimiter, int threads, int batchSize, Schema.Sampler sampler,
+                  String sourceName, QueryControl control) {
+        this.header = header;
+        this.join = join;
+        this.filterExpression = filterExpression;
+        FilterParser.parse(filterExpression, header);
+        this.spec = spec;
+        this.batchSize = batchSize;
+        this.sampler = batchSize > 0 ? sampler : null;
+        this.delimiter = delimiter;
+        this.scanner = StructuralScanner.forDelimiter(delimiter);
+        this.control = control;
+        this.pipeline = new BlockPipeline(reader, threads, header, join, delimiter, this.sampler, sourceName, control);
+        for (int i = 0; i < threads; i++) {
+            workers.add(new Worker());
+        }
+    }
+
+    /**
+     * Runs the scan to completion and records per-stage timings. The first failure on any thread cancels the rest
+     * and is rethrown here.
+     */
+    void run(RunStats stats, ScanProgress progress) throws IOException {
+        pipeline.run(workers, "csv-worker-", () -> {
+            long groups = 0;
+            long stateBytes = 0;
+            for (Worker w : workers) {
+                groups += w.groupCount;
+                stateBytes += w.stateBytes;
+            }
+            progress.update(pipeline.getRowsDone(), groups, stateBytes);
+        });
+        control.throwIfCancelled();
+        addStages(stats);
+    }
+
+    private void addStages(RunStats stats) {
+        pipeline.addReaderStages(stats);
+        String[] names = {"tokenize", "filter", "aggregate"};
+        for (Worker w : workers) {
+            stats.addStage("index", w.indexNanos, w.indexCpuNanos);
+            BatchExecutor b = w.executor;
+            if (b != null) {
+                stats.addStage("tokenize", w.busyNanos - w.indexNanos - b.getFilterNanos() - b.getAggregateNanos(),
+                        Math.max(0, w.cpuNanos - w.indexCpuNanos - b.getFilterCpuNanos() - b.getAggregateCpuNanos()));
+                stats.addStage("filter", b.getFilterNanos(), b.getFilterCpuNanos());
+                stats.addStage("aggregate", b.getAggregateNanos(), b.getAggregateCpuNanos());
+                stats.addOtherThreadAllocation(w.allocatedBytes);
+                continue;
+            }
+            long[] wall = RunStats.split(w.sampled, w.busyNanos - w.indexNanos);
+            long[] cpu = RunStats.split(w.sampled, w.cpuNanos - w.indexCpuNanos);
+            for (int i = 0; i < names.length; i++) {
+                stats.addStage(names[i], wall[i], cpu[i]);
+            }
+            stats.addOtherThreadAllocation(w.allocatedBytes);
+        }
+    }
+
+    /**
+     * Merges the per-worker tables into the first worker's aggregator.
+     */
+    StreamAggregator mergedAggregator() {
+        StreamAggregator merged = workers.get(0).aggregator;
+        for (int i = 1; i < workers.size(); i++) {
+            merged.merge(workers.get(i).aggregator);
+        }
+        return merged;
+    }
+
+    long getParsedRows() {
+        long n = 0;
+        for (Worker w : workers) n += w.parsed;
+        return n;
+    }
+
+    long getMatchedRows() {
+        long n = 0;
+        for (Worker w : workers) n += w.executor != null ? w.executor.getMatched() : w.matched;
+        return n;
+    }
+
+    /** @return the column types of a batched scan and the cells that did not fit them, or null if it was not typed */
+    SchemaReport schemaReport() {
+        if (sampler == null) {
+            return null;
+        }
+        Map<String, Long> violations = new LinkedHashMap<>();
+        for (Worker w : workers) {
+            w.executor.getTypeViolations().forEach((column, n) -> violations.merge(column, n, Long::sum));
+        }
+        return new SchemaReport(sampler.schema(), violations);
+    }
+
+    int getMalformedRows() {
+        return pipeline.getMalformedRows();
+    }
+
+    /** @return bytes of the blocks the workers tokenized; less than was read if the scan was stopped */
+    long getProcessedBytes() {
+        return pipeline.getProcessedBytes();
+    }
+
+    /**
+     * Indexes, tokenizes, filters and aggregates whole blocks; indexing is timed per block, the per-row stages on sampled
+     * rows as in the sequential scan. In batch mode filter and aggregate are timed per batch instead.
+     */
+    private final class Worker implements Callable<Void> {
+        private final StreamAggregator aggregator = new StreamAggregator(spec);
+        private final CsvBlockTokenizer records = new CsvBlockTokenizer(delimiter, pipeline.fileColumns(), scanner);
+        private final CsvRowView row = new CsvRowView(header);
+        private final BroadcastJoin.Lookup lookup = join == null ? null : join.lookup();
+        private final RowPredicate filter = FilterParser.parse(filterExpression, header);
+        private final long[] sampled = new long[3];
+        private final BatchExecutor executor = batchSize > 0
+                ? new BatchExecutor(header, filterExpression, aggregator, batchSize, sampler) : null;
+        private long parsed;
+        private long matched;
+        private long busyNanos;
+        private long cpuNanos;
+        private long indexNanos;
+        private long indexCpuNanos;
+        private long allocatedBytes;
+        private volatile long groupCount;
+        private volatile long stateBytes;
+
+        @Override
+        public Void call() throws InterruptedException {
+            long allocStart = RunStats.threadAllocatedBytes();
+            for (CsvBlock block; (block = pipeline.next()) != null; ) {
+                long start = System.nanoTime();
+                long cpuStart = RunStats.threadCpuNanos();
+                long before = parsed;
+                process(block.getData(), block.getLength());
+                busyNanos += System.nanoTime() - start;
+                cpuNanos += RunStats.threadCpuNanos() - cpuStart;
+                pipeline.done(block, parsed - before);
+                groupCount = aggregator.groupCount();
+                stateBytes = aggregator.estimatedStateBytes();
+            }
+            allocatedBytes = RunStats.threadAllocatedBytes() - allocStart;
+            return null;
+        }
+
+        private void process(byte[] data, int length) {
+            String[] values = row.valueArray();
+            long indexStart = System.nanoTime();
+            long indexCpuStart = RunStats.threadCpuNanos();
+            records.reset(data, length);
+            indexNanos += System.nanoTime() - indexStart;
+            indexCpuNanos += RunStats.threadCpuNanos() - indexCpuStart;
+            while (records.nextRecord()) {
+                boolean sample = executor == null && (parsed & RunStats.SAMPLE_MASK) == 0;
+                long t0 = sample ? System.nanoTime() : 0;
+                if (!records.tokenize(values)) {
+                    pipeline.malformed(data, records.getRecordStart(), records.getRecordEnd());
+                    continue;
+                }
+                parsed++;
+                if (lookup != null) {
+                    lookup.join(values);
+                }
+                if (executor != null) {
+                    executor.add(values);
+                    continue;
+                }
+                if (!sample) {
+                    if (filter.test(row)) {
+                        aggregator.accept(row);
+                        matched++;
+                    }
+                } else {
+                    long t1 = System.nanoTime();
+                    boolean matches = filter.test(row);
+                    long t2 = System.nanoTime();
+                    sampled[0] += t1 - t0;
+                    sampled[1] += t2 - t1;
+                    if (matches) {
+                        aggregator.accept(row);
+                        matched++;
+                        sampled[2] += System.nanoTime() - t2;
+                    }
+                }
+            }
+            if (executor != null) {
+                executor.flush();
+            }
+        }
+    }
+}
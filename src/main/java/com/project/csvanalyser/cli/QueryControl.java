@@ -0,0 +1,68 @@
+package com.project.csvanalyser.cli;
+
+import java.util.concurrent.CancellationException;
+
+/**
+ * Stop signal for a running query: an optional deadline ({@code --time-budget}) and a cancel flag another thread can
+ * set. Scans poll {@link #shouldStop()} every {@link #CHECK_MASK}+1 rows (or once per block), so a stop takes effect
+ * within about a thousand rows.
+ * <p>
+ * A scan stopped by the deadline still returns a result covering the rows read so far (see {@link PartialScan}); a
+ * cancelled scan closes its reader and throws {@link CancellationException}, dropping its partial state.
+ */
+public final class QueryControl {
+
+    /** Scans check for a stop at rows with {@code (row & CHECK_MASK) == 0}. */
+    public static final int CHECK_MASK = (1 << 10) - 1;
+
+    private final long deadlineNanos;
+    private volatile boolean cancelled;
+    private volatile boolean timedOut;
+
+    private QueryControl(long deadlineNanos) {
+        this.deadlineNanos = deadlineNanos;
+    }
+
+    /**
+     * @param timeBudgetMillis time the query may run from now; 0 or less for no deadline
+     */
+    public static QueryControl start(long timeBudgetMillis) {
+        return new QueryControl(timeBudgetMillis > 0 ? System.nanoTime() + timeBudgetMillis * 1_000_000 : 0);
+    }
+
+    /** Asks the query to stop as soon as possible; safe to call from any thread, and more than once. */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /** @return whether the deadline has been hit by a scan */
+    public boolean isTimedOut() {
+        return timedOut;
+    }
+
+    /**
+     * @return true once the query is cancelled or past its deadline
+     */
+    boolean shouldStop() {
+        if (cancelled || timedOut) {
+            return true;
+        }
+        if (deadlineNanos != 0 && System.nanoTime() - deadlineNanos >= 0) {
+            timedOut = true;
+        }
+        return timedOut;
+    }
+
+    /**
+     * Throws if the query was cancelled; called after a scan has released its reader.
+     */
+    void throwIfCancelled() {
+        if (cancelled) {
+            throw new CancellationException("Query cancelled");
+        }
+    }
+}
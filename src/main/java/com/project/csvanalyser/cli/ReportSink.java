@@ -0,0 +1,55 @@
+package com.project.csvanalyser.cli;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Destination for the human-readable report, fed one line at a time so no whole-report string is ever built.
+ */
+interface ReportSink extends Closeable {
+
+    void line(String text) throws IOException;
+
+    /**
+     * Sink writing lines to a character stream (wrap it in a buffer; this does not).
+     *
+     * @param closeTarget whether {@link #close()} closes the writer or only flushes it (e.g. for System.out)
+     */
+    static ReportSink of(Writer writer, boolean closeTarget) {
+        return new ReportSink() {
+            @Override
+            public void line(String text) throws IOException {
+                writer.write(text);
+                writer.write('\n');
+            }
+
+            @Override
+            public void close() throws IOException {
+                if (closeTarget) {
+                    writer.close();
+                } else {
+                    writer.flush();
+                }
+            }
+        };
+    }
+
+    /** Sends every line to both sinks; closes both, even if the first fails. */
+    static ReportSink tee(ReportSink first, ReportSink second) {
+        return new ReportSink() {
+            @Override
+            public void line(String text) throws IOException {
+                first.line(text);
+                second.line(text);
+            }
+
+            @Override
+            public void close() throws IOException {
+                try (second) {
+                    first.close();
+                }
+            }
+        };
+    }
+}
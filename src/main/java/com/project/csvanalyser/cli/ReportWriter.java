@@ -1,95 +1,346 @@
 package com.project.csvanalyser.cli;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.SerializationFeature;
 import com.project.csvanalyser.aggregation.AggregationState;
 import com.project.csvanalyser.aggregation.GroupKey;
+import com.project.csvanalyser.aggregation.GroupingSets;
+import com.project.csvanalyser.aggregation.Ranking;
+import com.project.csvanalyser.aggregation.RankingSpec;
+import com.project.csvanalyser.aggregation.SampleEstimate;
+import com.project.csvanalyser.aggregation.SortedGroupAggregator;
 import com.project.csvanalyser.aggregation.TopN;
+import com.project.csvanalyser.stats.RunStats;
 
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
-import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 /**
- * Writes human-readable console report and machine-readable JSON summary.
+ * Writes human-readable console report and machine-readable JSON summary (streamed via {@link JsonSummaryWriter}).
  */
 public final class ReportWriter {
 
     private static final Pattern FUNC_PATTERN = Pattern.compile("(sum|avg|min|max)\\s*\\(\\s*([a-zA-Z0-9_]+)\\s*\\)");
-    private static final ObjectMapper JSON = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
 
     public static void write(AnalyticsResult result, CliConfig config) throws IOException {
-        String reportText = buildReportText(result, config);
-        System.out.print(reportText);
-        Path reportPath = config.getReportPath();
-        if (reportPath != null) {
-            String pathLower = reportPath.toString().toLowerCase();
-            if (pathLower.endsWith(".pdf")) {
-                PdfReportWriter.write(reportText, reportPath);
-            } else {
-                Files.writeString(reportPath, reportText);
-            }
+        try (RunStats.Timer ignored = result.getStats() != null ? result.getStats().time("report") : RunStats.trace("report");
+             ReportSink sink = reportSink(config)) {
+            writeReport(result, config, sink);
         }
         writeJsonSummary(result, config);
     }
 
     /**
-     * Builds the human-readable report as a single string (same content as printed to console).
+     * Reports an {@code --export} run: rows exported and the files written, to the console and the --report file.
+     */
+    public static void writeExport(ExportResult result, CliConfig config) throws IOException {
+        try (ReportSink out = reportSink(config)) {
+            PartialScan partial = result.getPartial();
+            if (partial != null) {
+                out.line(String.format("PARTIAL: time budget ran out after %.1f%% of the input (%d rows); the files hold"
+                        + " the matching rows read so far", partial.getByteFraction() * 100, partial.getRowsProcessed()));
+            }
+            out.line("EXPORTED: " + result.getExportedRows() + " of " + result.getTotalRows() + " rows ("
+                    + result.getExportedBytes() + " bytes; " + result.getTransfers() + " long runs transferred file to file)"
+                    + (result.getMalformedRows() > 0 ? "; " + result.getMalformedRows() + " malformed rows skipped" : ""));
+            if (result.isSorted()) {
+                out.line("SORTED: by " + String.join(", ", config.getOrderBy()) + " in " + result.getSortRuns()
+                        + " runs (" + result.getSpilledBytes() + " bytes spilled; " + result.getMergePasses()
+                        + " intermediate merge passes)");
+            }
+            for (Path file : result.getFiles()) {
+                out.line("FILE: " + file);
+            }
+        }
+    }
+
+    /**
+     * Console output (buffered, flushed but not closed), teed into the --report file when one is given.
+     */
+    private static ReportSink reportSink(CliConfig config) throws IOException {
+        ReportSink console = ReportSink.of(new BufferedWriter(new OutputStreamWriter(System.out, Charset.defaultCharset())), false);
+        Path reportPath = config.getReportPath();
+        if (reportPath == null) {
+            return console;
+        }
+        ReportSink file = reportPath.toString().toLowerCase().endsWith(".pdf")
+                ? new PdfReportWriter(reportPath)
+                : ReportSink.of(Files.newBufferedWriter(reportPath), true);
+        return ReportSink.tee(console, file);
+    }
+
+    /**
+     * Builds the human-readable report as a single string (same content as printed to console). Intended for small
+     * results; {@link #write} streams the report instead.
      */
     public static String buildReportText(AnalyticsResult result, CliConfig config) {
-        StringBuilder out = new StringBuilder();
-        List<String> groupCols = result.getGroupByColumns();
-        Map<GroupKey, AggregationState> stateByGroup = result.getStateByGroup();
-        List<String> aggSpecs = config.getAggregationSpecs();
-        if (aggSpecs.isEmpty()) {
-            aggSpecs = List.of("count");
+        StringWriter out = new StringWriter();
+        try (ReportSink sink = ReportSink.of(out, true)) {
+            writeReport(result, config, sink);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toString();
+    }
+
+    /**
+     * Streams the report group by group; see {@link TextReport}.
+     */
+    static void writeReport(AnalyticsResult result, CliConfig config, ReportSink out) throws IOException {
+        TextReport report = new TextReport(result.getGroupByColumns(), config, result.getSample(), out);
+        if (result.getGroupingLevels().isEmpty()) {
+            for (Map.Entry<GroupKey, AggregationState> e : result.getStateByGroup().entrySet()) {
+                report.group(e.getKey(), e.getValue());
+            }
+        }
+        for (GroupingSets.Level level : result.getGroupingLevels()) {
+            for (Map.Entry<GroupKey, AggregationState> e : level.getGroups().entrySet()) {
+                report.group(level, e.getKey(), e.getValue());
+            }
+        }
+        report.finish(result.getTopN(), result.getRankings(), result.getPartial());
+    }
+
+    /**
+     * Opens the outputs of an {@code --input-sorted} run, which receive groups while the scan is still reading; pass
+     * the returned sink to {@link CsvAnalyticsRunner#runSorted} and call {@link SortedOutput#finish} with its result.
+     */
+    public static SortedOutput openSorted(CliConfig config) throws IOException {
+        if (config.getOutputPath() == null) {
+            throw new IllegalArgumentException("Output path is required");
+        }
+        return new SortedOutput(config);
+    }
+
+    /**
+     * Text report and JSON summary written group by group as a sorted scan finishes them. The JSON goes to a temporary
+     * file next to the output and is moved into place by {@link #finish}, so a run that fails part-way (e.g. because the
+     * input was not sorted after all) leaves no truncated summary; the console report up to the failure stays visible.
+     * With grouping sets, the finest set's groups stream as they finish (if that set was requested) and the coarser sets
+     * follow them in {@link #finish}, since each of their groups may take rows from anywhere in the file.
+     */
+    public static final class SortedOutput implements SortedGroupAggregator.GroupSink, AutoCloseable {
+        private final CliConfig config;
+        private final ReportSink text;
+        private final TextReport report;
+        private final Path jsonTemp;
+        private final OutputStream jsonOut;
+        private final JsonSummaryWriter json;
+        /** The finest grouping set if requested, else null; {@link #writeFinest} says whether its groups are written. */
+        private final GroupingSets.Level finest;
+        private final boolean writeFinest;
+        private boolean finished;
+
+        private SortedOutput(CliConfig config) throws IOException {
+            this.config = config;
+            Path output = config.getOutputPath().toAbsolutePath();
+            this.jsonTemp = Files.createTempFile(output.getParent(), output.getFileName().toString(), ".tmp");
+            this.jsonOut = new BufferedOutputStream(Files.newOutputStream(jsonTemp));
+            this.json = new JsonSummaryWriter(jsonOut, config.getGroupByColumns(), config.getAggregationSpecs(),
+                    config.getTopNMetric());
+            json.writeHeader(config.getInputPath().toString());
+            this.text = reportSink(config);
+            this.report = new TextReport(config.getGroupByColumns(), config, null, text);
+            GroupingSets sets = CsvAnalyticsRunner.groupingSets(config);
+            this.finest = sets == null ? null : sets.finestLevel();
+            this.writeFinest = sets == null || finest != null;
+        }
+
+        @Override
+        public void group(GroupKey key, AggregationState state) throws IOException {
+            if (writeFinest) {
+                report.group(finest, key, state);
+                json.writeGroup(finest, key, state);
+            }
+        }
+
+        /**
+         * Writes top-N and totals from the finished run and moves the JSON summary into place.
+         */
+        public void finish(AnalyticsResult result) throws IOException {
+            try (RunStats.Timer ignored = result.getStats() != null ? result.getStats().time("report") : RunStats.trace("report")) {
+                for (GroupingSets.Level level : result.getGroupingLevels()) {
+                    if (level.isFinest()) continue;
+                    for (Map.Entry<GroupKey, AggregationState> e : level.getGroups().entrySet()) {
+                        report.group(level, e.getKey(), e.getValue());
+                        json.writeGroup(level, e.getKey(), e.getValue());
+                    }
+                }
+                report.finish(result.getTopN(), result.getRankings(), result.getPartial());
+            }
+            json.setPartial(result.getPartial());
+            json.setSchema(result.getSchema());
+            json.finish(result.getTotalRows(), result.getMalformedRows(), result.getTopN(), result.getRankings(),
+                    result.getStats());
+            jsonOut.close();
+            Files.move(jsonTemp, config.getOutputPath(), StandardCopyOption.REPLACE_EXISTING);
+            finished = true;
+        }
+
+        /**
+         * Closes the report; without a successful {@link #finish}, also discards the partial JSON summary.
+         */
+        @Override
+        public void close() throws IOException {
+            try {
+                text.close();
+            } finally {
+                if (!finished) {
+                    jsonOut.close();
+                    Files.deleteIfExists(jsonTemp);
+                }
+            }
         }
+    }
+
+    /**
+     * Writes the report one group at a time. At most {@link CliConfig#getReportMaxGroups()} groups are listed (0 = all);
+     * the rest are summarised in one line, and the top-N section and one section per ranking partition are always
+     * written, after a note when the scan was cut short by its time budget. A sampled result starts with a line describing the sample, and its counts, sums and averages are
+     * followed by their confidence intervals. With grouping sets, each set's groups follow a line naming the set, and
+     * columns a set rolls up read {@code (all)}.
+     */
+    private static final class TextReport {
+        private final List<String> groupCols;
+        private final String topNMetric;
+        private final int maxGroups;
+        private final ReportSink out;
+        private final SampleEstimate sample;
+        /** Aggregation labels resolved once: {label, op, column} */
+        private final List<String[]> aggs = new ArrayList<>();
+        private long written;
+        private long omitted;
+        private long omittedRows;
+        private GroupingSets.Level level;
 
-        for (Map.Entry<GroupKey, AggregationState> e : stateByGroup.entrySet()) {
-            GroupKey key = e.getKey();
-            AggregationState state = e.getValue();
+        TextReport(List<String> groupCols, CliConfig config, SampleEstimate sample, ReportSink out) throws IOException {
+            this.groupCols = groupCols;
+            this.sample = sample;
+            this.topNMetric = config.getTopNMetric();
+            this.maxGroups = config.getReportMaxGroups();
+            this.out = out;
+            List<String> aggSpecs = config.getAggregationSpecs();
+            if (aggSpecs.isEmpty()) {
+                aggSpecs = List.of("count");
+            }
+            for (String spec : aggSpecs) {
+                Matcher m = FUNC_PATTERN.matcher(spec.trim());
+                if (m.matches()) {
+                    String op = m.group(1).toLowerCase();
+                    aggs.add(new String[] {op + "(" + m.group(2) + ")", op, m.group(2)});
+                }
+            }
+            if (sample != null) {
+                out.line(String.format("SAMPLE: %d of %d blocks (fraction %s, seed %d); counts and sums are estimates"
+                                + " with %d%% confidence intervals", sample.getBlocksSampled(), sample.getBlocksTotal(),
+                        sample.getFraction(), sample.getSeed(), Math.round(SampleEstimate.CONFIDENCE * 100)));
+            }
+        }
+
+        void group(GroupKey key, AggregationState state) throws IOException {
+            group(null, key, state);
+        }
+
+        /**
+         * @param level grouping set of the group, or null for a plain group
+         */
+        void group(GroupingSets.Level level, GroupKey key, AggregationState state) throws IOException {
+            if (maxGroups > 0 && written >= maxGroups) {
+                omitted++;
+                omittedRows += state.getCount();
+                return;
+            }
+            written++;
+            if (level != null && level != this.level) {
+                this.level = level;
+                out.line("GROUPING SET (" + String.join(", ", level.getColumns()) + "), grouping id "
+                        + level.getGroupingId() + ":");
+            }
+            boolean rolledUp = level != null && !level.isFinest();
+            SampleEstimate sample = rolledUp ? null : this.sample;
             StringBuilder keyPart = new StringBuilder("GROUP: ");
             if (groupCols.isEmpty()) {
                 keyPart.append("(global)");
             } else {
-                List<String> parts = new ArrayList<>();
+                List<String> values = key.getValues();
+                int k = 0;
                 for (int i = 0; i < groupCols.size(); i++) {
-                    String col = groupCols.get(i);
-                    String val = i < key.getValues().size() ? key.getValues().get(i) : "";
-                    parts.add(col + "=" + val);
+                    if (i > 0) keyPart.append(", ");
+                    keyPart.append(groupCols.get(i)).append('=');
+                    if (!rolledUp) {
+                        keyPart.append(i < values.size() ? values.get(i) : "");
+                    } else if (k < level.getColumns().size() && level.getColumns().get(k).equals(groupCols.get(i))) {
+                        keyPart.append(values.get(k++));
+                    } else {
+                        keyPart.append("(all)");
+                    }
                 }
-                keyPart.append(String.join(", ", parts));
             }
-            out.append(keyPart).append("\n");
-            out.append("count: ").append(state.getCount()).append("\n");
-            for (String spec : aggSpecs) {
-                String s = spec.trim();
-                if (s.equalsIgnoreCase("count")) continue;
-                Matcher m = FUNC_PATTERN.matcher(s);
-                if (m.matches()) {
-                    String op = m.group(1).toLowerCase();
-                    String col = m.group(2);
-                    String label = op + "(" + col + ")";
-                    if ("sum".equals(op)) out.append(label).append(": ").append(formatNum(state.getSum(col))).append("\n");
-                    else if ("avg".equals(op)) out.append(label).append(": ").append(formatNum(state.getAvg(col))).append("\n");
-                    else if ("min".equals(op)) out.append(label).append(": ").append(state.getMin(col) != null ? formatNum(state.getMin(col)) : "-").append("\n");
-                    else if ("max".equals(op)) out.append(label).append(": ").append(state.getMax(col) != null ? formatNum(state.getMax(col)) : "-").append("\n");
+            out.line(keyPart.toString());
+            out.line("count: " + state.getCount() + interval(sample == null ? null : sample.count(key)));
+            for (String[] agg : aggs) {
+                String col = agg[2];
+                String value = switch (agg[1]) {
+                    case "sum" -> formatNum(state.getSum(col)) + interval(sample == null ? null : sample.sum(key, col));
+                    case "avg" -> formatNum(state.getAvg(col)) + interval(sample == null ? null : sample.avg(key, col));
+                    case "min" -> state.getMin(col) != null ? formatNum(state.getMin(col)) : "-";
+                    case "max" -> state.getMax(col) != null ? formatNum(state.getMax(col)) : "-";
+                    default -> null;
+                };
+                if (value != null) out.line(agg[0] + ": " + value);
+            }
+            out.line("---");
+        }
+
+        void finish(List<TopN.TopNEntry> topN, List<Ranking.Result> rankings, PartialScan partial) throws IOException {
+            if (partial != null) {
+                out.line(String.format("PARTIAL: time budget ran out after %.1f%% of the input (%d rows)%s",
+                        partial.getByteFraction() * 100, partial.getRowsProcessed(), partial.isExtrapolated()
+                                ? "; counts and sums are scaled up by " + formatNum(partial.getScale())
+                                : "; figures cover only the rows read"));
+            }
+            if (omitted > 0) {
+                out.line("... " + omitted + " more groups (" + omittedRows + " rows) not shown; limit is " + maxGroups
+                        + " (--report-max-groups), the JSON summary lists all groups");
+            }
+            if (!topN.isEmpty()) {
+                boolean approximate = topN.get(0).isApproximate();
+                out.line("TOP " + topN.size() + " (by " + topNMetric + (approximate ? ", approximate" : "") + "):");
+                writeEntries(topN);
+            }
+            for (Ranking.Result ranking : rankings) {
+                RankingSpec spec = ranking.getSpec();
+                for (Ranking.Partition partition : ranking.getPartitions()) {
+                    StringBuilder title = new StringBuilder("TOP " + partition.getTop().size() + " (by " + spec.getMetric());
+                    List<String> parentValues = partition.getParent().getValues();
+                    for (int i = 0; i < spec.getPerColumns().size(); i++) {
+                        title.append(i == 0 ? ", " : " ").append(spec.getPerColumns().get(i)).append('=').append(parentValues.get(i));
+                    }
+                    out.line(title.append("):").toString());
+                    writeEntries(partition.getTop());
                 }
             }
-            out.append("---\n");
         }
 
-        List<TopN.TopNEntry> topN = result.getTopN();
-        if (!topN.isEmpty()) {
-            out.append("TOP ").append(topN.size()).append(" (by ").append(config.getTopNMetric()).append("):\n");
-            for (int i = 0; i < topN.size(); i++) {
-                TopN.TopNEntry entry = topN.get(i);
+        private static String interval(SampleEstimate.Interval ci) {
+            return ci == null ? "" : " [" + formatNum(ci.getLow()) + ", " + formatNum(ci.getHigh()) + "]";
+        }
+
+        private void writeEntries(List<TopN.TopNEntry> entries) throws IOException {
+            for (int i = 0; i < entries.size(); i++) {
+                TopN.TopNEntry entry = entries.get(i);
                 StringBuilder line = new StringBuilder((i + 1) + ". ");
                 if (groupCols.isEmpty()) {
                     line.append("(global)");
@@ -102,10 +353,13 @@ public final class ReportWriter {
                     line.append(String.join(" — ", parts));
                 }
                 line.append(" — ").append(formatNum(entry.getMetricValue()));
-                out.append(line).append("\n");
+                if (entry.isApproximate()) {
+                    line.append(" (error ≤ ").append(formatNum(entry.getErrorBound()))
+                            .append(entry.isGuaranteed() ? ")" : ", not guaranteed)");
+                }
+                out.line(line.toString());
             }
         }
-        return out.toString();
     }
 
     private static String formatNum(double d) {
@@ -114,59 +368,31 @@ public final class ReportWriter {
     }
 
     private static void writeJsonSummary(AnalyticsResult result, CliConfig config) throws IOException {
-        List<String> groupCols = result.getGroupByColumns();
-        List<String> aggSpecs = config.getAggregationSpecs();
-        if (aggSpecs.isEmpty()) aggSpecs = List.of("count");
-
-        Map<String, Object> root = new LinkedHashMap<>();
-        root.put("inputFile", result.getInputFile());
-        root.put("totalRows", result.getTotalRows());
-        root.put("malformedRows", result.getMalformedRows());
-
-        List<Map<String, Object>> groups = new ArrayList<>();
-        for (Map.Entry<GroupKey, AggregationState> e : result.getStateByGroup().entrySet()) {
-            Map<String, Object> g = new LinkedHashMap<>();
-            GroupKey key = e.getKey();
-            AggregationState state = e.getValue();
-            Map<String, String> groupKeyMap = new LinkedHashMap<>();
-            for (int i = 0; i < groupCols.size(); i++) {
-                String col = groupCols.get(i);
-                String val = i < key.getValues().size() ? key.getValues().get(i) : "";
-                groupKeyMap.put(col, val);
-            }
-            g.put("groupKey", groupKeyMap);
-            g.put("count", state.getCount());
-            for (String spec : aggSpecs) {
-                String s = spec.trim();
-                if (s.equalsIgnoreCase("count")) continue;
-                Matcher m = FUNC_PATTERN.matcher(s);
-                if (m.matches()) {
-                    String op = m.group(1).toLowerCase();
-                    String col = m.group(2);
-                    String field = op + "_" + col;
-                    if ("sum".equals(op)) g.put(field, state.getSum(col));
-                    else if ("avg".equals(op)) g.put(field, state.getAvg(col));
-                    else if ("min".equals(op)) g.put(field, state.getMin(col));
-                    else if ("max".equals(op)) g.put(field, state.getMax(col));
-                }
-            }
-            groups.add(g);
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(config.getOutputPath()))) {
+            writeJsonSummary(result, config, out);
         }
-        root.put("groups", groups);
+    }
 
-        List<Map<String, Object>> topNList = new ArrayList<>();
-        for (TopN.TopNEntry entry : result.getTopN()) {
-            Map<String, Object> t = new LinkedHashMap<>();
-            for (int i = 0; i < groupCols.size(); i++) {
-                String col = groupCols.get(i);
-                String val = i < entry.getGroupKey().getValues().size() ? entry.getGroupKey().getValues().get(i) : "";
-                t.put(col, val);
+    /**
+     * Writes the JSON summary to the given stream. The stream is flushed but not closed.
+     */
+    public static void writeJsonSummary(AnalyticsResult result, CliConfig config, OutputStream out) throws IOException {
+        JsonSummaryWriter json = new JsonSummaryWriter(out, result.getGroupByColumns(), config.getAggregationSpecs(),
+                config.getTopNMetric());
+        json.setSample(result.getSample());
+        json.setPartial(result.getPartial());
+        json.setSchema(result.getSchema());
+        json.writeHeader(result.getInputFile(), result.getTotalRows(), result.getMalformedRows());
+        if (result.getGroupingLevels().isEmpty()) {
+            for (Map.Entry<GroupKey, AggregationState> e : result.getStateByGroup().entrySet()) {
+                json.writeGroup(e.getKey(), e.getValue());
             }
-            t.put(config.getTopNMetric(), entry.getMetricValue());
-            topNList.add(t);
         }
-        root.put("topN", topNList);
-
-        Files.writeString(config.getOutputPath(), JSON.writeValueAsString(root));
+        for (GroupingSets.Level level : result.getGroupingLevels()) {
+            for (Map.Entry<GroupKey, AggregationState> e : level.getGroups().entrySet()) {
+                json.writeGroup(level, e.getKey(), e.getValue());
+            }
+        }
+        json.finish(result.getTopN(), result.getRankings(), result.getStats());
     }
 }
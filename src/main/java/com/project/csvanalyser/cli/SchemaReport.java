@@ -0,0 +1,34 @@
+package com.project.csvanalyser.cli;
+
+import com.project.csvanalyser.schema.Schema;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Column types a scan used ({@code --schema} or inferred) and the cells it read that did not fit them. Attached to
+ * results of scans that filter and aggregate in batches; other results carry none.
+ */
+public final class SchemaReport implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Map<String, String> types;
+    private final Map<String, Long> violations;
+
+    /**
+     * @param violations non-fitting cells per column; columns without any may be left out
+     */
+    public SchemaReport(Schema schema, Map<String, Long> violations) {
+        this.types = Collections.unmodifiableMap(new LinkedHashMap<>(schema.labels()));
+        this.violations = Collections.unmodifiableMap(new LinkedHashMap<>(violations));
+    }
+
+    /** @return type name by column, as a {@code --schema} file would declare it */
+    public Map<String, String> getTypes() { return types; }
+
+    /** @return cells that did not fit their column's type, by column; only columns with at least one */
+    public Map<String, Long> getViolations() { return violations; }
+}
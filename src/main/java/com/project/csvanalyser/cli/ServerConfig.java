@@ -0,0 +1,35 @@
+package com.project.csvanalyser.cli;
+
+/**
+ * Parsed configuration for the long-running query server (--serve).
+ */
+public final class ServerConfig {
+
+    private final int port;
+    private final int threads;
+    private final int queueCapacity;
+    private final CacheSettings cacheSettings;
+    private final long columnCacheBytes;
+
+    public ServerConfig(int port, int threads, int queueCapacity) {
+        this(port, threads, queueCapacity, null, 0);
+    }
+
+    /**
+     * @param cacheSettings    result cache settings; null disables caching
+     * @param columnCacheBytes memory budget for hot columns of recently queried files; 0 disables the column cache
+     */
+    public ServerConfig(int port, int threads, int queueCapacity, CacheSettings cacheSettings, long columnCacheBytes) {
+        this.port = port;
+        this.threads = threads;
+        this.queueCapacity = queueCapacity;
+        this.cacheSettings = cacheSettings;
+        this.columnCacheBytes = columnCacheBytes;
+    }
+
+    public int getPort() { return port; }
+    public int getThreads() { return threads; }
+    public int getQueueCapacity() { return queueCapacity; }
+    public CacheSettings getCacheSettings() { return cacheSettings; }
+    public long getColumnCacheBytes() { return columnCacheBytes; }
+}
@@ -0,0 +1,266 @@
+package com.project.csvanalyser.columnar;
+
+import com.project.csvanalyser.schema.ColumnType;
+import com.project.csvanalyser.schema.Schema;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A batch of up to {@code capacity} rows held column by column, for batch-at-a-time filtering and aggregation. Only
+ * the columns a query reads are kept, as references to the tokenized cell values. Numeric views are parsed on demand
+ * and only at the positions asked for, so an aggregated column is parsed only for the rows that passed the filter.
+ * Each cell is parsed at most once per batch, however many filter terms and aggregations read it.
+ * <p>
+ * With a {@link Schema}, cells are checked against their column's type where the query parses them, and the cells that
+ * do not fit are counted: numeric reads check numeric and untyped columns (cells that are not numbers, and for long and
+ * decimal columns numbers of another form, such as {@code 1e3} in a long column), and time buckets report the cells of
+ * a timestamp column they cannot read (see {@link #addTimestampMisfits}). String columns fit any cell. Cells the query
+ * never parses, such as those of rows the filter dropped before an aggregated column was read, are not checked, so the
+ * counts change with the filter. Non-fitting cells still read as they did untyped, so types never change a result.
+ * <p>
+ * Rows are addressed by their position in the batch; a selection vector is an ascending array of positions.
+ * Not thread-safe; one batch per thread, cleared and refilled.
+ */
+public final class ColumnBatch {
+
+    /** Numeric state of a cell: a parsed number. */
+    public static final byte VALUE = 0;
+    /** Numeric state of a cell: blank; its number reads as 0, as filters compare blank cells. */
+    public static final byte BLANK = 1;
+    /** Numeric state of a cell: not a number; its number reads as NaN. */
+    public static final byte INVALID = 2;
+    /** Numeric state of a cell not parsed yet in this batch. */
+    private static final byte UNPARSED = 3;
+
+    /** Powers of ten that are exact doubles. */
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15};
+
+    private final int capacity;
+    private final String[] names;
+    private final int[] sources;
+    private final String[][] cells;
+    private final double[][] numbers;
+    private final byte[][] states;
+    private final ColumnType[] types;
+    private final long[] violations;
+    private final Map<String, Integer> indexByColumn = new HashMap<>();
+    private int size;
+
+    /**
+     * @param header  columns of the rows passed to {@link #add}, in order
+     * @param columns columns to keep; one missing from the header reads as blank in every row
+     */
+    public ColumnBatch(List<String> header, Collection<String> columns, int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Batch capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        for (String column : columns) {
+            indexByColumn.putIfAbsent(column, indexByColumn.size());
+        }
+        int n = indexByColumn.size();
+        names = new String[n];
+        sources = new int[n];
+        cells = new String[n][capacity];
+        numbers = new double[n][];
+        states = new byte[n][];
+        types = new ColumnType[n];
+        violations = new long[n];
+        for (Map.Entry<String, Integer> e : indexByColumn.entrySet()) {
+            int c = e.getValue();
+            names[c] = e.getKey();
+            sources[c] = header.indexOf(e.getKey());
+        }
+    }
+
+    /**
+     * Sets the column types later numeric reads check cells against; null checks only that cells are numbers. May be
+     * set once the rows of a first batch have been seen, before that batch is read.
+     */
+    public void setSchema(Schema schema) {
+        for (int c = 0; c < names.length; c++) {
+            types[c] = schema == null ? null : schema.typeOf(names[c]);
+        }
+    }
+
+    /**
+     * Appends a row.
+     *
+     * @param values cell values in header order, none null
+     * @return whether the batch is now full
+     */
+    public boolean add(String[] values) {
+        for (int c = 0; c < sources.length; c++) {
+            cells[c][size] = sources[c] < 0 ? "" : values[sources[c]];
+        }
+        return ++size == capacity;
+    }
+
+    /**
+     * Appends a row given as a column-to-value map.
+     *
+     * @return whether the batch is now full
+     */
+    public boolean add(Map<String, String> row) {
+        for (int c = 0; c < names.length; c++) {
+            String value = sources[c] < 0 ? null : row.get(names[c]);
+            cells[c][size] = value == null ? "" : value;
+        }
+        return ++size == capacity;
+    }
+
+    /** Drops the rows; the buffers are kept for the next batch. Type violations keep counting. */
+    public void clear() {
+        for (byte[] state : states) {
+            if (state != null) Arrays.fill(state, 0, size, UNPARSED);
+        }
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * @return the raw cell values of a column, indexed by position; valid up to {@link #size()}
+     * @throws IllegalArgumentException if the column is not kept in this batch
+     */
+    public String[] strings(String column) {
+        return cells[index(column)];
+    }
+
+    /**
+     * Parses a column at the selected positions and returns its numbers, indexed by position. Positions parsed by an
+     * earlier call for this batch are not parsed again; other positions hold whatever an earlier batch left there.
+     * Blank cells read as 0 and cells that are not numbers as NaN; {@link #states} tells them apart from real values.
+     *
+     * @throws IllegalArgumentException if the column is not kept in this batch
+     */
+    public double[] numbers(String column, int[] selection, int count) {
+        int c = index(column);
+        if (numbers[c] == null) {
+            numbers[c] = new double[capacity];
+            states[c] = new byte[capacity];
+            Arrays.fill(states[c], UNPARSED);
+        }
+        String[] raw = cells[c];
+        double[] out = numbers[c];
+        byte[] state = states[c];
+        ColumnType shape = types[c] == ColumnType.LONG || types[c] == ColumnType.DECIMAL ? types[c] : null;
+        boolean numeric = types[c] == null || types[c].isNumeric();
+        long violated = 0;
+        for (int k = 0; k < count; k++) {
+            int row = selection[k];
+            if (state[row] != UNPARSED) continue;
+            String cell = raw[row];
+            if (cell.isBlank()) {
+                out[row] = 0;
+                state[row] = BLANK;
+                continue;
+            }
+            try {
+                out[row] = parseNumber(cell);
+                state[row] = VALUE;
+                if (shape != null && !shape.accepts(cell)) violated++;
+            } catch (NumberFormatException e) {
+                out[row] = Double.NaN;
+                state[row] = INVALID;
+                if (numeric) violated++;
+            }
+        }
+        violations[c] += violated;
+        return out;
+    }
+
+    /**
+     * Counts cells of a column that a time bucket could not read as timestamps. They are violations only when the
+     * column is typed {@code timestamp}; the bucket labels them blank either way.
+     *
+     * @throws IllegalArgumentException if the column is not kept in this batch
+     */
+    public void addTimestampMisfits(String column, long cells) {
+        int c = index(column);
+        if (types[c] == ColumnType.TIMESTAMP) {
+            violations[c] += cells;
+        }
+    }
+
+    /**
+     * @return {@link #VALUE}, {@link #BLANK} or {@link #INVALID} per position, as of the last {@link #numbers} call for
+     *         the column
+     */
+    public byte[] states(String column) {
+        int c = index(column);
+        if (states[c] == null) {
+            throw new IllegalStateException("Column not parsed as numbers yet: " + column);
+        }
+        return states[c];
+    }
+
+    /**
+     * @return per column, the cells parsed since this batch was created that did not fit the column's type (any cell
+     *         read as a number that was not one, for untyped columns); columns without violations are left out
+     */
+    public Map<String, Long> typeViolations() {
+        Map<String, Long> out = new LinkedHashMap<>();
+        for (int c = 0; c < names.length; c++) {
+            if (violations[c] > 0) out.put(names[c], violations[c]);
+        }
+        return out;
+    }
+
+    /**
+     * {@link Double#parseDouble} of a trimmed cell, with a fast path for plain decimals such as {@code -12.5}: with at
+     * most 15 digits the digits form an exact double, and one division by an exact power of ten rounds correctly, so
+     * the result is the same double either way. Anything else (exponents, whitespace, more digits) takes the slow path.
+     *
+     * @throws NumberFormatException if the cell is not a number
+     */
+    static double parseNumber(String cell) {
+        int length = cell.length();
+        int i = 0;
+        boolean negative = false;
+        if (length > 0 && (cell.charAt(0) == '-' || cell.charAt(0) == '+')) {
+            negative = cell.charAt(0) == '-';
+            i = 1;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int scale = -1;
+        for (; i < length; i++) {
+            char c = cell.charAt(i);
+            if (c >= '0' && c <= '9') {
+                mantissa = mantissa * 10 + (c - '0');
+                digits++;
+                if (scale >= 0) scale++;
+            } else if (c == '.' && scale < 0) {
+                scale = 0;
+            } else {
+                return Double.parseDouble(cell.trim());
+            }
+        }
+        if (digits == 0 || digits > 15) {
+            return Double.parseDouble(cell.trim());
+        }
+        double value = scale <= 0 ? mantissa : mantissa / POWERS_OF_TEN[scale];
+        return negative ? -value : value;
+    }
+
+    private int index(String column) {
+        Integer c = indexByColumn.get(column);
+        if (c == null) {
+            throw new IllegalArgumentException("Column not in batch: " + column);
+        }
+        return c;
+    }
+}
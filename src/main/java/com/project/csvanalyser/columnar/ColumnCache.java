@@ -0,0 +1,244 @@
+package com.project.csvanalyser.columnar;
+
+import com.project.csvanalyser.cache.FileFingerprint;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Keeps recently used columns of recently queried files resident (strings dictionary-encoded, numbers as primitive
+ * arrays) under one global memory budget. Columns are evicted individually in LRU order, and all columns of a file are
+ * dropped as soon as its fingerprint (size, modification time) changes.
+ */
+public final class ColumnCache {
+
+    private final long maxBytes;
+    private final LinkedHashMap<ColumnRef, Entry> columns = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<FileKey, FileInfo> files = new HashMap<>();
+    private final Map<String, FileKey> currentByPath = new HashMap<>();
+    private long currentBytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long invalidations;
+
+    public ColumnCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Fingerprints the file and drops cached columns of any earlier version of the same path.
+     */
+    public FileKey keyFor(Path input, char delimiter, boolean hasHeader) throws IOException {
+        FileKey key = new FileKey(FileFingerprint.of(input, false), delimiter, hasHeader);
+        synchronized (this) {
+            FileKey previous = currentByPath.put(key.fingerprint.getPath(), key);
+            if (previous != null && !previous.fingerprint.equals(key.fingerprint)) {
+                invalidate(previous.fingerprint.getPath());
+            }
+        }
+        return key;
+    }
+
+    /**
+     * @return the file's cached columns if every required column is resident, otherwise null
+     */
+    public synchronized CachedTable lookup(FileKey key, Map<String, Set<ColumnKind>> required) {
+        FileInfo info = files.get(key);
+        if (info == null) {
+            misses++;
+            return null;
+        }
+        Map<ColumnRef, Object> found = new HashMap<>();
+        for (Map.Entry<String, Set<ColumnKind>> e : required.entrySet()) {
+            for (ColumnKind kind : e.getValue()) {
+                ColumnRef ref = new ColumnRef(key, e.getKey(), kind);
+                Entry entry = columns.get(ref);
+                if (entry == null) {
+                    misses++;
+                    return null;
+                }
+                found.put(ref, entry.column);
+            }
+        }
+        hits++;
+        return new CachedTable(key, info, found);
+    }
+
+    /**
+     * @return a recorder for the required columns, bounded by this cache's budget
+     */
+    public ColumnRecorder recorder(Map<String, Set<ColumnKind>> required, List<String> header) {
+        return new ColumnRecorder(required, header, maxBytes);
+    }
+
+    /**
+     * Installs the columns a recorder built during a full scan, evicting older columns as needed.
+     */
+    public synchronized void store(FileKey key, List<String> header, long totalRows, int malformedRows, ColumnRecorder recorder) {
+        if (recorder.isAbandoned() || !key.equals(currentByPath.get(key.fingerprint.getPath()))) {
+            return;
+        }
+        files.put(key, new FileInfo(List.copyOf(header), totalRows, malformedRows, recorder.getRows()));
+        for (Map.Entry<String, DictionaryColumn.Builder> e : recorder.getStrings().entrySet()) {
+            DictionaryColumn column = e.getValue().build();
+            put(new ColumnRef(key, e.getKey(), ColumnKind.STRING), column, column.estimatedBytes());
+        }
+        for (Map.Entry<String, NumericColumn.Builder> e : recorder.getNumbers().entrySet()) {
+            NumericColumn column = e.getValue().build();
+            put(new ColumnRef(key, e.getKey(), ColumnKind.NUMERIC), column, column.estimatedBytes());
+        }
+        evictToBudget();
+    }
+
+    private void put(ColumnRef ref, Object column, long bytes) {
+        Entry old = columns.put(ref, new Entry(column, bytes));
+        currentBytes += bytes - (old == null ? 0 : old.bytes);
+    }
+
+    private void evictToBudget() {
+        Iterator<Map.Entry<ColumnRef, Entry>> it = columns.entrySet().iterator();
+        while (currentBytes > maxBytes && it.hasNext()) {
+            Map.Entry<ColumnRef, Entry> e = it.next();
+            it.remove();
+            currentBytes -= e.getValue().bytes;
+            evictions++;
+        }
+        files.keySet().removeIf(file -> columns.keySet().stream().noneMatch(ref -> ref.file.equals(file)));
+    }
+
+    private void invalidate(String path) {
+        Iterator<Map.Entry<ColumnRef, Entry>> it = columns.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<ColumnRef, Entry> e = it.next();
+            if (e.getKey().file.fingerprint.getPath().equals(path)
+                    && !e.getKey().file.equals(currentByPath.get(path))) {
+                it.remove();
+                currentBytes -= e.getValue().bytes;
+            }
+        }
+        files.keySet().removeIf(file -> file.fingerprint.getPath().equals(path) && !file.equals(currentByPath.get(path)));
+        invalidations++;
+    }
+
+    public synchronized long getHits() { return hits; }
+    public synchronized long getMisses() { return misses; }
+    public synchronized long getEvictions() { return evictions; }
+    public synchronized long getInvalidations() { return invalidations; }
+    public synchronized int getColumnCount() { return columns.size(); }
+    public synchronized long getEstimatedBytes() { return currentBytes; }
+
+    /** Identity of a parsed file: content fingerprint plus the CSV dialect it was parsed with. */
+    public static final class FileKey {
+        private final FileFingerprint fingerprint;
+        private final char delimiter;
+        private final boolean hasHeader;
+
+        FileKey(FileFingerprint fingerprint, char delimiter, boolean hasHeader) {
+            this.fingerprint = fingerprint;
+            this.delimiter = delimiter;
+            this.hasHeader = hasHeader;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            FileKey that = (FileKey) o;
+            return delimiter == that.delimiter && hasHeader == that.hasHeader && fingerprint.equals(that.fingerprint);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(fingerprint, delimiter, hasHeader);
+        }
+    }
+
+    /** Columns of one file resolved from the cache; unaffected by later evictions. */
+    public static final class CachedTable implements ColumnTable {
+        private final FileKey key;
+        private final FileInfo info;
+        private final Map<ColumnRef, Object> columns;
+
+        CachedTable(FileKey key, FileInfo info, Map<ColumnRef, Object> columns) {
+            this.key = key;
+            this.info = info;
+            this.columns = columns;
+        }
+
+        public List<String> getHeader() { return info.header; }
+        public long getTotalRows() { return info.totalRows; }
+        public int getMalformedRows() { return info.malformedRows; }
+
+        @Override
+        public int rowCount() {
+            return info.rowCount;
+        }
+
+        @Override
+        public DictionaryColumn stringColumn(String name) {
+            return (DictionaryColumn) columns.get(new ColumnRef(key, name, ColumnKind.STRING));
+        }
+
+        @Override
+        public NumericColumn numericColumn(String name) {
+            return (NumericColumn) columns.get(new ColumnRef(key, name, ColumnKind.NUMERIC));
+        }
+    }
+
+    private static final class FileInfo {
+        private final List<String> header;
+        private final long totalRows;
+        private final int malformedRows;
+        private final int rowCount;
+
+        FileInfo(List<String> header, long totalRows, int malformedRows, int rowCount) {
+            this.header = header;
+            this.totalRows = totalRows;
+            this.malformedRows = malformedRows;
+            this.rowCount = rowCount;
+        }
+    }
+
+    private static final class ColumnRef {
+        private final FileKey file;
+        private final String name;
+        private final ColumnKind kind;
+
+        ColumnRef(FileKey file, String name, ColumnKind kind) {
+            this.file = file;
+            this.name = name;
+            this.kind = kind;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            ColumnRef that = (ColumnRef) o;
+            return kind == that.kind && name.equals(that.name) && file.equals(that.file);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(file, name, kind);
+        }
+    }
+
+    private static final class Entry {
+        private final Object column;
+        private final long bytes;
+
+        Entry(Object column, long bytes) {
+            this.column = column;
+            this.bytes = bytes;
+        }
+    }
+}
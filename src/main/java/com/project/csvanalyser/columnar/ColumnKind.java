@@ -0,0 +1,10 @@
+package com.project.csvanalyser.columnar;
+
+/**
+ * How a column is materialized: dictionary-encoded strings (group-by, string comparisons) or parsed numbers
+ * (aggregations, numeric comparisons). A column used both ways is cached once per kind.
+ */
+public enum ColumnKind {
+    STRING,
+    NUMERIC
+}
@@ -0,0 +1,70 @@
+package com.project.csvanalyser.columnar;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Materializes the requested columns while a query streams over the file, so the next query on the same file can
+ * skip parsing. Gives up (and frees what it built) once the columns would not fit the cache budget.
+ */
+public final class ColumnRecorder implements Consumer<Map<String, String>> {
+
+    private static final int BUDGET_CHECK_INTERVAL = 4096;
+
+    private final Map<String, DictionaryColumn.Builder> strings = new LinkedHashMap<>();
+    private final Map<String, NumericColumn.Builder> numbers = new LinkedHashMap<>();
+    private final long budgetBytes;
+    private int rows;
+    private boolean abandoned;
+
+    ColumnRecorder(Map<String, Set<ColumnKind>> required, List<String> header, long budgetBytes) {
+        this.budgetBytes = budgetBytes;
+        for (Map.Entry<String, Set<ColumnKind>> e : required.entrySet()) {
+            if (!header.contains(e.getKey())) continue;
+            if (e.getValue().contains(ColumnKind.STRING)) strings.put(e.getKey(), new DictionaryColumn.Builder());
+            if (e.getValue().contains(ColumnKind.NUMERIC)) numbers.put(e.getKey(), new NumericColumn.Builder());
+        }
+    }
+
+    @Override
+    public void accept(Map<String, String> row) {
+        if (abandoned) return;
+        for (Map.Entry<String, DictionaryColumn.Builder> e : strings.entrySet()) {
+            e.getValue().add(row.getOrDefault(e.getKey(), ""));
+        }
+        for (Map.Entry<String, NumericColumn.Builder> e : numbers.entrySet()) {
+            e.getValue().add(row.getOrDefault(e.getKey(), ""));
+        }
+        if (++rows % BUDGET_CHECK_INTERVAL == 0 && estimatedBytes() > budgetBytes) {
+            abandoned = true;
+            strings.clear();
+            numbers.clear();
+        }
+    }
+
+    public boolean isAbandoned() {
+        return abandoned;
+    }
+
+    int getRows() {
+        return rows;
+    }
+
+    long estimatedBytes() {
+        long bytes = 0;
+        for (DictionaryColumn.Builder b : strings.values()) bytes += b.estimatedBytes();
+        for (NumericColumn.Builder b : numbers.values()) bytes += b.estimatedBytes();
+        return bytes;
+    }
+
+    Map<String, DictionaryColumn.Builder> getStrings() {
+        return strings;
+    }
+
+    Map<String, NumericColumn.Builder> getNumbers() {
+        return numbers;
+    }
+}
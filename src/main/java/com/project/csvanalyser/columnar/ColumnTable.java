@@ -0,0 +1,15 @@
+package com.project.csvanalyser.columnar;
+
+/**
+ * Read access to materialized columns of one file. Row indexes run over well-formed rows in file order.
+ */
+public interface ColumnTable {
+
+    int rowCount();
+
+    /** @return the dictionary-encoded column, or null if it is not materialized */
+    DictionaryColumn stringColumn(String name);
+
+    /** @return the numeric column, or null if it is not materialized */
+    NumericColumn numericColumn(String name);
+}
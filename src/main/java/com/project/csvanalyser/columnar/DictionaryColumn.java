@@ -0,0 +1,90 @@
+package com.project.csvanalyser.columnar;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * String column stored as one int code per row plus a dictionary of distinct values.
+ */
+public final class DictionaryColumn {
+
+    private final int[] codes;
+    private final String[] dictionary;
+    private final Map<String, Integer> index;
+
+    private DictionaryColumn(int[] codes, String[] dictionary, Map<String, Integer> index) {
+        this.codes = codes;
+        this.dictionary = dictionary;
+        this.index = index;
+    }
+
+    public int code(int row) {
+        return codes[row];
+    }
+
+    public String value(int row) {
+        return dictionary[codes[row]];
+    }
+
+    public String valueOfCode(int code) {
+        return dictionary[code];
+    }
+
+    public int dictionarySize() {
+        return dictionary.length;
+    }
+
+    /** @return the code of the value, or -1 if no row holds it */
+    public int codeOf(String value) {
+        Integer code = index.get(value);
+        return code == null ? -1 : code;
+    }
+
+    public long estimatedBytes() {
+        return Builder.estimate(codes.length, dictionary.length, dictionaryChars());
+    }
+
+    private long dictionaryChars() {
+        long chars = 0;
+        for (String s : dictionary) chars += s.length();
+        return chars;
+    }
+
+    static final class Builder {
+        private int[] codes = new int[1024];
+        private int size;
+        private final List<String> dictionary = new ArrayList<>();
+        private final Map<String, Integer> index = new HashMap<>();
+        private long dictionaryChars;
+
+        void add(String value) {
+            Integer code = index.get(value);
+            if (code == null) {
+                code = dictionary.size();
+                dictionary.add(value);
+                index.put(value, code);
+                dictionaryChars += value.length();
+            }
+            if (size == codes.length) {
+                codes = Arrays.copyOf(codes, size * 2);
+            }
+            codes[size++] = code;
+        }
+
+        long estimatedBytes() {
+            return estimate(size, dictionary.size(), dictionaryChars);
+        }
+
+        DictionaryColumn build() {
+            return new DictionaryColumn(Arrays.copyOf(codes, size), dictionary.toArray(new String[0]), index);
+        }
+
+        /** 4 bytes per row; per distinct value a String plus its dictionary and index entries. */
+        static long estimate(int rows, int distinct, long chars) {
+            return 16 + 4L * rows + distinct * 120L + chars;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.project.csvanalyser.columnar;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Numeric column stored as primitive doubles. Blank cells and cells that do not parse as a number are tracked
+ * separately, because filters treat blanks as 0 while aggregations skip both.
+ */
+public final class NumericColumn {
+
+    private final double[] values;
+    private final BitSet blank;
+    private final BitSet invalid;
+
+    private NumericColumn(double[] values, BitSet blank, BitSet invalid) {
+        this.values = values;
+        this.blank = blank;
+        this.invalid = invalid;
+    }
+
+    public double value(int row) {
+        return values[row];
+    }
+
+    public boolean isBlank(int row) {
+        return blank.get(row);
+    }
+
+    public boolean isInvalid(int row) {
+        return invalid.get(row);
+    }
+
+    /** @return true if the cell holds a parsed number (neither blank nor invalid) */
+    public boolean hasValue(int row) {
+        return !blank.get(row) && !invalid.get(row);
+    }
+
+    public long estimatedBytes() {
+        return Builder.estimate(values.length);
+    }
+
+    static final class Builder {
+        private double[] values = new double[1024];
+        private int size;
+        private final BitSet blank = new BitSet();
+        private final BitSet invalid = new BitSet();
+
+        void add(String raw) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            String s = raw == null ? "" : raw.trim();
+            if (s.isEmpty()) {
+                blank.set(size);
+            } else {
+                try {
+                    values[size] = Double.parseDouble(s);
+                } catch (NumberFormatException e) {
+                    invalid.set(size);
+                }
+            }
+            size++;
+        }
+
+        long estimatedBytes() {
+            return estimate(size);
+        }
+
+        NumericColumn build() {
+            return new NumericColumn(Arrays.copyOf(values, size), blank, invalid);
+        }
+
+        static long estimate(int rows) {
+            return 64 + 8L * rows + rows / 4;
+        }
+    }
+}
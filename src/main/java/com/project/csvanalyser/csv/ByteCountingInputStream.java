@@ -0,0 +1,54 @@
+package com.project.csvanalyser.csv;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Counts bytes pulled from the underlying stream and the time spent waiting for them. The reader above buffers in
+ * blocks, so the per-call timing overhead is amortized over kilobytes. The byte count is volatile so monitoring
+ * threads can read it while the scan runs.
+ */
+public final class ByteCountingInputStream extends FilterInputStream {
+
+    private volatile long bytesRead;
+    private long readNanos;
+
+    public ByteCountingInputStream(InputStream in) {
+        super(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+        long start = System.nanoTime();
+        int b = super.read();
+        readNanos += System.nanoTime() - start;
+        if (b >= 0) bytesRead++;
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        long start = System.nanoTime();
+        int n = super.read(b, off, len);
+        readNanos += System.nanoTime() - start;
+        if (n > 0) bytesRead += n;
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = super.skip(n);
+        bytesRead += skipped;
+        return skipped;
+    }
+
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    /** @return nanoseconds spent inside reads of the underlying stream (I/O wait plus copy) */
+    public long getReadNanos() {
+        return readNanos;
+    }
+}
@@ -0,0 +1,24 @@
+package com.project.csvanalyser.csv;
+
+/**
+ * Reusable buffer holding a run of complete CSV records as raw bytes. Blocks are preallocated and recycled between
+ * the reader and the workers, so steady-state scanning allocates no buffers.
+ */
+public final class CsvBlock {
+
+    byte[] data;
+    int length;
+    long offset;
+
+    public CsvBlock(int capacity) {
+        this.data = new byte[capacity];
+    }
+
+    public byte[] getData() { return data; }
+
+    /** @return number of valid bytes; the block always ends on a record boundary */
+    public int getLength() { return length; }
+
+    /** @return offset in the input of the block's first byte, so a record can be copied from the file itself */
+    public long getOffset() { return offset; }
+}
@@ -0,0 +1,148 @@
+package com.project.csvanalyser.csv;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reads raw CSV bytes in large blocks, each cut at the last record boundary so workers can tokenize blocks
+ * independently. A record ends at a newline outside double quotes; the partial record at the end of a block is carried
+ * into the next one. A record larger than the block grows that block.
+ * <p>
+ * Not thread-safe: one reader thread fills blocks, other threads consume them.
+ */
+public final class CsvBlockReader implements Closeable {
+
+    public static final int DEFAULT_BLOCK_SIZE = 1 << 20;
+
+    private final InputStream in;
+    private final char delimiter;
+    private byte[] carry = new byte[0];
+    private int carryLength;
+    private boolean eof;
+    private long dataStart;
+    /** Input offset of the first carried-over byte, where the next block starts. */
+    private long offset;
+    private volatile long bytesRead;
+    private long readNanos;
+
+    public CsvBlockReader(InputStream in, char delimiter) {
+        this.in = in;
+        this.delimiter = delimiter;
+    }
+
+    /**
+     * Reads and parses the first line (up to the first newline, as {@link CsvStreamReader} does).
+     *
+     * @return column names, or an empty list for empty input
+     */
+    public List<String> readHeader() throws IOException {
+        byte[] buf = new byte[8192];
+        int len = 0;
+        while (true) {
+            for (int i = 0; i < len; i++) {
+                if (buf[i] == '\n') {
+                    carry = Arrays.copyOfRange(buf, i + 1, Math.max(i + 1, len));
+                    carryLength = len - i - 1;
+                    dataStart = i + 1;
+                    offset = dataStart;
+                    return header(buf, i);
+                }
+            }
+            if (len == buf.length) {
+                buf = Arrays.copyOf(buf, buf.length * 2);
+            }
+            int n = read(buf, len, buf.length - len);
+            if (n < 0) {
+                eof = true;
+                dataStart = len;
+                offset = dataStart;
+                return len == 0 ? List.of() : header(buf, len);
+            }
+            len += n;
+        }
+    }
+
+    private List<String> header(byte[] buf, int end) throws IOException {
+        if (end > 0 && buf[end - 1] == '\r') end--;
+        String line = StandardCharsets.UTF_8.newDecoder().decode(ByteBuffer.wrap(buf, 0, end)).toString();
+        return CsvStreamReader.parseHeader(line, CsvStreamReader.format(delimiter));
+    }
+
+    /**
+     * Fills the block with the carried-over bytes plus fresh input, ending on a record boundary (or at end of input).
+     *
+     * @return false once the input is exhausted and nothing remains
+     */
+    public boolean next(CsvBlock block) throws IOException {
+        if (block.data.length < carryLength) {
+            block.data = new byte[Math.max(carryLength, block.data.length * 2)];
+        }
+        System.arraycopy(carry, 0, block.data, 0, carryLength);
+        int len = carryLength;
+        while (true) {
+            while (!eof && len < block.data.length) {
+                int n = read(block.data, len, block.data.length - len);
+                if (n < 0) eof = true;
+                else len += n;
+            }
+            int boundary = eof ? len : lastRecordBoundary(block.data, len);
+            if (boundary > 0 || eof) {
+                int rest = len - boundary;
+                if (carry.length < rest) {
+                    carry = new byte[Math.max(rest, block.data.length)];
+                }
+                System.arraycopy(block.data, boundary, carry, 0, rest);
+                carryLength = rest;
+                block.length = boundary;
+                block.offset = offset;
+                offset += boundary;
+                return boundary > 0;
+            }
+            // A single record fills the whole block: grow it and keep reading
+            block.data = Arrays.copyOf(block.data, block.data.length * 2);
+        }
+    }
+
+    /**
+     * @return index just past the last newline outside quotes, or 0 if there is none
+     */
+    static int lastRecordBoundary(byte[] data, int len) {
+        boolean inQuotes = false;
+        int boundary = 0;
+        for (int i = 0; i < len; i++) {
+            byte b = data[i];
+            if (b == '"') {
+                inQuotes = !inQuotes;
+            } else if (b == '\n' && !inQuotes) {
+                boundary = i + 1;
+            }
+        }
+        return boundary;
+    }
+
+    private int read(byte[] buf, int off, int len) throws IOException {
+        long start = System.nanoTime();
+        int n = in.read(buf, off, len);
+        readNanos += System.nanoTime() - start;
+        if (n > 0) bytesRead += n;
+        return n;
+    }
+
+    public long getBytesRead() { return bytesRead; }
+
+    /** @return offset of the first byte after the header line; set by {@link #readHeader} */
+    public long getDataStart() { return dataStart; }
+
+    /** @return nanoseconds spent inside reads of the underlying stream; read by the reader thread only */
+    public long getReadNanos() { return readNanos; }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
@@ -0,0 +1,301 @@
+package com.project.csvanalyser.csv;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Reads a seeded random sample of fixed-size byte ranges of a CSV file instead of the whole file. The data after the
+ * header is cut into blocks of {@code blockSize} bytes, and {@code round(fraction x blocks)} of them (at least one) are
+ * chosen without replacement with {@link Random} seeded by {@code seed}, so the same file, fraction and seed always
+ * read the same blocks. Blocks are visited in file order with positional reads.
+ * <p>
+ * A record belongs to the block its first byte falls in, so every record is in exactly one block: a block skips the
+ * partial record at its start and reads past its end to finish the last record that starts inside it. Whether a block
+ * starts inside a quoted field is not known without reading the file up to it, so when a block holds quotes both cases
+ * are tried and the one whose records have the header's column count wins (see {@link #firstRecordStart}). Within a
+ * block, record ends are found with quote tracking as in {@link CsvBlockReader}.
+ * <p>
+ * A chosen block may hold no record start (when one record spans it); it is still returned, empty, because it is part
+ * of the sample.
+ */
+public final class CsvBlockSampler implements Closeable {
+
+    public static final int DEFAULT_BLOCK_SIZE = 64 * 1024;
+
+    private final FileChannel channel;
+    private final char delimiter;
+    private final int blockSize;
+    private final double fraction;
+    private final long seed;
+    private final long fileSize;
+    private long dataStart;
+    private int columns;
+    private long[] chosen = new long[0];
+    private long blocksTotal;
+    private int cursor;
+    private long rangeBytes;
+    private long bytesRead;
+
+    /**
+     * @param fraction share of blocks to read, in (0, 1]
+     */
+    public CsvBlockSampler(Path path, char delimiter, int blockSize, double fraction, long seed) throws IOException {
+        if (!(fraction > 0 && fraction <= 1)) {
+            throw new IllegalArgumentException("Sample fraction must be in (0, 1]: " + fraction);
+        }
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.delimiter = delimiter;
+        this.blockSize = blockSize;
+        this.fraction = fraction;
+        this.seed = seed;
+        this.fileSize = channel.size();
+    }
+
+    /**
+     * Reads and parses the first line (up to the first newline, as {@link CsvStreamReader} does) and chooses the
+     * sampled blocks among the bytes after it. Call once, before {@link #next}.
+     *
+     * @return column names, or an empty list for empty input
+     */
+    public List<String> readHeader() throws IOException {
+        byte[] buf = new byte[8192];
+        int len = 0;
+        List<String> header = null;
+        while (header == null) {
+            for (int i = 0; i < len; i++) {
+                if (buf[i] == '\n') {
+                    dataStart = i + 1;
+                    header = header(buf, i);
+                    break;
+                }
+            }
+            if (header != null) break;
+            if (len == fileSize) {
+                dataStart = fileSize;
+                header = len == 0 ? List.of() : header(buf, len);
+                break;
+            }
+            if (len == buf.length) {
+                buf = Arrays.copyOf(buf, buf.length * 2);
+            }
+            len += read(ByteBuffer.wrap(buf, len, (int) Math.min(buf.length - len, fileSize - len)), len);
+        }
+        columns = header.size();
+        choose();
+        return header;
+    }
+
+    private List<String> header(byte[] buf, int end) throws IOException {
+        if (end > 0 && buf[end - 1] == '\r') end--;
+        String line = StandardCharsets.UTF_8.newDecoder().decode(ByteBuffer.wrap(buf, 0, end)).toString();
+        return CsvStreamReader.parseHeader(line, CsvStreamReader.format(delimiter));
+    }
+
+    /**
+     * Picks the sampled block indexes with Floyd's algorithm (n draws for n blocks, whatever the file size) and sorts
+     * them into file order.
+     */
+    private void choose() {
+        blocksTotal = (fileSize - dataStart + blockSize - 1) / blockSize;
+        if (blocksTotal == 0) {
+            return;
+        }
+        int n = (int) Math.max(1, Math.min(blocksTotal, Math.round(fraction * blocksTotal)));
+        Random random = new Random(seed);
+        Set<Long> picked = new HashSet<>(n * 2);
+        for (long j = blocksTotal - n; j < blocksTotal; j++) {
+            long t = (long) (random.nextDouble() * (j + 1));
+            picked.add(picked.contains(t) ? j : t);
+        }
+        chosen = new long[n];
+        int i = 0;
+        for (long index : picked) {
+            chosen[i++] = index;
+        }
+        Arrays.sort(chosen);
+    }
+
+    /**
+     * Fills the block with the complete records that start in the next sampled byte range.
+     *
+     * @return false once every sampled block has been returned
+     */
+    public boolean next(CsvBlock block) throws IOException {
+        if (cursor >= chosen.length) {
+            return false;
+        }
+        long start = dataStart + chosen[cursor++] * blockSize;
+        long end = Math.min(fileSize, start + blockSize);
+        rangeBytes = end - start;
+        // Read one byte before the range to see whether the range starts on a record boundary
+        long from = start > dataStart ? start - 1 : start;
+        int len = readAt(block, 0, from, (int) (end - from));
+        int first = 0;
+        if (start > dataStart) {
+            first = firstRecordStart(block.data, len);
+            if (first < 0 || first >= len) {
+                block.length = 0;
+                return true;
+            }
+        }
+        int limit = (int) (end - from);
+        int pos = first;
+        while (pos < limit) {
+            int next = terminatedRecordEnd(block.data, pos, len);
+            if (next < 0) {
+                if (from + len >= fileSize) {
+                    pos = len;
+                    break;
+                }
+                // The last record runs past what has been read: read on until it ends
+                len += readAt(block, len, from + len, (int) Math.min(blockSize, fileSize - from - len));
+                continue;
+            }
+            pos = next;
+        }
+        System.arraycopy(block.data, first, block.data, 0, pos - first);
+        block.length = pos - first;
+        return true;
+    }
+
+    /**
+     * Finds the first record that starts in a block read from one byte before its range. That byte may be inside a
+     * quoted field, and guessing wrong inverts the quoting for the whole block: quoted newlines end records and real
+     * record ends are swallowed, so runs of records merge into a few with the wrong column count. When the bytes hold a
+     * quote, both guesses are tried and the one giving more records with the header's column count wins; outside
+     * quotes wins a tie, and is the only case when there is no quote.
+     *
+     * @return index just past the newline that ends the partial record, or -1 if none ends in {@code [0, len)}
+     */
+    private int firstRecordStart(byte[] data, int len) {
+        int outside = recordStart(data, len, false);
+        if (!hasQuote(data, len)) {
+            return outside;
+        }
+        int inside = recordStart(data, len, true);
+        if (inside < 0 || outside < 0) {
+            return outside < 0 ? inside : outside;
+        }
+        return fullRecords(data, inside, len) > fullRecords(data, outside, len) ? inside : outside;
+    }
+
+    /** @return index just past the first newline outside quotes, starting in quotes or not; -1 if there is none */
+    private static int recordStart(byte[] data, int len, boolean inQuotes) {
+        for (int i = 0; i < len; i++) {
+            byte b = data[i];
+            if (b == '"') {
+                inQuotes = !inQuotes;
+            } else if (b == '\n' && !inQuotes) {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean hasQuote(byte[] data, int len) {
+        for (int i = 0; i < len; i++) {
+            if (data[i] == '"') return true;
+        }
+        return false;
+    }
+
+    /** @return terminated records from {@code start} on with as many fields as the header */
+    private int fullRecords(byte[] data, int start, int len) {
+        byte delim = (byte) delimiter;
+        boolean inQuotes = false;
+        int fields = 1;
+        int full = 0;
+        for (int i = start; i < len; i++) {
+            byte b = data[i];
+            if (b == '"') {
+                inQuotes = !inQuotes;
+            } else if (inQuotes) {
+                continue;
+            } else if (b == delim) {
+                fields++;
+            } else if (b == '\n') {
+                if (fields == columns) full++;
+                fields = 1;
+            }
+        }
+        return full;
+    }
+
+    /**
+     * @return index just past the newline outside quotes ending the record at {@code start}, or -1 if there is none
+     *         before {@code end}
+     */
+    private static int terminatedRecordEnd(byte[] data, int start, int end) {
+        boolean inQuotes = false;
+        for (int i = start; i < end; i++) {
+            byte b = data[i];
+            if (b == '"') {
+                inQuotes = !inQuotes;
+            } else if (b == '\n' && !inQuotes) {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+
+    /** Reads exactly {@code length} bytes at {@code position} into the block at {@code offset}, growing it as needed. */
+    private int readAt(CsvBlock block, int offset, long position, int length) throws IOException {
+        if (block.data.length < offset + length) {
+            block.data = Arrays.copyOf(block.data, Math.max(offset + length, block.data.length * 2));
+        }
+        int done = 0;
+        while (done < length) {
+            done += read(ByteBuffer.wrap(block.data, offset + done, length - done), position + done);
+        }
+        return length;
+    }
+
+    private int read(ByteBuffer buf, long position) throws IOException {
+        int n = channel.read(buf, position);
+        if (n < 0) {
+            throw new EOFException("File shrank while sampling at byte " + position);
+        }
+        bytesRead += n;
+        return n;
+    }
+
+    /** @return size of the byte range of the block last returned by {@link #next}, before alignment to records */
+    public long getRangeBytes() { return rangeBytes; }
+
+    /** @return bytes after the header, which the block ranges partition */
+    public long getDataBytes() { return fileSize - dataStart; }
+
+    /** @return blocks the data is cut into */
+    public long getBlocksTotal() { return blocksTotal; }
+
+    /** @return blocks chosen for the sample */
+    public int getBlocksSampled() { return chosen.length; }
+
+    /** @return bytes of the sampled blocks, without the overlap read to finish records; the scan's planned size */
+    public long getSampledBytes() {
+        long bytes = 0;
+        for (long index : chosen) {
+            long start = dataStart + index * blockSize;
+            bytes += Math.min(fileSize, start + blockSize) - start;
+        }
+        return bytes;
+    }
+
+    public long getBytesRead() { return bytesRead; }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
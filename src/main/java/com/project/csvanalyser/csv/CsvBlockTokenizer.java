@@ -0,0 +1,111 @@
+package com.project.csvanalyser.csv;
+
+/**
+ * Walks the records of a block and tokenizes them from a {@link StructuralIndex} built once per block, rather than
+ * testing every byte twice (once to find the record end, once to split fields). Records end at a newline outside
+ * quotes; blank records are skipped. A record without quotes is split directly at the indexed delimiters; a record
+ * with quotes goes through {@link CsvRecordTokenizer#tokenize}, so values and malformed rows are exactly those of the
+ * byte-at-a-time tokenizer.
+ * <p>
+ * One instance per thread: the index and scratch arrays are reused from block to block.
+ */
+public final class CsvBlockTokenizer {
+
+    private final StructuralScanner scanner;
+    private final CsvRecordTokenizer tokenizer;
+    private final StructuralIndex index = new StructuralIndex();
+    private final int columns;
+    private final int[] delimiters;
+    private byte[] data;
+    private int length;
+    private int cursor;
+    private int pos;
+    private int recordStart;
+    private int recordEnd;
+    private int delimiterCount;
+    private boolean quoted;
+
+    /**
+     * @param columns fields kept per record (the header size); further fields are dropped when tokenizing, and slots of
+     *                the output array past them are left alone
+     */
+    public CsvBlockTokenizer(char delimiter, int columns, StructuralScanner scanner) {
+        this.scanner = scanner;
+        this.tokenizer = new CsvRecordTokenizer(delimiter);
+        this.columns = columns;
+        this.delimiters = new int[Math.max(1, columns)];
+    }
+
+    /** Indexes {@code data[0, length)} and positions before its first record. */
+    public void reset(byte[] data, int length) {
+        this.data = data;
+        this.length = length;
+        scanner.index(data, 0, length, index);
+        cursor = 0;
+        pos = 0;
+    }
+
+    /**
+     * Moves to the next non-blank record.
+     *
+     * @return false when the block has no more records
+     */
+    public boolean nextRecord() {
+        while (pos < length) {
+            int start = pos;
+            int next = length;
+            boolean inQuotes = false;
+            quoted = false;
+            delimiterCount = 0;
+            while (cursor < index.size()) {
+                int p = index.get(cursor++);
+                byte b = data[p];
+                if (b == '"') {
+                    inQuotes = !inQuotes;
+                    quoted = true;
+                } else if (b == '\n') {
+                    if (!inQuotes) {
+                        next = p + 1;
+                        break;
+                    }
+                } else if (!inQuotes) {
+                    if (delimiterCount < delimiters.length) delimiters[delimiterCount] = p;
+                    delimiterCount++;
+                }
+            }
+            pos = next;
+            int end = next > start && data[next - 1] == '\n' ? next - 1 : next;
+            if (end == start || (end == start + 1 && data[start] == '\r')) {
+                continue;
+            }
+            recordStart = start;
+            recordEnd = end;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Tokenizes the current record into {@code out}, as {@link CsvRecordTokenizer#tokenize} does.
+     *
+     * @return false if the record is malformed
+     */
+    public boolean tokenize(String[] out) {
+        if (quoted) {
+            return tokenizer.tokenize(data, recordStart, recordEnd, out, Math.min(columns, out.length));
+        }
+        int end = data[recordEnd - 1] == '\r' ? recordEnd - 1 : recordEnd;
+        tokenizer.tokenizeUnquoted(data, recordStart, end, delimiters, delimiterCount, out,
+                Math.min(columns, out.length));
+        return true;
+    }
+
+    /** @return start of the current record */
+    public int getRecordStart() { return recordStart; }
+
+    /** @return end of the current record, before its newline */
+    public int getRecordEnd() { return recordEnd; }
+
+    /** @return the scanner building the index, for stats */
+    public StructuralScanner getScanner() { return scanner; }
+}
@@ -0,0 +1,211 @@
+package com.project.csvanalyser.csv;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Counts CSV records in raw bytes without tokenizing them, for queries that only need row counts. Records are framed as
+ * in {@link CsvRecordTokenizer#recordEnd}: a newline ends a record unless an odd number of quotes precedes it in the
+ * record. Blank records are skipped, as the scans do.
+ * <p>
+ * Each record is also checked cheaply. A record without quotes is always well formed and has one field more than it has
+ * delimiters, so the byte loop only counts delimiters. A record with quotes is re-read with the tokenizer's quoting
+ * rules (closing quote followed only by whitespace, no unterminated quote), and counted as malformed if it breaks them,
+ * exactly like the rows the scans skip. Records whose field count differs from the header are counted separately as
+ * ragged; the scans read them too, with missing fields as empty.
+ * <p>
+ * A chunk of a file usually starts in the middle of a record, and whether that point lies inside quotes depends on
+ * every byte before it. {@link #count} takes the quote state at the chunk start as a guess; the caller learns the true
+ * state once the chunks before have been counted ({@link Chunk#flipsQuotes()} chains them) and recounts the chunk if the
+ * guess was wrong. The partial records at both ends of a chunk are kept as bytes so the caller can join them with the
+ * neighbouring chunks.
+ * <p>
+ * Not thread-safe; one instance per thread.
+ */
+public final class CsvRecordCounter {
+
+    /** Malformed records kept per chunk for the warning log; the rest are only counted. */
+    static final int MAX_MALFORMED_SAMPLES = 16;
+
+    private final byte delimiter;
+    private final int expectedFields;
+
+    /**
+     * @param expectedFields fields in the header; records with a different count are counted as ragged
+     */
+    public CsvRecordCounter(char delimiter, int expectedFields) {
+        this.delimiter = (byte) delimiter;
+        this.expectedFields = expectedFields;
+    }
+
+    /**
+     * Counts the records that start and end inside {@code data[0, length)}.
+     *
+     * @param inQuotes whether the chunk starts inside a quoted field
+     */
+    public Chunk count(byte[] data, int length, boolean inQuotes) {
+        Chunk chunk = new Chunk();
+        Counts counts = chunk.counts;
+        boolean startQuotes = inQuotes;
+        byte d = delimiter;
+        int start = 0;
+        boolean headDone = false;
+        int delimiters = 0;
+        boolean quoted = false;
+        for (int i = 0; i < length; i++) {
+            byte b = data[i];
+            if (b == '"') {
+                inQuotes = !inQuotes;
+                quoted = true;
+            } else if (b == '\n') {
+                if (inQuotes) continue;
+                if (!headDone) {
+                    chunk.head = Arrays.copyOf(data, i + 1);
+                    headDone = true;
+                } else if (quoted) {
+                    record(data, start, i + 1, counts);
+                } else if (!isBlank(data, start, i)) {
+                    counts.records++;
+                    if (delimiters + 1 != expectedFields) counts.ragged++;
+                }
+                start = i + 1;
+                delimiters = 0;
+                quoted = false;
+            } else if (b == d) {
+                delimiters++;
+            }
+        }
+        if (headDone) {
+            chunk.tail = Arrays.copyOfRange(data, start, length);
+        } else {
+            chunk.head = Arrays.copyOf(data, length);
+        }
+        chunk.hasRecordEnd = headDone;
+        chunk.flipsQuotes = inQuotes != startQuotes;
+        return chunk;
+    }
+
+    /**
+     * Counts one complete record, checking its quoting and field count.
+     *
+     * @param end index just past the record; a trailing newline (and CR before it) is ignored
+     */
+    public void record(byte[] data, int start, int end, Counts counts) {
+        if (end > start && data[end - 1] == '\n') end--;
+        if (isBlank(data, start, end)) {
+            return;
+        }
+        int fields = fields(data, start, end);
+        if (fields < 0) {
+            counts.malformed(data, start, end);
+            return;
+        }
+        counts.records++;
+        if (fields != expectedFields) counts.ragged++;
+    }
+
+    /** Blank as the scans see it: no bytes, or just a CR. */
+    private static boolean isBlank(byte[] data, int start, int end) {
+        return end == start || (end == start + 1 && data[start] == '\r');
+    }
+
+    /**
+     * @return number of fields of the record, or -1 if {@link CsvRecordTokenizer#tokenize} would reject it
+     */
+    private int fields(byte[] data, int start, int end) {
+        if (end > start && data[end - 1] == '\r') end--;
+        int fields = 0;
+        int pos = start;
+        while (true) {
+            if (pos < end && data[pos] == '"') {
+                pos++;
+                while (true) {
+                    if (pos >= end) return -1;
+                    if (data[pos] == '"') {
+                        if (pos + 1 < end && data[pos + 1] == '"') {
+                            pos += 2;
+                            continue;
+                        }
+                        pos++;
+                        break;
+                    }
+                    pos++;
+                }
+                while (pos < end && data[pos] != delimiter) {
+                    byte b = data[pos];
+                    if (b != ' ' && b != '\t' && b != '\r' && b != '\f' && b != 0x0B) return -1;
+                    pos++;
+                }
+            } else {
+                while (pos < end && data[pos] != delimiter) pos++;
+            }
+            fields++;
+            if (pos >= end) return fields;
+            pos++;
+        }
+    }
+
+    /** Records counted so far; mutable, so per-chunk counts can be folded into a total. */
+    public static final class Counts {
+        private long records;
+        private long malformed;
+        private long ragged;
+        private List<String> malformedSamples;
+
+        /** @return well-formed records, ragged ones included */
+        public long getRecords() { return records; }
+
+        public long getMalformed() { return malformed; }
+
+        /** @return well-formed records whose field count differs from the header */
+        public long getRagged() { return ragged; }
+
+        /** @return up to {@value #MAX_MALFORMED_SAMPLES} malformed records, as text, in file order */
+        public List<String> getMalformedSamples() {
+            return malformedSamples == null ? List.of() : malformedSamples;
+        }
+
+        public void add(Counts other) {
+            records += other.records;
+            malformed += other.malformed;
+            ragged += other.ragged;
+        }
+
+        private void malformed(byte[] data, int start, int end) {
+            malformed++;
+            if (malformedSamples == null) malformedSamples = new ArrayList<>();
+            if (malformedSamples.size() < MAX_MALFORMED_SAMPLES) {
+                String line = new String(data, start, Math.min(end - start, 400), StandardCharsets.UTF_8);
+                malformedSamples.add(line.length() > 100 ? line.substring(0, 100) + "..." : line);
+            }
+        }
+    }
+
+    /** Result of counting one chunk under a guessed starting quote state. */
+    public static final class Chunk {
+        private final Counts counts = new Counts();
+        private byte[] head;
+        private byte[] tail = new byte[0];
+        private boolean hasRecordEnd;
+        private boolean flipsQuotes;
+
+        /** @return records wholly inside the chunk */
+        public Counts getCounts() { return counts; }
+
+        /**
+         * @return bytes up to and including the first record end, which finish a record begun in earlier chunks; the
+         *         whole chunk if it has no record end
+         */
+        public byte[] getHead() { return head; }
+
+        /** @return bytes after the last record end, which start a record finished in later chunks */
+        public byte[] getTail() { return tail; }
+
+        public boolean hasRecordEnd() { return hasRecordEnd; }
+
+        /** @return whether the chunk has an odd number of quotes, so the next chunk starts in the opposite state */
+        public boolean flipsQuotes() { return flipsQuotes; }
+    }
+}
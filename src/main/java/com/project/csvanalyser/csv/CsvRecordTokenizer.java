@@ -0,0 +1,158 @@
+package com.project.csvanalyser.csv;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Splits raw UTF-8 record bytes into fields with the same rules as the commons-csv format used by
+ * {@link CsvStreamReader}: double-quoted fields with {@code ""} escapes, values trimmed, and only whitespace allowed
+ * between a closing quote and the next delimiter. Works on bytes, so ASCII-only fields (the common case) decode
+ * without a charset decoder.
+ * <p>
+ * One instance per thread; the scratch buffer and decoder are reused across records.
+ */
+public final class CsvRecordTokenizer {
+
+    private final byte delimiter;
+    private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPORT)
+            .onUnmappableCharacter(CodingErrorAction.REPORT);
+    private byte[] scratch = new byte[256];
+
+    public CsvRecordTokenizer(char delimiter) {
+        this.delimiter = (byte) delimiter;
+    }
+
+    /**
+     * @return index just past the newline ending the record that starts at {@code start}, or {@code end} if the
+     *         record runs to the end of the range. Newlines inside quotes do not end a record.
+     */
+    public static int recordEnd(byte[] data, int start, int end) {
+        boolean inQuotes = false;
+        for (int i = start; i < end; i++) {
+            byte b = data[i];
+            if (b == '"') {
+                inQuotes = !inQuotes;
+            } else if (b == '\n' && !inQuotes) {
+                return i + 1;
+            }
+        }
+        return end;
+    }
+
+    /**
+     * Tokenizes one record (without its line terminator; a trailing CR is ignored) into {@code out}. Fields beyond
+     * {@code out.length} are dropped, and slots for missing fields are set to "".
+     *
+     * @return false if the record is malformed (unterminated quote, or text after a closing quote)
+     * @throws java.io.UncheckedIOException wrapping a {@link CharacterCodingException} on invalid UTF-8
+     */
+    public boolean tokenize(byte[] data, int start, int end, String[] out) {
+        return tokenize(data, start, end, out, out.length);
+    }
+
+    /**
+     * Like {@link #tokenize(byte[], int, int, String[])}, filling only {@code out[0, width)}; the rest of {@code out}
+     * is left as it was.
+     */
+    public boolean tokenize(byte[] data, int start, int end, String[] out, int width) {
+        if (end > start && data[end - 1] == '\r') end--;
+        int col = 0;
+        int pos = start;
+        while (true) {
+            String value;
+            if (pos < end && data[pos] == '"') {
+                int n = 0;
+                pos++;
+                while (true) {
+                    if (pos >= end) return false;
+                    byte b = data[pos];
+                    if (b == '"') {
+                        if (pos + 1 < end && data[pos + 1] == '"') {
+                            n = append(n, b);
+                            pos += 2;
+                            continue;
+                        }
+                        pos++;
+                        break;
+                    }
+                    n = append(n, b);
+                    pos++;
+                }
+                while (pos < end && data[pos] != delimiter) {
+                    if (!isWhitespace(data[pos])) return false;
+                    pos++;
+                }
+                value = col < width ? decodeTrimmed(scratch, 0, n) : null;
+            } else {
+                int fieldEnd = pos;
+                while (fieldEnd < end && data[fieldEnd] != delimiter) fieldEnd++;
+                value = col < width ? decodeTrimmed(data, pos, fieldEnd) : null;
+                pos = fieldEnd;
+            }
+            if (col < width) out[col] = value;
+            col++;
+            if (pos >= end) break;
+            pos++; // delimiter; a trailing delimiter yields one more empty field
+        }
+        for (int i = col; i < width; i++) {
+            out[i] = "";
+        }
+        return true;
+    }
+
+    /**
+     * Tokenizes a record known to hold no quotes, whose delimiter positions have already been found (see
+     * {@link CsvBlockTokenizer}): field {@code i} ends at {@code delimiters[i]}, the last one at {@code end}. Gives the
+     * same values as {@link #tokenize} without looking at the bytes between delimiters except to trim and decode.
+     *
+     * @param delimiterCount delimiters in the record; only the first {@code width} positions need be present
+     * @param width          slots of {@code out} to fill
+     */
+    void tokenizeUnquoted(byte[] data, int start, int end, int[] delimiters, int delimiterCount, String[] out,
+                          int width) {
+        int fields = Math.min(delimiterCount + 1, width);
+        int from = start;
+        for (int col = 0; col < fields; col++) {
+            int to = col < delimiterCount ? delimiters[col] : end;
+            out[col] = decodeTrimmed(data, from, to);
+            from = to + 1;
+        }
+        for (int i = fields; i < width; i++) {
+            out[i] = "";
+        }
+    }
+
+    private int append(int n, byte b) {
+        if (n == scratch.length) {
+            scratch = Arrays.copyOf(scratch, n * 2);
+        }
+        scratch[n] = b;
+        return n + 1;
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\r' || b == '\f' || b == 0x0B;
+    }
+
+    private String decodeTrimmed(byte[] bytes, int from, int to) {
+        // String.trim() semantics: strip code points <= U+0020; UTF-8 continuation bytes are never <= 0x20
+        while (from < to && (bytes[from] & 0xFF) <= ' ') from++;
+        while (to > from && (bytes[to - 1] & 0xFF) <= ' ') to--;
+        if (from == to) return "";
+        for (int i = from; i < to; i++) {
+            if (bytes[i] < 0) {
+                try {
+                    return decoder.decode(ByteBuffer.wrap(bytes, from, to - from)).toString();
+                } catch (CharacterCodingException e) {
+                    throw new java.io.UncheckedIOException(e);
+                }
+            }
+        }
+        return new String(bytes, from, to - from, StandardCharsets.ISO_8859_1);
+    }
+}
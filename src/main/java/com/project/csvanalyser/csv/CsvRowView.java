@@ -0,0 +1,91 @@
+package com.project.csvanalyser.csv;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Reusable row map over a values array indexed by header position, so filters and aggregators written against
+ * {@code Map<String, String>} rows can run without a map allocation per row. Lookups are one hash probe on the
+ * column index. The view is overwritten by the next record; copy it if a row must outlive that.
+ */
+public final class CsvRowView extends AbstractMap<String, String> {
+
+    private final List<String> header;
+    private final Map<String, Integer> indexByColumn;
+    private final String[] values;
+    /** Distinct column names in first-occurrence order, like the keys of the LinkedHashMap rows. */
+    private final String[] keys;
+
+    public CsvRowView(List<String> header) {
+        this.header = List.copyOf(header);
+        this.indexByColumn = new LinkedHashMap<>();
+        for (int i = 0; i < this.header.size(); i++) {
+            // A duplicated column name reads the last such column, as repeated puts would
+            indexByColumn.put(this.header.get(i), i);
+        }
+        this.values = new String[this.header.size()];
+        this.keys = indexByColumn.keySet().toArray(new String[0]);
+    }
+
+    /** @return the backing array that {@link CsvRecordTokenizer#tokenize} fills */
+    public String[] valueArray() {
+        return values;
+    }
+
+    @Override
+    public String get(Object key) {
+        Integer i = indexByColumn.get(key);
+        return i == null ? null : values[i];
+    }
+
+    @Override
+    public String getOrDefault(Object key, String defaultValue) {
+        Integer i = indexByColumn.get(key);
+        return i == null ? defaultValue : values[i];
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return indexByColumn.containsKey(key);
+    }
+
+    @Override
+    public int size() {
+        return indexByColumn.size();
+    }
+
+    @Override
+    public Set<Entry<String, String>> entrySet() {
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Entry<String, String>> iterator() {
+                return new Iterator<>() {
+                    private int next = 0;
+
+                    @Override
+                    public boolean hasNext() {
+                        return next < keys.length;
+                    }
+
+                    @Override
+                    public Entry<String, String> next() {
+                        if (!hasNext()) throw new NoSuchElementException();
+                        String key = keys[next++];
+                        return new SimpleImmutableEntry<>(key, values[indexByColumn.get(key)]);
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return indexByColumn.size();
+            }
+        };
+    }
+}
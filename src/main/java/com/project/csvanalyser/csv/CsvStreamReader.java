@@ -3,13 +3,11 @@ package com.project.csvanalyser.csv;
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVParser;
 import org.apache.commons.csv.CSVRecord;
-import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -21,6 +19,9 @@ import java.util.stream.StreamSupport;
 /**
  * Streams CSV records one-by-one without loading the entire file into memory.
  * Handles malformed rows by skipping them, counting, and logging a warning.
+ * <p>
+ * Records are framed and split from a {@link StructuralIndex} of raw byte blocks, with the rules of the commons-csv
+ * {@link #format} (see {@link CsvRecordTokenizer}); commons-csv itself only parses the header line.
  */
 public final class CsvStreamReader {
 
@@ -49,49 +50,33 @@ public final class CsvStreamReader {
      * @return result containing column names and stream of records; malformed count updated as stream is consumed
      */
     public ParseResult stream(Path path) throws IOException {
-        BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8);
-        return streamFromReader(reader, path.toString());
+        return stream(Files.newInputStream(path), path.toString());
     }
 
     /**
      * Streams CSV from the given input stream. Useful for tests.
      */
     public ParseResult stream(InputStream inputStream, String sourceName) throws IOException {
-        BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8));
-        return streamFromReader(reader, sourceName);
-    }
-
-    private ParseResult streamFromReader(BufferedReader reader, String sourceName) throws IOException {
-        CSVFormat format = CSVFormat.DEFAULT.builder()
-                .setDelimiter(delimiter)
-                .setTrim(true)
-                .setIgnoreEmptyLines(false)
-                .build();
-
-        // Read header
-        String firstLine = reader.readLine();
-        if (firstLine == null) {
-            reader.close();
-            return new ParseResult(List.of(), Stream.empty(), new MalformedCounter());
-        }
-
+        ByteCountingInputStream counter = new ByteCountingInputStream(inputStream);
+        CsvBlockReader reader = new CsvBlockReader(counter, delimiter);
         List<String> header;
         try {
-            CSVRecord headerRecord = CSVParser.parse(firstLine, format).getRecords().get(0);
-            header = new ArrayList<>();
-            for (int i = 0; i < headerRecord.size(); i++) {
-                header.add(headerRecord.get(i));
-            }
-        } catch (Exception e) {
+            header = reader.readHeader();
+        } catch (IOException | RuntimeException e) {
             reader.close();
-            throw new IOException("Failed to parse CSV header: " + firstLine, e);
+            throw e;
+        }
+        if (header.isEmpty()) {
+            reader.close();
+            return new ParseResult(List.of(), Stream.empty(), new MalformedCounter(), counter);
         }
 
         MalformedCounter malformedCounter = new MalformedCounter();
-        Iterator<Map<String, String>> recordIterator = new RecordIterator(reader, format, header, malformedCounter, sourceName, warningSink);
+        Iterator<Map<String, String>> recordIterator = new RecordIterator(reader, delimiter, header, malformedCounter,
+                sourceName, warningSink);
 
         Iterable<Map<String, String>> iterable = () -> recordIterator;
-                Stream<Map<String, String>> stream = StreamSupport.stream(iterable.spliterator(), false)
+        Stream<Map<String, String>> stream = StreamSupport.stream(iterable.spliterator(), false)
                 .onClose(() -> {
                     try {
                         reader.close();
@@ -105,23 +90,56 @@ public final class CsvStreamReader {
                     }
                 });
 
-        return new ParseResult(header, stream, malformedCounter);
+        return new ParseResult(header, stream, malformedCounter, counter);
+    }
+
+    static CSVFormat format(char delimiter) {
+        return CSVFormat.DEFAULT.builder()
+                .setDelimiter(delimiter)
+                .setTrim(true)
+                .setIgnoreEmptyLines(false)
+                .build();
     }
 
+    static List<String> parseHeader(String firstLine, CSVFormat format) throws IOException {
+        try {
+            CSVRecord headerRecord = CSVParser.parse(firstLine, format).getRecords().get(0);
+            List<String> header = new ArrayList<>();
+            for (int i = 0; i < headerRecord.size(); i++) {
+                header.add(headerRecord.get(i));
+            }
+            return header;
+        } catch (Exception e) {
+            throw new IOException("Failed to parse CSV header: " + firstLine, e);
+        }
+    }
+
+    /**
+     * Reads raw blocks cut at record boundaries and walks their records with a {@link CsvBlockTokenizer}, so the
+     * sequential scan splits records from the same structural index as the pipelined one instead of decoding and
+     * testing one char at a time.
+     */
     private static final class RecordIterator implements Iterator<Map<String, String>> {
-        private final BufferedReader reader;
-        private final CSVFormat format;
+        /** Small next to the read-ahead buffers, so bytes read (progress, partial results) stay close to rows seen. */
+        private static final int BLOCK_SIZE = 16 << 10;
+
+        private final CsvBlockReader reader;
+        private final CsvBlockTokenizer records;
+        private final CsvBlock block = new CsvBlock(BLOCK_SIZE);
         private final List<String> header;
+        private final String[] values;
         private final MalformedCounter malformedCounter;
         private final String sourceName;
         private final Consumer<String> warningSink;
+        private boolean blockLoaded;
         private Map<String, String> next;
 
-        RecordIterator(BufferedReader reader, CSVFormat format, List<String> header,
+        RecordIterator(CsvBlockReader reader, char delimiter, List<String> header,
                        MalformedCounter malformedCounter, String sourceName, Consumer<String> warningSink) {
             this.reader = reader;
-            this.format = format;
+            this.records = new CsvBlockTokenizer(delimiter, header.size(), StructuralScanner.forDelimiter(delimiter));
             this.header = header;
+            this.values = new String[header.size()];
             this.malformedCounter = malformedCounter;
             this.sourceName = sourceName;
             this.warningSink = warningSink;
@@ -144,72 +162,44 @@ public final class CsvStreamReader {
         }
 
         private Map<String, String> advance() {
-            String recordLine = readOneRecord(reader);
-            if (recordLine == null) {
-                return null;
-            }
-            if (recordLine.isEmpty()) {
-                return advance();
-            }
-            try {
-                List<CSVRecord> records = CSVParser.parse(recordLine, format).getRecords();
-                if (records.isEmpty()) {
-                    return advance();
-                }
-                CSVRecord rec = records.get(0);
-                Map<String, String> row = new LinkedHashMap<>();
-                for (int i = 0; i < header.size(); i++) {
-                    String value = i < rec.size() ? rec.get(i) : "";
-                    row.put(header.get(i), value);
+            while (true) {
+                while (!blockLoaded || !records.nextRecord()) {
+                    if (!nextBlock()) {
+                        return null;
+                    }
                 }
-                return row;
-            } catch (Exception e) {
-                malformedCounter.increment();
-                String msg = sourceName + ": Skipping malformed row #" + malformedCounter.getCount() + ": " + (recordLine.length() > 100 ? recordLine.substring(0, 100) + "..." : recordLine);
-                if (this.warningSink != null) {
-                    this.warningSink.accept(msg);
-                } else {
-                    LoggerFactory.getLogger(CsvStreamReader.class).warn(msg);
+                if (records.tokenize(values)) {
+                    Map<String, String> row = new LinkedHashMap<>();
+                    for (int i = 0; i < header.size(); i++) {
+                        row.put(header.get(i), values[i]);
+                    }
+                    return row;
                 }
-                return advance();
+                malformed(block.data, records.getRecordStart(), records.getRecordEnd());
             }
         }
 
-        /**
-         * Reads one CSV record from the reader, handling quoted newlines.
-         * Returns null at EOF.
-         */
-        private String readOneRecord(BufferedReader reader) {
+        private boolean nextBlock() {
             try {
-                StringBuilder sb = new StringBuilder();
-                boolean inQuotes = false;
-                int c;
-                while ((c = reader.read()) != -1) {
-                    char ch = (char) c;
-                    if (ch == '"') {
-                        inQuotes = !inQuotes;
-                        sb.append(ch);
-                    } else if (ch == '\n' && !inQuotes) {
-                        break;
-                    } else if (ch == '\r') {
-                        int nextChar = reader.read();
-                        if (nextChar != '\n' && nextChar != -1) {
-                            sb.append(ch);
-                            if (nextChar != -1) {
-                                sb.append((char) nextChar);
-                            }
-                        }
-                        if (!inQuotes) break;
-                    } else {
-                        sb.append(ch);
-                    }
-                }
-                if (sb.length() == 0 && c == -1) {
-                    return null;
-                }
-                return sb.toString();
+                blockLoaded = reader.next(block);
             } catch (IOException e) {
-                throw new RuntimeException(e);
+                throw new UncheckedIOException(e);
+            }
+            if (blockLoaded) {
+                records.reset(block.data, block.length);
+            }
+            return blockLoaded;
+        }
+
+        private void malformed(byte[] data, int start, int end) {
+            malformedCounter.increment();
+            String line = new String(data, start, Math.min(end - start, 400), StandardCharsets.UTF_8);
+            String msg = sourceName + ": Skipping malformed row #" + malformedCounter.getCount() + ": "
+                    + (line.length() > 100 ? line.substring(0, 100) + "..." : line);
+            if (warningSink != null) {
+                warningSink.accept(msg);
+            } else {
+                LoggerFactory.getLogger(CsvStreamReader.class).warn(msg);
             }
         }
     }
@@ -229,15 +219,23 @@ public final class CsvStreamReader {
         }
     }
 
-    public static final class ParseResult {
+    /** Closing it closes the record stream and the input; safe to do again after the stream was closed. */
+    public static final class ParseResult implements AutoCloseable {
         private final List<String> header;
         private final Stream<Map<String, String>> recordStream;
         private final MalformedCounter malformedCounter;
+        private final ByteCountingInputStream byteCounter;
 
         public ParseResult(List<String> header, Stream<Map<String, String>> recordStream, MalformedCounter malformedCounter) {
+            this(header, recordStream, malformedCounter, null);
+        }
+
+        public ParseResult(List<String> header, Stream<Map<String, String>> recordStream, MalformedCounter malformedCounter,
+                           ByteCountingInputStream byteCounter) {
             this.header = header;
             this.recordStream = recordStream;
             this.malformedCounter = malformedCounter;
+            this.byteCounter = byteCounter;
         }
 
         public List<String> getHeader() {
@@ -251,5 +249,20 @@ public final class CsvStreamReader {
         public MalformedCounter getMalformedCounter() {
             return malformedCounter;
         }
+
+        /** @return bytes consumed from the input so far (read-ahead included); 0 if not tracked */
+        public long getBytesRead() {
+            return byteCounter == null ? 0 : byteCounter.getBytesRead();
+        }
+
+        /** @return nanoseconds spent waiting on the underlying input; 0 if not tracked */
+        public long getIoNanos() {
+            return byteCounter == null ? 0 : byteCounter.getReadNanos();
+        }
+
+        @Override
+        public void close() {
+            recordStream.close();
+        }
     }
 }
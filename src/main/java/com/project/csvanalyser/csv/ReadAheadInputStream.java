@@ -0,0 +1,153 @@
+package com.project.csvanalyser.csv;
+
+import com.project.csvanalyser.stats.RunStats;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Input stream fed by a dedicated I/O thread that reads the file in large chunks into a small ring of reused direct
+ * buffers, so the next chunk is in flight while the current one is parsed. With two buffers this is classic double
+ * buffering; more buffers absorb longer stalls (e.g. network block storage).
+ * <p>
+ * {@link #getWaitNanos()} is the time the consumer spent blocked waiting for data, i.e. the I/O stall the parser
+ * actually saw; {@link #getReadNanos()} is the time the I/O thread spent in reads.
+ */
+public final class ReadAheadInputStream extends InputStream {
+
+    /** End-of-input (or failure) marker; never handed back to the I/O thread. */
+    private static final ByteBuffer END = ByteBuffer.allocate(0);
+
+    private final FileChannel channel;
+    private final BlockingQueue<ByteBuffer> empty;
+    private final BlockingQueue<ByteBuffer> filled;
+    private final Thread ioThread;
+    private volatile IOException failure;
+    private volatile long readNanos;
+    private volatile long ioThreadCpuNanos;
+    private ByteBuffer current;
+    private long waitNanos;
+    private boolean closed;
+
+    private ReadAheadInputStream(FileChannel channel, int bufferSize, int buffers, String name) {
+        this.channel = channel;
+        this.empty = new ArrayBlockingQueue<>(buffers);
+        this.filled = new ArrayBlockingQueue<>(buffers + 1);
+        for (int i = 0; i < buffers; i++) {
+            empty.add(ByteBuffer.allocateDirect(bufferSize));
+        }
+        this.ioThread = new Thread(this::fill, "read-ahead-" + name);
+        this.ioThread.setDaemon(true);
+    }
+
+    /**
+     * Opens the file and starts reading ahead.
+     *
+     * @param bufferSize bytes per read
+     * @param buffers    buffers in the ring (at least 2)
+     */
+    public static ReadAheadInputStream open(Path path, int bufferSize, int buffers) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        ReadAheadInputStream in = new ReadAheadInputStream(channel, bufferSize, Math.max(2, buffers),
+                String.valueOf(path.getFileName()));
+        in.ioThread.start();
+        return in;
+    }
+
+    private void fill() {
+        long cpuStart = RunStats.threadCpuNanos();
+        try {
+            boolean eof = false;
+            while (!eof) {
+                ByteBuffer buf = empty.take();
+                buf.clear();
+                long start = System.nanoTime();
+                while (buf.hasRemaining()) {
+                    if (channel.read(buf) < 0) {
+                        eof = true;
+                        break;
+                    }
+                }
+                readNanos += System.nanoTime() - start;
+                buf.flip();
+                if (buf.hasRemaining()) {
+                    filled.put(buf);
+                }
+            }
+        } catch (InterruptedException e) {
+            return; // closed by the consumer
+        } catch (IOException e) {
+            failure = e;
+        } finally {
+            ioThreadCpuNanos = RunStats.threadCpuNanos() - cpuStart;
+            filled.offer(END);
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!ensureData()) return -1;
+        return current.get() & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) return 0;
+        if (!ensureData()) return -1;
+        int n = Math.min(len, current.remaining());
+        current.get(b, off, n);
+        return n;
+    }
+
+    @Override
+    public int available() {
+        return current == null || current == END ? 0 : current.remaining();
+    }
+
+    private boolean ensureData() throws IOException {
+        if (closed) throw new IOException("Stream closed");
+        if (current != null && current.hasRemaining()) return true;
+        if (current == END) return false;
+        if (current != null) {
+            empty.add(current);
+        }
+        long start = System.nanoTime();
+        try {
+            current = filled.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for input");
+        } finally {
+            waitNanos += System.nanoTime() - start;
+        }
+        if (current == END) {
+            if (failure != null) throw failure;
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        ioThread.interrupt();
+        channel.close();
+    }
+
+    /** @return nanoseconds the consumer spent blocked waiting for the I/O thread */
+    public long getWaitNanos() { return waitNanos; }
+
+    /** @return nanoseconds the I/O thread spent in reads */
+    public long getReadNanos() { return readNanos; }
+
+    /** @return CPU time of the I/O thread; available once it has finished */
+    public long getIoThreadCpuNanos() { return ioThreadCpuNanos; }
+}
@@ -0,0 +1,37 @@
+package com.project.csvanalyser.csv;
+
+import java.util.Arrays;
+
+/**
+ * Positions of the structural bytes of a block (delimiters, double quotes and newlines), in ascending order, as found
+ * by a {@link StructuralScanner}. Reused across blocks; the position array grows as needed and is never shrunk.
+ */
+public final class StructuralIndex {
+
+    private int[] positions = new int[4096];
+    private int size;
+
+    public int size() {
+        return size;
+    }
+
+    public int get(int i) {
+        return positions[i];
+    }
+
+    void clear() {
+        size = 0;
+    }
+
+    /** Makes room for {@code more} positions beyond the current size. */
+    void ensureRoom(int more) {
+        if (size + more > positions.length) {
+            positions = Arrays.copyOf(positions, Math.max(size + more, positions.length * 2));
+        }
+    }
+
+    /** Appends a position; callers reserve room first with {@link #ensureRoom}. */
+    void add(int position) {
+        positions[size++] = position;
+    }
+}
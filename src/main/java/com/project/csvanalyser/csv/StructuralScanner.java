@@ -0,0 +1,129 @@
+package com.project.csvanalyser.csv;
+
+import org.slf4j.LoggerFactory;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+/**
+ * Finds the structural bytes of CSV data (the delimiter, {@code "} and {@code \n}) and records their positions in a
+ * {@link StructuralIndex}, so tokenizing can jump from one to the next instead of testing every byte.
+ * <p>
+ * {@link #forDelimiter} returns a scalar scanner that tests eight bytes per step as one {@code long} (SWAR). The SIMD
+ * scanner built on the JDK Vector API, which compares a whole vector of bytes per step, is opt-in: it needs both
+ * {@code -Dcsvanalyser.simd=true} and the {@code jdk.incubator.vector} module ({@code --add-modules
+ * jdk.incubator.vector}), because on JDK 17 it measured slower than SWAR. Both produce the same index. Scanners hold no
+ * state besides the delimiter, so one instance can be shared by threads.
+ */
+public abstract class StructuralScanner {
+
+    /** System property that enables the vector scanner when set to {@code true}. */
+    public static final String SIMD_PROPERTY = "csvanalyser.simd";
+
+    private static final String VECTOR_MODULE = "jdk.incubator.vector";
+    private static final String VECTOR_SCANNER = "com.project.csvanalyser.csv.VectorStructuralScanner";
+    private static final boolean VECTOR_REQUESTED = Boolean.getBoolean(SIMD_PROPERTY);
+    private static final boolean VECTOR_AVAILABLE = ModuleLayer.boot().findModule(VECTOR_MODULE).isPresent();
+
+    protected final byte delimiter;
+
+    protected StructuralScanner(char delimiter) {
+        this.delimiter = (byte) delimiter;
+    }
+
+    /**
+     * @return the vector scanner if {@value #SIMD_PROPERTY} is {@code true} and the Vector API is usable, else the
+     *         scalar one
+     */
+    public static StructuralScanner forDelimiter(char delimiter) {
+        return VECTOR_REQUESTED ? vector(delimiter) : scalar(delimiter);
+    }
+
+    /** @return the vector scanner if the Vector API is enabled and usable, else the scalar one */
+    static StructuralScanner vector(char delimiter) {
+        if (VECTOR_AVAILABLE) {
+            try {
+                // Loaded reflectively so the JVM never links the incubator classes when the module is absent
+                return (StructuralScanner) Class.forName(VECTOR_SCANNER).getConstructor(char.class)
+                        .newInstance(delimiter);
+            } catch (ReflectiveOperationException | LinkageError e) {
+                LoggerFactory.getLogger(StructuralScanner.class).debug("Vector scanner unavailable: {}", e.toString());
+            }
+        }
+        return scalar(delimiter);
+    }
+
+    /** @return the scalar (SWAR) scanner */
+    public static StructuralScanner scalar(char delimiter) {
+        return new Swar(delimiter);
+    }
+
+    /**
+     * Replaces the contents of {@code index} with the positions of the structural bytes in {@code data[from, to)}.
+     */
+    public abstract void index(byte[] data, int from, int to, StructuralIndex index);
+
+    /** @return short description for logs and stats, such as {@code scalar} or {@code vector-256} */
+    public abstract String name();
+
+    /** Scans bytes {@code [from, to)} one at a time, appending to the index; used for the tail of vector scans too. */
+    static void scanScalar(byte[] data, int from, int to, byte delimiter, StructuralIndex index) {
+        index.ensureRoom(to - from);
+        for (int i = from; i < to; i++) {
+            byte b = data[i];
+            if (b == delimiter || b == '"' || b == '\n') {
+                index.add(i);
+            }
+        }
+    }
+
+    /**
+     * Word-at-a-time scanner: each 8-byte {@code long} is XORed with the three structural bytes repeated, and an exact
+     * zero-byte test marks the matching bytes in their high bits, so a word without structural bytes costs a few
+     * arithmetic instructions.
+     */
+    private static final class Swar extends StructuralScanner {
+
+        private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+        private static final long ONES = 0x0101010101010101L;
+        private static final long LOW7 = 0x7F7F7F7F7F7F7F7FL;
+
+        private final long delimiters;
+
+        Swar(char delimiter) {
+            super(delimiter);
+            this.delimiters = ONES * (this.delimiter & 0xFF);
+        }
+
+        @Override
+        public void index(byte[] data, int from, int to, StructuralIndex index) {
+            index.clear();
+            int i = from;
+            for (; i + 8 <= to; i += 8) {
+                long word = (long) LONGS.get(data, i);
+                long matches = zeroBytes(word ^ delimiters) | zeroBytes(word ^ (ONES * '"'))
+                        | zeroBytes(word ^ (ONES * '\n'));
+                if (matches == 0) {
+                    continue;
+                }
+                index.ensureRoom(8);
+                do {
+                    index.add(i + (Long.numberOfTrailingZeros(matches) >>> 3));
+                    matches &= matches - 1;
+                } while (matches != 0);
+            }
+            scanScalar(data, i, to, delimiter, index);
+        }
+
+        /** @return the high bit of each byte of {@code x} that is zero, and no other bits */
+        private static long zeroBytes(long x) {
+            return ~(((x & LOW7) + LOW7) | x | LOW7);
+        }
+
+        @Override
+        public String name() {
+            return "swar";
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.project.csvanalyser.csv;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * {@link StructuralScanner} on the JDK Vector API: each step loads a vector of bytes (32 with AVX2 or AVX-512, 16 with
+ * NEON), compares them with the delimiter, quote and newline at once, and turns the combined match mask into a bit set
+ * whose set bits are appended to the index. The bytes past the last full vector are scanned one at a time.
+ * <p>
+ * Vectors are capped at 256 bits: on JDK 17 the mask-to-bits conversion of 512-bit vectors is not intrinsified and
+ * was an order of magnitude slower than the 256-bit shape on AVX-512 hardware.
+ * <p>
+ * Needs {@code --add-modules jdk.incubator.vector} at compile and run time; only loaded through
+ * {@link StructuralScanner#forDelimiter} when {@code -Dcsvanalyser.simd=true} is set and the module is present.
+ */
+final class VectorStructuralScanner extends StructuralScanner {
+
+    private static final VectorSpecies<Byte> SPECIES = ByteVector.SPECIES_PREFERRED.vectorBitSize() > 256
+            ? ByteVector.SPECIES_256 : ByteVector.SPECIES_PREFERRED;
+
+    public VectorStructuralScanner(char delimiter) {
+        super(delimiter);
+    }
+
+    @Override
+    public void index(byte[] data, int from, int to, StructuralIndex index) {
+        index.clear();
+        int lanes = SPECIES.length();
+        int bound = from + SPECIES.loopBound(to - from);
+        int i = from;
+        for (; i < bound; i += lanes) {
+            ByteVector v = ByteVector.fromArray(SPECIES, data, i);
+            VectorMask<Byte> structural = v.eq(delimiter).or(v.eq((byte) '"')).or(v.eq((byte) '\n'));
+            long bits = structural.toLong();
+            if (bits == 0) {
+                continue;
+            }
+            index.ensureRoom(Long.bitCount(bits));
+            do {
+                index.add(i + Long.numberOfTrailingZeros(bits));
+                bits &= bits - 1;
+            } while (bits != 0);
+        }
+        scanScalar(data, i, to, delimiter, index);
+    }
+
+    @Override
+    public String name() {
+        return "vector-" + SPECIES.vectorBitSize();
+    }
+}
@@ -0,0 +1,228 @@
+package com.project.csvanalyser.filter;
+
+import com.project.csvanalyser.columnar.ColumnBatch;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Map;
+
+/**
+ * Evaluation order of the terms of an &amp;&amp; or ||, learned from the terms' observed cost and selectivity. A term
+ * "decides" a row when it settles the outcome on its own: false under &amp;&amp;, true under ||. Terms are ranked by
+ * cost per row divided by the chance of deciding (both smoothed), so cheap, decisive terms run first and the rest are
+ * skipped for the rows those settle.
+ * <p>
+ * Observations come from sampled rows or batches on which every term is evaluated, so the chance of deciding is not
+ * skewed by the terms that ran before. Each reorder halves the observations so far, so the order follows drifting data
+ * within a few periods. Terms are free of side effects and never throw, so the order changes how much work is done but
+ * never the result.
+ * <p>
+ * Not thread-safe; the predicates below are compiled once per thread.
+ */
+final class AdaptiveOrder {
+
+    /** Row-at-a-time predicates evaluate every term on one row in {@code ROW_SAMPLE_MASK + 1}. */
+    static final int ROW_SAMPLE_MASK = 255;
+    /** Sampled rows between reorders. */
+    static final int ROW_SAMPLES_PER_REORDER = 16;
+    /** Batch predicates evaluate every term on one batch in {@code BATCH_SAMPLE_MASK + 1}, then reorder. */
+    static final int BATCH_SAMPLE_MASK = 7;
+
+    private final double[] nanos;
+    private final double[] rows;
+    private final double[] decided;
+    private final Integer[] order;
+
+    AdaptiveOrder(int terms) {
+        this.nanos = new double[terms];
+        this.rows = new double[terms];
+        this.decided = new double[terms];
+        this.order = new Integer[terms];
+        for (int i = 0; i < terms; i++) {
+            order[i] = i;
+        }
+    }
+
+    /** Adds one observation of term {@code term}: its time over {@code rowCount} rows, of which it decided some. */
+    void record(int term, long elapsedNanos, int rowCount, int decidedRows) {
+        nanos[term] += elapsedNanos;
+        rows[term] += rowCount;
+        decided[term] += decidedRows;
+    }
+
+    /** Re-ranks the terms from the observations, then halves them; ties keep the written order. */
+    void reorder() {
+        double[] rank = new double[order.length];
+        for (int i = 0; i < rank.length; i++) {
+            double cost = (nanos[i] + 1) / (rows[i] + 1);
+            rank[i] = cost / ((decided[i] + 1) / (rows[i] + 2));
+            nanos[i] /= 2;
+            rows[i] /= 2;
+            decided[i] /= 2;
+        }
+        Arrays.sort(order, Comparator.comparingDouble(i -> rank[i]));
+    }
+
+    /** @return term indexes in evaluation order */
+    int[] order() {
+        int[] out = new int[order.length];
+        for (int i = 0; i < out.length; i++) {
+            out[i] = order[i];
+        }
+        return out;
+    }
+
+    private static <T> T[] permute(T[] terms, int[] order) {
+        T[] out = terms.clone();
+        for (int i = 0; i < order.length; i++) {
+            out[i] = terms[order[i]];
+        }
+        return out;
+    }
+
+    /** Row-at-a-time &amp;&amp; or || with learned term order. */
+    static final class Row implements RowPredicate {
+        private final RowPredicate[] terms;
+        private final boolean conjunction;
+        private final AdaptiveOrder stats;
+        private RowPredicate[] ordered;
+        private long evaluated;
+        private int samples;
+
+        Row(RowPredicate[] terms, boolean conjunction) {
+            this.terms = terms;
+            this.conjunction = conjunction;
+            this.stats = new AdaptiveOrder(terms.length);
+            this.ordered = terms.clone();
+        }
+
+        @Override
+        public boolean test(Map<String, String> row) {
+            // Off the phase of the scans' stage sampling, which times the rows where (row & 63) == 0
+            if ((++evaluated & ROW_SAMPLE_MASK) == 0) {
+                return sample(row);
+            }
+            for (RowPredicate p : ordered) {
+                if (p.test(row) != conjunction) return !conjunction;
+            }
+            return conjunction;
+        }
+
+        private boolean sample(Map<String, String> row) {
+            boolean result = conjunction;
+            for (int i = 0; i < terms.length; i++) {
+                long start = System.nanoTime();
+                boolean matches = terms[i].test(row);
+                long elapsed = System.nanoTime() - start;
+                boolean decides = matches != conjunction;
+                stats.record(i, elapsed, 1, decides ? 1 : 0);
+                if (decides) result = !conjunction;
+            }
+            if (++samples == ROW_SAMPLES_PER_REORDER) {
+                samples = 0;
+                stats.reorder();
+                ordered = permute(terms, stats.order());
+            }
+            return result;
+        }
+
+        int[] order() {
+            return stats.order();
+        }
+    }
+
+    /**
+     * Batch-at-a-time &amp;&amp; or ||. Under &amp;&amp; each term narrows the selection left by the one before. Under ||
+     * each term is tried on the positions no earlier term matched, and the matches are merged back in position order.
+     * A sampled batch runs every term on the whole input selection instead. Holds scratch buffers between batches.
+     */
+    static final class Batch implements BatchPredicate {
+        private final BatchPredicate[] terms;
+        private final boolean conjunction;
+        private final AdaptiveOrder stats;
+        private BatchPredicate[] ordered;
+        private long batches;
+        private int[] pending = new int[0];
+        private int[] scratch = new int[0];
+        private int[] hits = new int[0];
+
+        Batch(BatchPredicate[] terms, boolean conjunction) {
+            this.terms = terms;
+            this.conjunction = conjunction;
+            this.stats = new AdaptiveOrder(terms.length);
+            this.ordered = terms.clone();
+        }
+
+        @Override
+        public int select(ColumnBatch batch, int[] selection, int count) {
+            if (count == 0) return 0;
+            if (pending.length < count) {
+                pending = new int[count];
+                scratch = new int[count];
+            }
+            if (hits.length < batch.capacity()) {
+                hits = new int[batch.capacity()];
+            }
+            if ((batches++ & BATCH_SAMPLE_MASK) == 0) {
+                return sample(batch, selection, count);
+            }
+            if (conjunction) {
+                for (BatchPredicate p : ordered) {
+                    if (count == 0) break;
+                    count = p.select(batch, selection, count);
+                }
+                return count;
+            }
+            System.arraycopy(selection, 0, pending, 0, count);
+            int left = count;
+            for (BatchPredicate term : ordered) {
+                if (left == 0) break;
+                System.arraycopy(pending, 0, scratch, 0, left);
+                int matched = term.select(batch, scratch, left);
+                for (int k = 0; k < matched; k++) {
+                    hits[scratch[k]] = 1;
+                }
+                int kept = 0;
+                for (int k = 0; k < left; k++) {
+                    int row = pending[k];
+                    pending[kept] = row;
+                    kept += hits[row] == 0 ? 1 : 0;
+                }
+                left = kept;
+            }
+            return collect(selection, count, 1);
+        }
+
+        private int sample(ColumnBatch batch, int[] selection, int count) {
+            for (int i = 0; i < terms.length; i++) {
+                System.arraycopy(selection, 0, scratch, 0, count);
+                long start = System.nanoTime();
+                int matched = terms[i].select(batch, scratch, count);
+                long elapsed = System.nanoTime() - start;
+                stats.record(i, elapsed, count, conjunction ? count - matched : matched);
+                for (int k = 0; k < matched; k++) {
+                    hits[scratch[k]]++;
+                }
+            }
+            stats.reorder();
+            ordered = permute(terms, stats.order());
+            return collect(selection, count, conjunction ? terms.length : 1);
+        }
+
+        /** Keeps the selected positions hit by at least {@code needed} terms, clearing the hit counts. */
+        private int collect(int[] selection, int count, int needed) {
+            int n = 0;
+            for (int k = 0; k < count; k++) {
+                int row = selection[k];
+                selection[n] = row;
+                n += hits[row] >= needed ? 1 : 0;
+                hits[row] = 0;
+            }
+            return n;
+        }
+
+        int[] order() {
+            return stats.order();
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.project.csvanalyser.filter;
+
+import com.project.csvanalyser.columnar.ColumnBatch;
+
+/**
+ * Filter expression evaluated over a {@link ColumnBatch} at a time: narrows a selection vector to the positions that
+ * match. May keep scratch buffers, so each thread compiles its own.
+ */
+@FunctionalInterface
+public interface BatchPredicate {
+
+    /**
+     * Keeps the matching positions of {@code selection[0, count)}, in order, at the front of {@code selection}.
+     *
+     * @return number of matching positions
+     */
+    int select(ColumnBatch batch, int[] selection, int count);
+}
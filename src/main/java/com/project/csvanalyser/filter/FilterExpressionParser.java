@@ -3,9 +3,13 @@ package com.project.csvanalyser.filter;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
+import java.util.regex.PatternSyntaxException;
 
 /**
- * Recursive-descent parser for filter expressions: column op value, combined with && and ||.
+ * Recursive-descent parser for filter expressions: column op value, {@code column IN (...)},
+ * {@code column BETWEEN a AND b}, {@code column startsWith "s"} and {@code column matches "regex"}, combined with &&
+ * and ||. Keywords are case-insensitive. Produces a {@link FilterNode} tree, with || chains of equality checks on one
+ * column rewritten into IN lists; a null set of valid columns skips column validation.
  */
 final class FilterExpressionParser {
 
@@ -19,16 +23,16 @@ final class FilterExpressionParser {
         this.pos = 0;
     }
 
-    RowPredicate parse() {
-        RowPredicate p = parseOr();
+    FilterNode parse() {
+        FilterNode p = parseOr();
         if (pos < input.length()) {
             throw new IllegalArgumentException("Unexpected character at position " + pos + ": '" + input.substring(pos) + "'");
         }
         return p;
     }
 
-    private RowPredicate parseOr() {
-        List<RowPredicate> terms = new ArrayList<>();
+    private FilterNode parseOr() {
+        List<FilterNode> terms = new ArrayList<>();
         terms.add(parseAnd());
         while (pos < input.length()) {
             skipWhitespace();
@@ -39,11 +43,11 @@ final class FilterExpressionParser {
                 break;
             }
         }
-        return row -> terms.stream().anyMatch(p -> p.test(row));
+        return terms.size() == 1 ? terms.get(0) : FilterNode.anyOf(terms);
     }
 
-    private RowPredicate parseAnd() {
-        List<RowPredicate> terms = new ArrayList<>();
+    private FilterNode parseAnd() {
+        List<FilterNode> terms = new ArrayList<>();
         terms.add(parsePrimary());
         while (pos < input.length()) {
             skipWhitespace();
@@ -54,35 +58,93 @@ final class FilterExpressionParser {
                 break;
             }
         }
-        return row -> terms.stream().allMatch(p -> p.test(row));
+        return terms.size() == 1 ? terms.get(0) : new FilterNode.And(terms);
     }
 
-    private RowPredicate parsePrimary() {
+    private FilterNode parsePrimary() {
         skipWhitespace();
         if (pos >= input.length()) {
             throw new IllegalArgumentException("Unexpected end of expression");
         }
-        RowPredicate cond = parseCondition();
+        FilterNode cond = parseCondition();
         skipWhitespace();
         return cond;
     }
 
-    private RowPredicate parseCondition() {
+    private FilterNode parseCondition() {
         String column = parseIdentifier();
         if (column == null || column.isEmpty()) {
             throw new IllegalArgumentException("Expected column name at position " + pos);
         }
-        if (!validColumns.contains(column)) {
+        if (validColumns != null && !validColumns.contains(column)) {
             throw new IllegalArgumentException("Unknown column in filter: '" + column + "'. Available columns: " + validColumns);
         }
         skipWhitespace();
+        if (consumeKeyword("IN")) {
+            return parseIn(column);
+        }
+        if (consumeKeyword("BETWEEN")) {
+            double low = parseNumber();
+            skipWhitespace();
+            if (!consumeKeyword("AND")) {
+                throw new IllegalArgumentException("Expected AND in BETWEEN at position " + pos);
+            }
+            return new FilterNode.Between(column, low, parseNumber());
+        }
+        if (consumeKeyword(FilterNode.StringTest.STARTS_WITH)) {
+            return new FilterNode.StringTest(column, FilterNode.StringTest.STARTS_WITH, parseString());
+        }
+        if (consumeKeyword(FilterNode.StringTest.MATCHES)) {
+            String regex = parseString();
+            try {
+                return new FilterNode.StringTest(column, FilterNode.StringTest.MATCHES, regex);
+            } catch (PatternSyntaxException e) {
+                throw new IllegalArgumentException("Invalid regex for column " + column + ": " + e.getDescription(), e);
+            }
+        }
         String op = parseOperator();
         skipWhitespace();
         Object value = parseValue();
-        return row -> {
-            String cell = row.getOrDefault(column, "");
-            return evaluate(op, column, cell, value);
-        };
+        if (value instanceof String && !op.equals("==") && !op.equals("!=")) {
+            throw new IllegalArgumentException("String comparison only supports == and != for column " + column);
+        }
+        return new FilterNode.Comparison(column, op, value);
+    }
+
+    /** Parses {@code (v1, v2, ...)} after IN. */
+    private FilterNode parseIn(String column) {
+        skipWhitespace();
+        if (!consume("(")) {
+            throw new IllegalArgumentException("Expected ( after IN at position " + pos);
+        }
+        List<Object> values = new ArrayList<>();
+        do {
+            skipWhitespace();
+            values.add(parseValue());
+            skipWhitespace();
+        } while (consume(","));
+        if (!consume(")")) {
+            throw new IllegalArgumentException("Expected , or ) in IN list at position " + pos);
+        }
+        return new FilterNode.InList(column, values);
+    }
+
+    private double parseNumber() {
+        skipWhitespace();
+        int start = pos;
+        if (parseValue() instanceof Number n) {
+            return n.doubleValue();
+        }
+        throw new IllegalArgumentException("Expected number at position " + start);
+    }
+
+    private String parseString() {
+        skipWhitespace();
+        int start = pos;
+        if (pos < input.length() && input.charAt(pos) == '"' && parseValue() instanceof String s) {
+            return s;
+        }
+        throw new IllegalArgumentException("Expected string literal at position " + start);
     }
 
     private String parseIdentifier() {
@@ -146,40 +208,25 @@ final class FilterExpressionParser {
         }
     }
 
-    private boolean evaluate(String op, String column, String cellValue, Object filterValue) {
-        if (filterValue instanceof String) {
-            int cmp = cellValue.compareTo((String) filterValue);
-            return switch (op) {
-                case "==" -> cmp == 0;
-                case "!=" -> cmp != 0;
-                case ">", ">=", "<", "<=" -> throw new IllegalArgumentException("String comparison only supports == and != for column " + column);
-                default -> false;
-            };
-        }
-        double cellNum;
-        try {
-            cellNum = cellValue.isBlank() ? 0 : Double.parseDouble(cellValue.trim());
-        } catch (NumberFormatException e) {
-            return false;
-        }
-        double num = ((Number) filterValue).doubleValue();
-        return switch (op) {
-            case "==" -> cellNum == num;
-            case "!=" -> cellNum != num;
-            case ">" -> cellNum > num;
-            case "<" -> cellNum < num;
-            case ">=" -> cellNum >= num;
-            case "<=" -> cellNum <= num;
-            default -> false;
-        };
-    }
-
     private void skipWhitespace() {
         while (pos < input.length() && Character.isWhitespace(input.charAt(pos))) {
             pos++;
         }
     }
 
+    /** Consumes a case-insensitive keyword that is not the start of a longer identifier. */
+    private boolean consumeKeyword(String keyword) {
+        int end = pos + keyword.length();
+        if (!input.regionMatches(true, pos, keyword, 0, keyword.length())) {
+            return false;
+        }
+        if (end < input.length() && (Character.isLetterOrDigit(input.charAt(end)) || input.charAt(end) == '_')) {
+            return false;
+        }
+        pos = end;
+        return true;
+    }
+
     private boolean consume(String s) {
         if (input.regionMatches(pos, s, 0, s.length())) {
             pos += s.length();
@@ -0,0 +1,668 @@
+package com.project.csvanalyser.filter;
+
+import com.project.csvanalyser.columnar.ColumnBatch;
+import com.project.csvanalyser.columnar.ColumnKind;
+import com.project.csvanalyser.columnar.ColumnTable;
+import com.project.csvanalyser.columnar.DictionaryColumn;
+import com.project.csvanalyser.columnar.NumericColumn;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.DoublePredicate;
+import java.util.function.IntPredicate;
+import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Parsed filter expression tree. Nodes compile to a {@link RowPredicate} and render a canonical form in which
+ * commutative operands are flattened, de-duplicated and sorted, so equivalent expressions render identically.
+ * Compiled &amp;&amp; and || nodes evaluate their terms in an order learned at runtime (see {@link AdaptiveOrder}),
+ * so a compiled predicate is stateful and belongs to one thread.
+ * They also compile to an {@link IntPredicate} over row indexes of materialized columns, and to a
+ * {@link BatchPredicate} that narrows a selection vector over a {@link ColumnBatch}.
+ */
+abstract class FilterNode {
+
+    abstract RowPredicate toPredicate();
+
+    abstract String canonical();
+
+    /** Compiles against cached columns; every column reported by {@link #collectColumns} must be present. */
+    abstract IntPredicate toColumnar(ColumnTable table);
+
+    /** Compiles for batch-at-a-time evaluation; the result may hold scratch buffers, so compile once per thread. */
+    abstract BatchPredicate toBatch();
+
+    /** Adds the columns this node reads, and how (string or numeric), to the given map. */
+    abstract void collectColumns(Map<String, Set<ColumnKind>> into);
+
+    /** Conjunction (&amp;&amp;) of two or more terms. */
+    static final class And extends FilterNode {
+        private final List<FilterNode> terms;
+
+        And(List<FilterNode> terms) {
+            this.terms = List.copyOf(terms);
+        }
+
+        List<FilterNode> getTerms() {
+            return terms;
+        }
+
+        @Override
+        RowPredicate toPredicate() {
+            return new AdaptiveOrder.Row(compileAll(terms), true);
+        }
+
+        @Override
+        String canonical() {
+            return joinCanonical(terms, And.class, " && ");
+        }
+
+        @Override
+        IntPredicate toColumnar(ColumnTable table) {
+            IntPredicate[] compiled = compileAll(terms, table);
+            return row -> {
+                for (IntPredicate p : compiled) {
+                    if (!p.test(row)) return false;
+                }
+                return true;
+            };
+        }
+
+        @Override
+        BatchPredicate toBatch() {
+            return new AdaptiveOrder.Batch(compileBatch(terms), true);
+        }
+
+        @Override
+        void collectColumns(Map<String, Set<ColumnKind>> into) {
+            terms.forEach(t -> t.collectColumns(into));
+        }
+    }
+
+    /** Disjunction (||) of two or more terms. */
+    static final class Or extends FilterNode {
+        private final List<FilterNode> terms;
+
+        Or(List<FilterNode> terms) {
+            this.terms = List.copyOf(terms);
+        }
+
+        List<FilterNode> getTerms() {
+            return terms;
+        }
+
+        @Override
+        RowPredicate toPredicate() {
+            return new AdaptiveOrder.Row(compileAll(terms), false);
+        }
+
+        @Override
+        String canonical() {
+            return joinCanonical(terms, Or.class, " || ");
+        }
+
+        @Override
+        IntPredicate toColumnar(ColumnTable table) {
+            IntPredicate[] compiled = compileAll(terms, table);
+            return row -> {
+                for (IntPredicate p : compiled) {
+                    if (p.test(row)) return true;
+                }
+                return false;
+            };
+        }
+
+        @Override
+        BatchPredicate toBatch() {
+            return new AdaptiveOrder.Batch(compileBatch(terms), false);
+        }
+
+        @Override
+        void collectColumns(Map<String, Set<ColumnKind>> into) {
+            terms.forEach(t -> t.collectColumns(into));
+        }
+    }
+
+    /** Single comparison: column op value, where value is a String or a Number. */
+    static final class Comparison extends FilterNode {
+        private final String column;
+        private final String op;
+        private final Object value;
+
+        Comparison(String column, String op, Object value) {
+            this.column = column;
+            this.op = op;
+            this.value = value;
+        }
+
+        String getColumn() {
+            return column;
+        }
+
+        String getOp() {
+            return op;
+        }
+
+        Object getValue() {
+            return value;
+        }
+
+        @Override
+        RowPredicate toPredicate() {
+            return row -> evaluate(row.getOrDefault(column, ""));
+        }
+
+        boolean evaluate(String cellValue) {
+            if (value instanceof String) {
+                int cmp = cellValue.compareTo((String) value);
+                return switch (op) {
+                    case "==" -> cmp == 0;
+                    case "!=" -> cmp != 0;
+                    case ">", ">=", "<", "<=" -> throw new IllegalArgumentException("String comparison only supports == and != for column " + column);
+                    default -> false;
+                };
+            }
+            double cellNum;
+            try {
+                cellNum = cellValue.isBlank() ? 0 : Double.parseDouble(cellValue.trim());
+            } catch (NumberFormatException e) {
+                return false;
+            }
+            return compareNumber(cellNum);
+        }
+
+        @Override
+        IntPredicate toColumnar(ColumnTable table) {
+            if (value instanceof String s) {
+                DictionaryColumn col = table.stringColumn(column);
+                int code = col.codeOf(s);
+                return switch (op) {
+                    case "==" -> row -> col.code(row) == code;
+                    case "!=" -> row -> col.code(row) != code;
+                    default -> row -> evaluate(col.value(row));
+                };
+            }
+            NumericColumn col = table.numericColumn(column);
+            boolean blankMatches = compareNumber(0);
+            return row -> {
+                if (col.hasValue(row)) return compareNumber(col.value(row));
+                return col.isBlank(row) && blankMatches;
+            };
+        }
+
+        /**
+         * String equality compares cell references directly; numeric comparisons run over the column parsed at the
+         * selected positions, where blank cells read as 0 and invalid ones as NaN, which no comparison but != matches.
+         */
+        @Override
+        BatchPredicate toBatch() {
+            if (value instanceof String s) {
+                return switch (op) {
+                    case "==" -> (batch, selection, count) -> selectStrings(batch.strings(column), s, true, selection, count);
+                    case "!=" -> (batch, selection, count) -> selectStrings(batch.strings(column), s, false, selection, count);
+                    default -> (batch, selection, count) -> {
+                        String[] cells = batch.strings(column);
+                        int n = 0;
+                        for (int k = 0; k < count; k++) {
+                            int row = selection[k];
+                            selection[n] = row;
+                            n += evaluate(cells[row]) ? 1 : 0;
+                        }
+                        return n;
+                    };
+                };
+            }
+            return this::selectNumbers;
+        }
+
+        private static int selectStrings(String[] cells, String s, boolean equal, int[] selection, int count) {
+            int n = 0;
+            for (int k = 0; k < count; k++) {
+                int row = selection[k];
+                selection[n] = row;
+                n += s.equals(cells[row]) == equal ? 1 : 0;
+            }
+            return n;
+        }
+
+        private int selectNumbers(ColumnBatch batch, int[] selection, int count) {
+            double[] cells = batch.numbers(column, selection, count);
+            double num = ((Number) value).doubleValue();
+            int n = 0;
+            switch (op) {
+                case "==" -> {
+                    for (int k = 0; k < count; k++) {
+                        int row = selection[k];
+                        selection[n] = row;
+                        n += cells[row] == num ? 1 : 0;
+                    }
+                }
+                case "!=" -> {
+                    byte[] states = batch.states(column);
+                    for (int k = 0; k < count; k++) {
+                        int row = selection[k];
+                        selection[n] = row;
+                        n += cells[row] != num && states[row] != ColumnBatch.INVALID ? 1 : 0;
+                    }
+                }
+                case ">" -> {
+                    for (int k = 0; k < count; k++) {
+                        int row = selection[k];
+                        selection[n] = row;
+                        n += cells[row] > num ? 1 : 0;
+                    }
+                }
+                case "<" -> {
+                    for (int k = 0; k < count; k++) {
+                        int row = selection[k];
+                        selection[n] = row;
+                        n += cells[row] < num ? 1 : 0;
+                    }
+                }
+                case ">=" -> {
+                    for (int k = 0; k < count; k++) {
+                        int row = selection[k];
+                        selection[n] = row;
+                        n += cells[row] >= num ? 1 : 0;
+                    }
+                }
+                case "<=" -> {
+                    for (int k = 0; k < count; k++) {
+                        int row = selection[k];
+                        selection[n] = row;
+                        n += cells[row] <= num ? 1 : 0;
+                    }
+                }
+                default -> { }
+            }
+            return n;
+        }
+
+        @Override
+        void collectColumns(Map<String, Set<ColumnKind>> into) {
+            into.computeIfAbsent(column, c -> EnumSet.noneOf(ColumnKind.class))
+                    .add(value instanceof String ? ColumnKind.STRING : ColumnKind.NUMERIC);
+        }
+
+        private boolean compareNumber(double cellNum) {
+            double num = ((Number) value).doubleValue();
+            return switch (op) {
+                case "==" -> cellNum == num;
+                case "!=" -> cellNum != num;
+                case ">" -> cellNum > num;
+                case "<" -> cellNum < num;
+                case ">=" -> cellNum >= num;
+                case "<=" -> cellNum <= num;
+                default -> false;
+            };
+        }
+
+        @Override
+        String canonical() {
+            String literal = value instanceof String s ? quote(s) : Double.toString(((Number) value).doubleValue());
+            return column + op + literal;
+        }
+    }
+
+    /**
+     * {@code column IN (v1, v2, ...)}: all string literals, matched like ==, or all numbers, matched like == with blank
+     * cells as 0. Strings are looked up in a hash set, numbers by binary search, so the cost per row does not grow with
+     * the list.
+     */
+    static final class InList extends FilterNode {
+        private final String column;
+        private final Set<String> strings;
+        private final double[] numbers;
+
+        /** @param values all Strings or all Numbers, at least one */
+        InList(String column, List<?> values) {
+            this.column = column;
+            if (values.get(0) instanceof String) {
+                Set<String> set = new HashSet<>();
+                for (Object v : values) {
+                    if (!(v instanceof String s)) {
+                        throw new IllegalArgumentException("IN list mixes strings and numbers for column " + column);
+                    }
+                    set.add(s);
+                }
+                this.strings = Set.copyOf(set);
+                this.numbers = null;
+            } else {
+                double[] sorted = new double[values.size()];
+                for (int i = 0; i < sorted.length; i++) {
+                    if (!(values.get(i) instanceof Number n)) {
+                        throw new IllegalArgumentException("IN list mixes strings and numbers for column " + column);
+                    }
+                    sorted[i] = n.doubleValue() + 0.0; // -0.0 == 0.0, as for ==
+                }
+                Arrays.sort(sorted);
+                this.strings = null;
+                this.numbers = Arrays.stream(sorted).distinct().toArray();
+            }
+        }
+
+        String getColumn() {
+            return column;
+        }
+
+        /** @return the literals, as Strings or Doubles */
+        List<Object> getValues() {
+            return strings != null ? List.copyOf(strings) : Arrays.stream(numbers).boxed().map(d -> (Object) d).toList();
+        }
+
+        private boolean contains(double cellNum) {
+            return Arrays.binarySearch(numbers, cellNum + 0.0) >= 0;
+        }
+
+        @Override
+        RowPredicate toPredicate() {
+            if (strings != null) {
+                return row -> strings.contains(row.getOrDefault(column, ""));
+            }
+            return row -> contains(parseCell(row.getOrDefault(column, "")));
+        }
+
+        @Override
+        IntPredicate toColumnar(ColumnTable table) {
+            if (strings != null) {
+                return byDictionary(table.stringColumn(column), strings::contains);
+            }
+            return byNumber(table.numericColumn(column), this::contains);
+        }
+
+        @Override
+        BatchPredicate toBatch() {
+            if (strings != null) {
+                return (batch, selection, count) -> {
+                    String[] cells = batch.strings(column);
+                    int n = 0;
+                    for (int k = 0; k < count; k++) {
+                        int row = selection[k];
+                        selection[n] = row;
+                        n += strings.contains(cells[row]) ? 1 : 0;
+                    }
+                    return n;
+                };
+            }
+            return (batch, selection, count) -> {
+                double[] cells = batch.numbers(column, selection, count);
+                int n = 0;
+                for (int k = 0; k < count; k++) {
+                    int row = selection[k];
+                    selection[n] = row;
+                    n += contains(cells[row]) ? 1 : 0;
+                }
+                return n;
+            };
+        }
+
+        @Override
+        void collectColumns(Map<String, Set<ColumnKind>> into) {
+            into.computeIfAbsent(column, c -> EnumSet.noneOf(ColumnKind.class))
+                    .add(strings != null ? ColumnKind.STRING : ColumnKind.NUMERIC);
+        }
+
+        @Override
+        String canonical() {
+            List<String> literals = new ArrayList<>();
+            if (strings != null) {
+                new TreeSet<>(strings).forEach(v -> literals.add(quote(v)));
+            } else {
+                Arrays.stream(numbers).forEach(v -> literals.add(Double.toString(v)));
+            }
+            return literals.size() == 1 ? column + "==" + literals.get(0)
+                    : column + " IN (" + String.join(",", literals) + ")";
+        }
+    }
+
+    /** {@code column BETWEEN low AND high}: numeric, both ends inclusive, blank cells as 0. */
+    static final class Between extends FilterNode {
+        private final String column;
+        private final double low;
+        private final double high;
+
+        Between(String column, double low, double high) {
+            this.column = column;
+            this.low = low;
+            this.high = high;
+        }
+
+        private boolean test(double cellNum) {
+            return cellNum >= low && cellNum <= high;
+        }
+
+        @Override
+        RowPredicate toPredicate() {
+            return row -> test(parseCell(row.getOrDefault(column, "")));
+        }
+
+        @Override
+        IntPredicate toColumnar(ColumnTable table) {
+            return byNumber(table.numericColumn(column), this::test);
+        }
+
+        @Override
+        BatchPredicate toBatch() {
+            return (batch, selection, count) -> {
+                double[] cells = batch.numbers(column, selection, count);
+                int n = 0;
+                for (int k = 0; k < count; k++) {
+                    int row = selection[k];
+                    selection[n] = row;
+                    double v = cells[row];
+                    n += v >= low && v <= high ? 1 : 0;
+                }
+                return n;
+            };
+        }
+
+        @Override
+        void collectColumns(Map<String, Set<ColumnKind>> into) {
+            into.computeIfAbsent(column, c -> EnumSet.noneOf(ColumnKind.class)).add(ColumnKind.NUMERIC);
+        }
+
+        @Override
+        String canonical() {
+            return column + " BETWEEN " + low + " AND " + high;
+        }
+    }
+
+    /**
+     * String test on a column: {@code column startsWith "prefix"}, or {@code column matches "regex"}, true when the
+     * regex is found anywhere in the value (anchor it with ^ and $ for a whole-value match). The regex is compiled once
+     * when the filter is parsed; over cached columns each distinct value is tested once.
+     */
+    static final class StringTest extends FilterNode {
+        static final String STARTS_WITH = "startsWith";
+        static final String MATCHES = "matches";
+
+        private final String column;
+        private final String kind;
+        private final String literal;
+        private final Pattern pattern;
+
+        StringTest(String column, String kind, String literal) {
+            this.column = column;
+            this.kind = kind;
+            this.literal = literal;
+            this.pattern = MATCHES.equals(kind) ? Pattern.compile(literal) : null;
+        }
+
+        /** @return a test for one thread; a regex test reuses its matcher */
+        private Predicate<String> compile() {
+            if (pattern == null) {
+                return cell -> cell.startsWith(literal);
+            }
+            Matcher matcher = pattern.matcher("");
+            return cell -> matcher.reset(cell).find();
+        }
+
+        @Override
+        RowPredicate toPredicate() {
+            Predicate<String> test = compile();
+            return row -> test.test(row.getOrDefault(column, ""));
+        }
+
+        @Override
+        IntPredicate toColumnar(ColumnTable table) {
+            return byDictionary(table.stringColumn(column), compile());
+        }
+
+        @Override
+        BatchPredicate toBatch() {
+            Predicate<String> test = compile();
+            return (batch, selection, count) -> {
+                String[] cells = batch.strings(column);
+                int n = 0;
+                for (int k = 0; k < count; k++) {
+                    int row = selection[k];
+                    selection[n] = row;
+                    n += test.test(cells[row]) ? 1 : 0;
+                }
+                return n;
+            };
+        }
+
+        @Override
+        void collectColumns(Map<String, Set<ColumnKind>> into) {
+            into.computeIfAbsent(column, c -> EnumSet.noneOf(ColumnKind.class)).add(ColumnKind.STRING);
+        }
+
+        @Override
+        String canonical() {
+            return column + " " + kind + " " + quote(literal);
+        }
+    }
+
+    /**
+     * Builds an || of the given terms, rewriting equality checks and IN lists on the same column (and of the same
+     * literal type) into one IN list, so {@code r=="a" || r=="b" || r=="c"} costs one hash lookup per row instead of
+     * three compares.
+     *
+     * @return the single remaining term if everything merged into one
+     */
+    static FilterNode anyOf(List<FilterNode> terms) {
+        Map<String, List<Object>> valuesByGroup = new LinkedHashMap<>();
+        Map<String, Integer> termsByGroup = new LinkedHashMap<>();
+        for (FilterNode t : terms) {
+            String group = equalityGroup(t);
+            if (group == null) continue;
+            termsByGroup.merge(group, 1, Integer::sum);
+            List<Object> values = valuesByGroup.computeIfAbsent(group, g -> new ArrayList<>());
+            if (t instanceof Comparison c) {
+                values.add(c.getValue());
+            } else {
+                values.addAll(((InList) t).getValues());
+            }
+        }
+        List<FilterNode> out = new ArrayList<>();
+        Set<String> emitted = new HashSet<>();
+        for (FilterNode t : terms) {
+            String group = equalityGroup(t);
+            if (group == null || termsByGroup.get(group) < 2) {
+                out.add(t);
+            } else if (emitted.add(group)) {
+                String column = t instanceof Comparison c ? c.getColumn() : ((InList) t).getColumn();
+                out.add(new InList(column, valuesByGroup.get(group)));
+            }
+        }
+        return out.size() == 1 ? out.get(0) : new Or(out);
+    }
+
+    /** @return column and literal type of an == comparison or IN list, or null for any other term */
+    private static String equalityGroup(FilterNode t) {
+        if (t instanceof Comparison c && c.getOp().equals("==")) {
+            return c.getColumn() + (c.getValue() instanceof String ? "\0s" : "\0n");
+        }
+        if (t instanceof InList in) {
+            return in.getColumn() + (in.strings != null ? "\0s" : "\0n");
+        }
+        return null;
+    }
+
+    /** @return the cell as a number: 0 when blank, NaN (which no comparison matches) when not a number */
+    private static double parseCell(String cell) {
+        if (cell.isBlank()) return 0;
+        try {
+            return Double.parseDouble(cell.trim());
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    /** Tests each distinct value of a dictionary column once, then matches rows by code. */
+    private static IntPredicate byDictionary(DictionaryColumn col, Predicate<String> test) {
+        BitSet matching = new BitSet(col.dictionarySize());
+        for (int code = 0; code < col.dictionarySize(); code++) {
+            if (test.test(col.valueOfCode(code))) matching.set(code);
+        }
+        return row -> matching.get(col.code(row));
+    }
+
+    private static IntPredicate byNumber(NumericColumn col, DoublePredicate test) {
+        boolean blankMatches = test.test(0);
+        return row -> {
+            if (col.hasValue(row)) return test.test(col.value(row));
+            return col.isBlank(row) && blankMatches;
+        };
+    }
+
+    private static String quote(String s) {
+        return "\"" + s.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+
+    private static RowPredicate[] compileAll(List<FilterNode> terms) {
+        RowPredicate[] compiled = new RowPredicate[terms.size()];
+        for (int i = 0; i < compiled.length; i++) {
+            compiled[i] = terms.get(i).toPredicate();
+        }
+        return compiled;
+    }
+
+    private static IntPredicate[] compileAll(List<FilterNode> terms, ColumnTable table) {
+        IntPredicate[] compiled = new IntPredicate[terms.size()];
+        for (int i = 0; i < compiled.length; i++) {
+            compiled[i] = terms.get(i).toColumnar(table);
+        }
+        return compiled;
+    }
+
+    private static BatchPredicate[] compileBatch(List<FilterNode> terms) {
+        BatchPredicate[] compiled = new BatchPredicate[terms.size()];
+        for (int i = 0; i < compiled.length; i++) {
+            compiled[i] = terms.get(i).toBatch();
+        }
+        return compiled;
+    }
+
+    /**
+     * Flattens nested nodes of the same type (a &amp;&amp; (b &amp;&amp; c) == a &amp;&amp; b &amp;&amp; c), then sorts and de-duplicates
+     * operands; terms have no side effects, so neither order nor repetition changes the result.
+     */
+    private static String joinCanonical(List<FilterNode> terms, Class<? extends FilterNode> type, String separator) {
+        TreeSet<String> parts = new TreeSet<>();
+        List<FilterNode> pending = new ArrayList<>(terms);
+        while (!pending.isEmpty()) {
+            FilterNode t = pending.remove(pending.size() - 1);
+            if (type.isInstance(t)) {
+                pending.addAll(t instanceof And a ? a.getTerms() : ((Or) t).getTerms());
+            } else {
+                parts.add(t.canonical());
+            }
+        }
+        if (parts.size() == 1) {
+            return parts.first();
+        }
+        return "(" + String.join(separator, parts) + ")";
+    }
+}
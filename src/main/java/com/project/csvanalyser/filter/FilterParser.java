@@ -1,7 +1,13 @@
 package com.project.csvanalyser.filter;
 
+import com.project.csvanalyser.columnar.ColumnKind;
+import com.project.csvanalyser.columnar.ColumnTable;
+
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.function.IntPredicate;
 
 /**
  * Parses a simple filter expression and returns a predicate that can be evaluated against a row (Map of column -> value).
@@ -9,8 +15,10 @@ import java.util.Set;
  * Supported syntax:
  * <ul>
  *   <li>Comparisons: column == "value", column != "value", column &gt; number, column &lt; number, column &gt;= number, column &lt;= number</li>
+ *   <li>Sets and ranges: column IN ("a", "b"), column IN (1, 2), column BETWEEN low AND high (inclusive)</li>
+ *   <li>String tests: column startsWith "prefix", column matches "regex" (found anywhere in the value)</li>
  *   <li>String literals in double quotes; numbers unquoted</li>
- *   <li>Combined with &amp;&amp; (and) and || (or)</li>
+ *   <li>Combined with &amp;&amp; (and) and || (or); || chains of == on one column are evaluated as an IN list</li>
  * </ul>
  * If a column referenced in the filter is not in the header, building the predicate fails fast with a clear error.
  */
@@ -21,7 +29,8 @@ public final class FilterParser {
      *
      * @param expression filter expression (e.g. region=="APAC" &amp;&amp; amount&gt;1000)
      * @param header     column names that exist in the CSV; used to validate column names and fail fast if missing
-     * @return predicate that evaluates the expression for a given row
+     * @return predicate that evaluates the expression for a given row; it learns the order in which to evaluate
+     *         &amp;&amp; and || terms as it runs, so use one per thread
      * @throws IllegalArgumentException if expression is invalid or references a column not in header
      */
     public static RowPredicate parse(String expression, List<String> header) {
@@ -29,7 +38,59 @@ public final class FilterParser {
             return row -> true;
         }
         Set<String> validColumns = header == null ? Set.of() : Set.copyOf(header);
-        return new FilterExpressionParser(expression.trim(), validColumns).parse();
+        return new FilterExpressionParser(expression.trim(), validColumns).parse().toPredicate();
+    }
+
+    /**
+     * Canonical form of the expression, for use as a cache key: operands of &amp;&amp; and || are flattened, sorted and
+     * de-duplicated and numbers are normalized, so {@code a>1 && b==2} and {@code b==2&&a>1.0} render identically.
+     * Column names are not validated.
+     *
+     * @return canonical text, or the empty string for a null/blank expression (matches every row)
+     * @throws IllegalArgumentException if the expression is invalid
+     */
+    public static String canonicalize(String expression) {
+        if (expression == null || expression.isBlank()) {
+            return "";
+        }
+        return new FilterExpressionParser(expression.trim(), null).parse().canonical();
+    }
+
+    /**
+     * Like {@link #parse}, but evaluates against materialized columns by row index instead of row maps.
+     *
+     * @param table columns of the file; must hold every column reported by {@link #columnUsage}
+     */
+    public static IntPredicate parseColumnar(String expression, List<String> header, ColumnTable table) {
+        if (expression == null || expression.isBlank()) {
+            return row -> true;
+        }
+        Set<String> validColumns = header == null ? Set.of() : Set.copyOf(header);
+        return new FilterExpressionParser(expression.trim(), validColumns).parse().toColumnar(table);
+    }
+
+    /**
+     * Like {@link #parse}, but evaluates a {@link com.project.csvanalyser.columnar.ColumnBatch} at a time. The batch
+     * must keep every column reported by {@link #columnUsage}. Returns a new predicate on each call; compile one per
+     * thread.
+     */
+    public static BatchPredicate parseBatch(String expression, List<String> header) {
+        if (expression == null || expression.isBlank()) {
+            return (batch, selection, count) -> count;
+        }
+        Set<String> validColumns = header == null ? Set.of() : Set.copyOf(header);
+        return new FilterExpressionParser(expression.trim(), validColumns).parse().toBatch();
+    }
+
+    /**
+     * Columns referenced by the expression and whether they are compared as strings or numbers. Not validated.
+     */
+    public static Map<String, Set<ColumnKind>> columnUsage(String expression) {
+        Map<String, Set<ColumnKind>> usage = new LinkedHashMap<>();
+        if (expression != null && !expression.isBlank()) {
+            new FilterExpressionParser(expression.trim(), null).parse().collectColumns(usage);
+        }
+        return usage;
     }
 
     private FilterParser() {
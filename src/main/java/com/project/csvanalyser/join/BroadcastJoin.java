@@ -0,0 +1,310 @@
+package com.project.csvanalyser.join;
+
+import com.project.csvanalyser.csv.CsvStreamReader;
+import com.project.csvanalyser.stats.RunStats;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.stream.Stream;
+
+/**
+ * {@code --join}: enriches every scanned row with the columns of small dimension tables, looked up by a key column of
+ * the row. Each table is copied whole to every scan thread's view ("broadcast"), so rows are joined where they are
+ * tokenized and the scanned file is never shuffled or sorted.
+ * <p>
+ * {@link #start} reads the tables' headers, so a bad spec fails before the scan, and loads their rows on one
+ * background thread per table while the scan gets going; a {@link Lookup} waits for them on its first row. Joins are
+ * left joins: a row whose key no table row has keeps its joined columns blank. Keys must be unique within a table.
+ * <p>
+ * {@link #bind} fixes the scanned file's header; after that each scan thread takes its own {@link Lookup}.
+ */
+public final class BroadcastJoin {
+
+    private final List<Table> tables;
+    private final List<Lookup> lookups = Collections.synchronizedList(new ArrayList<>());
+    private int factColumns = -1;
+    private int[] keyIndex;
+    private int[] offset;
+    private List<String> header;
+
+    private BroadcastJoin(List<Table> tables) {
+        this.tables = tables;
+    }
+
+    /**
+     * Reads the header of each table and starts loading its rows in the background.
+     *
+     * @param delimiter field delimiter of the tables, which always have a header row
+     * @throws IllegalArgumentException if a table is missing, has no header or lacks its key column
+     */
+    public static BroadcastJoin start(List<JoinSpec> specs, char delimiter) throws IOException {
+        List<Table> tables = new ArrayList<>();
+        try {
+            for (JoinSpec spec : specs) {
+                if (!Files.isRegularFile(spec.getFile())) {
+                    throw new IllegalArgumentException("Join file not found: " + spec.getFile());
+                }
+                String source = spec.getFile().getFileName().toString();
+                CsvStreamReader.ParseResult parsed = new CsvStreamReader(delimiter, true).stream(spec.getFile());
+                Table table = new Table(spec, source, parsed.getHeader(), parsed.getRecordStream());
+                tables.add(table);
+                if (!table.header.contains(spec.getKeyColumn())) {
+                    throw new IllegalArgumentException("Join key column not in " + source + ": '"
+                            + spec.getKeyColumn() + "'. Available: " + table.header);
+                }
+            }
+        } catch (RuntimeException | IOException e) {
+            for (Table table : tables) {
+                table.rows.close();
+            }
+            throw e;
+        }
+        for (Table table : tables) {
+            table.load();
+        }
+        return new BroadcastJoin(tables);
+    }
+
+    /**
+     * Resolves each join's key column against the scanned file's header and the columns joined before it.
+     *
+     * @return the header of joined rows: {@code factHeader} followed by every table's columns other than its key
+     * @throws IllegalArgumentException if a key column is unknown or a joined column would shadow an existing one
+     */
+    public List<String> bind(List<String> factHeader) {
+        List<String> joined = new ArrayList<>(factHeader);
+        Set<String> names = new HashSet<>(factHeader);
+        keyIndex = new int[tables.size()];
+        offset = new int[tables.size()];
+        for (int t = 0; t < tables.size(); t++) {
+            Table table = tables.get(t);
+            String column = table.spec.getColumn();
+            keyIndex[t] = joined.lastIndexOf(column);
+            if (keyIndex[t] < 0) {
+                throw new IllegalArgumentException("Join column not in CSV: '" + column + "'. Available: " + joined);
+            }
+            offset[t] = joined.size();
+            for (String c : table.header) {
+                if (c.equals(table.spec.getKeyColumn())) continue;
+                if (!names.add(c)) {
+                    throw new IllegalArgumentException("Joined column '" + c + "' of " + table.source
+                            + " is already a column of the joined rows; rename it in one of the files");
+                }
+                joined.add(c);
+            }
+        }
+        this.factColumns = factHeader.size();
+        this.header = List.copyOf(joined);
+        return header;
+    }
+
+    /** @return the header {@link #bind} returned */
+    public List<String> header() {
+        return header;
+    }
+
+    /** @return columns of the scanned file, which come first in joined rows */
+    public int factColumns() {
+        return factColumns;
+    }
+
+    /**
+     * @return a lookup for one scan thread
+     * @throws IllegalStateException if the join is not bound yet
+     */
+    public Lookup lookup() {
+        if (header == null) {
+            throw new IllegalStateException("Join is not bound to a header");
+        }
+        Lookup lookup = new Lookup();
+        lookups.add(lookup);
+        return lookup;
+    }
+
+    /**
+     * Like {@link #lookup()}, for rows read ahead of the scan (to sample them) that the scan joins again: rows it
+     * finds no match for are not counted in {@link #unmatchedRows()}.
+     */
+    public Lookup sampleLookup() {
+        Lookup lookup = lookup();
+        lookup.counted = false;
+        return lookup;
+    }
+
+    /**
+     * Records "joinLoad" (the loader threads' time, overlapped with the scan) and "joinWait" (time scan threads spent
+     * waiting for tables still loading). Call after the scan.
+     */
+    public void addStages(RunStats stats) {
+        long loadNanos = 0;
+        long loadCpuNanos = 0;
+        for (Table table : tables) {
+            loadNanos += table.loadNanos;
+            loadCpuNanos += table.loadCpuNanos;
+        }
+        stats.addStage("joinLoad", loadNanos, loadCpuNanos);
+        long waitNanos = 0;
+        synchronized (lookups) {
+            for (Lookup lookup : lookups) {
+                waitNanos += lookup.waitNanos;
+            }
+        }
+        stats.addStage("joinWait", waitNanos, 0);
+    }
+
+    /**
+     * @return rows whose key was not found, by join spec; only joins with at least one. Call after the scan.
+     */
+    public Map<String, Long> unmatchedRows() {
+        Map<String, Long> unmatched = new LinkedHashMap<>();
+        synchronized (lookups) {
+            for (Lookup lookup : lookups) {
+                for (int t = 0; t < tables.size() && lookup.counted; t++) {
+                    if (lookup.misses[t] > 0) {
+                        unmatched.merge(tables.get(t).spec.toString(), lookup.misses[t], Long::sum);
+                    }
+                }
+            }
+        }
+        return unmatched;
+    }
+
+    /**
+     * Joins the rows of one scan thread. Not thread-safe.
+     */
+    public final class Lookup {
+        private final long[] misses = new long[tables.size()];
+        private DimensionTable[] loaded;
+        private long waitNanos;
+        private boolean counted = true;
+
+        private Lookup() {
+        }
+
+        /**
+         * Fills the joined columns of a row given as values in {@link #header()} order, whose first
+         * {@link #factColumns()} values are set. Allocates nothing once the tables are loaded.
+         */
+        public void join(String[] values) {
+            DimensionTable[] dims = tables();
+            for (int t = 0; t < dims.length; t++) {
+                DimensionTable dim = dims[t];
+                int row = dim.find(values[keyIndex[t]]);
+                int at = offset[t];
+                int n = dim.getColumns().size();
+                if (row < 0) {
+                    misses[t]++;
+                    for (int c = 0; c < n; c++) {
+                        values[at + c] = "";
+                    }
+                } else {
+                    for (int c = 0; c < n; c++) {
+                        values[at + c] = dim.value(c, row);
+                    }
+                }
+            }
+        }
+
+        /** Adds the joined columns to a row given as a column-to-value map. */
+        public void join(Map<String, String> row) {
+            DimensionTable[] dims = tables();
+            for (int t = 0; t < dims.length; t++) {
+                DimensionTable dim = dims[t];
+                int r = dim.find(row.getOrDefault(header.get(keyIndex[t]), ""));
+                if (r < 0) misses[t]++;
+                List<String> columns = dim.getColumns();
+                for (int c = 0; c < columns.size(); c++) {
+                    row.put(columns.get(c), r < 0 ? "" : dim.value(c, r));
+                }
+            }
+        }
+
+        /** @return {@code rows}, each joined as it is read */
+        public Iterator<Map<String, String>> joining(Iterator<Map<String, String>> rows) {
+            return new Iterator<>() {
+                @Override
+                public boolean hasNext() {
+                    return rows.hasNext();
+                }
+
+                @Override
+                public Map<String, String> next() {
+                    Map<String, String> row = rows.next();
+                    join(row);
+                    return row;
+                }
+            };
+        }
+
+        private DimensionTable[] tables() {
+            if (loaded == null) {
+                long start = System.nanoTime();
+                DimensionTable[] dims = new DimensionTable[tables.size()];
+                for (int t = 0; t < dims.length; t++) {
+                    dims[t] = tables.get(t).await();
+                }
+                waitNanos += System.nanoTime() - start;
+                loaded = dims;
+            }
+            return loaded;
+        }
+    }
+
+    private static final class Table {
+        private final JoinSpec spec;
+        private final String source;
+        private final List<String> header;
+        private final Stream<Map<String, String>> rows;
+        private CompletableFuture<DimensionTable> future;
+        private volatile long loadNanos;
+        private volatile long loadCpuNanos;
+
+        Table(JoinSpec spec, String source, List<String> header, Stream<Map<String, String>> rows) {
+            this.spec = spec;
+            this.source = source;
+            this.header = header;
+            this.rows = rows;
+        }
+
+        void load() {
+            Executor thread = r -> {
+                Thread t = new Thread(r, "csv-join-" + source);
+                t.setDaemon(true);
+                t.start();
+            };
+            future = CompletableFuture.supplyAsync(() -> {
+                long start = System.nanoTime();
+                long cpuStart = RunStats.threadCpuNanos();
+                try (Stream<Map<String, String>> s = rows) {
+                    return DimensionTable.load(source, header, spec.getKeyColumn(), s.iterator());
+                } finally {
+                    loadNanos = System.nanoTime() - start;
+                    loadCpuNanos = RunStats.threadCpuNanos() - cpuStart;
+                }
+            }, thread);
+        }
+
+        DimensionTable await() {
+            try {
+                return future.join();
+            } catch (CompletionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException re) throw re;
+                if (cause instanceof Error err) throw err;
+                throw new UncheckedIOException(new IOException("Failed to load " + source, cause));
+            }
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.project.csvanalyser.join;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A small CSV table held in memory for lookups by a unique key column. Keys sit in an open-addressing hash table
+ * (parallel key and row-number arrays, linear probing), so a lookup hashes the probe string and compares it with the
+ * keys in its run, allocating nothing. The other columns are stored column by column, with repeated values of a column
+ * sharing one string.
+ * <p>
+ * Immutable once loaded; safe to read from several threads after publication.
+ */
+public final class DimensionTable {
+
+    private final String source;
+    private final String keyColumn;
+    private final List<String> columns;
+    private final String[] slotKeys;
+    private final int[] slotRows;
+    private final int mask;
+    /** Values by column, then by row, of the columns other than the key. */
+    private final String[][] values;
+    private final int size;
+
+    private DimensionTable(String source, String keyColumn, List<String> columns, String[] slotKeys, int[] slotRows,
+                           String[][] values, int size) {
+        this.source = source;
+        this.keyColumn = keyColumn;
+        this.columns = columns;
+        this.slotKeys = slotKeys;
+        this.slotRows = slotRows;
+        this.mask = slotKeys.length - 1;
+        this.values = values;
+        this.size = size;
+    }
+
+    /**
+     * Reads every row of a table and indexes it by {@code keyColumn}.
+     *
+     * @param source name of the table in messages, usually its file name
+     * @param header the table's columns; must contain {@code keyColumn}
+     * @throws IllegalArgumentException if two rows have the same key
+     */
+    public static DimensionTable load(String source, List<String> header, String keyColumn,
+                                      Iterator<Map<String, String>> rows) {
+        List<String> columns = new ArrayList<>(header);
+        columns.remove(keyColumn);
+        List<String> keys = new ArrayList<>();
+        List<List<String>> cells = new ArrayList<>();
+        List<Map<String, String>> shared = new ArrayList<>();
+        for (int c = 0; c < columns.size(); c++) {
+            cells.add(new ArrayList<>());
+            shared.add(new HashMap<>());
+        }
+        while (rows.hasNext()) {
+            Map<String, String> row = rows.next();
+            keys.add(row.getOrDefault(keyColumn, ""));
+            for (int c = 0; c < columns.size(); c++) {
+                String value = row.getOrDefault(columns.get(c), "");
+                cells.get(c).add(shared.get(c).computeIfAbsent(value, v -> v));
+            }
+        }
+
+        int size = keys.size();
+        int capacity = Integer.highestOneBit(Math.max(2, size) * 2 - 1) << 1;
+        String[] slotKeys = new String[capacity];
+        int[] slotRows = new int[capacity];
+        for (int r = 0; r < size; r++) {
+            String key = keys.get(r);
+            int slot = spread(key.hashCode()) & (capacity - 1);
+            while (slotKeys[slot] != null) {
+                if (slotKeys[slot].equals(key)) {
+                    throw new IllegalArgumentException("Join key '" + key + "' appears more than once in column '"
+                            + keyColumn + "' of " + source + "; keys of a joined table must be unique");
+                }
+                slot = (slot + 1) & (capacity - 1);
+            }
+            slotKeys[slot] = key;
+            slotRows[slot] = r;
+        }
+        String[][] values = new String[columns.size()][];
+        for (int c = 0; c < columns.size(); c++) {
+            values[c] = cells.get(c).toArray(new String[0]);
+        }
+        return new DimensionTable(source, keyColumn, List.copyOf(columns), slotKeys, slotRows, values, size);
+    }
+
+    private static int spread(int h) {
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * @return the row whose key equals {@code key}, or -1 if there is none
+     */
+    public int find(String key) {
+        int slot = spread(key.hashCode()) & mask;
+        while (true) {
+            String k = slotKeys[slot];
+            if (k == null) {
+                return -1;
+            }
+            if (k.equals(key)) {
+                return slotRows[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * @param column index into {@link #getColumns()}
+     * @param row    a row returned by {@link #find}
+     */
+    public String value(int column, int row) {
+        return values[column][row];
+    }
+
+    /** @return the table's columns other than the key, in file order */
+    public List<String> getColumns() { return columns; }
+
+    public String getKeyColumn() { return keyColumn; }
+    public String getSource() { return source; }
+    public int size() { return size; }
+}
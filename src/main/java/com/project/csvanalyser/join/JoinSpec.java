@@ -0,0 +1,55 @@
+package com.project.csvanalyser.join;
+
+import java.nio.file.Path;
+
+/**
+ * One {@code --join} entry: {@code <file>:<column>[=<key column>]}. Rows of the scanned file are matched on
+ * {@code column} against the dimension table's {@code key column} (by default the column of the same name), e.g.
+ * {@code products.csv:product=sku}. The column may be one added by an earlier join, so lookups can chain.
+ */
+public final class JoinSpec {
+
+    private final Path file;
+    private final String column;
+    private final String keyColumn;
+
+    public JoinSpec(Path file, String column, String keyColumn) {
+        this.file = file;
+        this.column = column;
+        this.keyColumn = keyColumn;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the spec does not have the form {@code <file>:<column>[=<key column>]}
+     */
+    public static JoinSpec parse(String spec) {
+        String s = spec.trim();
+        int colon = s.lastIndexOf(':');
+        if (colon <= 0 || colon == s.length() - 1) {
+            throw new IllegalArgumentException("Join must be <file>:<column>[=<key column>]: '" + spec + "'");
+        }
+        String file = s.substring(0, colon).trim();
+        String on = s.substring(colon + 1);
+        int eq = on.indexOf('=');
+        String column = (eq < 0 ? on : on.substring(0, eq)).trim();
+        String keyColumn = eq < 0 ? column : on.substring(eq + 1).trim();
+        if (file.isEmpty() || column.isEmpty() || keyColumn.isEmpty()) {
+            throw new IllegalArgumentException("Join must be <file>:<column>[=<key column>]: '" + spec + "'");
+        }
+        return new JoinSpec(Path.of(file), column, keyColumn);
+    }
+
+    /** @return the dimension table's CSV file */
+    public Path getFile() { return file; }
+
+    /** @return the column of the scanned rows holding the join key */
+    public String getColumn() { return column; }
+
+    /** @return the dimension table's column the key is looked up in */
+    public String getKeyColumn() { return keyColumn; }
+
+    @Override
+    public String toString() {
+        return file + ":" + column + (column.equals(keyColumn) ? "" : "=" + keyColumn);
+    }
+}
@@ -0,0 +1,96 @@
+package com.project.csvanalyser.schema;
+
+import com.project.csvanalyser.aggregation.IsoTimestamp;
+
+import java.util.Locale;
+
+/**
+ * Type of a CSV column, from narrowest to widest. A cell fits a type when, ignoring surrounding whitespace, it is:
+ * <ul>
+ *   <li>{@link #LONG}: an optional sign and at most 18 digits</li>
+ *   <li>{@link #DECIMAL}: an optional sign and digits with at most one decimal point, e.g. {@code -12.50}</li>
+ *   <li>{@link #DOUBLE}: anything {@link Double#parseDouble} accepts, such as {@code 1e6}</li>
+ *   <li>{@link #TIMESTAMP}: an ISO-8601 date or date-time as {@link IsoTimestamp} reads it</li>
+ *   <li>{@link #STRING}: anything</li>
+ * </ul>
+ * Blank cells fit every type.
+ */
+public enum ColumnType {
+    LONG,
+    DECIMAL,
+    DOUBLE,
+    TIMESTAMP,
+    STRING;
+
+    /** Digits that always fit a signed 64-bit integer. */
+    private static final int MAX_LONG_DIGITS = 18;
+
+    /** @return the lower-case name used in schema files and the JSON summary */
+    public String label() {
+        return name().toLowerCase(Locale.ROOT);
+    }
+
+    /** @return whether cells of this type are numbers */
+    public boolean isNumeric() {
+        return this == LONG || this == DECIMAL || this == DOUBLE;
+    }
+
+    /**
+     * @return whether a cell fits this type; blank cells always do
+     */
+    public boolean accepts(String cell) {
+        int start = 0;
+        int end = cell.length();
+        while (start < end && cell.charAt(start) <= ' ') start++;
+        while (end > start && cell.charAt(end - 1) <= ' ') end--;
+        if (start == end) {
+            return true;
+        }
+        return switch (this) {
+            case LONG -> plainNumber(cell, start, end, false);
+            case DECIMAL -> plainNumber(cell, start, end, true);
+            case DOUBLE -> isDouble(cell);
+            case TIMESTAMP -> IsoTimestamp.parseEpochMillis(cell) != IsoTimestamp.INVALID;
+            case STRING -> true;
+        };
+    }
+
+    /**
+     * @throws IllegalArgumentException if the name is not a type
+     */
+    public static ColumnType parse(String name) {
+        for (ColumnType type : values()) {
+            if (type.label().equalsIgnoreCase(name.trim())) {
+                return type;
+            }
+        }
+        throw new IllegalArgumentException("Unknown column type '" + name + "'. Expected one of: long, decimal, "
+                + "double, timestamp, string");
+    }
+
+    private static boolean isDouble(String cell) {
+        try {
+            Double.parseDouble(cell);
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    private static boolean plainNumber(String cell, int start, int end, boolean fraction) {
+        if (cell.charAt(start) == '-' || cell.charAt(start) == '+') start++;
+        int digits = 0;
+        boolean point = false;
+        for (int i = start; i < end; i++) {
+            char c = cell.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digits++;
+            } else if (c == '.' && fraction && !point) {
+                point = true;
+            } else {
+                return false;
+            }
+        }
+        return digits > 0 && (fraction || digits <= MAX_LONG_DIGITS);
+    }
+}
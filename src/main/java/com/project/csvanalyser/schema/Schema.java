@@ -0,0 +1,186 @@
+package com.project.csvanalyser.schema;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Column types of a CSV file, declared in a schema file ({@code --schema}) or inferred from the first rows of the scan
+ * ({@link Sampler}). Columns not in the schema have no type. Immutable.
+ */
+public final class Schema {
+
+    /** Rows sampled to infer types when {@code --schema-sample} is not given. */
+    public static final int DEFAULT_SAMPLE_ROWS = 1000;
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    private final Map<String, ColumnType> types;
+
+    public Schema(Map<String, ColumnType> types) {
+        this.types = Collections.unmodifiableMap(new LinkedHashMap<>(types));
+    }
+
+    /**
+     * Reads a schema file: a JSON object from column name to type name, e.g. {@code {"amount": "decimal"}}.
+     *
+     * @throws IllegalArgumentException if the file is not such an object or names an unknown type
+     */
+    public static Schema load(Path path) throws IOException {
+        JsonNode root;
+        try {
+            root = JSON.readTree(Files.readString(path));
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Schema file is not valid JSON: " + path + " (" + e.getOriginalMessage() + ")");
+        }
+        if (root == null || !root.isObject()) {
+            throw new IllegalArgumentException("Schema file must be a JSON object of column name to type: " + path);
+        }
+        Map<String, ColumnType> types = new LinkedHashMap<>();
+        for (Iterator<Map.Entry<String, JsonNode>> it = root.fields(); it.hasNext(); ) {
+            Map.Entry<String, JsonNode> e = it.next();
+            if (!e.getValue().isTextual()) {
+                throw new IllegalArgumentException("Schema type of column '" + e.getKey() + "' must be a string: " + path);
+            }
+            types.put(e.getKey(), ColumnType.parse(e.getValue().asText()));
+        }
+        return new Schema(types);
+    }
+
+    /** @return the column's type, or null if the schema does not cover it */
+    public ColumnType typeOf(String column) {
+        return types.get(column);
+    }
+
+    /** @return types by column, in header (or schema file) order */
+    public Map<String, ColumnType> types() {
+        return types;
+    }
+
+    /** @return type names by column, as written to the JSON summary */
+    public Map<String, String> labels() {
+        Map<String, String> out = new LinkedHashMap<>();
+        types.forEach((column, type) -> out.put(column, type.label()));
+        return out;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the schema names a column the header does not have
+     */
+    public void validate(List<String> header) {
+        for (String column : types.keySet()) {
+            if (!header.contains(column)) {
+                throw new IllegalArgumentException("Schema column not in CSV: '" + column + "'. Available: " + header);
+            }
+        }
+    }
+
+    /**
+     * Infers column types from the first rows of a scan, fed as they are read so the file is still read once. Each
+     * column gets the narrowest type that fits every non-blank sampled cell; a column with only blank cells is a
+     * string. Declared types are kept as they are.
+     * <p>
+     * Not thread-safe.
+     */
+    public static final class Sampler {
+        private static final ColumnType[] CANDIDATES = {
+                ColumnType.LONG, ColumnType.DECIMAL, ColumnType.DOUBLE, ColumnType.TIMESTAMP};
+        private static final int ALL = (1 << CANDIDATES.length) - 1;
+
+        private final List<String> header;
+        private final Schema declared;
+        private final int limit;
+        /** Per header column, a bit per candidate type that every cell so far fits; -1 for declared columns. */
+        private final int[] fits;
+        private final boolean[] seen;
+        private int rows;
+        private boolean finished;
+
+        /**
+         * @param declared types from a schema file, or null
+         * @param limit    rows to sample; 0 infers nothing and leaves only the declared types
+         */
+        public Sampler(List<String> header, Schema declared, int limit) {
+            this.header = List.copyOf(header);
+            this.declared = declared == null ? new Schema(Map.of()) : declared;
+            this.declared.validate(header);
+            this.limit = Math.max(0, limit);
+            this.fits = new int[header.size()];
+            this.seen = new boolean[header.size()];
+            for (int i = 0; i < fits.length; i++) {
+                fits[i] = this.declared.typeOf(header.get(i)) != null ? -1 : ALL;
+            }
+        }
+
+        /** @return whether enough rows were sampled or sampling was finished; later rows are ignored */
+        public boolean isDone() {
+            return finished || rows >= limit;
+        }
+
+        /**
+         * Ends sampling with the rows seen so far. Once done, a sampler may be read by several threads, as long as
+         * it was handed to them after this call.
+         */
+        public void finish() {
+            finished = true;
+        }
+
+        /** Samples a row given as cell values in header order. */
+        public void add(String[] values) {
+            if (isDone()) return;
+            for (int i = 0; i < fits.length; i++) {
+                sample(i, values[i]);
+            }
+            rows++;
+        }
+
+        /** Samples a row given as a column-to-value map. */
+        public void add(Map<String, String> row) {
+            if (isDone()) return;
+            for (int i = 0; i < fits.length; i++) {
+                String value = row.get(header.get(i));
+                sample(i, value == null ? "" : value);
+            }
+            rows++;
+        }
+
+        private void sample(int column, String cell) {
+            int mask = fits[column];
+            if (mask <= 0 || cell.isBlank()) return;
+            seen[column] = true;
+            for (int t = 0; t < CANDIDATES.length; t++) {
+                if ((mask & (1 << t)) != 0 && !CANDIDATES[t].accepts(cell)) {
+                    mask &= ~(1 << t);
+                }
+            }
+            fits[column] = mask;
+        }
+
+        /** @return the declared types plus, once any row was sampled, the inferred type of every other column */
+        public Schema schema() {
+            Map<String, ColumnType> types = new LinkedHashMap<>();
+            for (int i = 0; i < fits.length; i++) {
+                String column = header.get(i);
+                if (fits[i] < 0) {
+                    types.put(column, declared.typeOf(column));
+                } else if (rows > 0) {
+                    types.put(column, seen[i] ? narrowest(fits[i]) : ColumnType.STRING);
+                }
+            }
+            return new Schema(types);
+        }
+
+        private static ColumnType narrowest(int mask) {
+            return mask == 0 ? ColumnType.STRING : CANDIDATES[Integer.numberOfTrailingZeros(mask)];
+        }
+    }
+}
@@ -0,0 +1,380 @@
+package com.project.csvanalyser.server;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.project.csvanalyser.cache.ResultCache;
+import com.project.csvanalyser.cli.AnalyticsResult;
+import com.project.csvanalyser.cli.CliConfig;
+import com.project.csvanalyser.cli.CliParser;
+import com.project.csvanalyser.cli.CsvAnalyticsRunner;
+import com.project.csvanalyser.cli.QueryControl;
+import com.project.csvanalyser.cli.ReportWriter;
+import com.project.csvanalyser.cli.ServerConfig;
+import com.project.csvanalyser.columnar.ColumnCache;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Long-running HTTP front end for the analytics engine, bound to the loopback interface.
+ * <p>
+ * Keeping the JVM resident means repeated queries run on JIT-compiled code instead of paying startup and warm-up each time.
+ * Endpoints:
+ * <ul>
+ *   <li>{@code /query} — GET query string or POST form body with the CLI option names without dashes
+ *       (input, filter, group-by, agg, top-n, top-n-metric, top-n-approx, rank, sample, seed, time-budget, delimiter,
+ *       header, join, grouping-sets, and the flags extrapolate and rollup); streams the JSON summary back. An
+ *       optional {@code query-id} names the query for {@code /cancel}</li>
+ *   <li>{@code /cancel?query-id=...} — stops a running query with that id; it is answered with 409, and its reader and
+ *       partial state are released</li>
+ *   <li>{@code /metrics} — latency percentiles per endpoint, executor/admission counters and cache counters</li>
+ *   <li>{@code /health} — liveness probe</li>
+ * </ul>
+ * Queries run on a fixed pool; at most {@code threads + queueCapacity} are admitted at once, running or waiting for a
+ * thread, and the rest get 503 with Retry-After. A query gives its slot back as soon as its result is computed, before
+ * the response is written, so a client that sends its next query as soon as it reads an answer is never turned away
+ * for want of a slot its own last query still held.
+ */
+public final class QueryServer implements AutoCloseable {
+
+    /** Query parameters accepted by /query; each maps to the CLI option of the same name. */
+    static final Set<String> QUERY_PARAMS = Set.of(
+            "input", "filter", "group-by", "agg", "top-n", "top-n-metric", "top-n-approx", "rank", "sample", "seed",
+            "time-budget", "extrapolate", "delimiter", "header", "join", "grouping-sets", "rollup");
+
+    /** Query parameters that map to CLI flags without a value: present, empty or {@code true} sets the flag. */
+    static final Set<String> FLAG_PARAMS = Set.of("extrapolate", "rollup");
+
+    /** Client-chosen name of a query, so that {@code /cancel} can address it while it runs. */
+    static final String QUERY_ID = "query-id";
+
+    private static final ObjectMapper JSON = new ObjectMapper()
+            .enable(SerializationFeature.INDENT_OUTPUT)
+            .configure(JsonGenerator.Feature.AUTO_CLOSE_TARGET, false);
+
+    private final HttpServer http;
+    private final ExecutorService dispatcher;
+    private final ThreadPoolExecutor queryExecutor;
+    /** Slots for queries running or waiting for a thread: {@code threads + queueCapacity}. */
+    private final Semaphore admitted;
+    private final int queueCapacity;
+    private final ResultCache cache;
+    private final ColumnCache columnCache;
+    private final Map<String, LatencyHistogram> latencyByEndpoint = new ConcurrentHashMap<>();
+    private final AtomicLong rejected = new AtomicLong();
+    /** Running queries that were given a query-id. */
+    private final Map<String, QueryControl> running = new ConcurrentHashMap<>();
+
+    private QueryServer(HttpServer http, ExecutorService dispatcher, ThreadPoolExecutor queryExecutor,
+                        int queueCapacity, ResultCache cache, ColumnCache columnCache) {
+        this.http = http;
+        this.dispatcher = dispatcher;
+        this.queryExecutor = queryExecutor;
+        this.queueCapacity = queueCapacity;
+        this.admitted = new Semaphore(queryExecutor.getMaximumPoolSize() + queueCapacity);
+        this.cache = cache;
+        this.columnCache = columnCache;
+    }
+
+    /**
+     * Binds to 127.0.0.1 on the configured port (0 picks a free port) and starts serving.
+     */
+    public static QueryServer start(ServerConfig config) throws IOException {
+        HttpServer http = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), config.getPort()), 0);
+        // Admission is bounded by the semaphore, not the queue: a SynchronousQueue would also reject a query that
+        // arrives while a worker is between tasks, even though the pool has a thread free for it
+        ThreadPoolExecutor queryExecutor = new ThreadPoolExecutor(config.getThreads(), config.getThreads(),
+                0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), daemonThreads("query-"),
+                new ThreadPoolExecutor.AbortPolicy());
+        ExecutorService dispatcher = Executors.newCachedThreadPool(daemonThreads("http-"));
+        ResultCache cache = config.getCacheSettings() == null ? null : ResultCache.open(config.getCacheSettings());
+        ColumnCache columnCache = config.getColumnCacheBytes() > 0 ? new ColumnCache(config.getColumnCacheBytes()) : null;
+        QueryServer server = new QueryServer(http, dispatcher, queryExecutor, config.getQueueCapacity(), cache,
+                columnCache);
+        http.createContext("/query", server.timed("/query", server::handleQuery));
+        http.createContext("/cancel", server.timed("/cancel", server::handleCancel));
+        http.createContext("/metrics", server.timed("/metrics", server::handleMetrics));
+        http.createContext("/health", server.timed("/health", exchange -> sendJson(exchange, 200, Map.of("status", "UP"))));
+        http.setExecutor(dispatcher);
+        http.start();
+        return server;
+    }
+
+    public int getPort() {
+        return http.getAddress().getPort();
+    }
+
+    /**
+     * Stops serving and, when the result cache is persistent, writes it back to disk.
+     */
+    @Override
+    public void close() {
+        http.stop(0);
+        queryExecutor.shutdownNow();
+        dispatcher.shutdownNow();
+        if (cache != null) {
+            try {
+                cache.save();
+            } catch (IOException e) {
+                LoggerFactory.getLogger(QueryServer.class).warn("Could not persist result cache: {}", e.getMessage());
+            }
+        }
+    }
+
+    private static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger ids = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, prefix + ids.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
+    private HttpHandler timed(String endpoint, HttpHandler handler) {
+        LatencyHistogram histogram = latencyByEndpoint.computeIfAbsent(endpoint, e -> new LatencyHistogram());
+        return exchange -> {
+            long start = System.nanoTime();
+            try {
+                handler.handle(exchange);
+            } finally {
+                exchange.close();
+                histogram.recordNanos(System.nanoTime() - start);
+            }
+        };
+    }
+
+    /**
+     * Admission control: a query that gets a slot is handed to the executor; without a free slot it is answered with
+     * 503 right away. The slot is released once, by whichever comes first: the query finishing its computation, or this
+     * handler returning (for instance when the query never started).
+     */
+    private void handleQuery(HttpExchange exchange) throws IOException {
+        if (!admitted.tryAcquire()) {
+            rejected.incrementAndGet();
+            exchange.getResponseHeaders().add("Retry-After", "1");
+            sendJson(exchange, 503, Map.of("error", "Server busy; too many queries in flight"));
+            return;
+        }
+        AtomicBoolean held = new AtomicBoolean(true);
+        Runnable release = () -> {
+            if (held.getAndSet(false)) admitted.release();
+        };
+        Future<?> done = null;
+        try {
+            done = queryExecutor.submit(() -> {
+                runQuery(exchange, release);
+                return null;
+            });
+            done.get();
+        } catch (RejectedExecutionException e) {
+            sendJson(exchange, 503, Map.of("error", "Server is shutting down"));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            done.cancel(true);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io) throw io;
+            throw new IOException(e.getCause());
+        } finally {
+            release.run();
+        }
+    }
+
+    /**
+     * @param release frees the query's admission slot; called before the response is written
+     */
+    private void runQuery(HttpExchange exchange, Runnable release) throws IOException {
+        CliConfig config;
+        AnalyticsResult result;
+        String queryId = null;
+        QueryControl control = null;
+        try {
+            try {
+                Map<String, String> params = readParams(exchange);
+                queryId = params.remove(QUERY_ID);
+                config = CliParser.parse(toArgs(params));
+                if (config == null) {
+                    throw new IllegalArgumentException("--help is not a query");
+                }
+                control = QueryControl.start(config.getTimeBudgetMillis());
+                if (queryId != null && running.putIfAbsent(queryId, control) != null) {
+                    queryId = null;
+                    throw new IllegalArgumentException("A query with this query-id is already running");
+                }
+                QueryControl queryControl = control;
+                ResultCache.Loader loader = c -> CsvAnalyticsRunner.analyse(c, columnCache, queryControl);
+                result = cache == null ? loader.load(config) : cache.getOrRun(config, loader);
+            } finally {
+                if (queryId != null) {
+                    running.remove(queryId, control);
+                }
+                release.run();
+            }
+        } catch (CancellationException e) {
+            sendJson(exchange, 409, Map.of("error", "Query cancelled"));
+            return;
+        } catch (IllegalArgumentException e) {
+            sendJson(exchange, 400, Map.of("error", String.valueOf(e.getMessage())));
+            return;
+        } catch (Exception e) {
+            LoggerFactory.getLogger(QueryServer.class).warn("Query failed", e);
+            sendJson(exchange, 500, Map.of("error", String.valueOf(e.getMessage())));
+            return;
+        }
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, 0);
+        try (OutputStream body = new BufferedOutputStream(exchange.getResponseBody())) {
+            ReportWriter.writeJsonSummary(result, config, body);
+        }
+    }
+
+    /**
+     * Cancels the running query with the given query-id: 200 if it was found, 404 otherwise.
+     */
+    private void handleCancel(HttpExchange exchange) throws IOException {
+        String queryId = readParams(exchange).get(QUERY_ID);
+        if (queryId == null) {
+            sendJson(exchange, 400, Map.of("error", "query-id is required"));
+            return;
+        }
+        QueryControl control = running.get(queryId);
+        if (control == null) {
+            sendJson(exchange, 404, Map.of("error", "No running query with query-id '" + queryId + "'"));
+            return;
+        }
+        control.cancel();
+        sendJson(exchange, 200, Map.of("cancelled", queryId));
+    }
+
+    private void handleMetrics(HttpExchange exchange) throws IOException {
+        Map<String, Object> endpoints = new TreeMap<>();
+        for (Map.Entry<String, LatencyHistogram> e : latencyByEndpoint.entrySet()) {
+            LatencyHistogram h = e.getValue();
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("count", h.getCount());
+            m.put("p50Ms", h.percentileMicros(50) / 1000.0);
+            m.put("p90Ms", h.percentileMicros(90) / 1000.0);
+            m.put("p99Ms", h.percentileMicros(99) / 1000.0);
+            m.put("maxMs", h.getMaxMicros() / 1000.0);
+            endpoints.put(e.getKey(), m);
+        }
+        Map<String, Object> pool = new LinkedHashMap<>();
+        pool.put("threads", queryExecutor.getMaximumPoolSize());
+        pool.put("active", queryExecutor.getActiveCount());
+        pool.put("queued", queryExecutor.getQueue().size());
+        pool.put("queueCapacity", queueCapacity);
+        pool.put("completed", queryExecutor.getCompletedTaskCount());
+        pool.put("rejected", rejected.get());
+
+        Map<String, Object> root = new LinkedHashMap<>();
+        root.put("endpoints", endpoints);
+        root.put("executor", pool);
+        if (cache != null) {
+            Map<String, Object> c = new LinkedHashMap<>();
+            c.put("entries", cache.getEntryCount());
+            c.put("estimatedBytes", cache.getEstimatedBytes());
+            c.put("hits", cache.getHits());
+            c.put("misses", cache.getMisses());
+            c.put("evictions", cache.getEvictions());
+            c.put("expirations", cache.getExpirations());
+            root.put("resultCache", c);
+        }
+        if (columnCache != null) {
+            Map<String, Object> c = new LinkedHashMap<>();
+            c.put("columns", columnCache.getColumnCount());
+            c.put("estimatedBytes", columnCache.getEstimatedBytes());
+            c.put("hits", columnCache.getHits());
+            c.put("misses", columnCache.getMisses());
+            c.put("evictions", columnCache.getEvictions());
+            c.put("invalidations", columnCache.getInvalidations());
+            root.put("columnCache", c);
+        }
+        sendJson(exchange, 200, root);
+    }
+
+    /**
+     * Reads parameters from the query string and, for POST, an application/x-www-form-urlencoded body.
+     */
+    static Map<String, String> readParams(HttpExchange exchange) throws IOException {
+        Map<String, String> params = new LinkedHashMap<>();
+        parseForm(exchange.getRequestURI().getRawQuery(), params);
+        if ("POST".equalsIgnoreCase(exchange.getRequestMethod())) {
+            parseForm(new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8), params);
+        }
+        return params;
+    }
+
+    private static void parseForm(String raw, Map<String, String> into) {
+        if (raw == null || raw.isBlank()) return;
+        for (String pair : raw.split("&")) {
+            if (pair.isEmpty()) continue;
+            int eq = pair.indexOf('=');
+            String key = URLDecoder.decode(eq < 0 ? pair : pair.substring(0, eq), StandardCharsets.UTF_8);
+            String value = eq < 0 ? "" : URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+            into.put(key, value);
+        }
+    }
+
+    /**
+     * Maps query parameters onto CLI arguments so queries are parsed exactly like the one-shot CLI. A flag parameter
+     * becomes the bare option, or nothing when it is {@code false}.
+     */
+    static String[] toArgs(Map<String, String> params) {
+        List<String> args = new ArrayList<>();
+        for (Map.Entry<String, String> e : params.entrySet()) {
+            if (!QUERY_PARAMS.contains(e.getKey())) {
+                throw new IllegalArgumentException("Unknown query parameter: '" + e.getKey() + "'. Allowed: " + new TreeSet<>(QUERY_PARAMS));
+            }
+            if (!FLAG_PARAMS.contains(e.getKey())) {
+                args.add("--" + e.getKey());
+                args.add(e.getValue());
+            } else if (e.getValue().isEmpty() || e.getValue().equalsIgnoreCase("true")) {
+                args.add("--" + e.getKey());
+            } else if (!e.getValue().equalsIgnoreCase("false")) {
+                throw new IllegalArgumentException("Query parameter '" + e.getKey()
+                        + "' is a flag; expected true or false, got '" + e.getValue() + "'");
+            }
+        }
+        return args.toArray(new String[0]);
+    }
+
+    private static void sendJson(HttpExchange exchange, int status, Object body) throws IOException {
+        byte[] bytes = JSON.writeValueAsBytes(body);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package com.project.csvanalyser.sort;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * External merge sort of rows by normalized key, for row sets larger than the heap. Workers each take a
+ * {@link RunGenerator} and feed it rows in parallel; a generator spills a sorted run to a temp file whenever its share of
+ * the memory budget fills up, and keeps its last run in memory. {@link #merge} then merges every run with a
+ * {@link LoserTree}. With more runs than the fan-in, intermediate passes first merge groups of {@code fanIn} spilled
+ * runs into longer ones until one final merge can read them all; a larger fan-in means fewer passes over the data, a
+ * smaller one fewer files open and smaller read buffers in between.
+ * <p>
+ * Temp files live in a directory of their own, which {@link #close} deletes. Run files are written through
+ * {@link #WRITE_BUFFER_BYTES} buffers, and each merge input is read through an equal share of what the runs still held
+ * in memory leave of the budget, but at least {@link #MIN_READ_BUFFER_BYTES}, so reads stay long and sequential however
+ * many runs are open. Merging thus stays within the budget plus those minimum buffers.
+ */
+public final class ExternalSorter implements Closeable {
+
+    public static final int DEFAULT_FAN_IN = 64;
+    static final int WRITE_BUFFER_BYTES = 1 << 20;
+    static final int MIN_READ_BUFFER_BYTES = 64 << 10;
+    private static final int MAX_READ_BUFFER_BYTES = 4 << 20;
+
+    private final Path directory;
+    private final long memoryBytes;
+    private final int fanIn;
+    private final AtomicInteger nextRun = new AtomicInteger();
+    private final List<RunFile> fileRuns = new ArrayList<>();
+    private final List<RunSource> memoryRuns = new ArrayList<>();
+    private final List<RunGenerator> generators = new ArrayList<>();
+    private int spilledRuns;
+    private int memoryRunCount;
+    /** Bytes held by {@link #memoryRuns}, taken out of the read buffers' share of the budget. */
+    private long memoryRunBytes;
+    private long spilledBytes;
+    private int mergePasses;
+
+    /**
+     * @param tempParent  directory to create the temp directory in
+     * @param memoryBytes budget for the rows held in memory, shared by all generators
+     * @param fanIn       most runs merged at once, at least 2
+     * @throws IllegalArgumentException if the fan-in is below 2 or the memory budget is not positive
+     */
+    public ExternalSorter(Path tempParent, long memoryBytes, int fanIn) throws IOException {
+        if (fanIn < 2) {
+            throw new IllegalArgumentException("Merge fan-in must be at least 2, got " + fanIn);
+        }
+        if (memoryBytes <= 0) {
+            throw new IllegalArgumentException("Sort memory must be positive, got " + memoryBytes);
+        }
+        this.memoryBytes = memoryBytes;
+        this.fanIn = fanIn;
+        this.directory = Files.createTempDirectory(tempParent, ".sort-");
+    }
+
+    /**
+     * @param generators how many generators will share the memory budget
+     * @return a generator for one thread, holding up to {@code 1/generators} of the budget
+     */
+    public synchronized RunGenerator generator(int generators) {
+        RunGenerator g = new RunGenerator(this, Math.max(1, memoryBytes / Math.max(1, generators)));
+        this.generators.add(g);
+        return g;
+    }
+
+    RunFile.Writer newRun() throws IOException {
+        return new RunFile.Writer(directory.resolve("run-" + nextRun.getAndIncrement()), WRITE_BUFFER_BYTES);
+    }
+
+    synchronized void addFileRun(RunFile run) {
+        fileRuns.add(run);
+        spilledRuns++;
+        spilledBytes += run.getBytes();
+    }
+
+    /** @param bytes heap the run holds until it is merged */
+    synchronized void addMemoryRun(RunSource run, long bytes) {
+        memoryRuns.add(run);
+        memoryRunCount++;
+        memoryRunBytes += bytes;
+    }
+
+    /**
+     * Merges every run and writes each row, followed by {@code \n}, to {@code out}. Call once, after every generator
+     * has {@link RunGenerator#finish finished}.
+     *
+     * @return rows written
+     */
+    public synchronized long merge(OutputStream out) throws IOException {
+        if (memoryRuns.size() + (fileRuns.isEmpty() ? 0 : 1) > fanIn) {
+            for (RunSource run : memoryRuns) {
+                fileRuns.add(spill(List.of(run)));
+            }
+            memoryRuns.clear();
+            memoryRunBytes = 0;
+        }
+        while (fileRuns.size() + memoryRuns.size() > fanIn) {
+            List<RunFile> merged = new ArrayList<>();
+            for (int i = 0; i < fileRuns.size(); i += fanIn) {
+                List<RunFile> group = fileRuns.subList(i, Math.min(i + fanIn, fileRuns.size()));
+                merged.add(group.size() == 1 ? group.get(0) : mergeFiles(group));
+            }
+            fileRuns.clear();
+            fileRuns.addAll(merged);
+            mergePasses++;
+        }
+        List<RunSource> sources = new ArrayList<>(memoryRuns);
+        int buffer = readBufferBytes(fileRuns.size());
+        long rows = 0;
+        try {
+            for (RunFile run : fileRuns) {
+                sources.add(run.open(buffer));
+            }
+            LoserTree tree = new LoserTree(sources);
+            for (RunSource s; (s = tree.peek()) != null; tree.pop()) {
+                out.write(s.rowData(), s.rowOffset(), s.rowLength());
+                out.write('\n');
+                rows++;
+            }
+        } finally {
+            closeAll(sources);
+        }
+        return rows;
+    }
+
+    /** Merges a group of run files into one, then deletes them once their streams are closed. */
+    private RunFile mergeFiles(List<RunFile> group) throws IOException {
+        List<RunSource> sources = new ArrayList<>();
+        RunFile merged;
+        try {
+            int buffer = readBufferBytes(group.size());
+            for (RunFile run : group) {
+                sources.add(run.open(buffer));
+            }
+            merged = spill(sources);
+        } finally {
+            closeAll(sources);
+        }
+        for (RunFile run : group) {
+            Files.delete(run.getPath());
+        }
+        return merged;
+    }
+
+    /** Merges {@code sources} into a new run file. */
+    private RunFile spill(List<RunSource> sources) throws IOException {
+        try (RunFile.Writer writer = newRun()) {
+            LoserTree tree = new LoserTree(sources);
+            for (RunSource s; (s = tree.peek()) != null; tree.pop()) {
+                writer.write(s);
+            }
+            RunFile run = writer.finish();
+            spilledBytes += run.getBytes();
+            return run;
+        }
+    }
+
+    /** @return read buffer size for each of {@code runs} files merged while the memory runs are held */
+    int readBufferBytes(int runs) {
+        long share = Math.max(0, memoryBytes - memoryRunBytes) / Math.max(1, runs + 1);
+        return (int) Math.max(MIN_READ_BUFFER_BYTES, Math.min(MAX_READ_BUFFER_BYTES, share));
+    }
+
+    private static void closeAll(List<RunSource> sources) throws IOException {
+        for (RunSource s : sources) {
+            s.close();
+        }
+    }
+
+    /** @return runs generated: those spilled by generators plus the ones kept in memory */
+    public synchronized int getRuns() { return spilledRuns + memoryRunCount; }
+
+    /** @return bytes written to temp files, intermediate merge passes included */
+    public synchronized long getSpilledBytes() { return spilledBytes; }
+
+    /** @return merge passes over spilled runs before the final merge */
+    public synchronized int getMergePasses() { return mergePasses; }
+
+    /** @return wall and CPU time the generators spent sorting and spilling runs, summed over threads */
+    public synchronized long[] getRunNanos() {
+        long wall = 0;
+        long cpu = 0;
+        for (RunGenerator g : generators) {
+            wall += g.getNanos();
+            cpu += g.getCpuNanos();
+        }
+        return new long[] {wall, cpu};
+    }
+
+    /** Deletes the temp directory and every run left in it. */
+    @Override
+    public void close() throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path f : files) {
+                Files.deleteIfExists(f);
+            }
+        }
+        Files.deleteIfExists(directory);
+    }
+}
@@ -0,0 +1,228 @@
+package com.project.csvanalyser.sort;
+
+import com.project.csvanalyser.aggregation.IsoTimestamp;
+import com.project.csvanalyser.schema.ColumnType;
+import com.project.csvanalyser.schema.Schema;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Encodes the sort columns of a row as one normalized binary key: comparing two keys as unsigned bytes orders their
+ * rows as {@code --order-by} asks, so sorting and merging never parse or decode a value again. Each column contributes
+ * a tag byte and its value:
+ * <ul>
+ *   <li>blank cells: tag 1 alone, so they sort first</li>
+ *   <li>numbers ({@code long}, {@code decimal} and {@code double} columns): tag 2, the eight big-endian bytes of the
+ *       value as a double, with the sign bit flipped for positive values and every bit for negative ones. From 2^53 on,
+ *       where doubles skip whole numbers, the value as a compact long follows (see {@link #putCompactLong}), so large
+ *       ids stay exact. A column typed {@code long} from a sample thus still sorts later decimals among its
+ *       numbers.</li>
+ *   <li>timestamps: tag 2 and the epoch milliseconds as a compact long</li>
+ *   <li>strings, and cells that do not fit their numeric or timestamp column: tag 2 (tag 3 in typed columns, so they
+ *       follow the numbers) and the UTF-8 bytes, with each 0 byte escaped as 0, 255 and the value ended by 0, 0</li>
+ * </ul>
+ * A descending column has all its bytes inverted. The row's offset in the input follows the columns, so no two keys are
+ * equal and rows with equal columns keep their input order. Every key is at least nine bytes long, and its first eight
+ * bytes, read as an unsigned long {@link #prefix}, decide most comparisons on their own. That is why numbers lead with
+ * the double, whose high bytes vary with the value, and not a fixed-width long, whose leading zero bytes would fill
+ * the prefix for typical amounts and ids.
+ * <p>
+ * Strings order by code point, which for UTF-8 is byte order. One instance per thread: the key buffer is reused.
+ */
+public final class KeyEncoder {
+
+    private static final byte BLANK = 1;
+    private static final byte VALUE = 2;
+    private static final byte MISFIT = 3;
+    /** 2^53: every double this large is whole, and not every whole number this large is a double. */
+    private static final double EXACT_DOUBLE_LIMIT = 9007199254740992.0;
+
+    private final int[] columns;
+    private final ColumnType[] types;
+    private final boolean[] descending;
+    private byte[] key = new byte[64];
+    private int length;
+
+    /**
+     * @param schema types of the sort columns; a column it does not cover sorts as strings
+     * @throws IllegalArgumentException if a key column is not in the header
+     */
+    public KeyEncoder(List<SortKey> keys, List<String> header, Schema schema) {
+        columns = new int[keys.size()];
+        types = new ColumnType[keys.size()];
+        descending = new boolean[keys.size()];
+        for (int i = 0; i < keys.size(); i++) {
+            SortKey k = keys.get(i);
+            columns[i] = header.indexOf(k.getColumn());
+            if (columns[i] < 0) {
+                throw new IllegalArgumentException("Order-by column not in CSV: '" + k.getColumn() + "'. Available: "
+                        + header);
+            }
+            ColumnType type = schema == null ? null : schema.typeOf(k.getColumn());
+            types[i] = type == null ? ColumnType.STRING : type;
+            descending[i] = k.isDescending();
+        }
+    }
+
+    /**
+     * Encodes the key of a row into {@link #bytes()}.
+     *
+     * @param values cells in header order
+     * @param offset the row's offset in the input, which breaks ties
+     */
+    public void encode(String[] values, long offset) {
+        length = 0;
+        for (int i = 0; i < columns.length; i++) {
+            int start = length;
+            String cell = values[columns[i]];
+            if (cell.isBlank()) {
+                put(BLANK);
+            } else if (!putTyped(types[i], cell.strip())) {
+                put(types[i] == ColumnType.STRING ? VALUE : MISFIT);
+                putString(cell);
+            }
+            if (descending[i]) {
+                for (int b = start; b < length; b++) {
+                    key[b] = (byte) ~key[b];
+                }
+            }
+        }
+        putLong(offset);
+    }
+
+    /** @return whether the cell fits its numeric or timestamp type and was written as a number */
+    private boolean putTyped(ColumnType type, String cell) {
+        switch (type) {
+            case LONG, DECIMAL, DOUBLE -> {
+                double d;
+                long whole;
+                try {
+                    if (isInteger(cell)) {
+                        try {
+                            whole = Long.parseLong(cell);
+                            d = whole;
+                        } catch (NumberFormatException beyondLong) {
+                            d = Double.parseDouble(cell);
+                            whole = (long) d;
+                        }
+                    } else {
+                        d = Double.parseDouble(cell);
+                        whole = (long) d;
+                    }
+                } catch (NumberFormatException e) {
+                    return false;
+                }
+                if (Double.isNaN(d)) {
+                    return false;
+                }
+                long bits = Double.doubleToLongBits(d == 0 ? 0.0 : d);
+                put(VALUE);
+                putLong(bits < 0 ? ~bits : bits ^ Long.MIN_VALUE);
+                if (Math.abs(d) >= EXACT_DOUBLE_LIMIT) {
+                    putCompactLong(whole);
+                }
+                return true;
+            }
+            case TIMESTAMP -> {
+                long millis = IsoTimestamp.parseEpochMillis(cell);
+                if (millis == IsoTimestamp.INVALID) {
+                    return false;
+                }
+                put(VALUE);
+                putCompactLong(millis);
+                return true;
+            }
+            default -> {
+                return false;
+            }
+        }
+    }
+
+    /** @return whether the cell is an optional sign and digits only, so {@link Long#parseLong} can take it */
+    private static boolean isInteger(String cell) {
+        int start = cell.charAt(0) == '-' || cell.charAt(0) == '+' ? 1 : 0;
+        if (start == cell.length()) {
+            return false;
+        }
+        for (int i = start; i < cell.length(); i++) {
+            char c = cell.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Writes a long in 1 to 9 bytes that still compare in numeric order: a length byte, 0x80 + n for a non-negative
+     * value of n significant bytes and 0x7F - n for a negative one whose complement has n, followed by those n low
+     * bytes. Longer non-negative values are larger and longer negative ones smaller, so the length byte orders values
+     * of different lengths and the bytes those of equal length.
+     */
+    private void putCompactLong(long v) {
+        int n = (64 - Long.numberOfLeadingZeros(v < 0 ? ~v : v) + 7) >> 3;
+        ensure(1 + n);
+        key[length++] = (byte) (v < 0 ? 0x7F - n : 0x80 + n);
+        for (int shift = (n - 1) * 8; shift >= 0; shift -= 8) {
+            key[length++] = (byte) (v >>> shift);
+        }
+    }
+
+    private void putString(String cell) {
+        byte[] utf8 = cell.getBytes(StandardCharsets.UTF_8);
+        ensure(utf8.length * 2 + 2);
+        for (byte b : utf8) {
+            key[length++] = b;
+            if (b == 0) key[length++] = (byte) 0xFF;
+        }
+        key[length++] = 0;
+        key[length++] = 0;
+    }
+
+    private void put(byte b) {
+        ensure(1);
+        key[length++] = b;
+    }
+
+    private void putLong(long v) {
+        ensure(8);
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            key[length++] = (byte) (v >>> shift);
+        }
+    }
+
+    private void ensure(int more) {
+        if (length + more > key.length) {
+            key = Arrays.copyOf(key, Math.max(key.length * 2, length + more));
+        }
+    }
+
+    /** @return the key buffer; valid up to {@link #length()} until the next {@link #encode} */
+    public byte[] bytes() { return key; }
+
+    public int length() { return length; }
+
+    /** @return the first eight bytes of a key as an unsigned long, zero-padded */
+    static long prefix(byte[] key, int offset, int length) {
+        long p = 0;
+        for (int i = 0; i < 8; i++) {
+            p = (p << 8) | (i < length ? key[offset + i] & 0xFF : 0);
+        }
+        return p;
+    }
+
+    /**
+     * Compares two keys, by their prefixes first and then by the bytes after them.
+     */
+    static int compare(long prefixA, byte[] a, int offsetA, int lengthA,
+                       long prefixB, byte[] b, int offsetB, int lengthB) {
+        int c = Long.compareUnsigned(prefixA, prefixB);
+        if (c != 0) {
+            return c;
+        }
+        int skip = Math.min(8, Math.min(lengthA, lengthB));
+        return Arrays.compareUnsigned(a, offsetA + skip, offsetA + lengthA, b, offsetB + skip, offsetB + lengthB);
+    }
+}
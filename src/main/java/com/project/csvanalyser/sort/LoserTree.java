@@ -0,0 +1,79 @@
+package com.project.csvanalyser.sort;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Tournament tree for the k-way merge: each internal node holds the loser of the match played there and node 0 the
+ * overall winner, the source with the smallest current key. After the winner's record is taken, only the matches on
+ * its path to the root are replayed, so each record costs about log2(k) key comparisons, against the 2·log2(k) of a
+ * binary heap that compares both children at every level.
+ * <p>
+ * Sources are laid out as the leaves {@code k .. 2k-1} of a complete binary tree whose internal nodes are
+ * {@code 1 .. k-1}, which works for any k, not just powers of two. An exhausted source loses every match.
+ */
+final class LoserTree {
+
+    private final RunSource[] sources;
+    private final boolean[] exhausted;
+    private final int[] tree;
+    private final int k;
+
+    /** Moves every source to its first record and plays the initial tournament. */
+    LoserTree(List<? extends RunSource> runs) throws IOException {
+        k = runs.size();
+        sources = runs.toArray(new RunSource[0]);
+        exhausted = new boolean[k];
+        tree = new int[Math.max(1, k)];
+        for (int i = 0; i < k; i++) {
+            exhausted[i] = !sources[i].advance();
+        }
+        tree[0] = k == 0 ? -1 : build(1);
+    }
+
+    /** @return the winner of the subtree at {@code node}, recording the losers of its matches */
+    private int build(int node) {
+        if (node >= k) {
+            return node - k;
+        }
+        int a = build(2 * node);
+        int b = build(2 * node + 1);
+        if (less(a, b)) {
+            tree[node] = b;
+            return a;
+        }
+        tree[node] = a;
+        return b;
+    }
+
+    /** @return the source holding the smallest record, or null once every source is exhausted */
+    RunSource peek() {
+        int winner = tree[0];
+        return winner < 0 || exhausted[winner] ? null : sources[winner];
+    }
+
+    /** Moves past the current smallest record and replays its source's path to the root. */
+    void pop() throws IOException {
+        int winner = tree[0];
+        exhausted[winner] = !sources[winner].advance();
+        for (int node = (winner + k) >> 1; node > 0; node >>= 1) {
+            if (less(tree[node], winner)) {
+                int t = tree[node];
+                tree[node] = winner;
+                winner = t;
+            }
+        }
+        tree[0] = winner;
+    }
+
+    private boolean less(int a, int b) {
+        if (exhausted[a] || exhausted[b]) {
+            return !exhausted[a] || (exhausted[b] && a < b);
+        }
+        RunSource x = sources[a];
+        RunSource y = sources[b];
+        int c = KeyEncoder.compare(x.prefix(), x.keyData(), x.keyOffset(), x.keyLength(),
+                y.prefix(), y.keyData(), y.keyOffset(), y.keyLength());
+        return c < 0 || (c == 0 && a < b);
+    }
+}
@@ -0,0 +1,111 @@
+package com.project.csvanalyser.sort;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * A sorted run spilled to a temp file: {@code records} entries of key length, row length (4-byte big-endian ints), key
+ * bytes and row bytes. Written and read strictly sequentially through large buffers, so the disk sees long transfers
+ * even while a merge reads many runs at once.
+ */
+final class RunFile {
+
+    private final Path path;
+    private final long records;
+    private final long bytes;
+
+    private RunFile(Path path, long records, long bytes) {
+        this.path = path;
+        this.records = records;
+        this.bytes = bytes;
+    }
+
+    Path getPath() { return path; }
+
+    long getRecords() { return records; }
+
+    long getBytes() { return bytes; }
+
+    /** Appends records to a new run file; {@link #finish} closes it. */
+    static final class Writer implements AutoCloseable {
+        private final Path path;
+        private final DataOutputStream out;
+        private long records;
+
+        Writer(Path path, int bufferBytes) throws IOException {
+            this.path = path;
+            this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path), bufferBytes));
+        }
+
+        void write(byte[] key, int keyOffset, int keyLength, byte[] row, int rowOffset, int rowLength)
+                throws IOException {
+            out.writeInt(keyLength);
+            out.writeInt(rowLength);
+            out.write(key, keyOffset, keyLength);
+            out.write(row, rowOffset, rowLength);
+            records++;
+        }
+
+        void write(RunSource source) throws IOException {
+            write(source.keyData(), source.keyOffset(), source.keyLength(),
+                    source.rowData(), source.rowOffset(), source.rowLength());
+        }
+
+        RunFile finish() throws IOException {
+            out.close();
+            return new RunFile(path, records, Files.size(path));
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+
+    /** Reads the records back in order; the key and row buffers are reused from record to record. */
+    RunSource open(int bufferBytes) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), bufferBytes));
+        return new RunSource() {
+            private long remaining = records;
+            private byte[] key = new byte[64];
+            private byte[] row = new byte[256];
+            private int keyLength;
+            private int rowLength;
+            private long prefix;
+
+            @Override
+            public boolean advance() throws IOException {
+                if (remaining == 0) {
+                    return false;
+                }
+                remaining--;
+                keyLength = in.readInt();
+                rowLength = in.readInt();
+                if (keyLength > key.length) key = new byte[Math.max(keyLength, key.length * 2)];
+                if (rowLength > row.length) row = new byte[Math.max(rowLength, row.length * 2)];
+                in.readFully(key, 0, keyLength);
+                in.readFully(row, 0, rowLength);
+                prefix = KeyEncoder.prefix(key, 0, keyLength);
+                return true;
+            }
+
+            @Override public long prefix() { return prefix; }
+            @Override public byte[] keyData() { return key; }
+            @Override public int keyOffset() { return 0; }
+            @Override public int keyLength() { return keyLength; }
+            @Override public byte[] rowData() { return row; }
+            @Override public int rowOffset() { return 0; }
+            @Override public int rowLength() { return rowLength; }
+
+            @Override
+            public void close() throws IOException {
+                in.close();
+            }
+        };
+    }
+}
@@ -0,0 +1,196 @@
+package com.project.csvanalyser.sort;
+
+import com.project.csvanalyser.stats.RunStats;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Builds sorted runs from one thread's rows. Keys and rows are copied end to end into one byte arena, with the key
+ * prefix, offset and lengths of each record in parallel primitive arrays, so a record costs no objects and the memory
+ * used is known exactly. When the arena and arrays reach the generator's share of the memory budget, the records are
+ * sorted and spilled to a run file. The sort moves (prefix, index) pairs, so most comparisons read two sequential
+ * arrays and only equal prefixes reach into the arena for the rest of the key; {@link #finish} sorts what is
+ * left and keeps it in memory as the last run. Not thread-safe: one generator per worker.
+ */
+public final class RunGenerator {
+
+    /** Bytes of the per-record arrays (prefix, offset, key length, row length) and of the sort's pairs, twice. */
+    private static final int RECORD_OVERHEAD = 8 + 4 + 4 + 4 + 2 * (8 + 4);
+    private static final int INSERTION_SORT_MAX = 16;
+
+    private final ExternalSorter sorter;
+    private final long memoryBytes;
+    private byte[] arena = new byte[64 << 10];
+    private int used;
+    private long[] prefixes = new long[1024];
+    private int[] offsets = new int[1024];
+    private int[] keyLengths = new int[1024];
+    private int[] rowLengths = new int[1024];
+    private int count;
+    private long nanos;
+    private long cpuNanos;
+
+    RunGenerator(ExternalSorter sorter, long memoryBytes) {
+        this.sorter = sorter;
+        this.memoryBytes = Math.min(memoryBytes, Integer.MAX_VALUE - 8);
+    }
+
+    /**
+     * Adds a row; spills the records held so far first if this one would take them over the memory budget.
+     *
+     * @param key   from {@link KeyEncoder#bytes()}
+     * @param row   bytes of the row, without its line terminator, are {@code [rowStart, rowEnd)}
+     */
+    public void add(byte[] key, int keyLength, byte[] row, int rowStart, int rowEnd) throws IOException {
+        int rowLength = rowEnd - rowStart;
+        int size = keyLength + rowLength;
+        if (count > 0 && (long) used + size + (long) (count + 1) * RECORD_OVERHEAD > memoryBytes) {
+            spill();
+        }
+        if (used + size > arena.length) {
+            arena = Arrays.copyOf(arena, (int) Math.min(Integer.MAX_VALUE - 8,
+                    Math.max((long) arena.length * 2, (long) used + size)));
+        }
+        if (count == prefixes.length) {
+            int n = count * 2;
+            prefixes = Arrays.copyOf(prefixes, n);
+            offsets = Arrays.copyOf(offsets, n);
+            keyLengths = Arrays.copyOf(keyLengths, n);
+            rowLengths = Arrays.copyOf(rowLengths, n);
+        }
+        prefixes[count] = KeyEncoder.prefix(key, 0, keyLength);
+        offsets[count] = used;
+        keyLengths[count] = keyLength;
+        rowLengths[count] = rowLength;
+        System.arraycopy(key, 0, arena, used, keyLength);
+        System.arraycopy(row, rowStart, arena, used + keyLength, rowLength);
+        used += size;
+        count++;
+    }
+
+    /** Sorts the records still held and hands them to the sorter as its last run from this generator. */
+    public void finish() {
+        if (count == 0) {
+            return;
+        }
+        long start = System.nanoTime();
+        long cpuStart = RunStats.threadCpuNanos();
+        int[] order = sortedOrder();
+        long bytes = arena.length + 8L * prefixes.length + 4L * (3L * offsets.length + order.length);
+        sorter.addMemoryRun(new MemoryRun(arena, prefixes, offsets, keyLengths, rowLengths, order), bytes);
+        arena = null;
+        count = 0;
+        nanos += System.nanoTime() - start;
+        cpuNanos += RunStats.threadCpuNanos() - cpuStart;
+    }
+
+    private void spill() throws IOException {
+        long start = System.nanoTime();
+        long cpuStart = RunStats.threadCpuNanos();
+        int[] order = sortedOrder();
+        try (RunFile.Writer writer = sorter.newRun()) {
+            for (int i : order) {
+                int off = offsets[i];
+                writer.write(arena, off, keyLengths[i], arena, off + keyLengths[i], rowLengths[i]);
+            }
+            sorter.addFileRun(writer.finish());
+        }
+        used = 0;
+        count = 0;
+        nanos += System.nanoTime() - start;
+        cpuNanos += RunStats.threadCpuNanos() - cpuStart;
+    }
+
+    /** @return indexes of the records in key order; keys are unique, so stability does not matter */
+    private int[] sortedOrder() {
+        int[] order = new int[count];
+        long[] keys = Arrays.copyOf(prefixes, count);
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        mergeSort(keys, order, keys.clone(), order.clone(), 0, count);
+        return order;
+    }
+
+    /**
+     * Sorts the pairs {@code (keys[i], order[i])} in {@code [from, to)}, using {@code tmpKeys} and {@code tmpOrder},
+     * which hold the same pairs there, as the other half of each merge.
+     */
+    private void mergeSort(long[] keys, int[] order, long[] tmpKeys, int[] tmpOrder, int from, int to) {
+        if (to - from <= INSERTION_SORT_MAX) {
+            for (int i = from + 1; i < to; i++) {
+                long k = keys[i];
+                int v = order[i];
+                int j = i - 1;
+                while (j >= from && compare(keys[j], order[j], k, v) > 0) {
+                    keys[j + 1] = keys[j];
+                    order[j + 1] = order[j];
+                    j--;
+                }
+                keys[j + 1] = k;
+                order[j + 1] = v;
+            }
+            return;
+        }
+        int mid = (from + to) >>> 1;
+        mergeSort(tmpKeys, tmpOrder, keys, order, from, mid);
+        mergeSort(tmpKeys, tmpOrder, keys, order, mid, to);
+        for (int i = from, l = from, r = mid; i < to; i++) {
+            boolean left = r >= to || (l < mid && compare(tmpKeys[l], tmpOrder[l], tmpKeys[r], tmpOrder[r]) <= 0);
+            int src = left ? l++ : r++;
+            keys[i] = tmpKeys[src];
+            order[i] = tmpOrder[src];
+        }
+    }
+
+    private int compare(long prefixI, int i, long prefixJ, int j) {
+        if (prefixI != prefixJ) {
+            return Long.compareUnsigned(prefixI, prefixJ);
+        }
+        return KeyEncoder.compare(prefixI, arena, offsets[i], keyLengths[i], prefixJ, arena, offsets[j], keyLengths[j]);
+    }
+
+    /** @return wall time spent sorting and spilling runs */
+    public long getNanos() { return nanos; }
+
+    public long getCpuNanos() { return cpuNanos; }
+
+    /** The last run of a generator, sorted and kept in memory for the final merge. */
+    private static final class MemoryRun implements RunSource {
+        private final byte[] arena;
+        private final long[] prefixes;
+        private final int[] offsets;
+        private final int[] keyLengths;
+        private final int[] rowLengths;
+        private final int[] order;
+        private int position = -1;
+        private int current;
+
+        MemoryRun(byte[] arena, long[] prefixes, int[] offsets, int[] keyLengths, int[] rowLengths, int[] order) {
+            this.arena = arena;
+            this.prefixes = prefixes;
+            this.offsets = offsets;
+            this.keyLengths = keyLengths;
+            this.rowLengths = rowLengths;
+            this.order = order;
+        }
+
+        @Override
+        public boolean advance() {
+            if (++position >= order.length) {
+                return false;
+            }
+            current = order[position];
+            return true;
+        }
+
+        @Override public long prefix() { return prefixes[current]; }
+        @Override public byte[] keyData() { return arena; }
+        @Override public int keyOffset() { return offsets[current]; }
+        @Override public int keyLength() { return keyLengths[current]; }
+        @Override public byte[] rowData() { return arena; }
+        @Override public int rowOffset() { return offsets[current] + keyLengths[current]; }
+        @Override public int rowLength() { return rowLengths[current]; }
+    }
+}
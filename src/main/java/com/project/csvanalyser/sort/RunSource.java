@@ -0,0 +1,31 @@
+package com.project.csvanalyser.sort;
+
+import java.io.IOException;
+
+/**
+ * A sorted run as the merge reads it: one record at a time, each a normalized key (see {@link KeyEncoder}) and the raw
+ * bytes of its row, without the line terminator. The arrays returned are only valid until the next {@link #advance}.
+ */
+interface RunSource {
+
+    /** @return whether there is a next record; the first call moves to the first record */
+    boolean advance() throws IOException;
+
+    /** @return the first eight bytes of the current key, see {@link KeyEncoder#prefix} */
+    long prefix();
+
+    byte[] keyData();
+
+    int keyOffset();
+
+    int keyLength();
+
+    byte[] rowData();
+
+    int rowOffset();
+
+    int rowLength();
+
+    default void close() throws IOException {
+    }
+}
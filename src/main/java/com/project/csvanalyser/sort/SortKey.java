@@ -0,0 +1,53 @@
+package com.project.csvanalyser.sort;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * One {@code --order-by} entry: a column, optionally followed by {@code asc} (the default) or {@code desc}, e.g.
+ * {@code amount desc}.
+ */
+public final class SortKey {
+
+    private final String column;
+    private final boolean descending;
+
+    public SortKey(String column, boolean descending) {
+        this.column = column;
+        this.descending = descending;
+    }
+
+    /**
+     * @param entries one key each, e.g. {@code region} and {@code amount desc}
+     * @throws IllegalArgumentException if an entry is blank or has a direction other than asc or desc
+     */
+    public static List<SortKey> parse(List<String> entries) {
+        List<SortKey> keys = new ArrayList<>();
+        for (String entry : entries) {
+            String[] words = entry.trim().split("\\s+");
+            if (words[0].isEmpty() || words.length > 2) {
+                throw new IllegalArgumentException("Order-by entry must be <column> [asc|desc]: '" + entry.trim() + "'");
+            }
+            boolean descending = false;
+            if (words.length == 2) {
+                String direction = words[1].toLowerCase(Locale.ROOT);
+                if (!direction.equals("asc") && !direction.equals("desc")) {
+                    throw new IllegalArgumentException("Order-by direction must be asc or desc: '" + entry.trim() + "'");
+                }
+                descending = direction.equals("desc");
+            }
+            keys.add(new SortKey(words[0], descending));
+        }
+        return keys;
+    }
+
+    public String getColumn() { return column; }
+
+    public boolean isDescending() { return descending; }
+
+    @Override
+    public String toString() {
+        return column + (descending ? " desc" : "");
+    }
+}
@@ -0,0 +1,232 @@
+package com.project.csvanalyser.stats;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.ThreadMXBean;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Lightweight profile of one run: wall and CPU time per stage, throughput, filter selectivity, group count,
+ * peak heap, GC activity and allocation per row.
+ * <p>
+ * Coarse stages (top-N, report) are timed exactly. The per-row stages of the scan (tokenize, filter, aggregate) are
+ * timed on one row in {@link #SAMPLE_MASK}+1 and scaled to the measured scan total, so instrumentation costs a few
+ * {@code nanoTime} calls per 64 rows. I/O time is measured exactly by the byte-counting input stream.
+ * Peak heap and GC figures are process-wide; allocation and CPU time are per thread.
+ * <p>
+ * Stages timed through {@link #time} are also emitted as JFR {@code csvanalyser.Stage} events.
+ */
+public final class RunStats {
+
+    /** Rows whose stages are timed individually: those with {@code (row & SAMPLE_MASK) == 0}. */
+    public static final int SAMPLE_MASK = 63;
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    private final long startNanos;
+    private final long gcMillisAtStart;
+    private final long gcCountAtStart;
+    private final long allocatedAtStart;
+    private final Map<String, Stage> stages = new LinkedHashMap<>();
+    private long wallNanos;
+    private long bytesRead;
+    private long rowsScanned;
+    private long rowsMatched;
+    private long groupCount;
+    private long peakHeapBytes;
+    private long gcPauseMillis;
+    private long gcCount;
+    private long allocatedBytes = -1;
+    private long otherThreadAllocatedBytes;
+
+    private RunStats() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.isValid()) {
+                pool.resetPeakUsage();
+            }
+        }
+        this.gcMillisAtStart = gcMillis();
+        this.gcCountAtStart = gcCount();
+        this.allocatedAtStart = threadAllocatedBytes();
+        this.startNanos = System.nanoTime();
+    }
+
+    /** Starts measuring on the calling thread. */
+    public static RunStats start() {
+        return new RunStats();
+    }
+
+    /** @return CPU time of the calling thread, or 0 if the JVM does not support it */
+    public static long threadCpuNanos() {
+        return THREADS.isCurrentThreadCpuTimeSupported() ? THREADS.getCurrentThreadCpuTime() : 0;
+    }
+
+    public void addStage(String name, long wallNanos, long cpuNanos) {
+        stages.merge(name, new Stage(wallNanos, cpuNanos), Stage::plus);
+    }
+
+    /**
+     * Times a coarse stage on the calling thread; closing the timer records the stage and emits a JFR stage event.
+     */
+    public Timer time(String stage) {
+        return new Timer(this, stage);
+    }
+
+    /**
+     * Emits only the JFR stage event, for stages whose timings are recorded by other means (the sampled scan).
+     */
+    public static Timer trace(String stage) {
+        return new Timer(null, stage);
+    }
+
+    /**
+     * Splits a measured total across per-row stages in proportion to the time observed on sampled rows.
+     */
+    public static long[] split(long[] sampledNanos, long totalNanos) {
+        long sampled = 0;
+        for (long n : sampledNanos) sampled += n;
+        long[] out = new long[sampledNanos.length];
+        for (int i = 0; i < out.length; i++) {
+            double share = sampled == 0 ? 1.0 / out.length : (double) sampledNanos[i] / sampled;
+            out[i] = (long) (totalNanos * share);
+        }
+        return out;
+    }
+
+    /**
+     * Adds allocation measured on helper threads (see {@link #threadAllocatedBytes()}), so allocation per row covers
+     * parallel scans too.
+     */
+    public synchronized void addOtherThreadAllocation(long bytes) {
+        if (bytes > 0) otherThreadAllocatedBytes += bytes;
+    }
+
+    public void setBytesRead(long bytesRead) { this.bytesRead = bytesRead; }
+    public void setRows(long scanned, long matched) { this.rowsScanned = scanned; this.rowsMatched = matched; }
+    public void setGroupCount(long groupCount) { this.groupCount = groupCount; }
+
+    /**
+     * Captures end-of-run totals: wall time, GC deltas, peak heap and allocated bytes on the calling thread.
+     */
+    public void finish() {
+        wallNanos = System.nanoTime() - startNanos;
+        gcPauseMillis = gcMillis() - gcMillisAtStart;
+        gcCount = gcCount() - gcCountAtStart;
+        long allocated = threadAllocatedBytes();
+        synchronized (this) {
+            allocatedBytes = allocated < 0 || allocatedAtStart < 0 ? -1 : allocated - allocatedAtStart + otherThreadAllocatedBytes;
+        }
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.isValid() && pool.getPeakUsage() != null) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        peakHeapBytes = peak;
+    }
+
+    public Map<String, Stage> getStages() { return Collections.unmodifiableMap(stages); }
+    public long getWallNanos() { return wallNanos; }
+    public long getBytesRead() { return bytesRead; }
+    public long getRowsScanned() { return rowsScanned; }
+    public long getRowsMatched() { return rowsMatched; }
+    public long getGroupCount() { return groupCount; }
+    public long getPeakHeapBytes() { return peakHeapBytes; }
+    public long getGcPauseMillis() { return gcPauseMillis; }
+    public long getGcCount() { return gcCount; }
+
+    public double getRowsPerSecond() {
+        return wallNanos == 0 ? 0 : rowsScanned * 1e9 / wallNanos;
+    }
+
+    public double getMegabytesPerSecond() {
+        return wallNanos == 0 ? 0 : bytesRead / (1024.0 * 1024.0) * 1e9 / wallNanos;
+    }
+
+    /** @return fraction of scanned rows that passed the filter */
+    public double getFilterSelectivity() {
+        return rowsScanned == 0 ? 0 : (double) rowsMatched / rowsScanned;
+    }
+
+    /** @return allocated bytes per scanned row, or -1 if allocation tracking is unavailable */
+    public double getAllocatedBytesPerRow() {
+        if (allocatedBytes < 0) return -1;
+        return rowsScanned == 0 ? allocatedBytes : (double) allocatedBytes / rowsScanned;
+    }
+
+    private static long gcMillis() {
+        long total = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(0, gc.getCollectionTime());
+        }
+        return total;
+    }
+
+    private static long gcCount() {
+        long total = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(0, gc.getCollectionCount());
+        }
+        return total;
+    }
+
+    /** @return bytes allocated so far by the calling thread, or -1 if the JVM does not track it */
+    public static long threadAllocatedBytes() {
+        if (THREADS instanceof com.sun.management.ThreadMXBean sun && sun.isThreadAllocatedMemorySupported()
+                && sun.isThreadAllocatedMemoryEnabled()) {
+            return sun.getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    /** A running stage measurement; see {@link #time} and {@link #trace}. */
+    public static final class Timer implements AutoCloseable {
+        private final RunStats stats;
+        private final String stage;
+        private final StageEvent event = new StageEvent();
+        private final long startNanos;
+        private final long cpuStartNanos;
+
+        private Timer(RunStats stats, String stage) {
+            this.stats = stats;
+            this.stage = stage;
+            this.event.begin();
+            this.cpuStartNanos = stats == null ? 0 : threadCpuNanos();
+            this.startNanos = System.nanoTime();
+        }
+
+        @Override
+        public void close() {
+            if (stats != null) {
+                stats.addStage(stage, System.nanoTime() - startNanos, threadCpuNanos() - cpuStartNanos);
+            }
+            event.end();
+            if (event.shouldCommit()) {
+                event.stage = stage;
+                event.commit();
+            }
+        }
+    }
+
+    /** Wall and CPU time of one stage. */
+    public static final class Stage {
+        private final long wallNanos;
+        private final long cpuNanos;
+
+        public Stage(long wallNanos, long cpuNanos) {
+            this.wallNanos = wallNanos;
+            this.cpuNanos = cpuNanos;
+        }
+
+        public long getWallNanos() { return wallNanos; }
+        public long getCpuNanos() { return cpuNanos; }
+
+        Stage plus(Stage other) {
+            return new Stage(wallNanos + other.wallNanos, cpuNanos + other.cpuNanos);
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.project.csvanalyser.stats;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event spanning one chunk of {@link ScanProgress#CHUNK_MASK}+1 rows of a scan.
+ */
+@Name("csvanalyser.ScanChunk")
+@Label("Scan Chunk")
+@Category({"CSV Analyser", "Scan"})
+@Description("Rows and bytes consumed by one chunk of a CSV scan")
+final class ScanChunkEvent extends jdk.jfr.Event {
+
+    @Label("Source")
+    String source;
+
+    @Label("Rows")
+    long rows;
+
+    @Label("Bytes")
+    @DataAmount
+    long bytes;
+
+    @Label("Groups")
+    long groups;
+}
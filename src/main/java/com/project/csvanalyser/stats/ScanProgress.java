@@ -0,0 +1,217 @@
+package com.project.csvanalyser.stats;
+
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Progress of one streaming scan, published three ways: as a {@link ScanProgressMXBean} while the scan runs, as a
+ * {@link ScanChunkEvent} per chunk for JFR, and optionally as a progress line on stderr at most once per second.
+ * <p>
+ * The scan thread calls {@link #update} once per chunk of {@link #CHUNK_MASK}+1 rows; counters are volatile so JMX
+ * clients can read them from other threads. Bytes come straight from the reader's byte counter.
+ */
+public final class ScanProgress implements ScanProgressMXBean, AutoCloseable {
+
+    /** The scan reports at rows with {@code (row & CHUNK_MASK) == 0}. */
+    public static final int CHUNK_MASK = (1 << 14) - 1;
+
+    private static final long PRINT_INTERVAL_NANOS = 1_000_000_000L;
+    private static final AtomicLong SEQUENCE = new AtomicLong();
+
+    private final String source;
+    private final long totalBytes;
+    private final LongSupplier bytesRead;
+    private final PrintStream progressOut;
+    private final long startNanos = System.nanoTime();
+    private volatile long rows;
+    private volatile long groupCount;
+    private volatile long stateBytes;
+    private long lastPrintNanos = startNanos;
+    private long chunkStartBytes;
+    private long chunkStartRows;
+    private ScanChunkEvent chunk;
+    private ObjectName objectName;
+
+    private ScanProgress(String source, long totalBytes, LongSupplier bytesRead, PrintStream progressOut) {
+        this.source = source;
+        this.totalBytes = totalBytes;
+        this.bytesRead = bytesRead;
+        this.progressOut = progressOut;
+    }
+
+    /**
+     * Starts tracking a scan and registers its MBean. Registration failures are logged and otherwise ignored.
+     *
+     * @param totalBytes  input size, or -1 if unknown (no percentage or ETA)
+     * @param bytesRead   live count of bytes consumed so far
+     * @param progressOut where to print progress lines, or null for none
+     */
+    public static ScanProgress start(String source, long totalBytes, LongSupplier bytesRead, PrintStream progressOut) {
+        ScanProgress progress = new ScanProgress(source, totalBytes, bytesRead, progressOut);
+        progress.register();
+        progress.beginChunk();
+        return progress;
+    }
+
+    private void register() {
+        try {
+            ObjectName name = new ObjectName("com.project.csvanalyser:type=ScanProgress,name="
+                    + ObjectName.quote(source + "#" + SEQUENCE.incrementAndGet()));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+            objectName = name;
+        } catch (JMException e) {
+            LoggerFactory.getLogger(ScanProgress.class).debug("Scan progress MBean not registered: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Records progress at a chunk boundary. Called from the scan thread only.
+     */
+    public void update(long rows, long groupCount, long stateBytes) {
+        this.rows = rows;
+        this.groupCount = groupCount;
+        this.stateBytes = stateBytes;
+        commitChunk();
+        beginChunk();
+        if (progressOut != null) {
+            long now = System.nanoTime();
+            if (now - lastPrintNanos >= PRINT_INTERVAL_NANOS) {
+                lastPrintNanos = now;
+                progressOut.println(progressLine());
+            }
+        }
+    }
+
+    private void beginChunk() {
+        chunkStartBytes = bytesRead.getAsLong();
+        chunkStartRows = rows;
+        chunk = new ScanChunkEvent();
+        chunk.begin();
+    }
+
+    private void commitChunk() {
+        ScanChunkEvent event = chunk;
+        event.end();
+        if (event.shouldCommit()) {
+            event.source = source;
+            event.rows = rows - chunkStartRows;
+            event.bytes = bytesRead.getAsLong() - chunkStartBytes;
+            event.groups = groupCount;
+            event.commit();
+        }
+    }
+
+    /**
+     * Records the final counts, commits the last partial chunk, prints a final line if progress output is on, and
+     * unregisters the MBean.
+     */
+    public void finish(long rows, long groupCount, long stateBytes) {
+        this.rows = rows;
+        this.groupCount = groupCount;
+        this.stateBytes = stateBytes;
+        if (progressOut != null) {
+            progressOut.println(progressLine());
+        }
+        close();
+    }
+
+    /**
+     * Commits any open chunk and unregisters the MBean. Idempotent; covers scans that end with an exception.
+     */
+    @Override
+    public void close() {
+        if (chunk != null) {
+            commitChunk();
+            chunk = null;
+        }
+        if (objectName != null) {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            try {
+                server.unregisterMBean(objectName);
+            } catch (JMException e) {
+                LoggerFactory.getLogger(ScanProgress.class).debug("Scan progress MBean not unregistered: {}", e.getMessage());
+            }
+            objectName = null;
+        }
+    }
+
+    String progressLine() {
+        StringBuilder line = new StringBuilder("progress: ");
+        double percent = getPercentComplete();
+        if (percent >= 0) {
+            line.append(String.format(Locale.ROOT, "%.1f%% ", percent));
+        }
+        line.append(formatBytes(getBytesProcessed()));
+        if (totalBytes >= 0) {
+            line.append('/').append(formatBytes(totalBytes));
+        }
+        line.append(String.format(Locale.ROOT, ", %d rows (%.0f rows/s, %s/s), %d groups (~%s state)",
+                rows, getRowsPerSecond(), formatBytes((long) getBytesPerSecond()), groupCount, formatBytes(stateBytes)));
+        long eta = getEtaSeconds();
+        if (eta >= 0) {
+            line.append(String.format(Locale.ROOT, ", ETA %d:%02d:%02d", eta / 3600, eta / 60 % 60, eta % 60));
+        }
+        return line.toString();
+    }
+
+    private static String formatBytes(long bytes) {
+        if (bytes < 1024) return bytes + " B";
+        if (bytes < 1024L * 1024) return String.format(Locale.ROOT, "%.1f KB", bytes / 1024.0);
+        if (bytes < 1024L * 1024 * 1024) return String.format(Locale.ROOT, "%.1f MB", bytes / (1024.0 * 1024));
+        return String.format(Locale.ROOT, "%.2f GB", bytes / (1024.0 * 1024 * 1024));
+    }
+
+    @Override
+    public String getSource() { return source; }
+
+    @Override
+    public long getBytesProcessed() { return bytesRead.getAsLong(); }
+
+    @Override
+    public long getTotalBytes() { return totalBytes; }
+
+    @Override
+    public double getPercentComplete() {
+        if (totalBytes < 0) return -1;
+        return totalBytes == 0 ? 100 : Math.min(100, 100.0 * getBytesProcessed() / totalBytes);
+    }
+
+    @Override
+    public long getRowsProcessed() { return rows; }
+
+    @Override
+    public double getRowsPerSecond() {
+        double elapsed = getElapsedSeconds();
+        return elapsed == 0 ? 0 : rows / elapsed;
+    }
+
+    @Override
+    public double getBytesPerSecond() {
+        double elapsed = getElapsedSeconds();
+        return elapsed == 0 ? 0 : getBytesProcessed() / elapsed;
+    }
+
+    @Override
+    public long getEtaSeconds() {
+        double rate = getBytesPerSecond();
+        if (totalBytes < 0 || rate <= 0) return -1;
+        return (long) Math.ceil(Math.max(0, totalBytes - getBytesProcessed()) / rate);
+    }
+
+    @Override
+    public long getGroupCount() { return groupCount; }
+
+    @Override
+    public long getEstimatedStateBytes() { return stateBytes; }
+
+    @Override
+    public double getElapsedSeconds() { return (System.nanoTime() - startNanos) / 1e9; }
+}
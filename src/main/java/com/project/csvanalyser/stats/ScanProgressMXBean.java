@@ -0,0 +1,34 @@
+package com.project.csvanalyser.stats;
+
+/**
+ * Live view of a running scan, registered with the platform MBean server as
+ * {@code com.project.csvanalyser:type=ScanProgress,name=<file>#<n>} for the duration of the scan.
+ */
+public interface ScanProgressMXBean {
+
+    String getSource();
+
+    long getBytesProcessed();
+
+    /** @return input size in bytes, or -1 if unknown */
+    long getTotalBytes();
+
+    /** @return 0-100, or -1 if the input size is unknown */
+    double getPercentComplete();
+
+    long getRowsProcessed();
+
+    double getRowsPerSecond();
+
+    double getBytesPerSecond();
+
+    /** @return estimated seconds to completion, or -1 if not yet estimable */
+    long getEtaSeconds();
+
+    long getGroupCount();
+
+    /** @return rough retained size of the group-by state */
+    long getEstimatedStateBytes();
+
+    double getElapsedSeconds();
+}
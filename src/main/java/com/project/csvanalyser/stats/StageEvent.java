@@ -0,0 +1,19 @@
+package com.project.csvanalyser.stats;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event spanning one engine stage (scan, topN, report, ...), so recordings line up with engine phases.
+ */
+@Name("csvanalyser.Stage")
+@Label("Engine Stage")
+@Category({"CSV Analyser", "Stage"})
+@Description("One phase of an analytics run")
+final class StageEvent extends jdk.jfr.Event {
+
+    @Label("Stage")
+    String stage;
+}
@@ -0,0 +1,85 @@
+package com.project.csvanalyser.aggregation;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GroupingSetsTest {
+
+    private static final List<AggregationSpec.AggregationOpWithColumn> AGGS = List.of(
+            new AggregationSpec.AggregationOpWithColumn(AggregationSpec.AggregationOp.COUNT, null),
+            new AggregationSpec.AggregationOpWithColumn(AggregationSpec.AggregationOp.SUM, "amount"),
+            new AggregationSpec.AggregationOpWithColumn(AggregationSpec.AggregationOp.MAX, "amount"));
+
+    @Test
+    void derivesCoarserSetsFromFinestGroups() {
+        GroupingSets sets = GroupingSets.parse(List.of("(product, region)", "product", "(region)", "()"),
+                List.of("product", "region"));
+        StreamAggregator aggregator = new StreamAggregator(new AggregationSpec(List.of("product", "region"), AGGS, sets));
+        aggregator.consume(Stream.of(
+                Map.of("product", "A", "region", "EU", "amount", "10"),
+                Map.of("product", "A", "region", "US", "amount", "20"),
+                Map.of("product", "B", "region", "EU", "amount", "5"),
+                Map.of("product", "A", "region", "EU", "amount", "1")));
+        Map<GroupKey, AggregationState> finest = aggregator.getStateByGroup();
+
+        List<GroupingSets.Level> levels = aggregator.getGroupingSets().levels(finest);
+        assertEquals(4, levels.size());
+        assertSame(finest, levels.get(0).getGroups());
+        assertTrue(levels.get(0).isFinest());
+        assertEquals(List.of(0, 1, 2, 3), levels.stream().map(GroupingSets.Level::getGroupingId).toList());
+        assertEquals(List.of("region"), levels.get(2).getColumns());
+
+        AggregationState a = levels.get(1).getGroups().get(new GroupKey(List.of("A")));
+        assertEquals(3, a.getCount());
+        assertEquals(31.0, a.getSum("amount"));
+        assertEquals(20.0, a.getMax("amount"));
+        AggregationState eu = levels.get(2).getGroups().get(new GroupKey(List.of("EU")));
+        assertEquals(3, eu.getCount());
+        assertEquals(16.0, eu.getSum("amount"));
+        AggregationState total = levels.get(3).getGroups().get(new GroupKey(List.of()));
+        assertEquals(1, levels.get(3).getGroups().size());
+        assertEquals(4, total.getCount());
+        assertEquals(36.0, total.getSum("amount"));
+        assertEquals(2, finest.get(new GroupKey(List.of("A", "EU"))).getCount(), "finest states are not modified");
+    }
+
+    @Test
+    void rollupIsEveryPrefixAndFinestMayBeLeftOut() {
+        GroupingSets rollup = GroupingSets.rollup(List.of("a", "b", "c"));
+        assertEquals(4, rollup.size());
+        List<GroupingSets.Level> levels = rollup.levels(Map.of());
+        assertEquals(List.of(List.of("a", "b", "c"), List.of("a", "b"), List.of("a"), List.of()),
+                levels.stream().map(GroupingSets.Level::getColumns).toList());
+        assertEquals(List.of(0, 1, 3, 7), levels.stream().map(GroupingSets.Level::getGroupingId).toList());
+        assertNotNull(rollup.finestLevel());
+
+        GroupingSets coarse = GroupingSets.parse(List.of("b", "()"), List.of("a", "b"));
+        assertNull(coarse.finestLevel());
+        GroupingSets.Accumulator accumulator = coarse.accumulator();
+        AggregationState state = new AggregationState();
+        state.addCount(2);
+        accumulator.add(new GroupKey(List.of("x", "y")), state);
+        accumulator.add(new GroupKey(List.of("z", "y")), state);
+        List<GroupingSets.Level> coarseLevels = accumulator.levels(Map.of());
+        assertEquals(2, coarseLevels.size());
+        assertEquals(4, coarseLevels.get(0).getGroups().get(new GroupKey(List.of("y"))).getCount());
+        assertEquals(2, coarseLevels.get(0).getGroupingId());
+    }
+
+    @Test
+    void parsesSetColumnsAndRejectsBadSets() {
+        assertEquals(List.of("product", "region", "bucket(ts, 1h)"),
+                GroupingSets.columns(List.of("(product,region)", "region, bucket(ts, 1h)", "()")));
+        List<String> groupBy = List.of("product", "region");
+        assertThrows(IllegalArgumentException.class, () -> GroupingSets.parse(List.of("country"), groupBy));
+        assertThrows(IllegalArgumentException.class, () -> GroupingSets.parse(List.of("product", "(product)"), groupBy));
+        GroupingSets sets = GroupingSets.parse(List.of("region,product"), groupBy);
+        assertTrue(sets.finestLevel().isFinest(), "a set's columns may be listed in any order");
+        assertThrows(IllegalArgumentException.class, () -> new AggregationSpec(List.of("product"), AGGS, sets));
+    }
+}
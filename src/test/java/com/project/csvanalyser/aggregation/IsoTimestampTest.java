@@ -0,0 +1,48 @@
+package com.project.csvanalyser.aggregation;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IsoTimestampTest {
+
+    @Test
+    void parsesCommonForms() {
+        assertEquals(Instant.parse("2024-03-01T00:00:00Z").toEpochMilli(), IsoTimestamp.parseEpochMillis("2024-03-01"));
+        assertEquals(Instant.parse("2024-03-01T13:45:00Z").toEpochMilli(), IsoTimestamp.parseEpochMillis("2024-03-01T13:45"));
+        assertEquals(Instant.parse("2024-03-01T13:45:07Z").toEpochMilli(), IsoTimestamp.parseEpochMillis("2024-03-01 13:45:07"));
+        assertEquals(Instant.parse("2024-03-01T13:45:07.120Z").toEpochMilli(), IsoTimestamp.parseEpochMillis("2024-03-01T13:45:07.12Z"));
+        assertEquals(Instant.parse("2024-03-01T13:45:07.123Z").toEpochMilli(), IsoTimestamp.parseEpochMillis("2024-03-01T13:45:07.123456789Z"));
+        assertEquals(OffsetDateTime.parse("2024-03-01T13:45:07+05:30").toInstant().toEpochMilli(),
+                IsoTimestamp.parseEpochMillis("2024-03-01T13:45:07+05:30"));
+        assertEquals(OffsetDateTime.parse("2024-03-01T13:45:07-08:00").toInstant().toEpochMilli(),
+                IsoTimestamp.parseEpochMillis("2024-03-01T13:45:07-0800"));
+        assertEquals(OffsetDateTime.parse("2024-03-01T01:00:00+02:00").toInstant().toEpochMilli(),
+                IsoTimestamp.parseEpochMillis("2024-03-01T01:00:00+02"));
+    }
+
+    @Test
+    void matchesJavaTimeAcrossCalendar() {
+        for (long day = -800_000; day < 800_000; day += 997) {
+            long millis = day * 86_400_000L + 45_296_000L;
+            String text = OffsetDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneOffset.UTC).toLocalDateTime().toString();
+            if (text.startsWith("-") || text.startsWith("+")) continue;
+            assertEquals(millis, IsoTimestamp.parseEpochMillis(text), text);
+            assertEquals(Instant.ofEpochMilli(millis).toString(), IsoTimestamp.format(millis));
+        }
+    }
+
+    @Test
+    void rejectsInvalidText() {
+        for (String bad : new String[] {"", "2024", "2024-13-01", "2024-02-30", "2023-02-29", "2024-03-01X",
+                "2024-03-01T25:00", "2024-03-01T12", "2024-03-01T12:00:00.", "2024-03-01T12:00+5", "2024-03-01T12:00+05:",
+                "abcd-ef-gh", "2024-03-01T12:00:00ZZ"}) {
+            assertEquals(IsoTimestamp.INVALID, IsoTimestamp.parseEpochMillis(bad), bad);
+        }
+        assertNotEquals(IsoTimestamp.INVALID, IsoTimestamp.parseEpochMillis("2024-02-29"));
+    }
+}
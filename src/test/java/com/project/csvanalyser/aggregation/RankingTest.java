@@ -0,0 +1,51 @@
+package com.project.csvanalyser.aggregation;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RankingTest {
+
+    private static final List<String> GROUP_BY = List.of("region", "product");
+
+    private static AggregationState count(int n) {
+        AggregationState state = new AggregationState();
+        for (int i = 0; i < n; i++) {
+            state.addCount();
+        }
+        return state;
+    }
+
+    @Test
+    void parsesSpecs() {
+        RankingSpec perRegion = RankingSpec.parse("count:2 per region", GROUP_BY, 10);
+        assertEquals("count", perRegion.getMetric());
+        assertEquals(2, perRegion.getK());
+        assertEquals(List.of("region"), perRegion.getPerColumns());
+        assertEquals("count:2 per region", perRegion.toString());
+        assertEquals(10, RankingSpec.parse("sum_amount", GROUP_BY, 10).getK());
+        assertThrows(IllegalArgumentException.class, () -> RankingSpec.parse("count per city", GROUP_BY, 10));
+        assertThrows(IllegalArgumentException.class, () -> RankingSpec.parse("count per region,product", GROUP_BY, 10));
+        assertThrows(IllegalArgumentException.class, () -> RankingSpec.parse("count:x", GROUP_BY, 10));
+    }
+
+    @Test
+    void keepsTopKPerParent() {
+        Ranking ranking = new Ranking(RankingSpec.parse("count:2 per region", GROUP_BY, 10), GROUP_BY);
+        ranking.offer(new GroupKey(List.of("US", "a")), count(1));
+        ranking.offer(new GroupKey(List.of("EU", "a")), count(5));
+        ranking.offer(new GroupKey(List.of("EU", "b")), count(7));
+        ranking.offer(new GroupKey(List.of("EU", "c")), count(6));
+        ranking.offer(new GroupKey(List.of("US", "b")), count(3));
+
+        Ranking.Result result = ranking.result();
+        assertEquals(2, result.getPartitions().size());
+        Ranking.Partition eu = result.getPartitions().get(0);
+        assertEquals(List.of("EU"), eu.getParent().getValues());
+        assertEquals(List.of("b", "c"), eu.getTop().stream().map(e -> e.getGroupKey().getValues().get(1)).toList());
+        Ranking.Partition us = result.getPartitions().get(1);
+        assertEquals(List.of(3.0, 1.0), us.getTop().stream().map(TopN.TopNEntry::getMetricValue).toList());
+    }
+}
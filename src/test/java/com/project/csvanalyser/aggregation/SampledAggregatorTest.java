@@ -0,0 +1,102 @@
+package com.project.csvanalyser.aggregation;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SampledAggregatorTest {
+
+    private static final AggregationSpec SPEC = new AggregationSpec(List.of("region"), List.of(
+            new AggregationSpec.AggregationOpWithColumn(AggregationSpec.AggregationOp.COUNT, null),
+            new AggregationSpec.AggregationOpWithColumn(AggregationSpec.AggregationOp.AVG, "amount")));
+    private static final GroupKey EU = new GroupKey(List.of("EU"));
+
+    private static final long BLOCK_BYTES = 1000;
+    private static final long DATA_BYTES = 200 * BLOCK_BYTES;
+
+    /** 200 blocks of 50 rows; EU rows are about 30% of each block, amounts uniform in 0..99. */
+    private static List<List<Map<String, String>>> population() {
+        Random random = new Random(11);
+        List<List<Map<String, String>>> blocks = new ArrayList<>();
+        for (int b = 0; b < 200; b++) {
+            List<Map<String, String>> rows = new ArrayList<>();
+            for (int i = 0; i < 50; i++) {
+                rows.add(Map.of("region", random.nextDouble() < 0.3 ? "EU" : "US",
+                        "amount", String.valueOf(random.nextInt(100))));
+            }
+            blocks.add(rows);
+        }
+        return blocks;
+    }
+
+    private static SampledAggregator sample(List<List<Map<String, String>>> blocks, List<Integer> chosen) {
+        SampledAggregator aggregator = new SampledAggregator(SPEC);
+        for (int b : chosen) {
+            blocks.get(b).forEach(aggregator::accept);
+            aggregator.endBlock(BLOCK_BYTES);
+        }
+        return aggregator;
+    }
+
+    @Test
+    void fullSampleIsExactWithZeroWidthIntervals() {
+        List<List<Map<String, String>>> blocks = population();
+        List<Integer> all = new ArrayList<>();
+        for (int b = 0; b < blocks.size(); b++) all.add(b);
+        SampledAggregator aggregator = sample(blocks, all);
+
+        StreamAggregator exact = new StreamAggregator(SPEC);
+        blocks.forEach(rows -> rows.forEach(exact::accept));
+        AggregationState expected = exact.getStateByGroup().get(EU);
+        AggregationState estimated = aggregator.scaledStateByGroup(DATA_BYTES).get(EU);
+        assertEquals(expected.getCount(), estimated.getCount());
+        assertEquals(expected.getSum("amount"), estimated.getSum("amount"), 1e-6);
+
+        SampleEstimate estimate = aggregator.estimate(DATA_BYTES, blocks.size(), 1.0, 0, 10_000);
+        assertEquals(expected.getCount(), estimate.count(EU).getLow(), 1e-6);
+        assertEquals(expected.getCount(), estimate.count(EU).getHigh(), 1e-6);
+        assertEquals(expected.getAvg("amount"), estimate.avg(EU, "amount").getLow(), 1e-9);
+    }
+
+    @Test
+    void intervalsCoverTheTrueTotalsAtAboutTheNominalRate() {
+        List<List<Map<String, String>>> blocks = population();
+        StreamAggregator exact = new StreamAggregator(SPEC);
+        blocks.forEach(rows -> rows.forEach(exact::accept));
+        AggregationState truth = exact.getStateByGroup().get(EU);
+
+        int countCovered = 0;
+        int sumCovered = 0;
+        int avgCovered = 0;
+        int trials = 200;
+        for (int t = 0; t < trials; t++) {
+            List<Integer> order = new ArrayList<>();
+            for (int b = 0; b < blocks.size(); b++) order.add(b);
+            Collections.shuffle(order, new Random(t));
+            SampleEstimate estimate = sample(blocks, order.subList(0, 20)).estimate(DATA_BYTES, blocks.size(), 0.1, t, 1000);
+            SampleEstimate.Interval count = estimate.count(EU);
+            SampleEstimate.Interval sum = estimate.sum(EU, "amount");
+            SampleEstimate.Interval avg = estimate.avg(EU, "amount");
+            if (count.getLow() <= truth.getCount() && truth.getCount() <= count.getHigh()) countCovered++;
+            if (sum.getLow() <= truth.getSum("amount") && truth.getSum("amount") <= sum.getHigh()) sumCovered++;
+            if (avg.getLow() <= truth.getAvg("amount") && truth.getAvg("amount") <= avg.getHigh()) avgCovered++;
+        }
+        assertTrue(countCovered >= 0.88 * trials, "count covered " + countCovered);
+        assertTrue(sumCovered >= 0.88 * trials, "sum covered " + sumCovered);
+        assertTrue(avgCovered >= 0.88 * trials, "avg covered " + avgCovered);
+    }
+
+    @Test
+    void singleBlockHasNoInterval() {
+        SampleEstimate estimate = sample(population(), List.of(5)).estimate(DATA_BYTES, 200, 0.005, 0, 50);
+        assertNull(estimate.count(EU));
+        assertNull(estimate.avg(EU, "amount"));
+        assertEquals(200.0, estimate.getScale());
+    }
+}
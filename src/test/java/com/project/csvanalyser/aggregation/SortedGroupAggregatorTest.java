@@ -0,0 +1,63 @@
+package com.project.csvanalyser.aggregation;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SortedGroupAggregatorTest {
+
+    private static final AggregationSpec SPEC = new AggregationSpec(List.of("region", "product"), List.of(
+            new AggregationSpec.AggregationOpWithColumn(AggregationSpec.AggregationOp.COUNT, null),
+            new AggregationSpec.AggregationOpWithColumn(AggregationSpec.AggregationOp.SUM, "amount")));
+
+    @Test
+    void emitsEachGroupWhenItsKeyChanges() throws Exception {
+        List<GroupKey> emitted = new ArrayList<>();
+        List<Long> counts = new ArrayList<>();
+        SortedGroupAggregator agg = new SortedGroupAggregator(SPEC, "sum_amount", 2, (key, state) -> {
+            emitted.add(key);
+            counts.add(state.getCount());
+        });
+        agg.accept(Map.of("region", "EU", "product", "A", "amount", "10"));
+        agg.accept(Map.of("region", "EU", "product", "A", "amount", "20"));
+        assertTrue(emitted.isEmpty());
+        agg.accept(Map.of("region", "EU", "product", "B", "amount", "5"));
+        assertEquals(List.of(new GroupKey(List.of("EU", "A"))), emitted);
+        agg.accept(Map.of("region", "US", "product", "A", "amount", "100"));
+        agg.finish();
+
+        assertEquals(List.of(new GroupKey(List.of("EU", "A")), new GroupKey(List.of("EU", "B")),
+                new GroupKey(List.of("US", "A"))), emitted);
+        assertEquals(List.of(2L, 1L, 1L), counts);
+        assertEquals(3, agg.groupCount());
+        assertEquals(0, agg.estimatedStateBytes());
+        List<TopN.TopNEntry> top = agg.getTopN();
+        assertEquals(2, top.size());
+        assertEquals(List.of("US", "A"), top.get(0).getGroupKey().getValues());
+        assertEquals(30.0, top.get(1).getMetricValue());
+    }
+
+    @Test
+    void failsWhenInputIsNotSorted() throws Exception {
+        SortedGroupAggregator agg = new SortedGroupAggregator(SPEC, "count", 10, (key, state) -> { });
+        agg.accept(Map.of("region", "EU", "product", "B", "amount", "1"));
+        agg.accept(Map.of("region", "US", "product", "A", "amount", "1"));
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> agg.accept(Map.of("region", "EU", "product", "C", "amount", "1")));
+        assertTrue(e.getMessage().contains("not sorted"), e.getMessage());
+        assertTrue(e.getMessage().contains("[EU, C]"), e.getMessage());
+    }
+
+    @Test
+    void noRowsEmitsNothing() throws Exception {
+        List<GroupKey> emitted = new ArrayList<>();
+        SortedGroupAggregator agg = new SortedGroupAggregator(SPEC, "count", 10, (key, state) -> emitted.add(key));
+        agg.finish();
+        assertTrue(emitted.isEmpty());
+        assertTrue(agg.getTopN().isEmpty());
+    }
+}
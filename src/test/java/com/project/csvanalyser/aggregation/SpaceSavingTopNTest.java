@@ -0,0 +1,66 @@
+package com.project.csvanalyser.aggregation;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SpaceSavingTopNTest {
+
+    @Test
+    void exactWhileUnderCapacity() {
+        SpaceSavingTopN top = new SpaceSavingTopN(List.of("customer"), "sum_amount", 10);
+        top.accept(Map.of("customer", "a", "amount", "5"));
+        top.accept(Map.of("customer", "b", "amount", "7"));
+        top.accept(Map.of("customer", "a", "amount", "4"));
+        List<TopN.TopNEntry> result = top.top(2);
+        assertEquals(List.of("a"), result.get(0).getGroupKey().getValues());
+        assertEquals(9.0, result.get(0).getMetricValue());
+        assertEquals(0.0, result.get(0).getErrorBound());
+        assertTrue(result.get(0).isApproximate());
+        assertTrue(result.get(1).isGuaranteed());
+    }
+
+    @Test
+    void boundsHoldOnSkewedStream() {
+        int capacity = 50;
+        SpaceSavingTopN top = new SpaceSavingTopN(List.of("customer"), "count", capacity);
+        Map<String, Long> exact = new HashMap<>();
+        Random random = new Random(42);
+        long total = 0;
+        for (int i = 0; i < 200_000; i++) {
+            // Zipf-like: a few heavy customers in a long tail of 100k ids
+            int id = random.nextDouble() < 0.5 ? random.nextInt(10) : random.nextInt(100_000);
+            String customer = "c" + id;
+            top.accept(Map.of("customer", customer));
+            exact.merge(customer, 1L, Long::sum);
+            total++;
+        }
+        assertEquals(capacity, top.groupCount());
+        List<TopN.TopNEntry> result = top.top(10);
+        assertEquals(10, result.size());
+        for (TopN.TopNEntry e : result) {
+            long truth = exact.get(e.getGroupKey().getValues().get(0));
+            assertTrue(e.getMetricValue() >= truth, "never underestimates");
+            assertTrue(e.getMetricValue() - e.getErrorBound() <= truth, "error bound covers the overestimate");
+            assertTrue(e.getErrorBound() <= (double) total / capacity);
+            assertTrue(e.isGuaranteed());
+            assertTrue(e.getGroupKey().getValues().get(0).length() <= 2, "heavy hitters are c0..c9");
+        }
+    }
+
+    @Test
+    void rejectsUnsupportedMetricsAndSkipsNegativeValues() {
+        assertThrows(IllegalArgumentException.class, () -> new SpaceSavingTopN(List.of("c"), "avg_amount", 10));
+        SpaceSavingTopN top = new SpaceSavingTopN(List.of("c"), "sum_amount", 10);
+        top.accept(Map.of("c", "x", "amount", "-3"));
+        top.accept(Map.of("c", "x", "amount", "abc"));
+        top.accept(Map.of("c", "x", "amount", "2"));
+        assertEquals(2, top.getSkippedValues());
+        assertEquals(2.0, top.top(1).get(0).getMetricValue());
+    }
+}
@@ -104,4 +104,17 @@ class StreamAggregatorTest {
         assertEquals("b", keys.get(1).getValues().get(0));
         assertEquals("c", keys.get(2).getValues().get(0));
     }
+
+    @Test
+    void sumAndAvgOnSameColumnCountValuesOnce() {
+        List<AggregationSpec.AggregationOpWithColumn> aggs = List.of(
+                new AggregationSpec.AggregationOpWithColumn(AggregationSpec.AggregationOp.SUM, "amount"),
+                new AggregationSpec.AggregationOpWithColumn(AggregationSpec.AggregationOp.AVG, "amount")
+        );
+        StreamAggregator agg = new StreamAggregator(new AggregationSpec(List.of(), aggs));
+        agg.consume(Stream.of(Map.of("amount", "10"), Map.of("amount", "30")));
+        AggregationState s = agg.getStateByGroup().get(new GroupKey(List.of()));
+        assertEquals(40.0, s.getSum("amount"));
+        assertEquals(20.0, s.getAvg("amount"));
+    }
 }
@@ -0,0 +1,85 @@
+package com.project.csvanalyser.aggregation;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TimeBucketTest {
+
+    @Test
+    void parsesExpressions() {
+        assertNull(TimeBucket.parse("timestamp"));
+        TimeBucket hourly = TimeBucket.parse("bucket(timestamp, 1h)");
+        assertEquals("timestamp", hourly.getColumn());
+        assertEquals(3_600_000L, hourly.getSizeMillis());
+        assertFalse(hourly.isSliding());
+        TimeBucket sliding = TimeBucket.parse("BUCKET(ts,1h,15m)");
+        assertTrue(sliding.isSliding());
+        assertEquals(4, sliding.maxWindows());
+        assertThrows(IllegalArgumentException.class, () -> TimeBucket.parse("bucket(ts, 1x)"));
+        assertThrows(IllegalArgumentException.class, () -> TimeBucket.parse("bucket(ts, 0h)"));
+        assertThrows(IllegalArgumentException.class, () -> TimeBucket.parse("bucket(ts, 15m, 1h)"));
+    }
+
+    @Test
+    void labelsTumblingAndSlidingWindows() {
+        TimeBucket hourly = TimeBucket.parse("bucket(ts, 1h)");
+        assertEquals("2024-03-01T13:00:00Z", hourly.label("2024-03-01T13:59:59.999Z"));
+        assertEquals("2024-03-01T12:00:00Z", hourly.label("2024-03-01T13:30:00+01:00"));
+        assertEquals("", hourly.label("not a time"));
+
+        TimeBucket sliding = TimeBucket.parse("bucket(ts, 1h, 20m)");
+        String[] out = new String[sliding.maxWindows()];
+        int n = sliding.labels("2024-03-01T13:50:00Z", out);
+        assertEquals(3, n);
+        assertArrayEquals(new String[] {"2024-03-01T13:40:00Z", "2024-03-01T13:20:00Z", "2024-03-01T13:00:00Z"}, out);
+    }
+
+    @Test
+    void subSecondBucketsLabelMilliseconds() {
+        TimeBucket halfSecond = TimeBucket.parse("bucket(ts, 500ms)");
+        assertEquals("2024-01-01T10:00:00.000Z", halfSecond.label("2024-01-01T10:00:00.100Z"));
+        assertEquals("2024-01-01T10:00:00.500Z", halfSecond.label("2024-01-01T10:00:00.700Z"));
+
+        TimeBucket sliding = TimeBucket.parse("bucket(ts, 2s, 1500ms)");
+        String[] out = new String[sliding.maxWindows()];
+        assertEquals(2, sliding.labels("1970-01-01T00:00:03.200Z", out));
+        assertArrayEquals(new String[] {"1970-01-01T00:00:03.000Z", "1970-01-01T00:00:01.500Z"}, out);
+
+        assertEquals("2024-01-01T10:00:00Z", TimeBucket.parse("bucket(ts, 1000ms)").label("2024-01-01T10:00:00.700Z"));
+    }
+
+    @Test
+    void aggregatesPerBucketAndRegion() {
+        AggregationSpec spec = new AggregationSpec(List.of("bucket(ts, 1d)", "region"), List.of(
+                new AggregationSpec.AggregationOpWithColumn(AggregationSpec.AggregationOp.SUM, "amount")));
+        StreamAggregator agg = new StreamAggregator(spec);
+        agg.consume(Stream.of(
+                Map.of("ts", "2024-03-01T01:00:00Z", "region", "EU", "amount", "1"),
+                Map.of("ts", "2024-03-01T23:00:00Z", "region", "EU", "amount", "2"),
+                Map.of("ts", "2024-03-02T00:00:00Z", "region", "EU", "amount", "4"),
+                Map.of("ts", "2024-03-01T12:00:00Z", "region", "US", "amount", "8")));
+        Map<GroupKey, AggregationState> state = agg.getStateByGroup();
+        assertEquals(List.of(new GroupKey(List.of("2024-03-01T00:00:00Z", "EU")), new GroupKey(List.of("2024-03-01T00:00:00Z", "US")),
+                new GroupKey(List.of("2024-03-02T00:00:00Z", "EU"))), List.copyOf(state.keySet()));
+        assertEquals(3.0, state.get(new GroupKey(List.of("2024-03-01T00:00:00Z", "EU"))).getSum("amount"));
+    }
+
+    @Test
+    void slidingWindowsCountRowsInEveryWindow() {
+        AggregationSpec spec = new AggregationSpec(List.of("bucket(ts, 2h, 1h)"), List.of(
+                new AggregationSpec.AggregationOpWithColumn(AggregationSpec.AggregationOp.COUNT, null)));
+        StreamAggregator agg = new StreamAggregator(spec);
+        agg.consume(Stream.of(Map.of("ts", "2024-03-01T10:30:00Z"), Map.of("ts", "2024-03-01T11:30:00Z")));
+        Map<GroupKey, AggregationState> state = agg.getStateByGroup();
+        assertEquals(1, state.get(new GroupKey(List.of("2024-03-01T09:00:00Z"))).getCount());
+        assertEquals(2, state.get(new GroupKey(List.of("2024-03-01T10:00:00Z"))).getCount());
+        assertEquals(1, state.get(new GroupKey(List.of("2024-03-01T11:00:00Z"))).getCount());
+        assertThrows(IllegalArgumentException.class,
+                () -> new SortedGroupAggregator(spec, "count", 10, (key, s) -> { }));
+    }
+}
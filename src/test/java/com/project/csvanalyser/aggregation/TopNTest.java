@@ -67,4 +67,26 @@ class TopNTest {
         assertEquals(100.0, top.get(1).getMetricValue());
         assertTrue(top.get(0).getGroupKey().compareTo(top.get(1).getGroupKey()) < 0);
     }
+
+    @Test
+    void boundedMatchesCompute() {
+        Map<GroupKey, AggregationState> state = new java.util.TreeMap<>();
+        TopN.Bounded bounded = new TopN.Bounded("count", 3);
+        for (int g = 0; g < 20; g++) {
+            AggregationState s = new AggregationState();
+            for (int r = 0; r < (g * 7) % 5; r++) {
+                s.addCount();
+            }
+            GroupKey key = new GroupKey(List.of("G" + g));
+            state.put(key, s);
+            bounded.offer(key, s);
+        }
+        List<TopN.TopNEntry> expected = TopN.compute(state, "count", 3);
+        List<TopN.TopNEntry> actual = bounded.result();
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getGroupKey(), actual.get(i).getGroupKey());
+            assertEquals(expected.get(i).getMetricValue(), actual.get(i).getMetricValue());
+        }
+    }
 }
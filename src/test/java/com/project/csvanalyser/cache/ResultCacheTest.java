@@ -0,0 +1,137 @@
+package com.project.csvanalyser.cache;
+
+import com.project.csvanalyser.cli.AnalyticsResult;
+import com.project.csvanalyser.cli.CacheSettings;
+import com.project.csvanalyser.cli.CliConfig;
+import com.project.csvanalyser.cli.CsvAnalyticsRunner;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResultCacheTest {
+
+    private static CliConfig query(Path csv, String filter, String... aggs) {
+        return CliConfig.builder()
+                .inputPath(csv)
+                .filterExpression(filter)
+                .groupByColumns(List.of("product"))
+                .aggregationSpecs(List.of(aggs))
+                .build();
+    }
+
+    private static Path writeCsv(Path dir) throws Exception {
+        Path csv = dir.resolve("sales.csv");
+        Files.writeString(csv, "product,region,amount\nA,APAC,100\nA,EMEA,200\nB,APAC,50\n");
+        return csv;
+    }
+
+    @Test
+    void equivalentQueriesHitSameEntry(@TempDir Path dir) throws Exception {
+        Path csv = writeCsv(dir);
+        ResultCache cache = new ResultCache(new CacheSettings(1 << 20, 0, null, false));
+        AtomicInteger runs = new AtomicInteger();
+        ResultCache.Loader loader = c -> {
+            runs.incrementAndGet();
+            return CsvAnalyticsRunner.analyse(c);
+        };
+
+        AnalyticsResult first = cache.getOrRun(query(csv, "amount>1 && region==\"APAC\"", "count", "sum(amount)"), loader);
+        AnalyticsResult second = cache.getOrRun(query(csv, "region==\"APAC\"&&amount>1.0", "sum(amount)"), loader);
+
+        assertEquals(1, runs.get());
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        assertEquals(first.getStateByGroup().size(), second.getStateByGroup().size());
+    }
+
+    @Test
+    void approximateTopNIsCachedSeparately(@TempDir Path dir) throws Exception {
+        Path csv = writeCsv(dir);
+        ResultCache cache = new ResultCache(new CacheSettings(1 << 20, 0, null, false));
+        CliConfig exact = query(csv, null, "sum(amount)");
+        AnalyticsResult first = cache.getOrRun(exact, CsvAnalyticsRunner::analyse);
+        AnalyticsResult approx = cache.getOrRun(exact.toBuilder().topNApproxCapacity(8).build(), CsvAnalyticsRunner::analyse);
+
+        assertEquals(2, cache.getMisses());
+        assertFalse(first.getTopN().get(0).isApproximate());
+        assertTrue(approx.getTopN().get(0).isApproximate());
+        assertEquals(first.getTopN().get(0).getMetricValue(), approx.getTopN().get(0).getMetricValue());
+    }
+
+    @Test
+    void schemaFileAndSampleSizeArePartOfTheKey(@TempDir Path dir) throws Exception {
+        Path csv = writeCsv(dir);
+        Path schema = dir.resolve("schema.json");
+        ResultCache cache = new ResultCache(new CacheSettings(1 << 20, 0, null, false));
+        CliConfig inferred = query(csv, null, "sum(amount)").toBuilder().schemaSampleRows(1000).build();
+        cache.getOrRun(inferred, CsvAnalyticsRunner::analyse);
+        cache.getOrRun(inferred.toBuilder().schemaSampleRows(0).build(), CsvAnalyticsRunner::analyse);
+        assertEquals(2, cache.getMisses());
+
+        Files.writeString(schema, "{\"amount\": \"string\"}");
+        CliConfig declared = inferred.toBuilder().schemaPath(schema).build();
+        cache.getOrRun(declared, CsvAnalyticsRunner::analyse);
+        cache.getOrRun(declared, CsvAnalyticsRunner::analyse);
+        assertEquals(3, cache.getMisses());
+        assertEquals(1, cache.getHits());
+
+        Files.writeString(schema, "{\"amount\": \"long\"}");
+        Files.setLastModifiedTime(schema, FileTime.fromMillis(System.currentTimeMillis() + 5_000));
+        cache.getOrRun(declared, CsvAnalyticsRunner::analyse);
+        assertEquals(4, cache.getMisses(), "an edited schema file misses");
+    }
+
+    @Test
+    void changedFileMisses(@TempDir Path dir) throws Exception {
+        Path csv = writeCsv(dir);
+        ResultCache cache = new ResultCache(new CacheSettings(1 << 20, 0, null, false));
+        cache.getOrRun(query(csv, null, "count"), CsvAnalyticsRunner::analyse);
+
+        Files.writeString(csv, "product,region,amount\nC,APAC,1\n");
+        Files.setLastModifiedTime(csv, FileTime.fromMillis(System.currentTimeMillis() + 5_000));
+        AnalyticsResult result = cache.getOrRun(query(csv, null, "count"), CsvAnalyticsRunner::analyse);
+
+        assertEquals(2, cache.getMisses());
+        assertEquals(1, result.getTotalRows());
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedBeyondMemoryBound(@TempDir Path dir) throws Exception {
+        Path csv = writeCsv(dir);
+        AnalyticsResult sample = CsvAnalyticsRunner.analyse(query(csv, null, "count"));
+        long oneEntry = ResultCache.estimateBytes(sample);
+        ResultCache cache = new ResultCache(new CacheSettings(oneEntry * 2 + oneEntry / 2, 0, null, false));
+
+        cache.getOrRun(query(csv, "amount>1", "count"), CsvAnalyticsRunner::analyse);
+        cache.getOrRun(query(csv, "amount>2", "count"), CsvAnalyticsRunner::analyse);
+        cache.getOrRun(query(csv, "amount>1", "count"), CsvAnalyticsRunner::analyse);
+        cache.getOrRun(query(csv, "amount>3", "count"), CsvAnalyticsRunner::analyse);
+
+        assertEquals(2, cache.getEntryCount());
+        assertEquals(1, cache.getEvictions());
+        cache.getOrRun(query(csv, "amount>1", "count"), CsvAnalyticsRunner::analyse);
+        assertEquals(2, cache.getHits());
+    }
+
+    @Test
+    void persistsAcrossInstances(@TempDir Path dir) throws Exception {
+        Path csv = writeCsv(dir);
+        CacheSettings settings = new CacheSettings(1 << 20, 0, dir.resolve("cache"), true);
+        ResultCache cache = ResultCache.open(settings);
+        cache.getOrRun(query(csv, null, "sum(amount)"), CsvAnalyticsRunner::analyse);
+        cache.save();
+
+        ResultCache reopened = ResultCache.open(settings);
+        AnalyticsResult result = reopened.getOrRun(query(csv, null, "sum(amount)"), c -> fail("should be served from disk"));
+
+        assertEquals(1, reopened.getHits());
+        assertEquals(300.0, result.getStateByGroup().values().iterator().next().getSum("amount"));
+    }
+}
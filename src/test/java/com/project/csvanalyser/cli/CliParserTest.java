@@ -6,6 +6,7 @@ import java.io.ByteArrayOutputStream;
 import java.util.List;
 import java.io.PrintStream;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -43,6 +44,92 @@ class CliParserTest {
         assertEquals(',', config.getDelimiter());
         assertTrue(config.isHasHeader());
         assertEquals(10, config.getTopN());
+        assertFalse(config.isProgress());
+    }
+
+    @Test
+    void parseProgressFlag() {
+        CliConfig config = CliParser.parse(new String[] {"--input", "data.csv", "--progress", "--output", "out.json"});
+        assertNotNull(config);
+        assertTrue(config.isProgress());
+        assertEquals("out.json", config.getOutputPath().toString());
+    }
+
+    @Test
+    void parseGroupByKeepsBucketExpressionsWhole() {
+        CliConfig config = CliParser.parse(new String[] {"--input", "x.csv", "--group-by", "region, bucket(ts, 1h, 15m)"});
+        assertEquals(List.of("region", "bucket(ts, 1h, 15m)"), config.getGroupByColumns());
+    }
+
+    @Test
+    void parseRankSpecs() {
+        CliConfig config = CliParser.parse(new String[] {"--input", "x.csv", "--rank", "sum_amount:5 per region; count:10"});
+        assertEquals(List.of("sum_amount:5 per region", "count:10"), config.getRankSpecs());
+    }
+
+    @Test
+    void parseJoinSpecs() {
+        CliConfig config = CliParser.parse(new String[] {"--input", "x.csv", "--join", "products.csv:product=sku; regions.csv:region"});
+        assertEquals(List.of("products.csv:product=sku", "regions.csv:region"), config.getJoinSpecs());
+        assertEquals(List.of(), CliParser.parse(new String[] {"--input", "x.csv"}).getJoinSpecs());
+    }
+
+    @Test
+    void parseGroupingSetsAndRollup() {
+        CliConfig config = CliParser.parse(new String[] {"--input", "x.csv", "--grouping-sets", "(product,region);(region);()"});
+        assertEquals(List.of("(product,region)", "(region)", "()"), config.getGroupingSets());
+        assertEquals(List.of("product", "region"), config.getGroupByColumns(), "group-by defaults to the sets' columns");
+        assertFalse(config.isRollup());
+        CliConfig rollup = CliParser.parse(new String[] {"--input", "x.csv", "--group-by", "a,b", "--rollup"});
+        assertTrue(rollup.isRollup());
+        assertEquals(List.of("a", "b"), rollup.getGroupByColumns());
+    }
+
+    @Test
+    void parseExportPath() {
+        CliConfig config = CliParser.parse(new String[] {"--input", "x.csv", "--filter", "amount > 1", "--export", "out/apac.csv"});
+        assertEquals(Path.of("out/apac.csv"), config.getExportPath());
+        assertNull(CliParser.parse(new String[] {"--input", "x.csv"}).getExportPath());
+    }
+
+    @Test
+    void parseOrderBySortMemoryAndFanIn() {
+        CliConfig config = CliParser.parse(new String[] {"--input", "x.csv", "--export", "out.csv",
+                "--order-by", "amount desc, product", "--sort-memory-mb", "64", "--merge-fan-in", "16"});
+        assertEquals(List.of("amount desc", "product"), config.getOrderBy());
+        assertEquals(64L << 20, config.getSortMemoryBytes());
+        assertEquals(16, config.getMergeFanIn());
+        CliConfig defaults = CliParser.parse(new String[] {"--input", "x.csv"});
+        assertEquals(List.of(), defaults.getOrderBy());
+        assertEquals(CliConfig.DEFAULT_SORT_MEMORY_BYTES, defaults.getSortMemoryBytes());
+        assertEquals(64, defaults.getMergeFanIn());
+    }
+
+    @Test
+    void parseSampleAndSeed() {
+        CliConfig config = CliParser.parse(new String[] {"--input", "x.csv", "--sample", "0.01", "--seed", "42"});
+        assertEquals(0.01, config.getSampleFraction());
+        assertEquals(42L, config.getSampleSeed());
+        assertEquals(0.0, CliParser.parse(new String[] {"--input", "x.csv"}).getSampleFraction());
+        assertEquals(1.0, CliParser.parse(new String[] {"--input", "x.csv", "--sample", "1"}).getSampleFraction());
+        for (String bad : new String[] {"0", "-0.5", "1.5", "NaN", "half"}) {
+            assertThrows(IllegalArgumentException.class,
+                    () -> CliParser.parse(new String[] {"--input", "x.csv", "--sample", bad}), bad);
+        }
+    }
+
+    @Test
+    void parseTimeBudgetAndExtrapolate() {
+        CliConfig config = CliParser.parse(new String[] {"--input", "x.csv", "--time-budget", "1500", "--extrapolate"});
+        assertEquals(1500L, config.getTimeBudgetMillis());
+        assertTrue(config.isExtrapolate());
+        assertEquals(0L, CliParser.parse(new String[] {"--input", "x.csv"}).getTimeBudgetMillis());
+    }
+
+    @Test
+    void parseInputSortedFlag() {
+        assertTrue(CliParser.parse(new String[] {"--input", "data.csv", "--input-sorted", "--output", "out.json"}).isInputSorted());
+        assertFalse(CliParser.parse(new String[] {"--input", "data.csv", "--output", "out.json"}).isInputSorted());
     }
 
     @Test
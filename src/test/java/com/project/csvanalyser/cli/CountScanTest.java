@@ -0,0 +1,70 @@
+package com.project.csvanalyser.cli;
+
+import com.project.csvanalyser.aggregation.AggregationState;
+import com.project.csvanalyser.csv.CsvBlockReader;
+import com.project.csvanalyser.stats.RunStats;
+import com.project.csvanalyser.stats.ScanProgress;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CountScanTest {
+
+    @Test
+    void matchesFullScanWhateverTheChunking(@TempDir Path dir) throws Exception {
+        StringBuilder csv = new StringBuilder("product,region,amount\r\n");
+        for (int i = 0; i < 3_000; i++) {
+            String product = i % 7 == 0 ? "\"P, " + (i % 13) + "\"" : "P" + (i % 13);
+            String region = i % 2 == 0 ? "APAC" : "\"EM\n\"\"E\"\"\nA\"";
+            csv.append(product).append(',').append(region).append(',').append(i % 500).append("\r\n");
+            if (i % 500 == 0) csv.append("\"bro\"ken,1,2\n\r\n");
+            if (i % 300 == 0) csv.append("short,1\n");
+        }
+        csv.append("last,APAC,1");
+        Path input = dir.resolve("data.csv");
+        Files.writeString(input, csv);
+
+        CliConfig grouped = CliConfig.builder().inputPath(input).groupByColumns(List.of("region"))
+                .aggregationSpecs(List.of("count")).build();
+        AnalyticsResult expected = CsvAnalyticsRunner.analyse(grouped.toBuilder().threads(2).build());
+        long expectedRecords = 0;
+        for (AggregationState state : expected.getStateByGroup().values()) {
+            expectedRecords += state.getCount();
+        }
+
+        long dataStart;
+        try (CsvBlockReader reader = new CsvBlockReader(Files.newInputStream(input), ',')) {
+            reader.readHeader();
+            dataStart = reader.getDataStart();
+        }
+        for (int chunkSize : new int[]{7, 64, 1000, 1 << 20}) {
+            for (int threads : new int[]{1, 3}) {
+                CountScan scan = new CountScan(input, dataStart, ',', threads, chunkSize, "data.csv",
+                        QueryControl.start(0));
+                try (ScanProgress progress = ScanProgress.start("data.csv", Files.size(input), scan::getBytesRead, null)) {
+                    scan.run(3, RunStats.start(), progress);
+                }
+                String at = "chunk=" + chunkSize + " threads=" + threads;
+                assertEquals(expectedRecords, scan.getRecords(), at);
+                assertEquals(expected.getMalformedRows(), scan.getMalformedRows(), at);
+                assertEquals(10, scan.getRaggedRows(), at);
+                assertFalse(scan.isStopped());
+                assertEquals(Files.size(input) - dataStart, scan.getProcessedBytes());
+                if (chunkSize == 7) {
+                    assertTrue(scan.getRecountedChunks() > 0, "some chunks start inside quotes");
+                }
+            }
+        }
+
+        AnalyticsResult counted = CsvAnalyticsRunner.analyse(CliConfig.builder().inputPath(input)
+                .aggregationSpecs(List.of("count")).threads(2).build());
+        assertEquals(expected.getTotalRows(), counted.getTotalRows());
+        assertEquals(expectedRecords, counted.getStateByGroup().values().iterator().next().getCount());
+        assertTrue(counted.getStats().getStages().containsKey("count"));
+    }
+}
@@ -0,0 +1,131 @@
+package com.project.csvanalyser.cli;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ExportScanTest {
+
+    @Test
+    void copiesMatchingRowsByteForByte(@TempDir Path dir) throws Exception {
+        StringBuilder csv = new StringBuilder("product,region,amount\r\n");
+        StringBuilder expected = new StringBuilder("product,region,amount\r\n");
+        for (int i = 0; i < 20_000; i++) {
+            String product = i % 7 == 0 ? "\"P, " + (i % 13) + "\"" : "P" + (i % 13);
+            String region = i % 5 == 0 ? "\"AP\nAC\"" : i < 10_000 && i % 3 == 0 ? "EMEA" : "APAC";
+            String row = product + "," + region + "," + (i % 500) + (i % 2 == 0 ? "\r\n" : "\n");
+            csv.append(row);
+            if (!region.equals("EMEA")) expected.append(row);
+            if (i % 1000 == 0 && i < 10_000) csv.append("\"bro\"ken,APAC,2\n");
+        }
+        csv.append("last,APAC,1");
+        expected.append("last,APAC,1\n");
+        Path input = dir.resolve("data.csv");
+        Files.writeString(input, csv);
+
+        Path export = dir.resolve("apac.csv");
+        ExportResult result = CsvAnalyticsRunner.export(CliConfig.builder().inputPath(input)
+                .filterExpression("region != \"EMEA\"").exportPath(export).build());
+        assertEquals(expected.toString(), Files.readString(export));
+        assertEquals(List.of(export), result.getFiles());
+        assertEquals(20_011, result.getTotalRows());
+        assertEquals(10, result.getMalformedRows());
+        assertEquals(expected.length() - "product,region,amount\r\n".length(), result.getExportedBytes());
+        assertTrue(result.getTransfers() > 0, "the rows after 10000 form runs long enough to transfer");
+        assertEquals(result.getExportedRows(), result.getStats().getRowsMatched());
+        assertNull(result.getPartial());
+    }
+
+    @Test
+    void shardsPerThreadHoldEveryMatchOnce(@TempDir Path dir) throws Exception {
+        StringBuilder csv = new StringBuilder("id,amount\n");
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 300_000; i++) {
+            String row = i + "," + (i % 100);
+            csv.append(row).append('\n');
+            if (i % 100 > 80) expected.add(row);
+        }
+        Path input = dir.resolve("data.csv");
+        Files.writeString(input, csv);
+
+        ExportResult result = CsvAnalyticsRunner.export(CliConfig.builder().inputPath(input).filterExpression("amount > 80")
+                .exportPath(dir.resolve("out.csv")).threads(3).build());
+        assertEquals(List.of(dir.resolve("out-0.csv"), dir.resolve("out-1.csv"), dir.resolve("out-2.csv")),
+                result.getFiles());
+        assertFalse(Files.exists(dir.resolve("out.csv")));
+        List<String> exported = new ArrayList<>();
+        for (Path shard : result.getFiles()) {
+            List<String> lines = Files.readAllLines(shard);
+            assertEquals("id,amount", lines.get(0), "every shard starts with the header");
+            exported.addAll(lines.subList(1, lines.size()));
+        }
+        exported.sort(null);
+        expected.sort(null);
+        assertEquals(expected, exported);
+        assertEquals(expected.size(), result.getExportedRows());
+    }
+
+    @Test
+    void ordersRowsIntoOneFileBeyondTheSortMemory(@TempDir Path dir) throws Exception {
+        StringBuilder csv = new StringBuilder("id,region,amount\r\n");
+        List<String[]> rows = new ArrayList<>();
+        for (int i = 0; i < 100_000; i++) {
+            String amount = i % 997 == 0 ? "" : i % 1500 == 0 ? (i % 700) + ".5" : String.valueOf((i * 7919) % 2000 - 1000);
+            String region = i % 3 == 0 ? "\"EU\nW\"" : "APAC";
+            String[] row = {String.valueOf(i), region, amount};
+            csv.append(String.join(",", row)).append(i % 2 == 0 ? "\r\n" : "\n");
+            if (i > 100) rows.add(row);
+        }
+        Path input = dir.resolve("data.csv");
+        Files.writeString(input, csv);
+
+        Path export = dir.resolve("sorted.csv");
+        ExportResult result = CsvAnalyticsRunner.export(CliConfig.builder().inputPath(input)
+                .filterExpression("id > 100").exportPath(export).orderBy(List.of("amount desc", "region"))
+                .threads(3).sortMemoryBytes(256 << 10).mergeFanIn(4).build());
+
+        // blanks last when descending; equal keys keep input order
+        rows.sort(Comparator.<String[], Double>comparing(r -> r[2].isEmpty() ? Double.POSITIVE_INFINITY
+                : -Double.parseDouble(r[2])).thenComparing(r -> r[1].replace("\"", "")).thenComparingInt(r -> Integer.parseInt(r[0])));
+        StringBuilder expected = new StringBuilder("id,region,amount\r\n");
+        for (String[] row : rows) {
+            expected.append(String.join(",", row)).append(Integer.parseInt(row[0]) % 2 == 0 ? "\r\n" : "\n");
+        }
+        assertEquals(expected.toString(), Files.readString(export));
+        assertEquals(List.of(export), result.getFiles(), "a sorted export is never sharded");
+        assertEquals(rows.size(), result.getExportedRows());
+        assertEquals(expected.length() - "id,region,amount\r\n".length(), result.getExportedBytes());
+        assertTrue(result.isSorted());
+        assertTrue(result.getSortRuns() > 4 && result.getMergePasses() > 0, "spills more runs than the fan-in");
+        assertTrue(result.getStats().getStages().containsKey("merge"));
+        try (Stream<Path> files = Files.list(dir)) {
+            assertEquals(2, files.count(), "the temp runs are gone");
+        }
+    }
+
+    @Test
+    void rejectsExportOverTheInput(@TempDir Path dir) throws Exception {
+        Path input = dir.resolve("data.csv");
+        Files.writeString(input, "id\n1\n");
+        assertThrows(IllegalArgumentException.class, () -> CsvAnalyticsRunner.export(CliConfig.builder()
+                .inputPath(input).exportPath(dir.resolve(".").resolve("data.csv")).build()));
+        assertEquals("id\n1\n", Files.readString(input));
+
+        Path shardInput = dir.resolve("x-0.csv");
+        Files.writeString(shardInput, "id\n1\n");
+        assertThrows(IllegalArgumentException.class, () -> CsvAnalyticsRunner.export(CliConfig.builder()
+                .inputPath(shardInput).exportPath(dir.resolve("x.csv")).threads(2).build()));
+        assertEquals("id\n1\n", Files.readString(shardInput), "a shard over the input is refused before opening it");
+        assertFalse(Files.exists(dir.resolve("x-1.csv")));
+        assertEquals(List.of(Path.of("x.csv")), CsvAnalyticsRunner.exportShards(Path.of("x.csv"), 1));
+        assertEquals(List.of(Path.of("out/x-0"), Path.of("out/x-1")), CsvAnalyticsRunner.exportShards(Path.of("out/x"), 2));
+    }
+}
@@ -0,0 +1,49 @@
+package com.project.csvanalyser.cli;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.project.csvanalyser.aggregation.AggregationSpec;
+import com.project.csvanalyser.aggregation.AggregationState;
+import com.project.csvanalyser.aggregation.GroupKey;
+import com.project.csvanalyser.aggregation.TopN;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JsonSummaryWriterTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @Test
+    void writesGroupsIncrementallyWithResolvedLabels() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        JsonSummaryWriter writer = new JsonSummaryWriter(out, List.of("product"),
+                List.of("count", "sum(amount)", "SUM( amount )", "min(amount)"), "sum_amount");
+        writer.writeHeader("in.csv", 3, 1);
+
+        AggregationState a = new AggregationState();
+        a.addCount();
+        a.addValue(AggregationSpec.AggregationOp.SUM, "amount", 10);
+        a.addValue(AggregationSpec.AggregationOp.MIN, "amount", 10);
+        writer.writeGroup(new GroupKey(List.of("A")), a);
+        AggregationState b = new AggregationState();
+        b.addCount();
+        writer.writeGroup(new GroupKey(List.of("B")), b);
+        writer.finish(List.of(new TopN.TopNEntry(new GroupKey(List.of("A")), 10.0)), List.of(), null);
+
+        @SuppressWarnings("unchecked")
+        Map<String, Object> json = MAPPER.readValue(out.toByteArray(), Map.class);
+        assertEquals(List.of("inputFile", "totalRows", "malformedRows", "groups", "topN"), List.copyOf(json.keySet()));
+        @SuppressWarnings("unchecked")
+        List<Map<String, Object>> groups = (List<Map<String, Object>>) json.get("groups");
+        assertEquals(Map.of("product", "A"), groups.get(0).get("groupKey"));
+        assertEquals(List.of("groupKey", "count", "sum_amount", "min_amount"), List.copyOf(groups.get(0).keySet()));
+        assertEquals(10.0, groups.get(0).get("min_amount"));
+        assertTrue(groups.get(1).containsKey("min_amount"));
+        assertNull(groups.get(1).get("min_amount"));
+        assertEquals(List.of(Map.of("product", "A", "sum_amount", 10.0)), json.get("topN"));
+    }
+}
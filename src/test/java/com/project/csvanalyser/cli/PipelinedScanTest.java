@@ -0,0 +1,262 @@
+package com.project.csvanalyser.cli;
+
+import com.project.csvanalyser.aggregation.AggregationState;
+import com.project.csvanalyser.aggregation.GroupKey;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PipelinedScanTest {
+
+    @Test
+    void matchesSequentialScanAcrossBlocks(@TempDir Path dir) throws Exception {
+        StringBuilder csv = new StringBuilder("product,region,amount\r\n");
+        for (int i = 0; i < 150_000; i++) {
+            String product = i % 7 == 0 ? "\"P, " + (i % 13) + "\"" : "P" + (i % 13);
+            csv.append(product).append(',').append(i % 2 == 0 ? "APAC" : "\"EM\nEA\"").append(',').append(i % 500).append("\r\n");
+            if (i % 25_000 == 0) csv.append("\"bro\"ken,1,2\n\r\n");
+        }
+        Path input = dir.resolve("data.csv");
+        Files.writeString(input, csv);
+        CliConfig sequential = CliConfig.builder().inputPath(input).filterExpression("amount >= 100")
+                .groupByColumns(List.of("product", "region"))
+                .aggregationSpecs(List.of("count", "sum(amount)", "max(amount)")).build();
+
+        AnalyticsResult expected = CsvAnalyticsRunner.analyse(sequential);
+        AnalyticsResult actual = CsvAnalyticsRunner.analyse(sequential.toBuilder().threads(3).build());
+
+        assertTrue(Files.size(input) > 2 * 1024 * 1024, "input should span several blocks");
+        assertEquals(expected.getTotalRows(), actual.getTotalRows());
+        assertEquals(expected.getMalformedRows(), actual.getMalformedRows());
+        assertEquals(6, actual.getMalformedRows());
+        assertEquals(expected.getStateByGroup().keySet(), actual.getStateByGroup().keySet());
+        for (Map.Entry<GroupKey, AggregationState> e : expected.getStateByGroup().entrySet()) {
+            AggregationState other = actual.getStateByGroup().get(e.getKey());
+            assertEquals(e.getValue().getCount(), other.getCount());
+            assertEquals(e.getValue().getSum("amount"), other.getSum("amount"), 1e-9);
+            assertEquals(e.getValue().getMax("amount"), other.getMax("amount"));
+        }
+        assertEquals(expected.getStats().getRowsMatched(), actual.getStats().getRowsMatched());
+        assertTrue(actual.getStats().getStages().containsKey("merge"));
+        assertTrue(actual.getStats().getStages().containsKey("readAhead"));
+
+        AnalyticsResult direct = CsvAnalyticsRunner.analyse(sequential.toBuilder().readAheadBuffers(0).build());
+        assertEquals(expected.getStateByGroup().keySet(), direct.getStateByGroup().keySet());
+        assertEquals(expected.getTotalRows(), direct.getTotalRows());
+        assertFalse(direct.getStats().getStages().containsKey("readAhead"));
+    }
+
+    @Test
+    void batchModeMatchesRowByRow(@TempDir Path dir) throws Exception {
+        StringBuilder csv = new StringBuilder("ts,region,amount,qty\n");
+        for (int i = 0; i < 20_000; i++) {
+            String amount = i % 97 == 0 ? "" : i % 89 == 0 ? "n/a" : Integer.toString(i % 500);
+            csv.append(String.format("2024-01-%02dT%02d:00:00Z", 1 + i % 28, i % 24)).append(',')
+                    .append(i % 3 == 0 ? "APAC" : "EMEA").append(',').append(amount).append(',').append(i % 7)
+                    .append('\n');
+        }
+        Path input = dir.resolve("data.csv");
+        Files.writeString(input, csv);
+        CliConfig rowByRow = CliConfig.builder().inputPath(input)
+                .filterExpression("amount > 400 || amount == 0 && region == \"APAC\" || qty >= 6")
+                .groupByColumns(List.of("region", "bucket(ts, 1d)"))
+                .aggregationSpecs(List.of("count", "sum(amount)", "min(qty)", "avg(amount)")).threads(2).batchSize(0)
+                .build();
+
+        AnalyticsResult expected = CsvAnalyticsRunner.analyse(rowByRow);
+        for (int batchSize : new int[]{1, 7, 4096}) {
+            AnalyticsResult actual = CsvAnalyticsRunner.analyse(rowByRow.toBuilder().batchSize(batchSize).build());
+            assertEquals(expected.getStats().getRowsMatched(), actual.getStats().getRowsMatched());
+            assertEquals(expected.getStateByGroup().keySet(), actual.getStateByGroup().keySet());
+            for (Map.Entry<GroupKey, AggregationState> e : expected.getStateByGroup().entrySet()) {
+                AggregationState other = actual.getStateByGroup().get(e.getKey());
+                assertEquals(e.getValue().getCount(), other.getCount());
+                assertEquals(e.getValue().getSum("amount"), other.getSum("amount"), 1e-9);
+                assertEquals(e.getValue().getMin("qty"), other.getMin("qty"));
+            }
+            assertTrue(actual.getStats().getStages().containsKey("filter"));
+        }
+    }
+
+    @Test
+    void typesColumnsAndCountsViolationsInEitherScan(@TempDir Path dir) throws Exception {
+        StringBuilder csv = new StringBuilder("ts,region,amount,price\n");
+        int amountViolations = 0;
+        int invalidAmounts = 0;
+        int priceViolations = 0;
+        for (int i = 0; i < 50_000; i++) {
+            String amount = Integer.toString(1 + i % 500);
+            if (i > 2_000 && i % 1_000 == 0) {
+                amount = i % 2_000 == 0 ? "1e3" : "n/a";
+                amountViolations++;
+                if (i % 2_000 != 0) invalidAmounts++;
+            }
+            String price = (i % 100) + "." + (i % 10);
+            if (i > 2_000 && i % 777 == 0) {
+                price = "free";
+                priceViolations++;
+            }
+            csv.append(String.format("2024-01-%02dT10:00:00Z", 1 + i % 28)).append(',').append(i % 3 == 0 ? "APAC" : "EMEA")
+                    .append(',').append(amount).append(',').append(price).append('\n');
+        }
+        Path input = dir.resolve("data.csv");
+        Files.writeString(input, csv);
+        CliConfig config = CliConfig.builder().inputPath(input).filterExpression("amount > 0 || amount < 0")
+                .groupByColumns(List.of("region")).aggregationSpecs(List.of("count", "sum(amount)", "sum(price)")).build();
+
+        for (CliConfig run : List.of(config, config.toBuilder().threads(2).build())) {
+            AnalyticsResult result = CsvAnalyticsRunner.analyse(run);
+            SchemaReport schema = result.getSchema();
+            assertEquals(Map.of("ts", "timestamp", "region", "string", "amount", "long", "price", "decimal"),
+                    schema.getTypes(), "threads=" + run.getThreads());
+            // amount is read by both filter terms and the aggregation but parsed, and counted, once per cell;
+            // price is parsed only for matching rows, which drops the rows where amount is n/a
+            long droppedPrices = 0;
+            for (int i = 2_001; i < 50_000; i++) {
+                if (i % 777 == 0 && i % 1_000 == 0 && i % 2_000 != 0) droppedPrices++;
+            }
+            assertEquals(Map.of("amount", (long) amountViolations, "price", priceViolations - droppedPrices),
+                    schema.getViolations(), "threads=" + run.getThreads());
+
+            ByteArrayOutputStream json = new ByteArrayOutputStream();
+            ReportWriter.writeJsonSummary(result, run, json);
+            String text = json.toString(StandardCharsets.UTF_8);
+            assertTrue(text.contains("\"schema\"") && text.contains("\"typeViolations\""), text);
+        }
+
+        Path schemaFile = dir.resolve("schema.json");
+        Files.writeString(schemaFile, "{\"amount\": \"double\"}");
+        SchemaReport declared = CsvAnalyticsRunner.analyse(config.toBuilder().schemaPath(schemaFile).schemaSampleRows(0)
+                .build()).getSchema();
+        assertEquals(Map.of("amount", "double"), declared.getTypes());
+        assertEquals((long) invalidAmounts, declared.getViolations().get("amount"), "1e3 is a double");
+
+        assertNull(CsvAnalyticsRunner.analyse(config.toBuilder().batchSize(0).build()).getSchema());
+        Files.writeString(schemaFile, "{\"quantity\": \"long\"}");
+        assertThrows(IllegalArgumentException.class,
+                () -> CsvAnalyticsRunner.analyse(config.toBuilder().schemaPath(schemaFile).build()));
+    }
+
+    @Test
+    void countsTypeViolationsAgainstEachColumnsOwnType(@TempDir Path dir) throws Exception {
+        StringBuilder csv = new StringBuilder("ts,amount\n");
+        long badTimestamps = 0;
+        for (int i = 0; i < 20_000; i++) {
+            String ts = String.format("2024-01-%02dT10:00:00Z", 1 + i % 28);
+            if (i > 2_000 && i % 500 == 0) {
+                ts = "soon";
+                badTimestamps++;
+            }
+            csv.append(ts).append(',').append(i % 300 == 0 ? "n/a" : String.valueOf(i % 50)).append('\n');
+        }
+        Path input = dir.resolve("events.csv");
+        Files.writeString(input, csv);
+        Path schemaFile = dir.resolve("schema.json");
+        Files.writeString(schemaFile, "{\"amount\": \"string\"}");
+        CliConfig config = CliConfig.builder().inputPath(input).schemaPath(schemaFile)
+                .groupByColumns(List.of("bucket(ts, 1d)")).aggregationSpecs(List.of("sum(amount)")).build();
+
+        for (CliConfig run : List.of(config, config.toBuilder().threads(2).build())) {
+            SchemaReport schema = CsvAnalyticsRunner.analyse(run).getSchema();
+            assertEquals(Map.of("ts", "timestamp", "amount", "string"), schema.getTypes());
+            assertEquals(Map.of("ts", badTimestamps), schema.getViolations(),
+                    "a string column has no violations, and bucketed timestamps are checked; threads="
+                            + run.getThreads());
+        }
+    }
+
+    @Test
+    void joinsDimensionTablesInEveryScan(@TempDir Path dir) throws Exception {
+        StringBuilder csv = new StringBuilder("product,region,amount\n");
+        for (int i = 0; i < 40_000; i++) {
+            csv.append('P').append(i % 50).append(',').append("R").append(i % 4).append(',').append(i % 100);
+            csv.append(i % 5_000 == 1 ? ",extra,fields\n" : "\n");
+        }
+        Path input = dir.resolve("data.csv");
+        Files.writeString(input, csv);
+        StringBuilder products = new StringBuilder("sku,category,weight\n");
+        for (int p = 0; p < 49; p++) {
+            products.append('P').append(p).append(",\"C").append(p % 3).append("\",").append(p % 7).append('\n');
+        }
+        Files.writeString(dir.resolve("products.csv"), products);
+        Files.writeString(dir.resolve("regions.csv"), "region,country\nR0,DE\nR1,FR\nR2,JP\nR3,JP\n");
+        CliConfig config = CliConfig.builder().inputPath(input)
+                .joinSpecs(List.of(dir.resolve("products.csv") + ":product=sku", dir.resolve("regions.csv") + ":region"))
+                .filterExpression("country == \"JP\" && amount >= 10").groupByColumns(List.of("category"))
+                .aggregationSpecs(List.of("count", "sum(weight)")).build();
+
+        // Expected from the generated data: P49 has no product row and joins a blank category
+        Map<String, long[]> expected = new TreeMap<>();
+        for (int i = 0; i < 40_000; i++) {
+            if (i % 4 < 2 || i % 100 < 10) continue;
+            int p = i % 50;
+            long[] acc = expected.computeIfAbsent(p == 49 ? "" : "C" + p % 3, k -> new long[2]);
+            acc[0]++;
+            acc[1] += p == 49 ? 0 : p % 7;
+        }
+        List<CliConfig> runs = List.of(config, config.toBuilder().batchSize(0).build(),
+                config.toBuilder().threads(3).build(), config.toBuilder().threads(3).batchSize(0).build(),
+                config.toBuilder().sampleFraction(1).build());
+        for (CliConfig run : runs) {
+            String label = "threads=" + run.getThreads() + " batch=" + run.getBatchSize() + " sample=" + run.getSampleFraction();
+            AnalyticsResult result = CsvAnalyticsRunner.analyse(run);
+            Map<String, long[]> actual = new TreeMap<>();
+            result.getStateByGroup().forEach((key, state) -> actual.put(key.getValues().get(0),
+                    new long[]{state.getCount(), Math.round(state.getSum("weight"))}));
+            assertEquals(expected.keySet(), actual.keySet(), label);
+            expected.forEach((k, v) -> assertArrayEquals(v, actual.get(k), label + " " + k));
+            assertTrue(result.getStats().getStages().containsKey("joinLoad"), label);
+        }
+        SchemaReport schema = CsvAnalyticsRunner.analyse(runs.get(2)).getSchema();
+        assertEquals("long", schema.getTypes().get("weight"), "joined columns are typed like the file's");
+
+        assertThrows(IllegalArgumentException.class, () -> CsvAnalyticsRunner.analyse(config.toBuilder()
+                .joinSpecs(List.of(dir.resolve("regions.csv") + ":country")).build()), "no country column to join on");
+        assertThrows(IllegalArgumentException.class, () -> CsvAnalyticsRunner.analyse(config.toBuilder()
+                .joinSpecs(List.of(dir.resolve("products.csv") + ":product=sku")).build()), "filter reads country");
+        IllegalArgumentException approx = assertThrows(IllegalArgumentException.class, () -> CsvAnalyticsRunner.analyse(
+                config.toBuilder().topNApproxCapacity(10).rankSpecs(List.of("count"))
+                        .joinSpecs(List.of(dir.resolve("missing.csv") + ":product")).build()));
+        assertTrue(approx.getMessage().startsWith("--rank"), "options are checked before join tables load");
+    }
+
+    @Test
+    void rejectedQueriesCloseTheReadAheadInput(@TempDir Path dir) throws Exception {
+        StringBuilder csv = new StringBuilder("product,amount\n");
+        for (int i = 0; i < 20_000; i++) {
+            csv.append('P').append(i % 9).append(',').append(i).append('\n');
+        }
+        Path input = dir.resolve("data.csv");
+        Files.writeString(input, csv);
+        CliConfig config = CliConfig.builder().inputPath(input).groupByColumns(List.of("product"))
+                .aggregationSpecs(List.of("count")).readBufferBytes(4096).build();
+        List<CliConfig> rejected = List.of(config.toBuilder().groupByColumns(List.of("missing")).build(),
+                config.toBuilder().filterExpression("missing > 1").build(),
+                config.toBuilder().inputSorted(true).filterExpression("missing > 1").build(),
+                config.toBuilder().topNApproxCapacity(10).topNMetric("sum_missing").build());
+        for (CliConfig run : rejected) {
+            assertThrows(IllegalArgumentException.class, () -> {
+                if (run.isInputSorted()) {
+                    CsvAnalyticsRunner.runSorted(run, (key, state) -> { });
+                } else {
+                    CsvAnalyticsRunner.analyse(run);
+                }
+            });
+        }
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().startsWith("read-ahead-")) {
+                thread.join(5_000);
+                assertFalse(thread.isAlive(), thread.getName() + " still running");
+            }
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.project.csvanalyser.cli;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class QueryControlTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @Test
+    void expiredBudgetReturnsPartialResult(@TempDir Path dir) throws Exception {
+        CliConfig config = config(sales(dir, 5_000));
+        for (int threads : new int[]{1, 2}) {
+            AnalyticsResult result = CsvAnalyticsRunner.analyse(config.toBuilder().threads(threads).build(), null,
+                    expired());
+            PartialScan partial = result.getPartial();
+            assertNotNull(partial, "threads=" + threads);
+            assertTrue(partial.getByteFraction() < 1);
+            assertEquals(partial.getRowsProcessed(), result.getTotalRows());
+            assertFalse(partial.isExtrapolated());
+        }
+
+        AnalyticsResult complete = CsvAnalyticsRunner.analyse(config);
+        assertNull(complete.getPartial());
+        assertEquals(5_000, complete.getTotalRows());
+
+        AnalyticsResult partial = CsvAnalyticsRunner.analyse(config.toBuilder().extrapolate(true).build(), null,
+                expired());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ReportWriter.writeJsonSummary(partial, config, out);
+        @SuppressWarnings("unchecked")
+        Map<String, Map<String, Object>> json = MAPPER.readValue(out.toByteArray(), Map.class);
+        assertEquals("timeBudget", json.get("partial").get("reason"));
+        assertEquals(true, json.get("partial").get("extrapolated"));
+    }
+
+    @Test
+    void extrapolationScalesByBytesRead() {
+        PartialScan partial = new PartialScan(250, 1000, 10, true);
+        assertEquals(0.25, partial.getByteFraction(), 1e-12);
+        assertEquals(4.0, partial.getScale(), 1e-12);
+        assertEquals(40, partial.getEstimatedTotalRows());
+        assertEquals(1.0, new PartialScan(0, 1000, 0, false).getScale());
+    }
+
+    @Test
+    void cancelledQueryThrows(@TempDir Path dir) throws Exception {
+        CliConfig config = config(sales(dir, 2_000));
+        for (int threads : new int[]{1, 2}) {
+            QueryControl control = QueryControl.start(0);
+            control.cancel();
+            assertThrows(CancellationException.class,
+                    () -> CsvAnalyticsRunner.analyse(config.toBuilder().threads(threads).build(), null, control));
+        }
+    }
+
+    @Test
+    void noBudgetNeverStops() {
+        QueryControl control = QueryControl.start(0);
+        assertFalse(control.shouldStop());
+        assertFalse(control.isTimedOut());
+        control.cancel();
+        assertTrue(control.shouldStop());
+        assertTrue(control.isCancelled());
+    }
+
+    private static QueryControl expired() throws InterruptedException {
+        QueryControl control = QueryControl.start(1);
+        Thread.sleep(5);
+        return control;
+    }
+
+    private static CliConfig config(Path input) {
+        return CliConfig.builder().inputPath(input).groupByColumns(List.of("product"))
+                .aggregationSpecs(List.of("count", "sum(amount)")).build();
+    }
+
+    private static Path sales(Path dir, int rows) throws Exception {
+        StringBuilder csv = new StringBuilder("product,region,amount\n");
+        for (int i = 0; i < rows; i++) {
+            csv.append('P').append(i % 5).append(',').append(i % 2 == 0 ? "APAC" : "EMEA").append(',').append(i)
+                    .append('\n');
+        }
+        Path input = dir.resolve("sales.csv");
+        Files.writeString(input, csv);
+        return input;
+    }
+}
@@ -3,6 +3,7 @@ package com.project.csvanalyser.cli;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.project.csvanalyser.aggregation.AggregationState;
 import com.project.csvanalyser.aggregation.GroupKey;
+import com.project.csvanalyser.aggregation.SampleEstimate;
 import com.project.csvanalyser.aggregation.TopN;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
@@ -61,4 +62,302 @@ class ReportWriterTest {
         assertEquals(2, ((Number) g.get("count")).intValue());
         assertEquals(300.0, ((Number) g.get("sum_amount")).doubleValue());
     }
+
+    @Test
+    void writesRunStatsFromPipeline(@TempDir Path dir) throws Exception {
+        Path input = dir.resolve("sales.csv");
+        Files.writeString(input, "product,amount\nA,10\nB,20\nA,30\nC,5\n");
+        Path out = dir.resolve("summary.json");
+        CliConfig config = new CliConfig(input, "amount > 8", List.of("product"),
+                List.of("count", "sum(amount)"), "sum_amount", 10, out, null, ',', true);
+
+        PrintStream prevOut = System.out;
+        try {
+            System.setOut(new PrintStream(new ByteArrayOutputStream(), false, StandardCharsets.UTF_8));
+            ReportWriter.write(CsvAnalyticsRunner.run(config), config);
+        } finally {
+            System.setOut(prevOut);
+        }
+
+        @SuppressWarnings("unchecked")
+        Map<String, Object> json = MAPPER.readValue(out.toFile(), Map.class);
+        @SuppressWarnings("unchecked")
+        Map<String, Object> stats = (Map<String, Object>) json.get("stats");
+        assertNotNull(stats);
+        assertEquals(Files.size(input), ((Number) stats.get("bytesRead")).longValue());
+        assertEquals(2, ((Number) stats.get("groupCount")).intValue());
+        assertEquals(0.75, ((Number) stats.get("filterSelectivity")).doubleValue());
+        @SuppressWarnings("unchecked")
+        Map<String, Object> stages = (Map<String, Object>) stats.get("stages");
+        assertEquals(List.of("io", "tokenize", "filter", "aggregate", "topN", "report"), List.copyOf(stages.keySet()));
+    }
+
+    @Test
+    void capsListedGroupsAndSummarisesTheRest(@TempDir Path dir) throws Exception {
+        Map<GroupKey, AggregationState> stateByGroup = new java.util.TreeMap<>();
+        for (String product : List.of("A", "B", "C")) {
+            AggregationState state = new AggregationState();
+            state.addCount();
+            state.addCount();
+            stateByGroup.put(new GroupKey(List.of(product)), state);
+        }
+        AnalyticsResult result = new AnalyticsResult("input.csv", 6, 0, stateByGroup, List.of(), List.of("product"));
+        Path report = dir.resolve("report.pdf");
+        CliConfig config = CliConfig.builder().inputPath(Path.of("input.csv")).groupByColumns(List.of("product"))
+                .aggregationSpecs(List.of("count")).outputPath(dir.resolve("summary.json")).reportPath(report)
+                .reportMaxGroups(1).build();
+
+        String text = ReportWriter.buildReportText(result, config);
+        assertTrue(text.startsWith("GROUP: product=A\ncount: 2\n---\n"), text);
+        assertFalse(text.contains("product=B"));
+        assertTrue(text.contains("... 2 more groups (4 rows) not shown"), text);
+
+        PrintStream prevOut = System.out;
+        try {
+            System.setOut(new PrintStream(new ByteArrayOutputStream(), false, StandardCharsets.UTF_8));
+            ReportWriter.write(result, config);
+        } finally {
+            System.setOut(prevOut);
+        }
+        byte[] pdf = Files.readAllBytes(report);
+        assertEquals("%PDF", new String(pdf, 0, 4, StandardCharsets.US_ASCII));
+        @SuppressWarnings("unchecked")
+        Map<String, Object> json = MAPPER.readValue(dir.resolve("summary.json").toFile(), Map.class);
+        assertEquals(3, ((List<?>) json.get("groups")).size());
+    }
+
+    @Test
+    void sortedInputStreamsGroupsAndMatchesHashAggregation(@TempDir Path dir) throws Exception {
+        Path input = dir.resolve("sorted.csv");
+        Files.writeString(input, "region,product,amount\nEU,A,10\nEU,A,20\nEU,B,5\nUS,A,1\nUS,C,40\n");
+        CliConfig config = CliConfig.builder().inputPath(input).groupByColumns(List.of("region", "product"))
+                .aggregationSpecs(List.of("count", "sum(amount)")).topNMetric("sum_amount").topN(2)
+                .outputPath(dir.resolve("sorted.json")).inputSorted(true).build();
+        Path hashOut = dir.resolve("hash.json");
+        CliConfig hashConfig = config.toBuilder().outputPath(hashOut).inputSorted(false).build();
+
+        PrintStream prevOut = System.out;
+        ByteArrayOutputStream console = new ByteArrayOutputStream();
+        try {
+            System.setOut(new PrintStream(console, false, StandardCharsets.UTF_8));
+            try (ReportWriter.SortedOutput out = ReportWriter.openSorted(config)) {
+                out.finish(CsvAnalyticsRunner.runSorted(config, out));
+            }
+            System.setOut(new PrintStream(new ByteArrayOutputStream(), false, StandardCharsets.UTF_8));
+            ReportWriter.write(CsvAnalyticsRunner.run(hashConfig), hashConfig);
+        } finally {
+            System.setOut(prevOut);
+        }
+
+        @SuppressWarnings("unchecked")
+        Map<String, Object> sorted = MAPPER.readValue(dir.resolve("sorted.json").toFile(), Map.class);
+        @SuppressWarnings("unchecked")
+        Map<String, Object> hash = MAPPER.readValue(hashOut.toFile(), Map.class);
+        for (String field : List.of("inputFile", "totalRows", "malformedRows", "groups", "topN")) {
+            assertEquals(hash.get(field), sorted.get(field), field);
+        }
+        assertEquals(4, ((Number) ((Map<?, ?>) sorted.get("stats")).get("groupCount")).intValue());
+        String text = console.toString(StandardCharsets.UTF_8);
+        assertTrue(text.startsWith("GROUP: region=EU, product=A\ncount: 2\n"), text);
+        assertTrue(text.contains("TOP 2 (by sum_amount):\n1. US"), text);
+    }
+
+    @Test
+    void unsortedInputFailsWithoutLeavingASummary(@TempDir Path dir) throws Exception {
+        Path input = dir.resolve("unsorted.csv");
+        Files.writeString(input, "product,amount\nB,1\nA,2\n");
+        Path out = dir.resolve("summary.json");
+        CliConfig config = CliConfig.builder().inputPath(input).groupByColumns(List.of("product"))
+                .aggregationSpecs(List.of("count")).outputPath(out).inputSorted(true).build();
+
+        PrintStream prevOut = System.out;
+        try {
+            System.setOut(new PrintStream(new ByteArrayOutputStream(), false, StandardCharsets.UTF_8));
+            IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> {
+                try (ReportWriter.SortedOutput sink = ReportWriter.openSorted(config)) {
+                    sink.finish(CsvAnalyticsRunner.runSorted(config, sink));
+                }
+            });
+            assertTrue(e.getMessage().contains("not sorted by [product]"), e.getMessage());
+        } finally {
+            System.setOut(prevOut);
+        }
+        try (var files = Files.list(dir)) {
+            assertEquals(List.of(input), files.toList());
+        }
+    }
+
+    @Test
+    void approximateTopNIsMarkedInJsonAndReport(@TempDir Path dir) throws Exception {
+        Path input = dir.resolve("sales.csv");
+        Files.writeString(input, "customer,amount\na,10\nb,1\na,5\nc,2\nd,1\n");
+        Path out = dir.resolve("summary.json");
+        CliConfig config = CliConfig.builder().inputPath(input).groupByColumns(List.of("customer"))
+                .aggregationSpecs(List.of("sum(amount)")).topNMetric("sum_amount").topN(1).outputPath(out)
+                .topNApproxCapacity(2).build();
+
+        AnalyticsResult result = CsvAnalyticsRunner.run(config);
+        assertTrue(result.getStateByGroup().isEmpty());
+        assertTrue(ReportWriter.buildReportText(result, config).startsWith("TOP 1 (by sum_amount, approximate):\n1. a"));
+        PrintStream prevOut = System.out;
+        try {
+            System.setOut(new PrintStream(new ByteArrayOutputStream(), false, StandardCharsets.UTF_8));
+            ReportWriter.write(result, config);
+        } finally {
+            System.setOut(prevOut);
+        }
+        @SuppressWarnings("unchecked")
+        Map<String, Object> json = MAPPER.readValue(out.toFile(), Map.class);
+        assertEquals(Boolean.TRUE, json.get("topNApproximate"));
+        assertEquals(5, ((Number) json.get("totalRows")).intValue());
+        @SuppressWarnings("unchecked")
+        Map<String, Object> first = (Map<String, Object>) ((List<?>) json.get("topN")).get(0);
+        assertEquals("a", first.get("customer"));
+        assertEquals(15.0, ((Number) first.get("sum_amount")).doubleValue());
+        assertEquals(0.0, ((Number) first.get("errorBound")).doubleValue());
+        assertEquals(Boolean.TRUE, first.get("guaranteed"));
+    }
+
+    @Test
+    void writesRankingsPerParentForHashAndSortedRuns(@TempDir Path dir) throws Exception {
+        Path input = dir.resolve("sales.csv");
+        Files.writeString(input, "region,product,amount\nEU,A,10\nEU,B,30\nEU,C,20\nUS,A,5\nUS,A,1\nUS,B,7\n");
+        CliConfig config = CliConfig.builder().inputPath(input).groupByColumns(List.of("region", "product"))
+                .aggregationSpecs(List.of("count", "sum(amount)")).topNMetric("sum_amount").topN(1)
+                .outputPath(dir.resolve("hash.json")).rankSpecs(List.of("sum_amount:2 per region", "count:1")).build();
+        CliConfig sortedConfig = config.toBuilder().outputPath(dir.resolve("sorted.json")).inputSorted(true).build();
+
+        AnalyticsResult result = CsvAnalyticsRunner.run(config);
+        String text = ReportWriter.buildReportText(result, config);
+        assertTrue(text.contains("TOP 2 (by sum_amount, region=EU):\n1. EU"), text);
+        assertTrue(text.contains("TOP 1 (by count):\n1. US"), text);
+        PrintStream prevOut = System.out;
+        try {
+            System.setOut(new PrintStream(new ByteArrayOutputStream(), false, StandardCharsets.UTF_8));
+            ReportWriter.write(result, config);
+            try (ReportWriter.SortedOutput out = ReportWriter.openSorted(sortedConfig)) {
+                out.finish(CsvAnalyticsRunner.runSorted(sortedConfig, out));
+            }
+        } finally {
+            System.setOut(prevOut);
+        }
+
+        @SuppressWarnings("unchecked")
+        Map<String, Object> json = MAPPER.readValue(dir.resolve("hash.json").toFile(), Map.class);
+        @SuppressWarnings("unchecked")
+        Map<String, Object> sorted = MAPPER.readValue(dir.resolve("sorted.json").toFile(), Map.class);
+        assertEquals(json.get("rankings"), sorted.get("rankings"));
+        List<?> rankings = (List<?>) json.get("rankings");
+        assertEquals(2, rankings.size());
+        @SuppressWarnings("unchecked")
+        Map<String, Object> perRegion = (Map<String, Object>) rankings.get(0);
+        assertEquals("sum_amount", perRegion.get("metric"));
+        assertEquals(List.of("region"), perRegion.get("per"));
+        List<?> partitions = (List<?>) perRegion.get("partitions");
+        assertEquals(2, partitions.size());
+        @SuppressWarnings("unchecked")
+        Map<String, Object> eu = (Map<String, Object>) partitions.get(0);
+        assertEquals(Map.of("region", "EU"), eu.get("parent"));
+        assertEquals(List.of(Map.of("region", "EU", "product", "B", "sum_amount", 30.0),
+                Map.of("region", "EU", "product", "C", "sum_amount", 20.0)), eu.get("top"));
+    }
+
+    @Test
+    void writesGroupingSetsForHashPipelinedAndSortedRuns(@TempDir Path dir) throws Exception {
+        Path input = dir.resolve("sales.csv");
+        Files.writeString(input, "product,region,amount\nA,EU,10\nA,US,20\nB,EU,5\nB,EU,1\n");
+        CliConfig config = CliConfig.builder().inputPath(input).groupByColumns(List.of("product", "region"))
+                .groupingSets(List.of("product", "()", "(region)")).aggregationSpecs(List.of("count", "sum(amount)"))
+                .topNMetric("sum_amount").outputPath(dir.resolve("hash.json")).build();
+        CliConfig pipelined = config.toBuilder().outputPath(dir.resolve("pipelined.json")).threads(3).build();
+        CliConfig sorted = config.toBuilder().outputPath(dir.resolve("sorted.json")).inputSorted(true).build();
+
+        AnalyticsResult result = CsvAnalyticsRunner.run(config);
+        assertEquals(3, result.getStateByGroup().size(), "the scan aggregates the finest groups");
+        String text = ReportWriter.buildReportText(result, config);
+        assertTrue(text.contains("GROUPING SET (product), grouping id 1:\nGROUP: product=A, region=(all)\ncount: 2"), text);
+        assertTrue(text.contains("GROUPING SET (), grouping id 3:\nGROUP: product=(all), region=(all)\ncount: 4"), text);
+        assertFalse(text.contains("region=EU, "), text);
+        PrintStream prevOut = System.out;
+        try {
+            System.setOut(new PrintStream(new ByteArrayOutputStream(), false, StandardCharsets.UTF_8));
+            ReportWriter.write(result, config);
+            ReportWriter.write(CsvAnalyticsRunner.run(pipelined), pipelined);
+            try (ReportWriter.SortedOutput out = ReportWriter.openSorted(sorted)) {
+                out.finish(CsvAnalyticsRunner.runSorted(sorted, out));
+            }
+        } finally {
+            System.setOut(prevOut);
+        }
+
+        @SuppressWarnings("unchecked")
+        Map<String, Object> json = MAPPER.readValue(dir.resolve("hash.json").toFile(), Map.class);
+        List<?> groups = (List<?>) json.get("groups");
+        assertEquals(5, groups.size());
+        @SuppressWarnings("unchecked")
+        Map<String, Object> b = (Map<String, Object>) groups.get(1);
+        Map<String, Object> bKey = new java.util.HashMap<>();
+        bKey.put("product", "B");
+        bKey.put("region", null);
+        assertEquals(bKey, b.get("groupKey"));
+        assertEquals(List.of("product"), b.get("groupingSet"));
+        assertEquals(1, b.get("groupingId"));
+        assertEquals(6.0, b.get("sum_amount"));
+        @SuppressWarnings("unchecked")
+        Map<String, Object> total = (Map<String, Object>) groups.get(2);
+        assertEquals(3, total.get("groupingId"));
+        assertEquals(36.0, total.get("sum_amount"));
+        @SuppressWarnings("unchecked")
+        Map<String, Object> eu = (Map<String, Object>) groups.get(3);
+        assertEquals(List.of("region"), eu.get("groupingSet"));
+        assertEquals(16.0, eu.get("sum_amount"));
+        assertEquals(groups, MAPPER.readValue(dir.resolve("pipelined.json").toFile(), Map.class).get("groups"));
+        assertEquals(groups, MAPPER.readValue(dir.resolve("sorted.json").toFile(), Map.class).get("groups"));
+
+        CliConfig both = config.toBuilder().rollup(true).build();
+        assertThrows(IllegalArgumentException.class, () -> CsvAnalyticsRunner.run(both));
+        CliConfig approx = config.toBuilder().topNApproxCapacity(10).build();
+        assertThrows(IllegalArgumentException.class, () -> CsvAnalyticsRunner.run(approx));
+    }
+
+    @Test
+    void sampledRunScalesGroupsAndWritesIntervals(@TempDir Path dir) throws Exception {
+        Path input = dir.resolve("sales.csv");
+        StringBuilder csv = new StringBuilder("region,amount\n");
+        for (int i = 0; i < 60_000; i++) {
+            csv.append(i % 3 == 0 ? "EU" : "US").append(',').append(i % 100).append('\n');
+        }
+        Files.writeString(input, csv.toString());
+        CliConfig exact = CliConfig.builder().inputPath(input).groupByColumns(List.of("region"))
+                .aggregationSpecs(List.of("count", "sum(amount)")).outputPath(dir.resolve("exact.json")).build();
+        CliConfig full = exact.toBuilder().outputPath(dir.resolve("full.json")).sampleFraction(1.0).build();
+        CliConfig half = exact.toBuilder().outputPath(dir.resolve("half.json")).sampleFraction(0.5).sampleSeed(9).build();
+
+        AnalyticsResult exactResult = CsvAnalyticsRunner.run(exact);
+        AnalyticsResult fullResult = CsvAnalyticsRunner.run(full);
+        GroupKey eu = new GroupKey(List.of("EU"));
+        assertEquals(exactResult.getStateByGroup().get(eu).getCount(), fullResult.getStateByGroup().get(eu).getCount());
+        assertEquals(exactResult.getTotalRows(), fullResult.getTotalRows());
+        assertEquals(20_000.0, fullResult.getSample().count(eu).getHigh(), 1e-6);
+
+        AnalyticsResult halfResult = CsvAnalyticsRunner.run(half);
+        assertTrue(halfResult.getSample().getBlocksSampled() < halfResult.getSample().getBlocksTotal());
+        assertEquals(halfResult.getStateByGroup().get(eu).getCount(),
+                CsvAnalyticsRunner.run(half).getStateByGroup().get(eu).getCount());
+        SampleEstimate.Interval count = halfResult.getSample().count(eu);
+        assertTrue(count.getLow() <= 20_000 && 20_000 <= count.getHigh(), count.getLow() + ".." + count.getHigh());
+        assertTrue(ReportWriter.buildReportText(halfResult, half).startsWith("SAMPLE: "));
+
+        ByteArrayOutputStream json = new ByteArrayOutputStream();
+        ReportWriter.writeJsonSummary(halfResult, half, json);
+        @SuppressWarnings("unchecked")
+        Map<String, Object> summary = MAPPER.readValue(json.toByteArray(), Map.class);
+        @SuppressWarnings("unchecked")
+        Map<String, Object> sample = (Map<String, Object>) summary.get("sample");
+        assertEquals(9, sample.get("seed"));
+        @SuppressWarnings("unchecked")
+        Map<String, Object> group = (Map<String, Object>) ((List<?>) summary.get("groups")).get(0);
+        assertEquals(2, ((List<?>) group.get("count_ci95")).size());
+        assertEquals(2, ((List<?>) group.get("sum_amount_ci95")).size());
+    }
 }
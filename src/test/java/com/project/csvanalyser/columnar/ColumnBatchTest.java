@@ -0,0 +1,113 @@
+package com.project.csvanalyser.columnar;
+
+import com.project.csvanalyser.schema.ColumnType;
+import com.project.csvanalyser.schema.Schema;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ColumnBatchTest {
+
+    @Test
+    void parsesNumbersOnlyAtSelectedPositions() {
+        ColumnBatch batch = new ColumnBatch(List.of("region", "amount"), List.of("amount", "missing"), 4);
+        assertFalse(batch.add(new String[]{"APAC", "12.5"}));
+        batch.add(new String[]{"EMEA", " "});
+        batch.add(new String[]{"APAC", "n/a"});
+        assertTrue(batch.add(new String[]{"EMEA", " 7 "}));
+
+        double[] numbers = batch.numbers("amount", new int[]{0, 1, 2, 3}, 4);
+        byte[] states = batch.states("amount");
+        assertEquals(12.5, numbers[0]);
+        assertEquals(0, numbers[1]);
+        assertEquals(ColumnBatch.BLANK, states[1]);
+        assertTrue(Double.isNaN(numbers[2]));
+        assertEquals(ColumnBatch.INVALID, states[2]);
+        assertEquals(7, numbers[3]);
+        assertEquals(ColumnBatch.VALUE, states[3]);
+        assertEquals("", batch.strings("missing")[3]);
+        assertThrows(IllegalArgumentException.class, () -> batch.strings("region"));
+
+        batch.clear();
+        batch.add(new String[]{"APAC", "1"});
+        batch.add(new String[]{"APAC", "2"});
+        assertEquals(2, batch.numbers("amount", new int[]{1}, 1)[1]);
+        assertEquals(12.5, batch.numbers("amount", new int[]{1}, 1)[0], "position 0 was not selected");
+    }
+
+    @Test
+    void parsesEachCellOnceAndCountsTypeViolations() {
+        ColumnBatch batch = new ColumnBatch(List.of("qty", "price"), List.of("qty", "price"), 4);
+        batch.setSchema(new Schema(Map.of("qty", ColumnType.LONG, "price", ColumnType.STRING)));
+        batch.add(new String[]{"1", "a"});
+        batch.add(Map.of("qty", "2.5", "price", "2"));
+        batch.add(new String[]{"", "x"});
+        batch.add(Map.of("qty", "n/a"));
+
+        batch.numbers("qty", new int[]{0, 1, 2, 3}, 4);
+        double[] again = batch.numbers("qty", new int[]{1, 3}, 2);
+        assertEquals(2.5, again[1], "a long column still reads 2.5 as it is");
+        assertEquals(Map.of("qty", 2L), batch.typeViolations(), "2.5 and n/a, each counted once");
+
+        batch.numbers("price", new int[]{1, 2}, 2);
+        assertEquals(Map.of("qty", 2L), batch.typeViolations(), "any cell fits a string column, x included");
+
+        batch.clear();
+        batch.add(new String[]{"1e3", ""});
+        batch.numbers("qty", new int[]{0}, 1);
+        assertEquals(ColumnBatch.VALUE, batch.states("qty")[0], "cleared positions are parsed again");
+        assertEquals(3L, batch.typeViolations().get("qty"));
+
+        batch.setSchema(null);
+        batch.clear();
+        batch.add(new String[]{"1e3", ""});
+        batch.numbers("qty", new int[]{0}, 1);
+        assertEquals(3L, batch.typeViolations().get("qty"), "untyped, any number fits");
+    }
+
+    @Test
+    void countsTimestampMisfitsOnlyInTimestampColumns() {
+        ColumnBatch batch = new ColumnBatch(List.of("ts", "note"), List.of("ts", "note"), 4);
+        batch.setSchema(new Schema(Map.of("ts", ColumnType.TIMESTAMP, "note", ColumnType.STRING)));
+        batch.add(new String[]{"2024-01-01", "a"});
+        batch.add(new String[]{"soon", "b"});
+        batch.numbers("ts", new int[]{0, 1}, 2);
+        assertEquals(Map.of(), batch.typeViolations(), "numeric reads do not check timestamps");
+        batch.addTimestampMisfits("ts", 1);
+        batch.addTimestampMisfits("note", 2);
+        assertEquals(Map.of("ts", 1L), batch.typeViolations());
+    }
+
+    @Test
+    void fastNumberPathMatchesParseDouble() {
+        Random random = new Random(11);
+        String alphabet = "0123456789.-+e ";
+        for (int i = 0; i < 200_000; i++) {
+            StringBuilder cell = new StringBuilder();
+            int length = 1 + random.nextInt(random.nextBoolean() ? 6 : 19);
+            for (int j = 0; j < length; j++) {
+                cell.append(j > 0 && random.nextInt(4) > 0 ? (char) ('0' + random.nextInt(10))
+                        : alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+            String s = cell.toString();
+            Double expected;
+            try {
+                expected = Double.parseDouble(s.trim());
+            } catch (NumberFormatException e) {
+                expected = null;
+            }
+            if (expected == null) {
+                assertThrows(NumberFormatException.class, () -> ColumnBatch.parseNumber(s), s);
+            } else {
+                assertEquals(expected, ColumnBatch.parseNumber(s), s);
+            }
+        }
+        assertEquals(Double.valueOf(-0.0), ColumnBatch.parseNumber("-0"));
+        assertEquals(0.1 + 0.2, ColumnBatch.parseNumber("0.30000000000000004"));
+        assertEquals(123456789012345.6, ColumnBatch.parseNumber("123456789012345.6"));
+    }
+}
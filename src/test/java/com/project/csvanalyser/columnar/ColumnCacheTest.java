@@ -0,0 +1,110 @@
+package com.project.csvanalyser.columnar;
+
+import com.project.csvanalyser.aggregation.AggregationState;
+import com.project.csvanalyser.aggregation.GroupKey;
+import com.project.csvanalyser.cli.AnalyticsResult;
+import com.project.csvanalyser.cli.CliConfig;
+import com.project.csvanalyser.cli.CsvAnalyticsRunner;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ColumnCacheTest {
+
+    private static final String CSV = "product,region,amount\n"
+            + "A,APAC,100\nA,EMEA,200\nB,APAC,50\nB,APAC,\nC,LATAM,abc\n";
+
+    private static CliConfig query(Path csv, String filter, List<String> groupBy, String... aggs) {
+        return CliConfig.builder()
+                .inputPath(csv)
+                .filterExpression(filter)
+                .groupByColumns(groupBy)
+                .aggregationSpecs(List.of(aggs))
+                .build();
+    }
+
+    private static void assertSameResult(AnalyticsResult expected, AnalyticsResult actual) {
+        assertEquals(expected.getTotalRows(), actual.getTotalRows());
+        assertEquals(expected.getMalformedRows(), actual.getMalformedRows());
+        assertEquals(expected.getStateByGroup().keySet(), actual.getStateByGroup().keySet());
+        for (Map.Entry<GroupKey, AggregationState> e : expected.getStateByGroup().entrySet()) {
+            AggregationState a = actual.getStateByGroup().get(e.getKey());
+            assertEquals(e.getValue().getCount(), a.getCount());
+            assertEquals(e.getValue().getSum("amount"), a.getSum("amount"));
+            assertEquals(e.getValue().getMax("amount"), a.getMax("amount"));
+        }
+    }
+
+    @Test
+    void followUpQueryRunsOnCachedColumns(@TempDir Path dir) throws Exception {
+        Path csv = dir.resolve("sales.csv");
+        Files.writeString(csv, CSV);
+        ColumnCache cache = new ColumnCache(1 << 20);
+
+        CliConfig first = query(csv, "region==\"APAC\" && amount>10", List.of("product"), "sum(amount)", "max(amount)");
+        assertSameResult(CsvAnalyticsRunner.analyse(first), CsvAnalyticsRunner.analyse(first, cache));
+        assertEquals(0, cache.getHits());
+
+        CliConfig second = query(csv, "amount>=0 || region!=\"EMEA\"", List.of("product", "region"), "sum(amount)", "max(amount)");
+        CliConfig third = query(csv, "amount<150", List.of("region"), "sum(amount)");
+        AnalyticsResult cached2 = CsvAnalyticsRunner.analyse(second, cache);
+        assertEquals(1, cache.getHits());
+        AnalyticsResult cached3 = CsvAnalyticsRunner.analyse(third, cache);
+        assertEquals(2, cache.getHits());
+        assertSameResult(CsvAnalyticsRunner.analyse(second), cached2);
+        assertSameResult(CsvAnalyticsRunner.analyse(third), cached3);
+    }
+
+    @Test
+    void setAndPatternFiltersRunOnCachedColumns(@TempDir Path dir) throws Exception {
+        Path csv = dir.resolve("sales.csv");
+        Files.writeString(csv, CSV);
+        ColumnCache cache = new ColumnCache(1 << 20);
+        CsvAnalyticsRunner.analyse(query(csv, "region IN (\"APAC\") && amount BETWEEN 0 AND 1000", List.of("product"),
+                "sum(amount)", "max(amount)"), cache);
+
+        for (String filter : List.of("region in (\"APAC\", \"LATAM\") || amount BETWEEN 150 AND 250",
+                "region matches \"A$\" && amount in (0, 50, 100)", "region startsWith \"EM\" || region == \"LATAM\"")) {
+            CliConfig q = query(csv, filter, List.of("product"), "sum(amount)", "max(amount)");
+            assertSameResult(CsvAnalyticsRunner.analyse(q), CsvAnalyticsRunner.analyse(q, cache));
+        }
+        assertEquals(3, cache.getHits());
+    }
+
+    @Test
+    void changedFileInvalidatesColumns(@TempDir Path dir) throws Exception {
+        Path csv = dir.resolve("sales.csv");
+        Files.writeString(csv, CSV);
+        ColumnCache cache = new ColumnCache(1 << 20);
+        CliConfig q = query(csv, null, List.of("product"), "sum(amount)");
+        CsvAnalyticsRunner.analyse(q, cache);
+
+        Files.writeString(csv, "product,region,amount\nZ,APAC,7\n");
+        Files.setLastModifiedTime(csv, FileTime.fromMillis(System.currentTimeMillis() + 5_000));
+        AnalyticsResult result = CsvAnalyticsRunner.analyse(q, cache);
+
+        assertEquals(0, cache.getHits());
+        assertEquals(1, cache.getInvalidations());
+        assertEquals(7.0, result.getStateByGroup().get(new GroupKey(List.of("Z"))).getSum("amount"));
+    }
+
+    @Test
+    void evictsColumnsBeyondBudget(@TempDir Path dir) throws Exception {
+        Path csv = dir.resolve("sales.csv");
+        Files.writeString(csv, CSV);
+        ColumnCache cache = new ColumnCache(NumericColumn.Builder.estimate(5) + 10);
+        CsvAnalyticsRunner.analyse(query(csv, null, List.of(), "sum(amount)"), cache);
+        assertEquals(1, cache.getColumnCount());
+        CsvAnalyticsRunner.analyse(query(csv, null, List.of("product"), "count"), cache);
+        assertEquals(0, cache.getHits());
+        assertTrue(cache.getEstimatedBytes() <= NumericColumn.Builder.estimate(5) + 10);
+        assertTrue(cache.getEvictions() >= 1);
+    }
+}
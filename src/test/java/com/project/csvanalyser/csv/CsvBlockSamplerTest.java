@@ -0,0 +1,106 @@
+package com.project.csvanalyser.csv;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CsvBlockSamplerTest {
+
+    private static Path write(Path dir, int rows) throws IOException {
+        StringBuilder sb = new StringBuilder("id,note\n");
+        for (int i = 0; i < rows; i++) {
+            sb.append(i).append(',').append(i % 7 == 0 ? "\"quoted, with comma\"" : "n" + "x".repeat(i % 13)).append('\n');
+        }
+        Path file = dir.resolve("data.csv");
+        Files.writeString(file, sb.toString());
+        return file;
+    }
+
+    private static List<String> ids(CsvBlockSampler sampler) throws IOException {
+        List<String> ids = new ArrayList<>();
+        CsvBlock block = new CsvBlock(16);
+        CsvRecordTokenizer tokenizer = new CsvRecordTokenizer(',');
+        String[] values = new String[2];
+        while (sampler.next(block)) {
+            int pos = 0;
+            while (pos < block.getLength()) {
+                int next = CsvRecordTokenizer.recordEnd(block.getData(), pos, block.getLength());
+                int end = block.getData()[next - 1] == '\n' ? next - 1 : next;
+                if (tokenizer.tokenize(block.getData(), pos, end, values)) {
+                    ids.add(values[0]);
+                }
+                pos = next;
+            }
+        }
+        return ids;
+    }
+
+    @Test
+    void fullSampleReadsEveryRecordOnceAcrossBlockBoundaries(@TempDir Path dir) throws IOException {
+        Path file = write(dir, 500);
+        try (CsvBlockSampler sampler = new CsvBlockSampler(file, ',', 64, 1.0, 1)) {
+            assertEquals(List.of("id", "note"), sampler.readHeader());
+            assertEquals(sampler.getBlocksTotal(), sampler.getBlocksSampled());
+            List<String> expected = new ArrayList<>();
+            for (int i = 0; i < 500; i++) {
+                expected.add(String.valueOf(i));
+            }
+            assertEquals(expected, ids(sampler));
+        }
+    }
+
+    @Test
+    void sampleIsReproducibleForASeed(@TempDir Path dir) throws IOException {
+        Path file = write(dir, 2000);
+        List<List<String>> runs = new ArrayList<>();
+        for (long seed : new long[] {3, 3, 4}) {
+            try (CsvBlockSampler sampler = new CsvBlockSampler(file, ',', 256, 0.1, seed)) {
+                sampler.readHeader();
+                assertEquals(Math.round(sampler.getBlocksTotal() * 0.1), sampler.getBlocksSampled());
+                runs.add(ids(sampler));
+            }
+        }
+        assertFalse(runs.get(0).isEmpty());
+        assertEquals(runs.get(0), runs.get(1));
+        assertNotEquals(runs.get(0), runs.get(2));
+        assertThrows(IllegalArgumentException.class, () -> new CsvBlockSampler(file, ',', 256, 1.5, 0));
+    }
+
+    @Test
+    void blocksStartingInsideAQuotedNewlineStayAligned(@TempDir Path dir) throws IOException {
+        StringBuilder sb = new StringBuilder("id,note,amount\n");
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            sb.append(i).append(',').append(i % 9 == 0 ? "\"two\nlines, with comma\"" : "n" + "x".repeat(i % 13))
+                    .append(',').append(i % 100).append('\n');
+            expected.add(String.valueOf(i));
+        }
+        Path file = dir.resolve("multiline.csv");
+        Files.writeString(file, sb.toString());
+        for (int blockSize : new int[] {256, 1000, 4096}) {
+            try (CsvBlockSampler sampler = new CsvBlockSampler(file, ',', blockSize, 1.0, 0)) {
+                sampler.readHeader();
+                assertEquals(expected, ids(sampler), "block size " + blockSize);
+            }
+        }
+    }
+
+    @Test
+    void recordLongerThanABlockIsReadWhole(@TempDir Path dir) throws IOException {
+        Path file = dir.resolve("long.csv");
+        String longValue = "y".repeat(1000);
+        Files.write(file, ("id,note\n1,a\n2," + longValue + "\n3,b").getBytes(StandardCharsets.UTF_8));
+        try (CsvBlockSampler sampler = new CsvBlockSampler(file, ',', 32, 1.0, 0)) {
+            sampler.readHeader();
+            assertEquals(List.of("1", "2", "3"), ids(sampler));
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.project.csvanalyser.csv;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CsvRecordCounterTest {
+
+    @Test
+    void countsRecordsChecksQuotingAndFieldCount() {
+        byte[] data = ("a,b,c\n"
+                + "\"x, y\",2,3\r\n"
+                + "\r\n"
+                + "\"multi\nline\",2,3\n"
+                + "short,1\n"
+                + "\"bro\"ken,1,2\n"
+                + "tail,1").getBytes(StandardCharsets.UTF_8);
+        CsvRecordCounter counter = new CsvRecordCounter(',', 3);
+
+        CsvRecordCounter.Chunk chunk = counter.count(data, data.length, false);
+
+        assertEquals("a,b,c\n", new String(chunk.getHead(), StandardCharsets.UTF_8));
+        assertEquals("tail,1", new String(chunk.getTail(), StandardCharsets.UTF_8));
+        assertTrue(chunk.hasRecordEnd());
+        assertFalse(chunk.flipsQuotes());
+        CsvRecordCounter.Counts counts = chunk.getCounts();
+        assertEquals(3, counts.getRecords());
+        assertEquals(1, counts.getRagged());
+        assertEquals(1, counts.getMalformed());
+        assertEquals(1, counts.getMalformedSamples().size());
+        assertTrue(counts.getMalformedSamples().get(0).startsWith("\"bro\"ken"));
+    }
+
+    @Test
+    void startStateDecidesWhereRecordsEnd() {
+        byte[] data = "d\",2,3\nnext,2,3\n\"open".getBytes(StandardCharsets.UTF_8);
+        CsvRecordCounter counter = new CsvRecordCounter(',', 3);
+
+        CsvRecordCounter.Chunk inside = counter.count(data, data.length, true);
+        assertEquals("d\",2,3\n", new String(inside.getHead(), StandardCharsets.UTF_8));
+        assertEquals(1, inside.getCounts().getRecords());
+        assertEquals("\"open", new String(inside.getTail(), StandardCharsets.UTF_8));
+        assertFalse(inside.flipsQuotes());
+
+        CsvRecordCounter.Chunk outside = counter.count(data, data.length, false);
+        assertFalse(outside.hasRecordEnd());
+        assertEquals(data.length, outside.getHead().length);
+        assertEquals(0, outside.getCounts().getRecords());
+    }
+
+    @Test
+    void recordCountsSpanningRecords() {
+        CsvRecordCounter counter = new CsvRecordCounter(',', 2);
+        CsvRecordCounter.Counts counts = new CsvRecordCounter.Counts();
+        byte[] ok = "\"a\nb\" ,1\n".getBytes(StandardCharsets.UTF_8);
+        byte[] unterminated = "\"a,1".getBytes(StandardCharsets.UTF_8);
+        counter.record(ok, 0, ok.length, counts);
+        counter.record(unterminated, 0, unterminated.length, counts);
+        counter.record(new byte[]{'\r', '\n'}, 0, 2, counts);
+        assertEquals(1, counts.getRecords());
+        assertEquals(0, counts.getRagged());
+        assertEquals(1, counts.getMalformed());
+    }
+}
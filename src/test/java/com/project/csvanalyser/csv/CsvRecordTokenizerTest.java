@@ -0,0 +1,65 @@
+package com.project.csvanalyser.csv;
+
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CsvRecordTokenizerTest {
+
+    private static String[] tokenize(String record, int columns) {
+        byte[] bytes = record.getBytes(StandardCharsets.UTF_8);
+        String[] out = new String[columns];
+        return new CsvRecordTokenizer(',').tokenize(bytes, 0, bytes.length, out) ? out : null;
+    }
+
+    @Test
+    void matchesCommonsCsvOnQuotingAndTrimming() throws IOException {
+        for (String record : List.of("a,b,c", " a , b ,c ", "\"x, y\",\"say \"\"hi\"\"\",z", "\"multi\nline\",2,3",
+                "a,,", ",", "\"q\"  ,b,c", "café,über,3", "a,b\"c,d", "a,b,c,extra")) {
+            CSVRecord expected = CSVParser.parse(record, CsvStreamReader.format(',')).getRecords().get(0);
+            String[] actual = tokenize(record, 3);
+            assertNotNull(actual, record);
+            for (int i = 0; i < 3; i++) {
+                assertEquals(i < expected.size() ? expected.get(i) : "", actual[i], record + " field " + i);
+            }
+        }
+    }
+
+    @Test
+    void rejectsMalformedRecords() {
+        assertNull(tokenize("\"unterminated,1,2", 3));
+        assertNull(tokenize("\"ab\"c,1,2", 3));
+    }
+
+    @Test
+    void ignoresTrailingCarriageReturn() {
+        assertArrayEquals(new String[] {"1", "2"}, tokenize("1,2\r", 2));
+    }
+
+    @Test
+    void blockReaderCutsBlocksAtRecordBoundariesOutsideQuotes() throws IOException {
+        String csv = "h1,h2\n\"a\nb\",1\nc,2\nd,3";
+        CsvBlockReader reader = new CsvBlockReader(new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)), ',');
+        assertEquals(List.of("h1", "h2"), reader.readHeader());
+        List<String> records = new ArrayList<>();
+        CsvBlock block = new CsvBlock(8);
+        while (reader.next(block)) {
+            int pos = 0;
+            while (pos < block.getLength()) {
+                int next = CsvRecordTokenizer.recordEnd(block.getData(), pos, block.getLength());
+                records.add(new String(block.getData(), pos, next - pos, StandardCharsets.UTF_8));
+                pos = next;
+            }
+        }
+        assertEquals(List.of("\"a\nb\",1\n", "c,2\n", "d,3"), records);
+        assertEquals(csv.length(), reader.getBytesRead());
+    }
+}
@@ -90,4 +90,30 @@ class CsvStreamReaderTest {
         assertEquals("2", rows.get(1).get("id"));
         assertEquals("3", rows.get(2).get("id"));
     }
+
+    @Test
+    void recordsSpanningBlocksCrlfBlankLinesAndMissingColumns() throws IOException {
+        StringBuilder csv = new StringBuilder("id,note,extra\r\n");
+        for (int i = 0; i < 5_000; i++) {
+            csv.append(i).append(i % 7 == 0 ? ",\"multi\r\nline, quoted\"\r\n" : ", plain \r\n");
+            if (i % 1000 == 0) csv.append("\r\n\n");
+        }
+        csv.append("\"bad\"x,1\n5000");
+        List<String> warnings = new ArrayList<>();
+        CsvStreamReader reader = new CsvStreamReader(',', true, warnings::add);
+        CsvStreamReader.ParseResult result = reader.stream(
+                new ByteArrayInputStream(csv.toString().getBytes(StandardCharsets.UTF_8)), "test");
+
+        List<Map<String, String>> rows = result.getRecordStream().collect(Collectors.toList());
+        assertEquals(5_001, rows.size());
+        for (int i = 0; i < 5_000; i++) {
+            assertEquals(String.valueOf(i), rows.get(i).get("id"));
+            assertEquals(i % 7 == 0 ? "multi\r\nline, quoted" : "plain", rows.get(i).get("note"));
+            assertEquals("", rows.get(i).get("extra"));
+        }
+        assertEquals(Map.of("id", "5000", "note", "", "extra", ""), rows.get(5_000));
+        assertEquals(1, result.getMalformedCounter().getCount());
+        assertEquals(List.of("test: Skipping malformed row #1: \"bad\"x,1"), warnings);
+        assertEquals(csv.length(), result.getBytesRead());
+    }
 }
@@ -0,0 +1,43 @@
+package com.project.csvanalyser.csv;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReadAheadInputStreamTest {
+
+    @Test
+    void deliversFileContentAcrossBufferBoundaries(@TempDir Path dir) throws IOException {
+        byte[] content = new byte[100_003];
+        new Random(42).nextBytes(content);
+        Path file = dir.resolve("data.bin");
+        Files.write(file, content);
+
+        try (ReadAheadInputStream in = ReadAheadInputStream.open(file, 4096, 3)) {
+            assertEquals(content[0] & 0xFF, in.read());
+            byte[] rest = in.readAllBytes();
+            assertEquals(content.length - 1, rest.length);
+            for (int i = 0; i < rest.length; i++) {
+                assertEquals(content[i + 1], rest[i], "byte " + (i + 1));
+            }
+            assertEquals(-1, in.read());
+            assertTrue(in.getReadNanos() > 0);
+        }
+    }
+
+    @Test
+    void closingEarlyStopsTheIoThread(@TempDir Path dir) throws IOException {
+        Path file = dir.resolve("data.bin");
+        Files.write(file, new byte[1 << 20]);
+        ReadAheadInputStream in = ReadAheadInputStream.open(file, 1024, 2);
+        assertEquals(0, in.read());
+        in.close();
+        assertThrows(IOException.class, in::read);
+    }
+}
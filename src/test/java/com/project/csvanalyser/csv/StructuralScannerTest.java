@@ -0,0 +1,104 @@
+package com.project.csvanalyser.csv;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class StructuralScannerTest {
+
+    private static final byte[] ALPHABET = "ab ,-;\"\n\r\t1#".getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    void scalarAndVectorIndexesMatchByteLoop() {
+        StructuralScanner vector = StructuralScanner.vector(',');
+        List<StructuralScanner> scanners = vector.name().startsWith("vector")
+                ? List.of(StructuralScanner.scalar(','), vector) : List.of(StructuralScanner.scalar(','));
+        Random random = new Random(7);
+        StructuralIndex index = new StructuralIndex();
+        for (int round = 0; round < 200; round++) {
+            byte[] data = new byte[random.nextInt(10_000)];
+            for (int i = 0; i < data.length; i++) {
+                data[i] = random.nextInt(8) == 0 ? (byte) (0x80 | random.nextInt(0x80)) : ALPHABET[random.nextInt(ALPHABET.length)];
+            }
+            int from = data.length == 0 ? 0 : random.nextInt(Math.min(data.length, 100));
+            int[] expected = byteLoop(data, from, (byte) ',');
+            for (StructuralScanner scanner : scanners) {
+                scanner.index(data, from, data.length, index);
+                assertArrayEquals(expected, positions(index), scanner.name() + " round " + round);
+            }
+        }
+    }
+
+    @Test
+    void swarIsTheDefaultAndVectorScannerIsOptIn() {
+        assertEquals("swar", StructuralScanner.forDelimiter(',').name());
+        assumeTrue(ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent(), "jdk.incubator.vector not enabled");
+        assertTrue(StructuralScanner.vector(',').name().startsWith("vector"));
+    }
+
+    @Test
+    void scalarIndexesDelimitersQuotesAndNewlines() {
+        byte[] data = "a;b,\"c\"\nd".getBytes(StandardCharsets.UTF_8);
+        StructuralIndex index = new StructuralIndex();
+        StructuralScanner.scalar(';').index(data, 0, data.length, index);
+        assertArrayEquals(new int[]{1, 4, 6, 7}, positions(index));
+    }
+
+    @Test
+    void blockTokenizerMatchesRecordTokenizer() {
+        String csv = "\"x, y\",\"say \"\"hi\"\"\",z\r\n\r\n\"multi\nline\",2,3\na,,\n,\n\"q\"  ,b,c\ncafé, über ,3\n"
+                + "a,b\"c,d\n\"ab\"c,1,2\na,b,c,extra\n\nlast,1,2";
+        byte[] data = csv.getBytes(StandardCharsets.UTF_8);
+        for (StructuralScanner scanner : List.of(StructuralScanner.scalar(','), StructuralScanner.vector(','))) {
+            CsvBlockTokenizer records = new CsvBlockTokenizer(',', 3, scanner);
+            records.reset(data, data.length);
+            List<String> actual = new ArrayList<>();
+            String[] out = new String[3];
+            while (records.nextRecord()) {
+                actual.add(records.tokenize(out) ? String.join("|", out) : "MALFORMED");
+            }
+            assertEquals(reference(data), actual, scanner.name());
+        }
+    }
+
+    /** Records and values as the byte-at-a-time framing and tokenizer give them. */
+    private static List<String> reference(byte[] data) {
+        CsvRecordTokenizer tokenizer = new CsvRecordTokenizer(',');
+        List<String> out = new ArrayList<>();
+        String[] values = new String[3];
+        int pos = 0;
+        while (pos < data.length) {
+            int next = CsvRecordTokenizer.recordEnd(data, pos, data.length);
+            int end = next > pos && data[next - 1] == '\n' ? next - 1 : next;
+            if (!(end == pos || (end == pos + 1 && data[pos] == '\r'))) {
+                out.add(tokenizer.tokenize(data, pos, end, values) ? String.join("|", values) : "MALFORMED");
+            }
+            pos = next;
+        }
+        return out;
+    }
+
+    private static int[] byteLoop(byte[] data, int from, byte delimiter) {
+        int[] out = new int[data.length];
+        int n = 0;
+        for (int i = from; i < data.length; i++) {
+            if (data[i] == delimiter || data[i] == '"' || data[i] == '\n') out[n++] = i;
+        }
+        return Arrays.copyOf(out, n);
+    }
+
+    private static int[] positions(StructuralIndex index) {
+        int[] out = new int[index.size()];
+        for (int i = 0; i < out.length; i++) {
+            out[i] = index.get(i);
+        }
+        return out;
+    }
+}
@@ -0,0 +1,74 @@
+package com.project.csvanalyser.filter;
+
+import com.project.csvanalyser.columnar.ColumnBatch;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdaptiveOrderTest {
+
+    private static final List<String> HEADER = List.of("region", "amount");
+
+    /** Rows where region rarely is "X" for the first half, then amount rarely is above 10. */
+    private static String[] row(int i) {
+        boolean firstHalf = i < 20_000;
+        String region = firstHalf ? (i % 100 == 0 ? "X" : "Y") : "X";
+        String amount = firstHalf ? Integer.toString(20 + i % 7) : (i % 100 == 0 ? "50" : "3");
+        return new String[]{region, amount};
+    }
+
+    @Test
+    void rowPredicateMovesDecisiveTermFirstAndFollowsDrift() {
+        AdaptiveOrder.Row and = (AdaptiveOrder.Row) FilterParser.parse("amount > 10 && region == \"X\"", HEADER);
+        AdaptiveOrder.Row or = (AdaptiveOrder.Row) FilterParser.parse("amount <= 10 || region != \"X\"", HEADER);
+        for (int i = 0; i < 40_000; i++) {
+            String[] values = row(i);
+            Map<String, String> row = Map.of("region", values[0], "amount", values[1]);
+            boolean expected = Integer.parseInt(values[1]) > 10 && values[0].equals("X");
+            assertEquals(expected, and.test(row), "row " + i);
+            assertEquals(!expected, or.test(row), "row " + i);
+            if (i == 19_999) {
+                assertArrayEquals(new int[]{1, 0}, and.order(), "region rejects most rows");
+                assertArrayEquals(new int[]{1, 0}, or.order(), "region accepts most rows");
+            }
+        }
+        assertArrayEquals(new int[]{0, 1}, and.order(), "amount rejects most rows after the drift");
+        assertArrayEquals(new int[]{0, 1}, or.order());
+    }
+
+    @Test
+    void batchPredicateMovesDecisiveTermFirstAndFollowsDrift() {
+        AdaptiveOrder.Batch and = (AdaptiveOrder.Batch) FilterParser.parseBatch("amount > 10 && region == \"X\"", HEADER);
+        AdaptiveOrder.Batch or = (AdaptiveOrder.Batch) FilterParser.parseBatch("amount <= 10 || region != \"X\"", HEADER);
+        ColumnBatch batch = new ColumnBatch(HEADER, HEADER, 500);
+        int[] selection = new int[500];
+        for (int start = 0; start < 40_000; start += 500) {
+            batch.clear();
+            for (int i = start; i < start + 500; i++) {
+                batch.add(row(i));
+            }
+            for (AdaptiveOrder.Batch predicate : List.of(and, or)) {
+                for (int k = 0; k < 500; k++) selection[k] = k;
+                int n = predicate.select(batch, selection, 500);
+                int expected = 0;
+                for (int k = 0; k < 500; k++) {
+                    String[] values = row(start + k);
+                    boolean matches = Integer.parseInt(values[1]) > 10 && values[0].equals("X");
+                    if (matches == (predicate == and)) {
+                        assertEquals(k, selection[expected++], "row " + (start + k));
+                    }
+                }
+                assertEquals(expected, n);
+            }
+            if (start == 19_500) {
+                assertArrayEquals(new int[]{1, 0}, and.order());
+                assertArrayEquals(new int[]{1, 0}, or.order());
+            }
+        }
+        assertArrayEquals(new int[]{0, 1}, and.order());
+        assertArrayEquals(new int[]{0, 1}, or.order());
+    }
+}
@@ -1,9 +1,12 @@
 package com.project.csvanalyser.filter;
 
+import com.project.csvanalyser.columnar.ColumnBatch;
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -62,10 +65,115 @@ class FilterParserTest {
                 FilterParser.parse("region==\"APAC\" && foo>1", HEADER));
     }
 
+    @Test
+    void inBetweenStartsWithAndMatches() {
+        RowPredicate in = FilterParser.parse("region in (\"APAC\", \"EMEA\") && amount IN (1, 2.5, -0)", HEADER);
+        assertTrue(in.test(Map.of("region", "EMEA", "amount", "2.5")));
+        assertTrue(in.test(Map.of("region", "APAC", "amount", "")), "blank reads as 0");
+        assertFalse(in.test(Map.of("region", "LATAM", "amount", "1")));
+        assertFalse(in.test(Map.of("region", "APAC", "amount", "x")));
+
+        RowPredicate between = FilterParser.parse("amount BETWEEN 10 AND 20", HEADER);
+        assertTrue(between.test(Map.of("amount", "10")));
+        assertTrue(between.test(Map.of("amount", " 20 ")));
+        assertFalse(between.test(Map.of("amount", "20.5")));
+        assertFalse(between.test(Map.of("amount", "n/a")));
+
+        RowPredicate prefix = FilterParser.parse("product startsWith \"Wid\" || product MATCHES \"^g.*\\d$\"", HEADER);
+        assertTrue(prefix.test(Map.of("product", "Widget")));
+        assertTrue(prefix.test(Map.of("product", "gadget7")));
+        assertFalse(prefix.test(Map.of("product", "gadget")));
+        assertFalse(prefix.test(Map.of("product", "widget")));
+    }
+
+    @Test
+    void orChainOfEqualitiesBecomesInList() {
+        assertEquals(FilterParser.canonicalize("r IN (\"b\", \"a\")"), FilterParser.canonicalize("r==\"a\" || r==\"b\""));
+        assertEquals("r IN (\"a\",\"b\",\"c\")", FilterParser.canonicalize("r==\"c\" || r in (\"a\") || r==\"b\" || r==\"a\""));
+        assertEquals("(n IN (1.0,2.0) || r==\"1\")", FilterParser.canonicalize("n==1 || r==\"1\" || n==2"));
+        assertEquals("(r IN (\"a\",\"b\") || s==\"a\")", FilterParser.canonicalize("r==\"a\" || s==\"a\" || r==\"b\""));
+        assertEquals("r==\"a\"", FilterParser.canonicalize("r in (\"a\", \"a\")"));
+        StringBuilder chain = new StringBuilder("region==\"R0\"");
+        for (int i = 1; i < 50; i++) chain.append(" || region==\"R").append(i).append('"');
+        RowPredicate p = FilterParser.parse(chain.toString(), HEADER);
+        assertTrue(p.test(Map.of("region", "R49")));
+        assertFalse(p.test(Map.of("region", "R50")));
+        assertFalse(p instanceof AdaptiveOrder.Row, "the whole chain is one IN lookup");
+    }
+
+    @Test
+    void malformedNewSyntaxFailsFast() {
+        for (String bad : List.of("region IN \"a\"", "region IN (\"a\", 1)", "region IN (\"a\"", "amount BETWEEN 1 2",
+                "amount BETWEEN \"a\" AND 2", "product startsWith 3", "product matches \"(\"", "regionx IN (1)")) {
+            assertThrows(IllegalArgumentException.class, () -> FilterParser.parse(bad, HEADER), bad);
+        }
+        assertTrue(FilterParser.parse("amount BETWEEN 5 AND 1", HEADER).test(Map.of("amount", "3")) == false);
+    }
+
+    @Test
+    void stringOrderingFailsAtParseTime() {
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () ->
+                FilterParser.parse("amount > 1 && region > \"APAC\"", HEADER));
+        assertTrue(e.getMessage().contains("region"));
+    }
+
     @Test
     void nullOrBlankExpressionAlwaysTrue() {
         assertTrue(FilterParser.parse(null, HEADER).test(Map.of("region", "X")));
         assertTrue(FilterParser.parse("", HEADER).test(Map.of("region", "X")));
         assertTrue(FilterParser.parse("   ", HEADER).test(Map.of("region", "X")));
     }
+
+    @Test
+    void canonicalFormIgnoresOperandOrderAndSpacing() {
+        assertEquals(FilterParser.canonicalize("a>1 && b==2"), FilterParser.canonicalize("b==2&&a>1.0"));
+        assertEquals(FilterParser.canonicalize("a>1 || b==\"x\" && c<3"), FilterParser.canonicalize("c<3 && b==\"x\" || a>1"));
+        assertNotEquals(FilterParser.canonicalize("a>1 && b==2"), FilterParser.canonicalize("a>1 || b==2"));
+        assertEquals("", FilterParser.canonicalize("  "));
+    }
+
+    @Test
+    void batchPredicateSelectsWhatRowPredicateMatches() {
+        String[] regions = {"APAC", "EMEA", "", " APAC"};
+        String[] amounts = {"5", "150", " 99.5 ", "", "  ", "n/a", "NaN", "-3", "1e3", "100"};
+        List<String> expressions = List.of(
+                "amount > 99", "amount <= 100", "amount == 0", "amount != 100", "amount >= -3", "amount < 1000",
+                "region == \"APAC\"", "region != \"APAC\"",
+                "region == \"APAC\" && amount > 50 || amount == 0",
+                "amount < 0 || amount > 140 || region == \"EMEA\"",
+                "amount != 5 && region != \"\" && amount < 1000 || product == \"p1\"",
+                "region IN (\"APAC\", \"\") || amount in (5, 0, 99.5)", "amount BETWEEN -3 AND 99.5",
+                "region startsWith \" \" || product matches \"^p[12]$\"",
+                "region == \"EMEA\" || region == \"APAC\" || amount == 150 || amount == 0");
+        Random random = new Random(3);
+        ColumnBatch batch = new ColumnBatch(HEADER, HEADER, 64);
+        List<Map<String, String>> rows = new ArrayList<>();
+        while (batch.size() < 50) {
+            String[] values = {regions[random.nextInt(regions.length)], amounts[random.nextInt(amounts.length)],
+                    "p" + random.nextInt(3)};
+            batch.add(values);
+            rows.add(Map.of("region", values[0], "amount", values[1], "product", values[2]));
+        }
+        for (String expression : expressions) {
+            RowPredicate row = FilterParser.parse(expression, HEADER);
+            List<Integer> expected = new ArrayList<>();
+            for (int i = 0; i < rows.size(); i++) {
+                if (row.test(rows.get(i))) expected.add(i);
+            }
+            BatchPredicate compiled = FilterParser.parseBatch(expression, HEADER);
+            for (int round = 0; round < 2; round++) {
+                int[] selection = new int[batch.capacity()];
+                int count = 0;
+                for (int i = round; i < rows.size(); i++) {
+                    selection[count++] = i;
+                }
+                int n = compiled.select(batch, selection, count);
+                List<Integer> actual = new ArrayList<>();
+                for (int k = 0; k < n; k++) actual.add(selection[k]);
+                List<Integer> want = round == 0 ? expected : expected.stream().filter(i -> i >= 1).toList();
+                assertEquals(want, actual, expression + " round " + round);
+            }
+        }
+        assertEquals(7, FilterParser.parseBatch(" ", HEADER).select(batch, new int[64], 7));
+    }
 }
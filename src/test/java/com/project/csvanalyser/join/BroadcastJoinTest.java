@@ -0,0 +1,113 @@
+package com.project.csvanalyser.join;
+
+import com.project.csvanalyser.stats.RunStats;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BroadcastJoinTest {
+
+    @Test
+    void dimensionTableFindsUniqueKeys() {
+        List<Map<String, String>> rows = List.of(
+                Map.of("sku", "A", "category", "toys", "weight", "1"),
+                Map.of("sku", "B", "category", "toys", "weight", "2"),
+                Map.of("sku", "", "category", "none"));
+        DimensionTable table = DimensionTable.load("products.csv", List.of("category", "sku", "weight"), "sku",
+                rows.iterator());
+
+        assertEquals(List.of("category", "weight"), table.getColumns());
+        assertEquals(3, table.size());
+        int b = table.find("B");
+        assertEquals("toys", table.value(0, b));
+        assertEquals("2", table.value(1, b));
+        assertSame(table.value(0, table.find("A")), table.value(0, b), "repeated values share one string");
+        assertEquals("", table.value(1, table.find("")));
+        assertEquals(-1, table.find("C"));
+        assertEquals(-1, DimensionTable.load("empty.csv", List.of("sku"), "sku", List.<Map<String, String>>of()
+                .iterator()).find("A"));
+
+        List<Map<String, String>> duplicated = List.of(Map.of("sku", "A"), Map.of("sku", "B"), Map.of("sku", "A"));
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> DimensionTable.load("products.csv", List.of("sku"), "sku", duplicated.iterator()));
+        assertTrue(e.getMessage().contains("'A'"));
+    }
+
+    @Test
+    void specsNameFileColumnAndKeyColumn() {
+        JoinSpec same = JoinSpec.parse(" data/regions.csv:region ");
+        assertEquals(Path.of("data/regions.csv"), same.getFile());
+        assertEquals("region", same.getColumn());
+        assertEquals("region", same.getKeyColumn());
+        JoinSpec renamed = JoinSpec.parse("C:/dims/products.csv:product=sku");
+        assertEquals(Path.of("C:/dims/products.csv"), renamed.getFile());
+        assertEquals("product", renamed.getColumn());
+        assertEquals("sku", renamed.getKeyColumn());
+        assertEquals("C:/dims/products.csv:product=sku", renamed.toString().replace('\\', '/'));
+        for (String bad : new String[]{"products.csv", "products.csv:", ":product", "products.csv:product="}) {
+            assertThrows(IllegalArgumentException.class, () -> JoinSpec.parse(bad), bad);
+        }
+    }
+
+    @Test
+    void joinsChainedTablesIntoArrayAndMapRows(@TempDir Path dir) throws Exception {
+        Path regions = dir.resolve("regions.csv");
+        Files.writeString(regions, "code,country\nR1,DE\nR2,JP\nR3,XX\n");
+        Path countries = dir.resolve("countries.csv");
+        Files.writeString(countries, "country,continent,population\nDE,Europe,84\nJP,Asia,125\n");
+        BroadcastJoin join = BroadcastJoin.start(List.of(JoinSpec.parse(regions + ":region=code"),
+                JoinSpec.parse(countries + ":country")), ',');
+
+        List<String> header = join.bind(List.of("region", "amount"));
+        assertEquals(List.of("region", "amount", "country", "continent", "population"), header);
+        assertEquals(2, join.factColumns());
+
+        BroadcastJoin.Lookup lookup = join.lookup();
+        String[] row = {"R2", "5", "stale", "stale", "stale"};
+        lookup.join(row);
+        assertArrayEquals(new String[]{"R2", "5", "JP", "Asia", "125"}, row);
+        row[0] = "R3";
+        lookup.join(row);
+        assertArrayEquals(new String[]{"R3", "5", "XX", "", ""}, row, "left join: a missing key leaves blanks");
+
+        Map<String, String> mapRow = new HashMap<>(Map.of("region", "R9", "amount", "1"));
+        join.lookup().joining(List.<Map<String, String>>of(mapRow).iterator()).next();
+        assertEquals(Map.of("region", "R9", "amount", "1", "country", "", "continent", "", "population", ""), mapRow);
+        join.sampleLookup().join(new String[]{"R9", "1", "", "", ""});
+
+        // R3 has no continent; R9 has neither a country nor, with its country blank, a continent
+        assertEquals(Map.of(countries + ":country", 2L, regions + ":region=code", 1L), join.unmatchedRows());
+        RunStats stats = RunStats.start();
+        join.addStages(stats);
+        assertTrue(stats.getStages().containsKey("joinLoad"));
+        assertTrue(stats.getStages().containsKey("joinWait"));
+    }
+
+    @Test
+    void rejectsBadTablesAndColumns(@TempDir Path dir) throws Exception {
+        Path products = dir.resolve("products.csv");
+        Files.writeString(products, "sku,category,region\nA,toys,EU\nA,games,EU\n");
+        assertThrows(IllegalArgumentException.class,
+                () -> BroadcastJoin.start(List.of(JoinSpec.parse(dir.resolve("missing.csv") + ":sku")), ','));
+        assertThrows(IllegalArgumentException.class,
+                () -> BroadcastJoin.start(List.of(JoinSpec.parse(products + ":product")), ','), "no such key column");
+
+        BroadcastJoin join = BroadcastJoin.start(List.of(JoinSpec.parse(products + ":product=sku")), ',');
+        assertThrows(IllegalStateException.class, join::lookup);
+        assertThrows(IllegalArgumentException.class, () -> join.bind(List.of("sku", "amount")), "no fact column");
+        assertThrows(IllegalArgumentException.class, () -> join.bind(List.of("product", "region")), "shadows region");
+
+        join.bind(List.of("product", "amount"));
+        BroadcastJoin.Lookup lookup = join.lookup();
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> lookup.join(new String[]{"A", "1", "", ""}));
+        assertTrue(e.getMessage().contains("more than once"), "the loader's failure surfaces on first use");
+    }
+}
@@ -0,0 +1,77 @@
+package com.project.csvanalyser.schema;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SchemaTest {
+
+    @Test
+    void typesAcceptTheirForms() {
+        assertTrue(ColumnType.LONG.accepts(" -42 "));
+        assertTrue(ColumnType.LONG.accepts(""));
+        assertFalse(ColumnType.LONG.accepts("4.2"));
+        assertFalse(ColumnType.LONG.accepts("1e3"));
+        assertFalse(ColumnType.LONG.accepts("1234567890123456789"), "19 digits may overflow");
+        assertTrue(ColumnType.DECIMAL.accepts("+12.50"));
+        assertTrue(ColumnType.DECIMAL.accepts("7"));
+        assertFalse(ColumnType.DECIMAL.accepts("1.2.3"));
+        assertFalse(ColumnType.DECIMAL.accepts("-"));
+        assertTrue(ColumnType.DOUBLE.accepts("6.02e23"));
+        assertFalse(ColumnType.DOUBLE.accepts("n/a"));
+        assertTrue(ColumnType.TIMESTAMP.accepts("2024-03-01T13:45:07Z"));
+        assertFalse(ColumnType.TIMESTAMP.accepts("2024-13-01"));
+        assertTrue(ColumnType.STRING.accepts("anything"));
+        assertEquals(ColumnType.DECIMAL, ColumnType.parse(" Decimal "));
+        assertThrows(IllegalArgumentException.class, () -> ColumnType.parse("int"));
+    }
+
+    @Test
+    void samplerPicksNarrowestTypeFittingEveryCell() {
+        List<String> header = List.of("id", "price", "score", "ts", "name", "empty", "mixed");
+        Schema.Sampler sampler = new Schema.Sampler(header, null, 3);
+        sampler.add(new String[]{"1", "2", "1e3", "2024-01-01", "a", "", "5"});
+        sampler.add(Map.of("id", "2", "price", "2.25", "score", "-0.5", "ts", "2024-01-02T10:00Z", "name", "7"));
+        assertFalse(sampler.isDone());
+        sampler.add(new String[]{" 3 ", "", "4", "", "b", " ", "2024-01-01"});
+        assertTrue(sampler.isDone());
+        sampler.add(new String[]{"x", "x", "x", "x", "x", "x", "x"});
+
+        Map<String, ColumnType> types = sampler.schema().types();
+        assertEquals(List.of(ColumnType.LONG, ColumnType.DECIMAL, ColumnType.DOUBLE, ColumnType.TIMESTAMP,
+                ColumnType.STRING, ColumnType.STRING, ColumnType.STRING), List.copyOf(types.values()));
+        assertEquals(header, List.copyOf(types.keySet()));
+    }
+
+    @Test
+    void declaredTypesWinAndSamplingCanBeOff(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("schema.json");
+        Files.writeString(file, "{\"id\": \"string\", \"amount\": \"LONG\"}");
+        Schema declared = Schema.load(file);
+        assertEquals(Map.of("id", "string", "amount", "long"), declared.labels());
+
+        Schema.Sampler sampler = new Schema.Sampler(List.of("id", "amount", "qty"), declared, 10);
+        sampler.add(new String[]{"1", "2.5", "3"});
+        assertEquals(Map.of("id", ColumnType.STRING, "amount", ColumnType.LONG, "qty", ColumnType.LONG),
+                sampler.schema().types());
+
+        Schema.Sampler off = new Schema.Sampler(List.of("id", "amount", "qty"), declared, 0);
+        assertTrue(off.isDone());
+        assertEquals(Map.of("id", ColumnType.STRING, "amount", ColumnType.LONG), off.schema().types());
+        assertTrue(new Schema.Sampler(List.of("qty"), null, 10).schema().types().isEmpty(), "nothing sampled yet");
+
+        assertThrows(IllegalArgumentException.class, () -> new Schema.Sampler(List.of("id"), declared, 10));
+        Files.writeString(file, "[\"long\"]");
+        assertThrows(IllegalArgumentException.class, () -> Schema.load(file));
+        Files.writeString(file, "{\"id\": 1}");
+        assertThrows(IllegalArgumentException.class, () -> Schema.load(file));
+        Files.writeString(file, "{\"id\": ");
+        assertThrows(IllegalArgumentException.class, () -> Schema.load(file));
+    }
+}
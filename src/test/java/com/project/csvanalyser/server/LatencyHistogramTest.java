@@ -0,0 +1,39 @@
+package com.project.csvanalyser.server;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LatencyHistogramTest {
+
+    @Test
+    void emptyHistogramReportsZero() {
+        LatencyHistogram h = new LatencyHistogram();
+        assertEquals(0, h.getCount());
+        assertEquals(0, h.percentileMicros(99));
+    }
+
+    @Test
+    void percentilesWithinBucketPrecision() {
+        LatencyHistogram h = new LatencyHistogram();
+        for (int ms = 1; ms <= 100; ms++) {
+            h.recordNanos(ms * 1_000_000L);
+        }
+        assertEquals(100, h.getCount());
+        assertEquals(100_000, h.getMaxMicros());
+        assertEquals(50_000, h.percentileMicros(50), 50_000 * 0.07);
+        assertEquals(99_000, h.percentileMicros(99), 99_000 * 0.07);
+        assertEquals(100_000, h.percentileMicros(100));
+    }
+
+    @Test
+    void bucketBoundsAreContiguous() {
+        for (long v : new long[] { 0, 1, 15, 16, 17, 31, 32, 1_000, 123_456_789L }) {
+            int b = LatencyHistogram.bucketFor(v);
+            assertTrue(LatencyHistogram.upperBound(b) >= v, "upper bound below value " + v);
+            if (b > 0) {
+                assertTrue(LatencyHistogram.upperBound(b - 1) < v, "previous bucket covers value " + v);
+            }
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.project.csvanalyser.server;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.project.csvanalyser.cli.ServerConfig;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class QueryServerTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final HttpClient CLIENT = HttpClient.newHttpClient();
+
+    @Test
+    void answersQueryAndReportsLatency(@TempDir Path dir) throws Exception {
+        Path csv = dir.resolve("sales.csv");
+        Files.writeString(csv, "product,region,amount\nA,APAC,100\nA,APAC,200\nB,EMEA,50\n");
+        try (QueryServer server = QueryServer.start(new ServerConfig(0, 2, 4))) {
+            String base = "http://127.0.0.1:" + server.getPort();
+            String query = "input=" + URLEncoder.encode(csv.toString(), StandardCharsets.UTF_8)
+                    + "&group-by=product&agg=" + URLEncoder.encode("count,sum(amount)", StandardCharsets.UTF_8);
+            HttpResponse<String> response = CLIENT.send(
+                    HttpRequest.newBuilder(URI.create(base + "/query?" + query)).build(),
+                    HttpResponse.BodyHandlers.ofString());
+            assertEquals(200, response.statusCode());
+            @SuppressWarnings("unchecked")
+            Map<String, Object> json = MAPPER.readValue(response.body(), Map.class);
+            assertEquals(3, ((Number) json.get("totalRows")).intValue());
+            assertEquals(2, ((List<?>) json.get("groups")).size());
+
+            HttpResponse<String> metrics = CLIENT.send(
+                    HttpRequest.newBuilder(URI.create(base + "/metrics")).build(),
+                    HttpResponse.BodyHandlers.ofString());
+            assertEquals(200, metrics.statusCode());
+            @SuppressWarnings("unchecked")
+            Map<String, Map<String, Map<String, Object>>> m = MAPPER.readValue(metrics.body(), Map.class);
+            assertEquals(1, ((Number) m.get("endpoints").get("/query").get("count")).intValue());
+        }
+    }
+
+    @Test
+    void rejectsUnknownParameterAndMissingInput() throws Exception {
+        try (QueryServer server = QueryServer.start(new ServerConfig(0, 1, 0))) {
+            String base = "http://127.0.0.1:" + server.getPort();
+            assertEquals(400, CLIENT.send(HttpRequest.newBuilder(URI.create(base + "/query?output=x.json")).build(),
+                    HttpResponse.BodyHandlers.ofString()).statusCode());
+            assertEquals(400, CLIENT.send(HttpRequest.newBuilder(URI.create(base + "/query?input=missing.csv")).build(),
+                    HttpResponse.BodyHandlers.ofString()).statusCode());
+        }
+    }
+
+    @Test
+    void mapsParametersAndFlagsToCliArguments() {
+        Map<String, String> params = new LinkedHashMap<>();
+        params.put("input", "a.csv");
+        params.put("group-by", "product,region");
+        params.put("rollup", "");
+        assertArrayEquals(new String[] {"--input", "a.csv", "--group-by", "product,region", "--rollup"},
+                QueryServer.toArgs(params));
+        params.put("rollup", "TRUE");
+        assertEquals("--rollup", QueryServer.toArgs(params)[4]);
+        params.put("rollup", "false");
+        assertEquals(4, QueryServer.toArgs(params).length);
+        params.put("rollup", "yes");
+        assertThrows(IllegalArgumentException.class, () -> QueryServer.toArgs(params));
+        assertTrue(QueryServer.QUERY_PARAMS.containsAll(QueryServer.FLAG_PARAMS));
+        Map<String, String> partial = new LinkedHashMap<>();
+        partial.put("time-budget", "50");
+        partial.put("extrapolate", "true");
+        assertArrayEquals(new String[] {"--time-budget", "50", "--extrapolate"}, QueryServer.toArgs(partial));
+    }
+
+    @Test
+    void admitsBackToBackQueriesWithoutAQueue(@TempDir Path dir) throws Exception {
+        Path csv = dir.resolve("sales.csv");
+        Files.writeString(csv, "product,region,amount\nA,APAC,100\nB,EMEA,50\n");
+        try (QueryServer server = QueryServer.start(new ServerConfig(0, 1, 0))) {
+            String base = "http://127.0.0.1:" + server.getPort();
+            URI query = URI.create(base + "/query?group-by=product&input="
+                    + URLEncoder.encode(csv.toString(), StandardCharsets.UTF_8));
+            URI invalid = URI.create(base + "/query?output=x.json");
+            for (int i = 0; i < 50; i++) {
+                assertEquals(200, CLIENT.send(HttpRequest.newBuilder(query).build(),
+                        HttpResponse.BodyHandlers.ofString()).statusCode(), "query " + i);
+                assertEquals(400, CLIENT.send(HttpRequest.newBuilder(invalid).build(),
+                        HttpResponse.BodyHandlers.ofString()).statusCode(), "invalid query " + i);
+            }
+            HttpResponse<String> metrics = CLIENT.send(HttpRequest.newBuilder(URI.create(base + "/metrics")).build(),
+                    HttpResponse.BodyHandlers.ofString());
+            @SuppressWarnings("unchecked")
+            Map<String, Map<String, Object>> m = MAPPER.readValue(metrics.body(), Map.class);
+            assertEquals(0, ((Number) m.get("executor").get("rejected")).intValue());
+            assertEquals(0, ((Number) m.get("executor").get("queueCapacity")).intValue());
+        }
+    }
+
+    @Test
+    void cancelsRunningQueryById(@TempDir Path dir) throws Exception {
+        StringBuilder rows = new StringBuilder("product,region,amount\n");
+        for (int i = 0; i < 400_000; i++) {
+            rows.append('P').append(i % 50).append(",APAC,").append(i).append('\n');
+        }
+        Path csv = dir.resolve("sales.csv");
+        Files.writeString(csv, rows);
+        try (QueryServer server = QueryServer.start(new ServerConfig(0, 2, 4))) {
+            String base = "http://127.0.0.1:" + server.getPort();
+            assertEquals(404, CLIENT.send(HttpRequest.newBuilder(URI.create(base + "/cancel?query-id=none")).build(),
+                    HttpResponse.BodyHandlers.ofString()).statusCode());
+            assertEquals(400, CLIENT.send(HttpRequest.newBuilder(URI.create(base + "/cancel")).build(),
+                    HttpResponse.BodyHandlers.ofString()).statusCode());
+
+            String query = "input=" + URLEncoder.encode(csv.toString(), StandardCharsets.UTF_8)
+                    + "&group-by=product&agg=count&query-id=q1";
+            var pending = CLIENT.sendAsync(HttpRequest.newBuilder(URI.create(base + "/query?" + query)).build(),
+                    HttpResponse.BodyHandlers.ofString());
+            int status = 404;
+            while (status == 404 && !pending.isDone()) {
+                status = CLIENT.send(HttpRequest.newBuilder(URI.create(base + "/cancel?query-id=q1")).build(),
+                        HttpResponse.BodyHandlers.ofString()).statusCode();
+            }
+            assertEquals(200, status, "query finished before it could be cancelled");
+            HttpResponse<String> response = pending.get();
+            assertEquals(409, response.statusCode());
+            assertTrue(response.body().contains("cancelled"));
+        }
+    }
+}
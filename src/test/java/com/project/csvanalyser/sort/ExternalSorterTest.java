@@ -0,0 +1,180 @@
+package com.project.csvanalyser.sort;
+
+import com.project.csvanalyser.schema.ColumnType;
+import com.project.csvanalyser.schema.Schema;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ExternalSorterTest {
+
+    private static final List<String> HEADER = List.of("id", "amount");
+    private static final Schema SCHEMA = new Schema(Map.of("amount", ColumnType.LONG));
+
+    @Test
+    void mergesSpilledAndInMemoryRunsFromSeveralGeneratorsInKeyOrder(@TempDir Path dir) throws Exception {
+        List<String[]> rows = rows(20_000, 42);
+        List<String> expected = expected(rows);
+        for (int fanIn : new int[] {2, 3, 7, 1000}) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            int runs;
+            int passes;
+            try (ExternalSorter sorter = new ExternalSorter(dir, 64 << 10, fanIn)) {
+                feed(sorter, rows, 3);
+                assertEquals(rows.size(), sorter.merge(out));
+                runs = sorter.getRuns();
+                passes = sorter.getMergePasses();
+            }
+            assertEquals(expected, lines(out), "fan-in " + fanIn);
+            assertTrue(runs > 20, "a 64 KB budget spills many runs");
+            if (fanIn < runs) {
+                assertTrue(passes > 0, "more runs than the fan-in take intermediate passes");
+            } else {
+                assertEquals(0, passes);
+            }
+            try (Stream<Path> left = Files.list(dir)) {
+                assertEquals(0, left.count(), "closing deletes the temp directory");
+            }
+        }
+    }
+
+    @Test
+    void keepsEverythingInMemoryWhenItFits(@TempDir Path dir) throws Exception {
+        List<String[]> rows = rows(1000, 7);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ExternalSorter sorter = new ExternalSorter(dir, 64 << 20, ExternalSorter.DEFAULT_FAN_IN)) {
+            feed(sorter, rows, 2);
+            sorter.merge(out);
+            assertEquals(2, sorter.getRuns());
+            assertEquals(0, sorter.getSpilledBytes());
+        }
+        assertEquals(expected(rows), lines(out));
+
+        ByteArrayOutputStream empty = new ByteArrayOutputStream();
+        try (ExternalSorter sorter = new ExternalSorter(dir, 1 << 20, 2)) {
+            sorter.generator(1).finish();
+            assertEquals(0, sorter.merge(empty));
+        }
+        assertEquals(0, empty.size());
+        assertThrows(IllegalArgumentException.class, () -> new ExternalSorter(dir, 1 << 20, 1));
+    }
+
+    @Test
+    void readBuffersShareOnlyTheBudgetTheMemoryRunsLeave(@TempDir Path dir) throws Exception {
+        try (ExternalSorter sorter = new ExternalSorter(dir, 4 << 20, ExternalSorter.DEFAULT_FAN_IN)) {
+            int before = sorter.readBufferBytes(3);
+            assertEquals(1 << 20, before);
+            feed(sorter, rows(20_000, 5), 1);
+            assertEquals(0, sorter.getSpilledBytes());
+            int after = sorter.readBufferBytes(3);
+            assertTrue(after < before, "the memory run's bytes come out of the read buffers, got " + after);
+            assertTrue(after >= ExternalSorter.MIN_READ_BUFFER_BYTES);
+        }
+    }
+
+    @Test
+    void loserTreeMergesAnyNumberOfRunsIncludingEmptyOnes(@TempDir Path dir) throws Exception {
+        Random random = new Random(3);
+        for (int k = 1; k <= 9; k++) {
+            List<Long> all = new ArrayList<>();
+            List<RunSource> sources = new ArrayList<>();
+            for (int r = 0; r < k; r++) {
+                long[] values = random.longs(r % 3 == 1 ? 0 : random.nextInt(50), -1000, 1000).sorted().toArray();
+                for (long v : values) all.add(v);
+                sources.add(new LongRun(values));
+            }
+            all.sort(null);
+            List<Long> merged = new ArrayList<>();
+            LoserTree tree = new LoserTree(sources);
+            for (RunSource s; (s = tree.peek()) != null; tree.pop()) {
+                merged.add(((LongRun) s).current());
+            }
+            assertEquals(all, merged, "k = " + k);
+        }
+    }
+
+    private static List<String[]> rows(int n, long seed) {
+        Random random = new Random(seed);
+        List<String[]> rows = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            rows.add(new String[] {"row" + i, String.valueOf(random.nextInt(200) - 100)});
+        }
+        return rows;
+    }
+
+    /** Feeds the rows round-robin to {@code generators} generators, as workers handed blocks would. */
+    private static void feed(ExternalSorter sorter, List<String[]> rows, int generators) throws IOException {
+        List<RunGenerator> gens = new ArrayList<>();
+        List<KeyEncoder> encoders = new ArrayList<>();
+        for (int g = 0; g < generators; g++) {
+            gens.add(sorter.generator(generators));
+            encoders.add(new KeyEncoder(List.of(new SortKey("amount", true), new SortKey("id", false)), HEADER, SCHEMA));
+        }
+        for (int i = 0; i < rows.size(); i++) {
+            KeyEncoder keys = encoders.get(i % generators);
+            keys.encode(rows.get(i), i);
+            byte[] line = String.join(",", rows.get(i)).getBytes(StandardCharsets.UTF_8);
+            gens.get(i % generators).add(keys.bytes(), keys.length(), line, 0, line.length);
+        }
+        for (RunGenerator g : gens) {
+            g.finish();
+        }
+    }
+
+    private static List<String> expected(List<String[]> rows) {
+        return rows.stream()
+                .sorted(Comparator.<String[]>comparingInt(r -> -Integer.parseInt(r[1])).thenComparing(r -> r[0]))
+                .map(r -> String.join(",", r)).toList();
+    }
+
+    private static List<String> lines(ByteArrayOutputStream out) {
+        String text = out.toString(StandardCharsets.UTF_8);
+        assertTrue(text.endsWith("\n"));
+        return Arrays.asList(text.substring(0, text.length() - 1).split("\n"));
+    }
+
+    /** A run of longs, keyed by their big-endian bytes with the sign flipped. */
+    private static final class LongRun implements RunSource {
+        private final long[] values;
+        private final byte[] key = new byte[8];
+        private int position = -1;
+
+        LongRun(long[] values) {
+            this.values = values;
+        }
+
+        long current() {
+            return values[position];
+        }
+
+        @Override
+        public boolean advance() {
+            if (++position >= values.length) return false;
+            long v = values[position] ^ Long.MIN_VALUE;
+            for (int i = 0; i < 8; i++) key[i] = (byte) (v >>> (56 - 8 * i));
+            return true;
+        }
+
+        @Override public long prefix() { return values[position] ^ Long.MIN_VALUE; }
+        @Override public byte[] keyData() { return key; }
+        @Override public int keyOffset() { return 0; }
+        @Override public int keyLength() { return 8; }
+        @Override public byte[] rowData() { return key; }
+        @Override public int rowOffset() { return 0; }
+        @Override public int rowLength() { return 0; }
+    }
+}
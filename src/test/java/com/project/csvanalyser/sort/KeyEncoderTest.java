@@ -0,0 +1,98 @@
+package com.project.csvanalyser.sort;
+
+import com.project.csvanalyser.schema.ColumnType;
+import com.project.csvanalyser.schema.Schema;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class KeyEncoderTest {
+
+    private static final List<String> HEADER = List.of("name", "amount", "price", "ts");
+    private static final Schema SCHEMA = new Schema(Map.of(
+            "amount", ColumnType.LONG, "price", ColumnType.DOUBLE, "ts", ColumnType.TIMESTAMP));
+
+    @Test
+    void ordersNumbersInALongColumnExactlyBlanksFirstAndMisfitsLast() {
+        List<String> values = List.of("", "-9223372036854775808", "-70000", "-256", "-255", "-1.5", "-1", "0", "1",
+                "1.5", "255", "256", "+300", "70000", "9007199254740992", "9007199254740993", "9223372036854775807",
+                "1e30", "abc");
+        assertEquals(values, sorted(List.of(new SortKey("amount", false)), "amount", values));
+    }
+
+    @Test
+    void ordersDoublesAndTimestamps() {
+        assertEquals(List.of("", "-1e300", "-2.5", "-0.0", "0", "1E-10", "0.5", "3", "Infinity", "NaN"),
+                sorted(List.of(new SortKey("price", false)), "price",
+                        List.of("3", "-2.5", "NaN", "0.5", "", "-1e300", "Infinity", "1E-10", "-0.0", "0")));
+        assertEquals(List.of("1969-12-31T23:59:59Z", "2024-01-01", "2024-01-01T00:00:01Z", "2025-06-01T10:00:00"),
+                sorted(List.of(new SortKey("ts", false)), "ts",
+                        List.of("2025-06-01T10:00:00", "2024-01-01T00:00:01Z", "1969-12-31T23:59:59Z", "2024-01-01")));
+    }
+
+    @Test
+    void ordersStringsByCodePointAndDescendingReversesOnlyItsColumn() {
+        List<String> names = List.of("", "a", "a\0", "a\0b", "ab", "b", "é", "😀");
+        assertEquals(names, sorted(List.of(new SortKey("name", false)), "name", names));
+        List<String> reversed = new ArrayList<>(names);
+        Collections.reverse(reversed);
+        assertEquals(reversed, sorted(List.of(new SortKey("name", true)), "name", names));
+
+        KeyEncoder encoder = new KeyEncoder(List.of(new SortKey("amount", true), new SortKey("name", false)),
+                HEADER, SCHEMA);
+        byte[] tenB = key(encoder, row("b", "10"), 0);
+        byte[] tenA = key(encoder, row("a", "10"), 1);
+        byte[] nine = key(encoder, row("a", "9"), 2);
+        assertTrue(compare(tenA, tenB) < 0, "equal amounts order by name ascending");
+        assertTrue(compare(tenB, nine) < 0, "amount descending");
+        assertTrue(compare(key(encoder, row("a", "10"), 5), tenA) > 0, "the offset breaks ties in input order");
+    }
+
+    @Test
+    void rejectsUnknownColumnsAndDirections() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new KeyEncoder(List.of(new SortKey("missing", false)), HEADER, SCHEMA));
+        assertThrows(IllegalArgumentException.class, () -> SortKey.parse(List.of("amount down")));
+        assertThrows(IllegalArgumentException.class, () -> SortKey.parse(List.of("")));
+        assertEquals("amount desc", SortKey.parse(List.of("amount  DESC")).get(0).toString());
+    }
+
+    /** @return {@code values} of {@code column}, ordered by their encoded keys */
+    private static List<String> sorted(List<SortKey> keys, String column, List<String> values) {
+        KeyEncoder encoder = new KeyEncoder(keys, HEADER, SCHEMA);
+        int index = HEADER.indexOf(column);
+        List<Object[]> encoded = new ArrayList<>();
+        for (String v : values) {
+            String[] row = {"", "", "", ""};
+            row[index] = v;
+            encoded.add(new Object[] {key(encoder, row, 0), v});
+        }
+        encoded.sort(Comparator.comparing(e -> (byte[]) e[0], KeyEncoderTest::compare));
+        List<String> out = new ArrayList<>();
+        for (Object[] e : encoded) out.add((String) e[1]);
+        return out;
+    }
+
+    private static String[] row(String name, String amount) {
+        return new String[] {name, amount, "", ""};
+    }
+
+    private static byte[] key(KeyEncoder encoder, String[] row, long offset) {
+        encoder.encode(row, offset);
+        return Arrays.copyOf(encoder.bytes(), encoder.length());
+    }
+
+    private static int compare(byte[] a, byte[] b) {
+        int c = KeyEncoder.compare(KeyEncoder.prefix(a, 0, a.length), a, 0, a.length,
+                KeyEncoder.prefix(b, 0, b.length), b, 0, b.length);
+        assertEquals(Integer.signum(Arrays.compareUnsigned(a, b)), Integer.signum(c), "prefix compare agrees with bytes");
+        return c;
+    }
+}
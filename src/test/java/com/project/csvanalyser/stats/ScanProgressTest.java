@@ -0,0 +1,52 @@
+package com.project.csvanalyser.stats;
+
+import org.junit.jupiter.api.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ScanProgressTest {
+
+    @Test
+    void exposesLiveCountersThroughMBeanWhileScanning() throws Exception {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName pattern = new ObjectName("com.project.csvanalyser:type=ScanProgress,*");
+        AtomicLong bytes = new AtomicLong();
+        try (ScanProgress progress = ScanProgress.start("big.csv", 1000, bytes::get, null)) {
+            bytes.set(250);
+            progress.update(16384, 12, 4096);
+
+            ObjectName name = server.queryNames(pattern, null).stream()
+                    .filter(n -> n.getKeyProperty("name").contains("big.csv"))
+                    .findFirst().orElseThrow();
+            assertEquals(250L, server.getAttribute(name, "BytesProcessed"));
+            assertEquals(16384L, server.getAttribute(name, "RowsProcessed"));
+            assertEquals(12L, server.getAttribute(name, "GroupCount"));
+            assertEquals(25.0, (Double) server.getAttribute(name, "PercentComplete"), 1e-9);
+            assertTrue((Long) server.getAttribute(name, "EtaSeconds") >= 0);
+        }
+        assertTrue(server.queryNames(pattern, null).stream()
+                .noneMatch(n -> n.getKeyProperty("name").contains("big.csv")));
+    }
+
+    @Test
+    void finishPrintsFinalProgressLine() {
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        AtomicLong bytes = new AtomicLong();
+        ScanProgress progress = ScanProgress.start("small.csv", 2048, bytes::get,
+                new PrintStream(err, true, StandardCharsets.UTF_8));
+        bytes.set(2048);
+        progress.finish(100, 3, 1024);
+
+        String line = err.toString(StandardCharsets.UTF_8);
+        assertTrue(line.startsWith("progress: 100.0% 2.0 KB/2.0 KB, 100 rows"), line);
+        assertTrue(line.contains("3 groups (~1.0 KB state)"), line);
+    }
+}